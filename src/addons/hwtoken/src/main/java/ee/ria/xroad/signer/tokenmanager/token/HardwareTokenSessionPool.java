@@ -0,0 +1,307 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.signer.tokenmanager.token;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricFilter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.jmx.JmxReporter;
+import iaik.pkcs.pkcs11.Session;
+import iaik.pkcs.pkcs11.Token;
+import iaik.pkcs.pkcs11.wrapper.PKCS11Constants;
+import iaik.pkcs.pkcs11.wrapper.PKCS11Exception;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import static iaik.pkcs.pkcs11.Token.SessionType.SERIAL_SESSION;
+
+/**
+ * Pool of read-only PKCS#11 sessions used for signing.
+ * <p>
+ * The login state of a PKCS#11 token is shared by all sessions of the application, so sessions opened after the
+ * token worker has logged in are usable for signing right away. Object handles are also valid across sessions,
+ * which allows the private key handles to be cached once per token. Sessions are opened lazily up to the
+ * configured size; a session that fails with an error indicating that it is no longer usable is closed and
+ * replaced by a new one on the next request.
+ * <p>
+ * The statistics of the pool are exported as metrics named
+ * {@value #METRIC_PREFIX}.&lt;token id&gt;.&lt;statistic&gt;.
+ */
+@Slf4j
+class HardwareTokenSessionPool {
+
+    static final String METRIC_PREFIX = "hardwareTokenSignSessions";
+
+    private static final long[] BROKEN_SESSION_ERRORS = {
+            PKCS11Constants.CKR_SESSION_HANDLE_INVALID,
+            PKCS11Constants.CKR_SESSION_CLOSED,
+            PKCS11Constants.CKR_DEVICE_ERROR,
+            PKCS11Constants.CKR_DEVICE_REMOVED,
+            PKCS11Constants.CKR_TOKEN_NOT_PRESENT
+    };
+
+    private static final long BORROW_POLL_MILLIS = 100;
+
+    private final Token token;
+    private final String workerId;
+    private final int maxSize;
+    private final MetricRegistry metrics;
+
+    private final BlockingQueue<PooledSession> idle = new LinkedBlockingQueue<>();
+    private final AtomicInteger openSessions = new AtomicInteger();
+    private final AtomicInteger generation = new AtomicInteger();
+    private volatile boolean closed;
+
+    private final LongAdder operations = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder totalLatencyNanos = new LongAdder();
+    private final AtomicLong maxLatencyNanos = new AtomicLong();
+
+    HardwareTokenSessionPool(Token token, String workerId, int maxSize) {
+        this(token, workerId, maxSize, SharedMetrics.REGISTRY);
+    }
+
+    HardwareTokenSessionPool(Token token, String workerId, int maxSize, MetricRegistry metrics) {
+        this.token = token;
+        this.workerId = workerId;
+        this.maxSize = Math.max(1, maxSize);
+        this.metrics = metrics;
+
+        registerGauge("openSessions", openSessions::get);
+        registerGauge("idleSessions", idle::size);
+        registerGauge("signOperations", operations::sum);
+        registerGauge("failedOperations", failures::sum);
+        registerGauge("avgLatencyMicros", () -> getStats().getAvgLatencyMicros());
+        registerGauge("maxLatencyMicros", () -> TimeUnit.NANOSECONDS.toMicros(maxLatencyNanos.get()));
+    }
+
+    /**
+     * Action executed with a session borrowed from the pool.
+     */
+    @FunctionalInterface
+    interface SessionAction<T> {
+        T execute(Session session) throws Exception;
+    }
+
+    /**
+     * Executes the action with an idle session, opening a new session if the pool is not full and waiting for a
+     * session to become available otherwise.
+     */
+    <T> T execute(SessionAction<T> action) throws Exception {
+        final PooledSession pooled = borrow();
+        final long start = System.nanoTime();
+        boolean broken = false;
+        try {
+            return action.execute(pooled.session());
+        } catch (PKCS11Exception e) {
+            failures.increment();
+            broken = isSessionBroken(e.getErrorCode());
+            throw e;
+        } catch (Exception e) {
+            failures.increment();
+            throw e;
+        } finally {
+            recordLatency(System.nanoTime() - start);
+            release(pooled, broken);
+        }
+    }
+
+    /**
+     * Checks the idle sessions and closes the ones that are no longer usable.
+     */
+    void checkHealth() {
+        final List<PooledSession> sessions = new ArrayList<>();
+        idle.drainTo(sessions);
+        for (PooledSession pooled : sessions) {
+            boolean broken;
+            try {
+                pooled.session().getSessionInfo();
+                broken = false;
+            } catch (PKCS11Exception e) {
+                broken = isSessionBroken(e.getErrorCode());
+            } catch (Exception e) {
+                broken = true;
+            }
+            if (broken) {
+                log.warn("Closing broken signing session on token '{}'", workerId);
+            }
+            release(pooled, broken);
+        }
+    }
+
+    /**
+     * Closes all sessions opened so far, so that the following requests use sessions opened after the login
+     * state of the token changed. Sessions that are in use are closed when they are returned to the pool.
+     */
+    void invalidate() {
+        generation.incrementAndGet();
+        closeIdleSessions();
+    }
+
+    /**
+     * Closes all idle sessions and removes the metrics of the pool. Sessions that are in use are closed when
+     * they are returned to the pool.
+     */
+    void close() {
+        closed = true;
+        closeIdleSessions();
+        metrics.removeMatching(MetricFilter.startsWith(MetricRegistry.name(METRIC_PREFIX, workerId) + "."));
+    }
+
+    Stats getStats() {
+        final long ops = operations.sum();
+        return new Stats(openSessions.get(), idle.size(), ops, failures.sum(),
+                ops == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(totalLatencyNanos.sum() / ops),
+                TimeUnit.NANOSECONDS.toMicros(maxLatencyNanos.get()));
+    }
+
+    private PooledSession borrow() throws Exception {
+        while (true) {
+            if (closed) {
+                throw new IllegalStateException("Signing session pool of token '" + workerId + "' is closed");
+            }
+
+            PooledSession pooled = pollUsable(idle.poll());
+            if (pooled != null) {
+                return pooled;
+            }
+
+            final int open = openSessions.get();
+            if (open < maxSize) {
+                if (openSessions.compareAndSet(open, open + 1)) {
+                    return openSession(open + 1);
+                }
+                continue;
+            }
+
+            // sessions closed as broken free up room in the pool, so the wait is bounded
+            pooled = pollUsable(idle.poll(BORROW_POLL_MILLIS, TimeUnit.MILLISECONDS));
+            if (pooled != null) {
+                return pooled;
+            }
+        }
+    }
+
+    private PooledSession pollUsable(PooledSession pooled) {
+        if (pooled != null && pooled.generation() != generation.get()) {
+            closeSession(pooled.session());
+            return null;
+        }
+        return pooled;
+    }
+
+    private PooledSession openSession(int number) throws Exception {
+        try {
+            log.debug("Opening signing session {}/{} on token '{}'", number, maxSize, workerId);
+            final int currentGeneration = generation.get();
+            return new PooledSession(token.openSession(SERIAL_SESSION, false, null, null), currentGeneration);
+        } catch (Exception e) {
+            openSessions.decrementAndGet();
+            throw e;
+        }
+    }
+
+    private void release(PooledSession pooled, boolean broken) {
+        if (broken || closed || pooled.generation() != generation.get()) {
+            closeSession(pooled.session());
+        } else {
+            idle.add(pooled);
+        }
+    }
+
+    private void closeIdleSessions() {
+        PooledSession pooled;
+        while ((pooled = idle.poll()) != null) {
+            closeSession(pooled.session());
+        }
+    }
+
+    private void closeSession(Session session) {
+        openSessions.decrementAndGet();
+        try {
+            session.closeSession();
+        } catch (Exception e) {
+            log.debug("Failed to close signing session on token '{}'", workerId, e);
+        }
+    }
+
+    private void recordLatency(long nanos) {
+        operations.increment();
+        totalLatencyNanos.add(nanos);
+        maxLatencyNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    private void registerGauge(String statistic, Gauge<?> gauge) {
+        final String name = MetricRegistry.name(METRIC_PREFIX, workerId, statistic);
+        metrics.remove(name);
+        metrics.register(name, gauge);
+    }
+
+    private static boolean isSessionBroken(long errorCode) {
+        for (long code : BROKEN_SESSION_ERRORS) {
+            if (code == errorCode) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private record PooledSession(Session session, int generation) {
+    }
+
+    /**
+     * Registry shared by the pools of all tokens, reported over JMX.
+     */
+    private static final class SharedMetrics {
+        static final MetricRegistry REGISTRY = new MetricRegistry();
+
+        static {
+            JmxReporter.forRegistry(REGISTRY).build().start();
+        }
+    }
+
+    /**
+     * Signing statistics of a token.
+     */
+    @Value
+    static class Stats {
+        int openSessions;
+        int idleSessions;
+        long signOperations;
+        long failedOperations;
+        long avgLatencyMicros;
+        long maxLatencyMicros;
+    }
+}
@@ -71,6 +71,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static ee.ria.xroad.common.ErrorCodes.X_INTERNAL_ERROR;
 import static ee.ria.xroad.common.ErrorCodes.X_KEY_NOT_FOUND;
@@ -114,12 +115,14 @@ public class HardwareTokenWorker extends AbstractTokenWorker {
     // maps signature algorithm id and signing mechanism
     private final Map<SignAlgorithm, Mechanism> signMechanisms;
 
-    // maps key id (hex) to PrivateKey
-    private final Map<String, PrivateKey> privateKeys = new HashMap<>();
+    // maps key id (hex) to PrivateKey, handles are shared by all sessions
+    private final Map<String, PrivateKey> privateKeys = new ConcurrentHashMap<>();
     private final Map<String, List<X509PublicKeyCertificate>> certs = new HashMap<>();
 
     private Session activeSession;
 
+    private volatile HardwareTokenSessionPool signSessionPool;
+
     /**
      * @param tokenInfo the token info
      * @param tokenType the token type
@@ -187,6 +190,17 @@ public class HardwareTokenWorker extends AbstractTokenWorker {
             findPublicKeysForPrivateKeys();
             findCertificatesNotInConf();
         }
+
+        HardwareTokenSessionPool pool = signSessionPool;
+        if (pool != null) {
+            pool.checkHealth();
+            log.debug("Token '{}' signing statistics: {}", getWorkerId(), pool.getStats());
+        }
+    }
+
+    @Override
+    protected boolean isConcurrentSigningSupported() {
+        return signSessionPool != null && !tokenType.isPinVerificationPerSigning();
     }
 
     @Override
@@ -207,6 +221,7 @@ public class HardwareTokenWorker extends AbstractTokenWorker {
                 }
 
                 login();
+                invalidateSignSessions();
             } catch (Exception e) {
                 log.warn("Token login failed", e);
 
@@ -216,6 +231,7 @@ public class HardwareTokenWorker extends AbstractTokenWorker {
             log.info("Logging out token '{}'", getWorkerId());
 
             try {
+                invalidateSignSessions();
                 logout();
             } catch (Exception e) {
                 log.warn("Token logout failed", e);
@@ -351,23 +367,37 @@ public class HardwareTokenWorker extends AbstractTokenWorker {
 
         assertActiveSession();
         pinVerificationPerSigningLogin();
-        assertKeyAvailable(keyId);
+        try {
+            assertKeyAvailable(keyId);
+
+            return signWithPooledOrActiveSession(keyId, signatureAlgorithmId, data);
+        } finally {
+            pinVerificationPerSigningLogout();
+        }
+    }
+
+    private byte[] signWithPooledOrActiveSession(String keyId, SignAlgorithm signatureAlgorithmId, byte[] data)
+            throws Exception {
+        HardwareTokenSessionPool pool = signSessionPool;
+        if (pool == null) {
+            return signWithSession(activeSession, keyId, signatureAlgorithmId, data);
+        }
+        return pool.execute(session -> signWithSession(session, keyId, signatureAlgorithmId, data));
+    }
 
-        PrivateKey key = getPrivateKey(keyId);
+    private byte[] signWithSession(Session session, String keyId, SignAlgorithm signatureAlgorithmId, byte[] data)
+            throws Exception {
+        PrivateKey key = getPrivateKey(session, keyId);
         if (key == null) {
             throw CodedException.tr(X_KEY_NOT_FOUND, "key_not_found_on_token", "Key '%s' not found on token '%s'",
                     keyId, tokenId);
         }
 
         log.debug("Signing with key '{}' and signature algorithm '{}'", keyId, signatureAlgorithmId);
-        try {
-            Mechanism signMechanism = verifyAndReturnSignMechanism(signatureAlgorithmId, KeyAlgorithm.valueOf(key.getKeyType().toString()));
+        Mechanism signMechanism = verifyAndReturnSignMechanism(signatureAlgorithmId, KeyAlgorithm.valueOf(key.getKeyType().toString()));
 
-            activeSession.signInit(signMechanism, key);
-            return activeSession.sign(data);
-        } finally {
-            pinVerificationPerSigningLogout();
-        }
+        session.signInit(signMechanism, key);
+        return session.sign(data);
     }
 
     private Mechanism verifyAndReturnSignMechanism(SignAlgorithm signatureAlgorithmId, KeyAlgorithm algorithm) throws CodedException {
@@ -459,11 +489,17 @@ public class HardwareTokenWorker extends AbstractTokenWorker {
     }
 
     private PrivateKey getPrivateKey(String keyId) throws Exception {
+        return getPrivateKey(activeSession, keyId);
+    }
+
+    private PrivateKey getPrivateKey(Session session, String keyId) throws Exception {
         PrivateKey privateKey = privateKeys.get(keyId);
         if (privateKey == null) {
             log.debug("Key {} not found in cache, trying to find it from hardware token", keyId);
-            privateKey = findPrivateKey(activeSession, keyId, tokenType.getPrivKeyAttributes().getAllowedMechanisms());
-            privateKeys.put(keyId, privateKey);
+            privateKey = findPrivateKey(session, keyId, tokenType.getPrivKeyAttributes().getAllowedMechanisms());
+            if (privateKey != null) {
+                privateKeys.put(keyId, privateKey);
+            }
         }
         return privateKey;
     }
@@ -629,6 +665,19 @@ public class HardwareTokenWorker extends AbstractTokenWorker {
 
         if (getToken() != null) {
             activeSession = getToken().openSession(SERIAL_SESSION, true, null, null);
+
+            // with a single signing session, the management session is used for signing as before
+            int signSessionPoolSize = ((HardwareTokenType) tokenType).getSignSessionPoolSize();
+            if (signSessionPoolSize > 1) {
+                signSessionPool = new HardwareTokenSessionPool(getToken(), getWorkerId(), signSessionPoolSize);
+            }
+        }
+    }
+
+    private void invalidateSignSessions() {
+        HardwareTokenSessionPool pool = signSessionPool;
+        if (pool != null) {
+            pool.invalidate();
         }
     }
 
@@ -696,6 +745,11 @@ public class HardwareTokenWorker extends AbstractTokenWorker {
     }
 
     private void closeActiveSession() throws Exception {
+        if (signSessionPool != null) {
+            signSessionPool.close();
+            signSessionPool = null;
+        }
+
         if (activeSession != null) {
             try {
                 logout();
@@ -791,18 +845,9 @@ public class HardwareTokenWorker extends AbstractTokenWorker {
                 assertActiveSession();
                 pinVerificationPerSigningLogin();
                 byte[] dataToSign = out.toByteArray();
-                PrivateKey privateKey = getPrivateKey(keyId);
-                if (privateKey == null) {
-                    throw CodedException.tr(X_KEY_NOT_FOUND, "key_not_found_on_token", "Key '%s' not found on token '%s'",
-                            keyId, tokenId);
-                }
-                log.debug("Signing with key '{}' and signature algorithm '{}'", keyId, signatureAlgorithmId);
-                Mechanism signatureMechanism = verifyAndReturnSignMechanism(signatureAlgorithmId,
-                        KeyAlgorithm.valueOf(privateKey.getKeyType().toString()));
-                activeSession.signInit(signatureMechanism, privateKey);
                 byte[] digest = calculateDigest(signatureAlgorithmId.digest(), dataToSign);
                 byte[] dataDigestToSign = SignDataPreparer.of(signatureAlgorithmId).prepare(digest);
-                return activeSession.sign(dataDigestToSign);
+                return signWithPooledOrActiveSession(keyId, signatureAlgorithmId, dataDigestToSign);
             } catch (Exception e) {
                 log.error(e.getMessage());
                 throw translateException(e);
@@ -0,0 +1,216 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.signer.tokenmanager.token;
+
+import com.codahale.metrics.MetricRegistry;
+import iaik.pkcs.pkcs11.Session;
+import iaik.pkcs.pkcs11.Token;
+import iaik.pkcs.pkcs11.wrapper.PKCS11Constants;
+import iaik.pkcs.pkcs11.wrapper.PKCS11Exception;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests {@link HardwareTokenSessionPool}.
+ */
+public class HardwareTokenSessionPoolTest {
+
+    private static final String TOKEN_ID = "token";
+    private static final long TIMEOUT_SECONDS = 10;
+
+    private final List<Session> openedSessions = new CopyOnWriteArrayList<>();
+    private final MetricRegistry metrics = new MetricRegistry();
+    private Token token;
+
+    @Before
+    public void setUp() throws Exception {
+        token = mock(Token.class);
+        when(token.openSession(anyBoolean(), anyBoolean(), any(), any())).thenAnswer(invocation -> {
+            Session session = mock(Session.class);
+            openedSessions.add(session);
+            return session;
+        });
+    }
+
+    @Test
+    public void reusesIdleSession() throws Exception {
+        HardwareTokenSessionPool pool = new HardwareTokenSessionPool(token, TOKEN_ID, 2, metrics);
+
+        Session first = pool.execute(session -> session);
+        Session second = pool.execute(session -> session);
+
+        assertSame(first, second);
+        assertEquals(1, openedSessions.size());
+    }
+
+    @Test
+    public void waitsForSessionWhenExhausted() throws Exception {
+        HardwareTokenSessionPool pool = new HardwareTokenSessionPool(token, TOKEN_ID, 2, metrics);
+        CountDownLatch borrowed = new CountDownLatch(2);
+        CountDownLatch release = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            Future<?> holder1 = executor.submit(() -> pool.execute(session -> hold(borrowed, release)));
+            Future<?> holder2 = executor.submit(() -> pool.execute(session -> hold(borrowed, release)));
+            assertTrue(borrowed.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+            Future<Session> waiting = executor.submit(() -> pool.execute(session -> session));
+            Thread.sleep(200);
+            assertFalse(waiting.isDone());
+
+            release.countDown();
+            holder1.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            holder2.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+            assertTrue(openedSessions.contains(waiting.get(TIMEOUT_SECONDS, TimeUnit.SECONDS)));
+            assertEquals(2, openedSessions.size());
+            assertEquals(2, pool.getStats().getOpenSessions());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void replacesBrokenSession() throws Exception {
+        HardwareTokenSessionPool pool = new HardwareTokenSessionPool(token, TOKEN_ID, 1, metrics);
+
+        try {
+            pool.execute(session -> {
+                throw new PKCS11Exception(PKCS11Constants.CKR_SESSION_HANDLE_INVALID);
+            });
+            fail("expected failure");
+        } catch (PKCS11Exception expected) {
+            // expected
+        }
+
+        Session broken = openedSessions.get(0);
+        verify(broken).closeSession();
+        assertEquals(0, pool.getStats().getOpenSessions());
+
+        Session replacement = pool.execute(session -> session);
+        assertNotSame(broken, replacement);
+        assertEquals(1, pool.getStats().getFailedOperations());
+    }
+
+    @Test
+    public void keepsSessionAfterOtherFailure() throws Exception {
+        HardwareTokenSessionPool pool = new HardwareTokenSessionPool(token, TOKEN_ID, 1, metrics);
+
+        try {
+            pool.execute(session -> {
+                throw new PKCS11Exception(PKCS11Constants.CKR_KEY_HANDLE_INVALID);
+            });
+            fail("expected failure");
+        } catch (PKCS11Exception expected) {
+            // expected
+        }
+
+        assertSame(openedSessions.get(0), pool.execute(session -> session));
+        verify(openedSessions.get(0), never()).closeSession();
+    }
+
+    @Test
+    public void closesBrokenIdleSessionOnHealthCheck() throws Exception {
+        HardwareTokenSessionPool pool = new HardwareTokenSessionPool(token, TOKEN_ID, 2, metrics);
+        Session session = pool.execute(s -> s);
+        when(session.getSessionInfo()).thenThrow(new PKCS11Exception(PKCS11Constants.CKR_DEVICE_REMOVED));
+
+        pool.checkHealth();
+
+        verify(session).closeSession();
+        assertEquals(0, pool.getStats().getOpenSessions());
+    }
+
+    @Test
+    public void opensNewSessionsAfterRelogin() throws Exception {
+        HardwareTokenSessionPool pool = new HardwareTokenSessionPool(token, TOKEN_ID, 2, metrics);
+        Session beforeLogin = pool.execute(session -> session);
+
+        pool.invalidate();
+
+        verify(beforeLogin).closeSession();
+        Session afterLogin = pool.execute(session -> session);
+        assertNotSame(beforeLogin, afterLogin);
+        assertSame(afterLogin, pool.execute(session -> session));
+    }
+
+    @Test
+    public void closesSessionInUseWhenReturnedAfterRelogin() throws Exception {
+        HardwareTokenSessionPool pool = new HardwareTokenSessionPool(token, TOKEN_ID, 2, metrics);
+
+        Session inUse = pool.execute(session -> {
+            pool.invalidate();
+            return session;
+        });
+
+        verify(inUse).closeSession();
+        assertEquals(0, pool.getStats().getOpenSessions());
+        assertNotSame(inUse, pool.execute(session -> session));
+    }
+
+    @Test
+    public void exportsStatisticsUntilClosed() throws Exception {
+        HardwareTokenSessionPool pool = new HardwareTokenSessionPool(token, TOKEN_ID, 2, metrics);
+        pool.execute(session -> session);
+
+        String prefix = MetricRegistry.name(HardwareTokenSessionPool.METRIC_PREFIX, TOKEN_ID);
+        assertEquals(1L, metrics.getGauges().get(prefix + ".signOperations").getValue());
+        assertEquals(1, metrics.getGauges().get(prefix + ".idleSessions").getValue());
+
+        pool.close();
+
+        assertTrue(metrics.getGauges().isEmpty());
+        verify(openedSessions.get(0)).closeSession();
+    }
+
+    private static Void hold(CountDownLatch borrowed, CountDownLatch release) throws InterruptedException {
+        borrowed.countDown();
+        release.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        return null;
+    }
+}
@@ -45,7 +45,7 @@ import ee.ria.xroad.common.messagelog.MessageLogProperties;
 import ee.ria.xroad.common.messagelog.MessageRecord;
 import ee.ria.xroad.common.messagelog.archive.EncryptionConfig;
 import ee.ria.xroad.common.messagelog.archive.EncryptionConfigProvider;
-import ee.ria.xroad.common.messagelog.archive.GPGOutputStream;
+import ee.ria.xroad.common.messagelog.archive.OpenPGPOutputStream;
 import ee.ria.xroad.common.messagelog.archive.GroupingStrategy;
 import ee.ria.xroad.common.util.HttpHeaders;
 import ee.ria.xroad.common.util.MimeTypes;
@@ -70,9 +70,7 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.attribute.FileTime;
-import java.util.List;
 import java.util.concurrent.TimeUnit;
-import java.util.function.Function;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
@@ -218,22 +216,17 @@ public class AsicContainerClientRequestProcessor extends MessageProcessorBase {
     }
 
     private void ensureTimestamped(ClientId id, String queryId, Boolean response, boolean force) throws Exception {
-        final List<MessageRecord> records = LogRecordManager.getByQueryId(queryId, id, response, Function.identity());
-
-        if (records.isEmpty()) {
+        if (LogRecordManager.countByQueryId(queryId, id, response) == 0) {
             throw new CodedExceptionWithHttpStatus(NOT_FOUND_404, ErrorCodes.X_NOT_FOUND,
                     DOCUMENTS_NOT_FOUND_FAULT_MESSAGE);
         }
 
-        for (MessageRecord record : records) {
-            if (record.getTimestampRecord() == null) {
-                if (force) {
-                    if (MessageLog.timestamp(record) == null) {
-                        throw new Exception(TIMESTAMPING_FAILED_FAULT_MESSAGE);
-                    }
-                } else {
-                    throw new Exception(MISSING_TIMESTAMP_FAULT_MESSAGE);
-                }
+        for (Long recordId : LogRecordManager.getNotTimestampedIdsByQueryId(queryId, id, response)) {
+            if (!force) {
+                throw new Exception(MISSING_TIMESTAMP_FAULT_MESSAGE);
+            }
+            if (MessageLog.timestamp(recordId) == null) {
+                throw new Exception(TIMESTAMPING_FAILED_FAULT_MESSAGE);
             }
         }
     }
@@ -282,7 +275,7 @@ public class AsicContainerClientRequestProcessor extends MessageProcessorBase {
                 jResponse.setContentType(MimeTypes.BINARY);
                 jResponse.putHeader(HttpHeaders.CONTENT_DISPOSITION,
                         CONTENT_DISPOSITION_FILENAME_PREFIX + filename + "\"");
-                return new GPGOutputStream(encryptionConfig.getGpgHomeDir(), tempFile,
+                return OpenPGPOutputStream.open(encryptionConfig.getGpgHomeDir(), tempFile,
                         encryptionConfig.getEncryptionKeys());
             };
 
@@ -301,21 +294,17 @@ public class AsicContainerClientRequestProcessor extends MessageProcessorBase {
     private void writeContainers(ClientId clientId, String queryId, AsicContainerNameGenerator nameGen,
                                  Boolean response, CheckedSupplier<OutputStream> outputSupplier) throws Exception {
 
-        LogRecordManager.getByQueryId(queryId, clientId, response, records -> {
-            if (records.isEmpty()) {
-                throw new CodedExceptionWithHttpStatus(NOT_FOUND_404, ErrorCodes.X_NOT_FOUND,
-                        DOCUMENTS_NOT_FOUND_FAULT_MESSAGE);
-            }
-            final MessageRecordEncryption messageRecordEncryption = MessageRecordEncryption.getInstance();
-            try (OutputStream os = outputSupplier.get(); ZipOutputStream zos = new ZipOutputStream(os)) {
-                zos.setLevel(0);
-                for (MessageRecord record : records) {
-                    if (record.getTimestampRecord() == null) {
-                        // Only happens if there are matching messages that are sent after
-                        // the ensureTimestamped check was made. Ignore to emulate the previous behavior.
-                        continue;
-                    }
+        final MessageRecordEncryption messageRecordEncryption = MessageRecordEncryption.getInstance();
+        try (ResponseZip zip = new ResponseZip(outputSupplier)) {
+            final long found = LogRecordManager.forEachByQueryId(queryId, clientId, response, record -> {
+                if (record.getTimestampRecord() == null) {
+                    // Only happens if there are matching messages that are sent after
+                    // the ensureTimestamped check was made. Ignore to emulate the previous behavior.
+                    return;
+                }
+                try {
                     messageRecordEncryption.prepareDecryption(record);
+                    final ZipOutputStream zos = zip.get();
                     final ZipEntry entry = new ZipEntry(
                             nameGen.getArchiveFilename(queryId, record.isResponse(), record.getId()));
                     entry.setLastModifiedTime(FileTime.from(record.getTime(), TimeUnit.MILLISECONDS));
@@ -325,14 +314,48 @@ public class AsicContainerClientRequestProcessor extends MessageProcessorBase {
                         record.toAsicContainer().write(es);
                     }
                     zos.closeEntry();
+                } catch (CodedException ce) {
+                    throw ce;
+                } catch (Exception e) {
+                    throw new CodedException(X_INTERNAL_ERROR, e);
                 }
-            } catch (CodedException ce) {
-                throw ce;
-            } catch (Exception e) {
-                throw new CodedException(X_INTERNAL_ERROR, e);
+            });
+
+            if (found == 0) {
+                throw new CodedExceptionWithHttpStatus(NOT_FOUND_404, ErrorCodes.X_NOT_FOUND,
+                        DOCUMENTS_NOT_FOUND_FAULT_MESSAGE);
             }
-            return null;
-        });
+            // like before, records that are all not time-stamped yet give an empty archive instead of not found
+            zip.get();
+        }
+    }
+
+    /**
+     * Zip output that opens the response only when it is first used, so that "not found" can still be returned
+     * after the records have been queried.
+     */
+    private static final class ResponseZip implements Closeable {
+        private final CheckedSupplier<OutputStream> outputSupplier;
+        private ZipOutputStream zip;
+
+        ResponseZip(CheckedSupplier<OutputStream> outputSupplier) {
+            this.outputSupplier = outputSupplier;
+        }
+
+        ZipOutputStream get() throws Exception {
+            if (zip == null) {
+                zip = new ZipOutputStream(outputSupplier.get());
+                zip.setLevel(0);
+            }
+            return zip;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (zip != null) {
+                zip.close();
+            }
+        }
     }
 
     /**
@@ -404,7 +427,7 @@ public class AsicContainerClientRequestProcessor extends MessageProcessorBase {
         final Path tempFile = Files.createTempFile(
                 Paths.get(SystemProperties.getTempFilesPath()), "asic", null);
         try {
-            try (OutputStream os = new GPGOutputStream(encryptionConfig.getGpgHomeDir(), tempFile,
+            try (OutputStream os = OpenPGPOutputStream.open(encryptionConfig.getGpgHomeDir(), tempFile,
                     encryptionConfig.getEncryptionKeys())) {
                 asicContainer.write(os);
             }
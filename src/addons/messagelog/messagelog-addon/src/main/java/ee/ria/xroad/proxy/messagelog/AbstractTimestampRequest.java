@@ -30,7 +30,6 @@ import ee.ria.xroad.common.conf.globalconf.GlobalConfProvider;
 import ee.ria.xroad.common.messagelog.MessageLogProperties;
 import ee.ria.xroad.common.signature.TimestampVerifier;
 
-import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.bouncycastle.asn1.ASN1ObjectIdentifier;
@@ -39,7 +38,6 @@ import org.bouncycastle.tsp.TimeStampRequestGenerator;
 import org.bouncycastle.tsp.TimeStampResponse;
 import org.bouncycastle.tsp.TimeStampToken;
 
-import java.io.InputStream;
 import java.security.cert.X509Certificate;
 import java.util.List;
 
@@ -65,41 +63,19 @@ public abstract class AbstractTimestampRequest {
         return makeTsRequest(tsRequest, tspUrls);
     }
 
-    @Getter
-    public static class TsRequest {
-        private final InputStream inputStream;
-        private final String url;
-
-        TsRequest(final InputStream inputStream, final String url) {
-            this.inputStream = inputStream;
-            this.url = url;
-        }
-    }
-
     protected Timestamper.TimestampResult makeTsRequest(TimeStampRequest tsRequest,
                                                         List<String> tspUrls) throws Exception {
-        log.debug("tspUrls: {}", tspUrls);
-        for (String url : tspUrls) {
-            try {
-                log.debug("Sending time-stamp request to {}", url);
-
-                TsRequest req = new TsRequest(TimestamperUtil.makeTsRequest(tsRequest, url), url);
+        // the responses of hedged requests are verified concurrently, only the first valid one gets a result
+        TimestamperClient.Response<TimeStampResponse> response = TimestamperClient.getInstance().execute(tspUrls,
+                tsRequest.getEncoded(), in -> {
+                    TimeStampResponse tsResponse = getTimestampResponse(in);
+                    log.info("tsresponse {}", tsResponse);
 
-                TimeStampResponse tsResponse = getTimestampResponse(req.getInputStream());
-                log.info("tsresponse {}", tsResponse);
-
-                verify(tsRequest, tsResponse);
-
-                return result(tsResponse, url);
-
-            } catch (Exception ex) {
-                log.error("Failed to get time stamp from " + url, ex);
-            }
-        }
+                    verify(tsRequest, tsResponse);
+                    return tsResponse;
+                });
 
-        // All the URLs failed. Throw exception.
-        throw new RuntimeException(
-                "Failed to get time stamp from any time-stamping providers");
+        return result(response.value(), response.url());
     }
 
     private TimeStampRequest createTimestampRequest(byte[] data)
@@ -27,6 +27,7 @@ package ee.ria.xroad.proxy.messagelog;
 
 import ee.ria.xroad.common.conf.globalconf.GlobalConfProvider;
 import ee.ria.xroad.common.hashchain.HashChainBuilder;
+import ee.ria.xroad.common.hashchain.HashChains;
 import ee.ria.xroad.common.messagelog.MessageLogProperties;
 
 import org.bouncycastle.tsp.TimeStampResponse;
@@ -42,7 +43,7 @@ class BatchTimestampRequest extends AbstractTimestampRequest {
     private final String[] signatureHashes;
 
     private String hashChainResult = null;
-    private String[] hashChains = null;
+    private HashChains hashChains = null;
 
 
     BatchTimestampRequest(GlobalConfProvider globalConfProvider, Long[] logRecords, String[] signatureHashes) {
@@ -55,7 +56,7 @@ class BatchTimestampRequest extends AbstractTimestampRequest {
     byte[] getRequestData() throws Exception {
         HashChainBuilder hcBuilder = buildHashChain(signatureHashes);
         hashChainResult = hcBuilder.getHashChainResult(TS_HASH_CHAIN);
-        hashChains = hcBuilder.getHashChains(SIGNATURE);
+        hashChains = hcBuilder.getHashChainSequence(SIGNATURE);
         return hashChainResult.getBytes(UTF_8);
     }
 
@@ -0,0 +1,286 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.messagelog;
+
+import javax.xml.namespace.NamespaceContext;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes XML the way the DOM serializer behind SAAJ does. Elements without content are written as empty elements,
+ * a start element is held back with its namespaces and attributes until it turns out whether the element has any
+ * content. Besides the markup characters, text escapes '&gt;', carriage returns, C1 control characters and
+ * characters outside the basic multilingual plane as character references.
+ */
+final class EmptyElementCollapsingWriter implements XMLStreamWriter {
+
+    @FunctionalInterface
+    private interface Write {
+        void to(XMLStreamWriter writer) throws XMLStreamException;
+    }
+
+    private final XMLStreamWriter delegate;
+    private final List<Write> pendingStartTag = new ArrayList<>();
+    private Write pendingStart;
+    private Write pendingEmpty;
+
+    EmptyElementCollapsingWriter(XMLStreamWriter delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void writeStartElement(String localName) throws XMLStreamException {
+        hold(w -> w.writeStartElement(localName), w -> w.writeEmptyElement(localName));
+    }
+
+    @Override
+    public void writeStartElement(String namespaceURI, String localName) throws XMLStreamException {
+        hold(w -> w.writeStartElement(namespaceURI, localName), w -> w.writeEmptyElement(namespaceURI, localName));
+    }
+
+    @Override
+    public void writeStartElement(String prefix, String localName, String namespaceURI) throws XMLStreamException {
+        hold(w -> w.writeStartElement(prefix, localName, namespaceURI),
+                w -> w.writeEmptyElement(prefix, localName, namespaceURI));
+    }
+
+    @Override
+    public void writeEmptyElement(String namespaceURI, String localName) throws XMLStreamException {
+        write(w -> w.writeEmptyElement(namespaceURI, localName));
+    }
+
+    @Override
+    public void writeEmptyElement(String prefix, String localName, String namespaceURI) throws XMLStreamException {
+        write(w -> w.writeEmptyElement(prefix, localName, namespaceURI));
+    }
+
+    @Override
+    public void writeEmptyElement(String localName) throws XMLStreamException {
+        write(w -> w.writeEmptyElement(localName));
+    }
+
+    @Override
+    public void writeEndElement() throws XMLStreamException {
+        if (pendingStart != null) {
+            release(pendingEmpty);
+        } else {
+            delegate.writeEndElement();
+        }
+    }
+
+    @Override
+    public void writeEndDocument() throws XMLStreamException {
+        write(XMLStreamWriter::writeEndDocument);
+    }
+
+    @Override
+    public void close() throws XMLStreamException {
+        write(XMLStreamWriter::close);
+    }
+
+    @Override
+    public void flush() throws XMLStreamException {
+        write(XMLStreamWriter::flush);
+    }
+
+    @Override
+    public void writeAttribute(String localName, String value) throws XMLStreamException {
+        addToStartTag(w -> w.writeAttribute(localName, value));
+    }
+
+    @Override
+    public void writeAttribute(String prefix, String namespaceURI, String localName, String value)
+            throws XMLStreamException {
+        addToStartTag(w -> w.writeAttribute(prefix, namespaceURI, localName, value));
+    }
+
+    @Override
+    public void writeAttribute(String namespaceURI, String localName, String value) throws XMLStreamException {
+        addToStartTag(w -> w.writeAttribute(namespaceURI, localName, value));
+    }
+
+    @Override
+    public void writeNamespace(String prefix, String namespaceURI) throws XMLStreamException {
+        addToStartTag(w -> w.writeNamespace(prefix, namespaceURI));
+    }
+
+    @Override
+    public void writeDefaultNamespace(String namespaceURI) throws XMLStreamException {
+        addToStartTag(w -> w.writeDefaultNamespace(namespaceURI));
+    }
+
+    @Override
+    public void writeComment(String data) throws XMLStreamException {
+        write(w -> w.writeComment(data));
+    }
+
+    @Override
+    public void writeProcessingInstruction(String target) throws XMLStreamException {
+        write(w -> w.writeProcessingInstruction(target));
+    }
+
+    @Override
+    public void writeProcessingInstruction(String target, String data) throws XMLStreamException {
+        write(w -> w.writeProcessingInstruction(target, data));
+    }
+
+    @Override
+    public void writeCData(String data) throws XMLStreamException {
+        write(w -> w.writeCData(data));
+    }
+
+    @Override
+    public void writeDTD(String dtd) throws XMLStreamException {
+        write(w -> w.writeDTD(dtd));
+    }
+
+    @Override
+    public void writeEntityRef(String name) throws XMLStreamException {
+        write(w -> w.writeEntityRef(name));
+    }
+
+    @Override
+    public void writeStartDocument() throws XMLStreamException {
+        write(XMLStreamWriter::writeStartDocument);
+    }
+
+    @Override
+    public void writeStartDocument(String version) throws XMLStreamException {
+        write(w -> w.writeStartDocument(version));
+    }
+
+    @Override
+    public void writeStartDocument(String encoding, String version) throws XMLStreamException {
+        write(w -> w.writeStartDocument(encoding, version));
+    }
+
+    @Override
+    public void writeCharacters(String text) throws XMLStreamException {
+        writeCharacters(text.toCharArray(), 0, text.length());
+    }
+
+    @Override
+    public void writeCharacters(char[] text, int start, int len) throws XMLStreamException {
+        if (len == 0) {
+            return;
+        }
+        release(pendingStart);
+        final int end = start + len;
+        int from = start;
+        int i = start;
+        while (i < end) {
+            final int codePoint = Character.codePointAt(text, i, end);
+            final String reference = characterReference(codePoint);
+            if (reference != null) {
+                delegate.writeCharacters(text, from, i - from);
+                delegate.writeEntityRef(reference);
+                from = i + Character.charCount(codePoint);
+            }
+            i += Character.charCount(codePoint);
+        }
+        delegate.writeCharacters(text, from, end - from);
+    }
+
+    @Override
+    public String getPrefix(String uri) throws XMLStreamException {
+        release(pendingStart);
+        return delegate.getPrefix(uri);
+    }
+
+    @Override
+    public void setPrefix(String prefix, String uri) throws XMLStreamException {
+        addToStartTag(w -> w.setPrefix(prefix, uri));
+    }
+
+    @Override
+    public void setDefaultNamespace(String uri) throws XMLStreamException {
+        addToStartTag(w -> w.setDefaultNamespace(uri));
+    }
+
+    @Override
+    public void setNamespaceContext(NamespaceContext context) throws XMLStreamException {
+        write(w -> w.setNamespaceContext(context));
+    }
+
+    @Override
+    public NamespaceContext getNamespaceContext() {
+        return delegate.getNamespaceContext();
+    }
+
+    @Override
+    public Object getProperty(String name) {
+        return delegate.getProperty(name);
+    }
+
+    private static String characterReference(int codePoint) {
+        if (codePoint == '>') {
+            return "gt";
+        }
+        if (codePoint == '\r' || (codePoint >= 0x7F && codePoint <= 0x9F)
+                || Character.isSupplementaryCodePoint(codePoint)) {
+            return "#" + codePoint;
+        }
+        return null;
+    }
+
+    private void hold(Write start, Write empty) throws XMLStreamException {
+        release(pendingStart);
+        pendingStart = start;
+        pendingEmpty = empty;
+    }
+
+    private void addToStartTag(Write write) throws XMLStreamException {
+        if (pendingStart != null) {
+            pendingStartTag.add(write);
+        } else {
+            write.to(delegate);
+        }
+    }
+
+    private void write(Write write) throws XMLStreamException {
+        release(pendingStart);
+        write.to(delegate);
+    }
+
+    /**
+     * Writes the held back start tag either as a start element or as an empty element.
+     */
+    private void release(Write startTag) throws XMLStreamException {
+        if (pendingStart == null) {
+            return;
+        }
+        startTag.to(delegate);
+        for (Write write : pendingStartTag) {
+            write.to(delegate);
+        }
+        pendingStartTag.clear();
+        pendingStart = null;
+        pendingEmpty = null;
+    }
+}
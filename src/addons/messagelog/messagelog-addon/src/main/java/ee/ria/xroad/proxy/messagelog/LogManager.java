@@ -59,6 +59,10 @@ import static ee.ria.xroad.common.crypto.Digests.calculateDigest;
 import static ee.ria.xroad.common.messagelog.MessageLogProperties.getAcceptableTimestampFailurePeriodSeconds;
 import static ee.ria.xroad.common.messagelog.MessageLogProperties.getHashAlg;
 import static ee.ria.xroad.common.messagelog.MessageLogProperties.getTimestampRetryDelay;
+import static ee.ria.xroad.common.messagelog.MessageLogProperties.getWriteBatchMaxLatency;
+import static ee.ria.xroad.common.messagelog.MessageLogProperties.getWriteBatchSize;
+import static ee.ria.xroad.common.messagelog.MessageLogProperties.getWriteQueueSize;
+import static ee.ria.xroad.common.messagelog.MessageLogProperties.getWriteTimeout;
 import static ee.ria.xroad.common.messagelog.MessageLogProperties.shouldTimestampImmediately;
 import static ee.ria.xroad.common.util.EncoderUtils.encodeBase64;
 import static java.nio.charset.StandardCharsets.UTF_8;
@@ -86,6 +90,9 @@ public class LogManager extends AbstractLogManager {
     // package private for testing
     final TaskQueue taskQueue;
 
+    // null when message records are written by the logging thread
+    private final MessageRecordWriter messageRecordWriter;
+
     LogManager(JobManager jobManager, GlobalConfProvider globalConfProvider, ServerConfProvider serverConfProvider) {
         super(jobManager, globalConfProvider, serverConfProvider);
 
@@ -94,11 +101,15 @@ public class LogManager extends AbstractLogManager {
         this.timestamper = getTimestamperImpl();
         this.taskQueue = getTaskQueueImpl(timestamper);
         this.timestamperJob = createTimestamperJob(taskQueue);
+        this.messageRecordWriter = createMessageRecordWriter();
     }
 
     @Override
     public void destroy() {
         timestamperJob.shutdown();
+        if (messageRecordWriter != null) {
+            messageRecordWriter.shutdown();
+        }
         super.destroy();
     }
 
@@ -106,6 +117,18 @@ public class LogManager extends AbstractLogManager {
         return new TimestamperJob(globalConfProvider, getTimestamperJobInitialDelay(), taskQueueParam);
     }
 
+    private static MessageRecordWriter createMessageRecordWriter() {
+        int batchSize = getWriteBatchSize();
+        if (batchSize <= 1) {
+            return null;
+        }
+
+        log.info("Message log group commit enabled (batch size: {}, max latency: {} ms)", batchSize,
+                getWriteBatchMaxLatency());
+        return new MessageRecordWriter(Math.max(getWriteQueueSize(), batchSize), batchSize,
+                getWriteBatchMaxLatency(), getWriteTimeout());
+    }
+
     /**
      * Can be overwritten in test classes if we want to make sure that timestamping does not start prematurely.
      *
@@ -233,7 +256,8 @@ public class LogManager extends AbstractLogManager {
                 throw new CodedException(X_LOGGING_FAILED_X, "Message size exceeds maximum loggable size");
             }
             final BoundedInputStream body = new BoundedInputStream(message.getBody(), MAX_LOGGABLE_BODY_SIZE);
-            body.setPropagateClose(false);
+            // closed by LogRecordManager after the attachment has been saved
+            body.setPropagateClose(true);
             messageRecord.setAttachmentStream(body, Math.min(message.getBody().size(), MAX_LOGGABLE_BODY_SIZE));
         }
 
@@ -247,7 +271,12 @@ public class LogManager extends AbstractLogManager {
     }
 
     protected MessageRecord saveMessageRecord(MessageRecord messageRecord) throws Exception {
-        LogRecordManager.saveMessageRecord(messageRecord);
+        if (messageRecordWriter != null) {
+            LogRecordManager.prepareMessageRecord(messageRecord);
+            messageRecordWriter.write(messageRecord);
+        } else {
+            LogRecordManager.saveMessageRecord(messageRecord);
+        }
         return messageRecord;
     }
 
@@ -26,6 +26,7 @@
 package ee.ria.xroad.proxy.messagelog;
 
 import ee.ria.xroad.common.db.HibernateUtil;
+import ee.ria.xroad.common.hashchain.HashChains;
 import ee.ria.xroad.common.identifier.ClientId;
 import ee.ria.xroad.common.messagelog.AbstractLogRecord;
 import ee.ria.xroad.common.messagelog.LogRecord;
@@ -41,14 +42,18 @@ import lombok.extern.slf4j.Slf4j;
 import org.hibernate.Session;
 import org.hibernate.query.Query;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
+import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.stream.Stream;
 
 import static ee.ria.xroad.proxy.messagelog.MessageLogDatabaseCtx.doInTransaction;
 
@@ -59,6 +64,7 @@ import static ee.ria.xroad.proxy.messagelog.MessageLogDatabaseCtx.doInTransactio
 public final class LogRecordManager {
 
     private static final int DEFAULT_BATCH_SIZE = 50;
+    private static final int STREAM_FETCH_SIZE = 10;
     private static final String GET_BY_QUERY_ID_LOG_FORMAT = "getByQueryId({}, {}, {})";
 
     private static int configuredBatchSize = 0;
@@ -104,19 +110,82 @@ public final class LogRecordManager {
     }
 
     /**
-     * Returns a list of log records for a given message Query Id and sender Client Id.
+     * Passes the log records for a given message Query Id and sender Client Id to the consumer one at a time, in
+     * record id order. The records are fetched from the database in small batches and detached from the session
+     * after the consumer returns, so the memory use does not depend on the number of matching records.
      * @param queryId the message query id.
      * @param clientId the sender client id.
-     * @param isResponse whether the response record should be retrieved.
-     * @return the log record list or empty list, if no log records were not found in database.
+     * @param isResponse whether the response records (true), request records (false) or both (null) are retrieved.
+     * @param consumer the consumer of the records.
+     * @return the number of records passed to the consumer.
      * @throws Exception if an error occurs while communicating with database.
      */
-    public static <R> R getByQueryId(String queryId, ClientId clientId, Boolean isResponse,
-                                     Function<List<MessageRecord>, R> processor)
-            throws Exception {
+    public static long forEachByQueryId(String queryId, ClientId clientId, Boolean isResponse,
+                                        Consumer<MessageRecord> consumer) throws Exception {
         log.trace(GET_BY_QUERY_ID_LOG_FORMAT, queryId, clientId, isResponse);
 
-        return doInTransaction(session -> processor.apply(getMessageRecords(session, queryId, clientId, isResponse)));
+        return doInTransaction(session -> {
+            long count = 0;
+            try (Stream<MessageRecord> records = streamMessageRecords(session, queryId, clientId, isResponse)) {
+                final Iterator<MessageRecord> it = records.iterator();
+                while (it.hasNext()) {
+                    final MessageRecord record = it.next();
+                    consumer.accept(record);
+                    session.detach(record);
+                    // also drops the timestamp records loaded for the previous records
+                    if (++count % STREAM_FETCH_SIZE == 0) {
+                        session.clear();
+                    }
+                }
+            }
+            return count;
+        });
+    }
+
+    /**
+     * Returns the number of log records for a given message Query Id and sender Client Id.
+     * @param queryId the message query id.
+     * @param clientId the sender client id.
+     * @param isResponse whether the response records (true), request records (false) or both (null) are counted.
+     * @return the number of matching log records.
+     * @throws Exception if an error occurs while communicating with database.
+     */
+    public static long countByQueryId(String queryId, ClientId clientId, Boolean isResponse) throws Exception {
+        log.trace("countByQueryId({}, {}, {})", queryId, clientId, isResponse);
+
+        return doInTransaction(session -> {
+            final CriteriaBuilder cb = session.getCriteriaBuilder();
+            final CriteriaQuery<Long> query = cb.createQuery(Long.class);
+            final Root<MessageRecord> m = query.from(MessageRecord.class);
+            query.select(cb.count(m)).where(createRecordPredicate(cb, m, queryId, clientId, isResponse));
+            return session.createQuery(query).getSingleResult();
+        });
+    }
+
+    /**
+     * Returns the ids of the log records for a given message Query Id and sender Client Id that have not been
+     * time-stamped yet.
+     * @param queryId the message query id.
+     * @param clientId the sender client id.
+     * @param isResponse whether the response records (true), request records (false) or both (null) are checked.
+     * @return the record ids or empty list, if all matching records are time-stamped.
+     * @throws Exception if an error occurs while communicating with database.
+     */
+    public static List<Long> getNotTimestampedIdsByQueryId(String queryId, ClientId clientId, Boolean isResponse)
+            throws Exception {
+        log.trace("getNotTimestampedIdsByQueryId({}, {}, {})", queryId, clientId, isResponse);
+
+        return doInTransaction(session -> {
+            final CriteriaBuilder cb = session.getCriteriaBuilder();
+            final CriteriaQuery<Long> query = cb.createQuery(Long.class);
+            final Root<MessageRecord> m = query.from(MessageRecord.class);
+            query.select(m.get("id"))
+                    .where(cb.and(
+                            createRecordPredicate(cb, m, queryId, clientId, isResponse),
+                            cb.isNull(m.get("timestampRecord"))))
+                    .orderBy(cb.asc(m.get("id")));
+            return session.createQuery(query).getResultList();
+        });
     }
 
     /**
@@ -139,25 +208,90 @@ public final class LogRecordManager {
     static void saveMessageRecord(MessageRecord messageRecord) throws Exception {
 
         final MessageRecordEncryption encryption = MessageRecordEncryption.getInstance();
-        final boolean encrypt = encryption.encryptionEnabled();
 
-        doInTransaction(session -> {
-            //the blob must be created within hibernate session
-            messageRecord.setId(getNextRecordId(session));
+        try {
+            doInTransaction(session -> {
+                //the blob must be created within hibernate session
+                messageRecord.setId(getNextRecordId(session));
+                if (encryption.encryptionEnabled()) {
+                    encryption.prepareEncryption(messageRecord);
+                }
+                saveMessageRecord(session, messageRecord);
+                return null;
+            });
+        } finally {
+            closeAttachmentStream(messageRecord);
+        }
+    }
 
-            if (encrypt) {
-                encryption.prepareEncryption(messageRecord);
-            }
+    /**
+     * Prepares the message record for {@link #saveMessageRecords(List)} on the calling thread. When message log
+     * encryption is enabled, the record id is allocated here, because it is used as the IV of the encryption.
+     * @param messageRecord the message record to be saved.
+     * @throws Exception if an error occurs while communicating with database or setting up the encryption.
+     */
+    static void prepareMessageRecord(MessageRecord messageRecord) throws Exception {
+        final MessageRecordEncryption encryption = MessageRecordEncryption.getInstance();
 
-            InputStream is = messageRecord.getAttachmentStream();
-            if (is != null) {
-                messageRecord.setAttachment(
-                        session.getLobHelper().createBlob(is, messageRecord.getAttachmentStreamSize()));
-            }
+        if (encryption.encryptionEnabled()) {
+            messageRecord.setId(doInTransaction(LogRecordManager::getNextRecordId));
+            encryption.prepareEncryption(messageRecord);
+        }
+    }
 
-            save(session, messageRecord);
-            return null;
-        });
+    /**
+     * Saves the message records prepared with {@link #prepareMessageRecord(MessageRecord)} to database in a single
+     * transaction. The ids of the records that do not have one yet are allocated with one query and the inserts are
+     * sent in JDBC batches.
+     * @param messageRecords the message records to be saved.
+     * @throws Exception if an error occurs while communicating with database.
+     */
+    static void saveMessageRecords(List<MessageRecord> messageRecords) throws Exception {
+        log.trace("saveMessageRecords({})", messageRecords.size());
+
+        try {
+            doInTransaction(session -> {
+                session.setJdbcBatchSize(messageRecords.size());
+
+                final List<MessageRecord> withoutId = messageRecords.stream().filter(r -> r.getId() == null).toList();
+                final List<Long> ids = withoutId.isEmpty() ? List.of() : getNextRecordIds(session, withoutId.size());
+                for (int i = 0; i < withoutId.size(); i++) {
+                    withoutId.get(i).setId(ids.get(i));
+                }
+
+                for (MessageRecord messageRecord : messageRecords) {
+                    saveMessageRecord(session, messageRecord);
+                }
+                return null;
+            });
+        } finally {
+            messageRecords.forEach(LogRecordManager::closeAttachmentStream);
+        }
+    }
+
+    private static void saveMessageRecord(Session session, MessageRecord messageRecord) {
+        InputStream is = messageRecord.getAttachmentStream();
+        if (is != null) {
+            messageRecord.setAttachment(
+                    session.getLobHelper().createBlob(is, messageRecord.getAttachmentStreamSize()));
+        }
+
+        save(session, messageRecord);
+    }
+
+    /**
+     * Closes the attachment stream once the blob has been written, so that the cached message body it reads from
+     * can be released.
+     */
+    private static void closeAttachmentStream(MessageRecord messageRecord) {
+        InputStream is = messageRecord.getAttachmentStream();
+        if (is != null) {
+            try {
+                is.close();
+            } catch (IOException e) {
+                log.warn("Error closing attachment stream of message record {}", messageRecord.getId(), e);
+            }
+        }
     }
 
     /**
@@ -190,7 +324,7 @@ public final class LogRecordManager {
      * @throws Exception if an error occurs while communicating with database.
      */
     static void saveTimestampRecord(TimestampRecord timestampRecord, Long[]
-            timestampedLogRecords, String[] hashChains)
+            timestampedLogRecords, HashChains hashChains)
             throws Exception {
         doInTransaction(session -> {
             timestampRecord.setId(getNextRecordId(session));
@@ -214,21 +348,34 @@ public final class LogRecordManager {
         return ((Number) session.createNativeQuery("SELECT nextval('logrecord_sequence')").getSingleResult()).longValue();
     }
 
+    /**
+     * @return the given number of record ids in ascending order, the query itself does not guarantee any order
+     */
+    @SuppressWarnings("unchecked")
+    static List<Long> getNextRecordIds(Session session, int count) {
+        List<Number> ids = session.createNativeQuery(
+                        "SELECT nextval('logrecord_sequence') FROM generate_series(1, :count)")
+                .setParameter("count", count)
+                .getResultList();
+
+        return ids.stream().map(Number::longValue).sorted().toList();
+    }
+
     /**
      * Associates each log record with the time-stamp record.
      * @param session the Hibernate session.
      * @param messageRecords the message records.
      * @param timestampRecord the time-stamp record.
-     * @param hashChains the time-stamp hash chains.
+     * @param hashChains the time-stamp hash chains, rendered one at a time while adding to the batch.
      */
     private static void setMessageRecordsTimestamped(Session session, Long[] messageRecords,
-                                                     TimestampRecord timestampRecord, String[] hashChains) {
+                                                     TimestampRecord timestampRecord, HashChains hashChains) {
         if (log.isTraceEnabled()) {
             log.trace("setMessageRecordsTimestamped({}, {})", Arrays.toString(messageRecords),
                     timestampRecord.getId());
         }
 
-        if (hashChains != null && messageRecords.length != hashChains.length) {
+        if (hashChains != null && messageRecords.length != hashChains.size()) {
             throw new RuntimeException("Must have hash chain for each log record");
         }
 
@@ -242,14 +389,14 @@ public final class LogRecordManager {
 
     private static void setMessageRecordsTimestamped(Long[] messageRecords, TimestampRecord
             timestampRecord,
-                                                     String[] hashChains, Connection connection, int batchSize) throws SQLException {
+                                                     HashChains hashChains, Connection connection, int batchSize) throws SQLException {
         log.trace("setMessageRecordsTimestamped({})", messageRecords.length);
 
         int storedCount = 0;
 
         try (PreparedStatement stmt = connection.prepareStatement(UPDATE_LOG_RECORD_STATEMENT)) {
             for (int i = 0; i < messageRecords.length; i++) {
-                String hashChain = hashChains != null ? hashChains[i] : null;
+                String hashChain = hashChains != null ? hashChains.get(i) : null;
 
                 stmt.setLong(INDEX_1, timestampRecord.getId());
                 stmt.setString(INDEX_2, hashChain);
@@ -295,11 +442,19 @@ public final class LogRecordManager {
         return session.createQuery(query).setReadOnly(true).setMaxResults(1).uniqueResult();
     }
 
-    private static List<MessageRecord> getMessageRecords(Session session, String queryId, ClientId
-            clientId,
-                                                         Boolean isResponse) {
-        final CriteriaQuery<MessageRecord> query = createRecordCriteria(session, queryId, clientId, isResponse);
-        return session.createQuery(query).setReadOnly(true).getResultList();
+    private static Stream<MessageRecord> streamMessageRecords(Session session, String queryId, ClientId clientId,
+                                                              Boolean isResponse) {
+        final CriteriaBuilder cb = session.getCriteriaBuilder();
+        final CriteriaQuery<MessageRecord> query = cb.createQuery(MessageRecord.class);
+        final Root<MessageRecord> m = query.from(MessageRecord.class);
+        query.select(m)
+                .where(createRecordPredicate(cb, m, queryId, clientId, isResponse))
+                .orderBy(cb.asc(m.get("id")));
+        return session.createQuery(query)
+                .setReadOnly(true)
+                // by default, PostgreSQL fetches the whole result set
+                .setFetchSize(STREAM_FETCH_SIZE)
+                .getResultStream();
     }
 
     private static CriteriaQuery<MessageRecord> createRecordCriteria(Session session, String queryId, ClientId clientId,
@@ -309,10 +464,17 @@ public final class LogRecordManager {
         final CriteriaQuery<MessageRecord> query = cb.createQuery(MessageRecord.class);
         final Root<MessageRecord> m = query.from(MessageRecord.class);
 
+        return query.select(m).where(createRecordPredicate(cb, m, queryId, clientId, isResponse));
+    }
+
+    /**
+     * The predicate matches the ix_logrecord_queryid index (see messagelog/12-queryid-index.xml).
+     */
+    private static Predicate createRecordPredicate(CriteriaBuilder cb, Root<MessageRecord> m, String queryId,
+                                                   ClientId clientId, Boolean isResponse) {
         Predicate pred = cb.and(
                 cb.equal(m.get("queryId"), queryId),
                 cb.equal(m.get("memberClass"), clientId.getMemberClass()),
-                cb.equal(m.get("memberCode"), clientId.getMemberCode()),
                 cb.equal(m.get("memberCode"), clientId.getMemberCode()));
 
         final String subsystemCode = clientId.getSubsystemCode();
@@ -326,7 +488,7 @@ public final class LogRecordManager {
             pred = cb.and(pred, cb.equal(m.get("response"), isResponse));
         }
 
-        return query.select(m).where(pred);
+        return pred;
     }
 
     private static int getConfiguredBatchSize(Session session) {
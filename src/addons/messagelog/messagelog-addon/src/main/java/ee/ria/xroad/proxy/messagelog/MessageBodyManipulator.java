@@ -26,10 +26,7 @@
 package ee.ria.xroad.proxy.messagelog;
 
 import ee.ria.xroad.common.identifier.ClientId;
-import ee.ria.xroad.common.message.SoapBuilder;
-import ee.ria.xroad.common.message.SoapHeader;
 import ee.ria.xroad.common.message.SoapMessageImpl;
-import ee.ria.xroad.common.message.SoapUtils;
 import ee.ria.xroad.common.messagelog.LogMessage;
 import ee.ria.xroad.common.messagelog.MessageLogProperties;
 import ee.ria.xroad.common.messagelog.RestLogMessage;
@@ -48,6 +45,8 @@ import java.util.Objects;
  */
 public class MessageBodyManipulator {
 
+    private static final String RESPONSE_SUFFIX = "Response";
+
     /**
      * Extract configuration reading for better testability
      */
@@ -111,19 +110,15 @@ public class MessageBodyManipulator {
     }
 
     private String buildBodyRemovedMessage(SoapLogMessage message) throws Exception {
-        // build a new empty message with SoapBuilder and
-        // set old SoapHeader to it
-        SoapHeader oldHeader = message.getMessage().getHeader();
-        SoapBuilder builder = new SoapBuilder();
-        builder.setHeader(oldHeader);
-        builder.setRpcEncoded(false);
-        SoapMessageImpl blankedMessage = builder.build();
+        // write the header and the empty service element the same way SoapBuilder
+        // would; responses need the response element name, otherwise asicverifier
+        // gets confused
+        SoapMessageImpl soapMessage = message.getMessage();
+        String bodyElementName = soapMessage.getHeader().getService().getServiceCode();
         if (message.isResponse()) {
-            // need to convert this to response message (changes body element name)
-            // otherwise asicverifier gets confused
-            blankedMessage = SoapUtils.toResponse(blankedMessage);
+            bodyElementName += RESPONSE_SUFFIX;
         }
-        return blankedMessage.getXml();
+        return SoapBodyRedactor.redact(soapMessage.getHeader(), bodyElementName);
     }
 
     /**
@@ -0,0 +1,197 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.messagelog;
+
+import ee.ria.xroad.common.messagelog.MessageRecord;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Group-commit writer for message records. Records submitted by the request threads are queued and a single
+ * writer thread saves them in batches, one database transaction per batch. A batch is written as soon as it is full
+ * or the oldest record in it has waited for the maximum batch latency. Submitting threads wait until the
+ * transaction containing their record has been committed, at most for the write timeout. If a batch fails, every
+ * record in it fails.
+ */
+@Slf4j
+class MessageRecordWriter {
+
+    /**
+     * Saves a batch of message records in a single transaction.
+     */
+    @FunctionalInterface
+    interface BatchSaver {
+        void save(List<MessageRecord> records) throws Exception;
+    }
+
+    private record PendingRecord(MessageRecord record, CompletableFuture<Void> committed) {
+    }
+
+    private final BlockingQueue<PendingRecord> queue;
+    private final BatchSaver saver;
+    private final int maxBatchSize;
+    private final long maxBatchLatencyNanos;
+    private final long writeTimeoutMillis;
+    private final Thread writerThread;
+
+    private volatile boolean running = true;
+
+    MessageRecordWriter(int queueSize, int maxBatchSize, long maxBatchLatencyMillis, long writeTimeoutMillis) {
+        this(LogRecordManager::saveMessageRecords, queueSize, maxBatchSize, maxBatchLatencyMillis,
+                writeTimeoutMillis);
+    }
+
+    /**
+     * @param writeTimeoutMillis how long a submitting thread waits for its record to be committed, zero means
+     * no limit
+     */
+    MessageRecordWriter(BatchSaver saver, int queueSize, int maxBatchSize, long maxBatchLatencyMillis,
+                        long writeTimeoutMillis) {
+        this.saver = saver;
+        this.queue = new ArrayBlockingQueue<>(queueSize);
+        this.maxBatchSize = maxBatchSize;
+        this.maxBatchLatencyNanos = TimeUnit.MILLISECONDS.toNanos(maxBatchLatencyMillis);
+        this.writeTimeoutMillis = writeTimeoutMillis;
+
+        writerThread = new Thread(this::run, "messagelog-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * Queues the record and waits until it has been committed to the database. Blocks while the queue is full.
+     * @param messageRecord the message record to be saved.
+     * @throws TimeoutException if the record was not committed within the write timeout.
+     * @throws Exception if saving the batch containing the record failed.
+     */
+    void write(MessageRecord messageRecord) throws Exception {
+        if (!running) {
+            throw new IllegalStateException("Message record writer is stopped");
+        }
+
+        PendingRecord pending = new PendingRecord(messageRecord, new CompletableFuture<>());
+        queue.put(pending);
+
+        try {
+            if (writeTimeoutMillis > 0) {
+                pending.committed().get(writeTimeoutMillis, TimeUnit.MILLISECONDS);
+            } else {
+                pending.committed().get();
+            }
+        } catch (TimeoutException e) {
+            throw new TimeoutException("Message record was not written within " + writeTimeoutMillis + " ms");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Stops the writer thread after the queued records have been written.
+     */
+    void shutdown() {
+        running = false;
+        writerThread.interrupt();
+
+        try {
+            writerThread.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        failPending(new IllegalStateException("Message record writer is stopped"));
+    }
+
+    private void run() {
+        List<PendingRecord> batch = new ArrayList<>(maxBatchSize);
+
+        while (running || !queue.isEmpty()) {
+            try {
+                collectBatch(batch);
+            } catch (InterruptedException e) {
+                // shutting down, write out what has been collected and drain the rest
+            }
+
+            if (!batch.isEmpty()) {
+                saveBatch(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    private void collectBatch(List<PendingRecord> batch) throws InterruptedException {
+        PendingRecord first = queue.take();
+        batch.add(first);
+
+        long deadline = System.nanoTime() + maxBatchLatencyNanos;
+
+        while (batch.size() < maxBatchSize) {
+            if (queue.drainTo(batch, maxBatchSize - batch.size()) > 0) {
+                continue;
+            }
+
+            long remaining = deadline - System.nanoTime();
+            PendingRecord next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : null;
+            if (next == null) {
+                break;
+            }
+            batch.add(next);
+        }
+    }
+
+    private void saveBatch(List<PendingRecord> batch) {
+        log.trace("saveBatch({})", batch.size());
+
+        List<MessageRecord> records = new ArrayList<>(batch.size());
+        batch.forEach(p -> records.add(p.record()));
+
+        try {
+            saver.save(records);
+            batch.forEach(p -> p.committed().complete(null));
+        } catch (Exception e) {
+            log.error("Failed to save {} message records", records.size(), e);
+            batch.forEach(p -> p.committed().completeExceptionally(e));
+        }
+    }
+
+    private void failPending(Exception cause) {
+        PendingRecord pending;
+        while ((pending = queue.poll()) != null) {
+            pending.committed().completeExceptionally(cause);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.messagelog;
+
+import ee.ria.xroad.common.message.JaxbUtils;
+import ee.ria.xroad.common.message.SoapHeader;
+import ee.ria.xroad.common.message.SoapNamespacePrefixMapper;
+
+import jakarta.xml.bind.Marshaller;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamWriter;
+
+import java.io.StringWriter;
+
+import static ee.ria.xroad.common.message.SoapBuilder.NS_IDENTIFIERS;
+import static ee.ria.xroad.common.message.SoapBuilder.PREFIX_IDENTIFIERS;
+import static ee.ria.xroad.common.message.SoapHeader.NS_XROAD;
+import static ee.ria.xroad.common.message.SoapHeader.PREFIX_XROAD;
+import static ee.ria.xroad.common.message.SoapUtils.NS_SOAPENV;
+import static ee.ria.xroad.common.message.SoapUtils.PREFIX_SOAPENV;
+
+/**
+ * Writes the body removed version of a SOAP message without building it through SAAJ. Only the header fields
+ * modelled by {@link SoapHeader} are written, the body contains an empty element in the X-Road namespace named
+ * after the service. The result is the same as the message SoapBuilder builds from the header.
+ */
+final class SoapBodyRedactor {
+
+    private static final String XML_DECLARATION = "<?xml version=\"1.0\" encoding=\"utf-8\" ?>";
+    private static final String ENVELOPE = "Envelope";
+    private static final String BODY = "Body";
+
+    private static final XMLOutputFactory OUTPUT_FACTORY = XMLOutputFactory.newFactory();
+
+    private SoapBodyRedactor() {
+    }
+
+    /**
+     * @param header the parsed header of the SOAP message
+     * @param bodyElementName local name of the empty element put in the body
+     * @return the message with the body content removed
+     * @throws Exception if the header cannot be marshalled
+     */
+    static String redact(SoapHeader header, String bodyElementName) throws Exception {
+        final StringWriter result = new StringWriter();
+        result.write(XML_DECLARATION);
+
+        final XMLStreamWriter out = new EmptyElementCollapsingWriter(OUTPUT_FACTORY.createXMLStreamWriter(result));
+        try {
+            out.setPrefix(PREFIX_SOAPENV, NS_SOAPENV);
+            out.setPrefix(PREFIX_IDENTIFIERS, NS_IDENTIFIERS);
+            out.setPrefix(PREFIX_XROAD, NS_XROAD);
+            out.writeStartElement(PREFIX_SOAPENV, ENVELOPE, NS_SOAPENV);
+            out.writeNamespace(PREFIX_SOAPENV, NS_SOAPENV);
+            out.writeNamespace(PREFIX_IDENTIFIERS, NS_IDENTIFIERS);
+            out.writeNamespace(PREFIX_XROAD, NS_XROAD);
+
+            final Marshaller marshaller = JaxbUtils.createMarshaller(header.getClass(), new SoapNamespacePrefixMapper());
+            marshaller.marshal(header, out);
+
+            out.writeStartElement(PREFIX_SOAPENV, BODY, NS_SOAPENV);
+            out.writeEmptyElement(PREFIX_XROAD, bodyElementName, NS_XROAD);
+            out.writeEndElement();
+            out.writeEndElement();
+            out.flush();
+        } finally {
+            out.close();
+        }
+        return result.toString();
+    }
+}
@@ -28,6 +28,7 @@ package ee.ria.xroad.proxy.messagelog;
 import ee.ria.xroad.common.CodedException;
 import ee.ria.xroad.common.conf.globalconf.GlobalConfProvider;
 import ee.ria.xroad.common.conf.serverconf.ServerConfProvider;
+import ee.ria.xroad.common.hashchain.HashChains;
 import ee.ria.xroad.common.messagelog.MessageRecord;
 
 import lombok.Data;
@@ -70,7 +71,7 @@ public class Timestamper {
         private final Long[] messageRecords;
         private final byte[] timestampDer;
         private final String hashChainResult;
-        private final String[] hashChains;
+        private final HashChains hashChains;
         private final String url;
     }
 
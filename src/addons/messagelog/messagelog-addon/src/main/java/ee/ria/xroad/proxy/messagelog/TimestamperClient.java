@@ -0,0 +1,340 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.messagelog;
+
+import ee.ria.xroad.common.messagelog.MessageLogProperties;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.hc.client5.http.classic.methods.HttpPost;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.HttpStatus;
+import org.apache.hc.core5.http.io.entity.ByteArrayEntity;
+import org.apache.hc.core5.http.io.entity.EntityUtils;
+import org.apache.hc.core5.util.Timeout;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HTTP client of the time-stamping providers.
+ * <p>
+ * Keeps persistent pooled connections to every provider. A request is first sent to the healthiest provider. If no
+ * valid response has arrived when the configured latency percentile of that provider has elapsed, the request is
+ * also sent (hedged) to the next provider, and so on; a failed attempt starts the next provider immediately. The
+ * first valid response is used and the outstanding attempts are cancelled.
+ * <p>
+ * Providers are ordered by an exponentially weighted moving average of their response latency. A provider with
+ * {@link #FAILURE_THRESHOLD} consecutive failures is tried only after the others until it succeeds again.
+ */
+@Slf4j
+final class TimestamperClient implements Closeable {
+
+    static final int FAILURE_THRESHOLD = 3;
+
+    // Weight of the latest sample in the latency average
+    private static final double EWMA_WEIGHT = 0.3;
+
+    // Number of latest latencies the percentile is calculated from, and the number needed before it is used
+    private static final int LATENCY_SAMPLES = 64;
+    private static final int MIN_LATENCY_SAMPLES = 8;
+
+    private static final long MIN_HEDGE_DELAY_MILLIS = 50;
+
+    private static final int MAX_CONNECTIONS_PER_ROUTE = 10;
+    private static final int MAX_CONNECTIONS_TOTAL = 50;
+
+    private final CloseableHttpClient httpClient;
+    private final ExecutorService executor;
+    private final int hedgePercentile;
+    private final long hedgeDelayMillis;
+    private final Map<String, ProviderHealth> providers = new ConcurrentHashMap<>();
+
+    /**
+     * Handles the response of a time-stamping provider, throws an exception if the response is not valid.
+     * @param <T> the type of the result
+     */
+    @FunctionalInterface
+    interface ResponseHandler<T> {
+        T handle(InputStream response) throws Exception;
+    }
+
+    /**
+     * The first valid response and the provider it came from.
+     */
+    record Response<T>(String url, T value) {
+    }
+
+    private record Attempt<T>(String url, HttpPost post, long startNanos, Future<Response<T>> future) {
+    }
+
+    private static final class InstanceHolder {
+        private static final TimestamperClient INSTANCE = new TimestamperClient(
+                MessageLogProperties.getTimestamperClientConnectTimeout(),
+                MessageLogProperties.getTimestamperClientReadTimeout(),
+                MessageLogProperties.getTimestamperClientHedgePercentile(),
+                MessageLogProperties.getTimestamperClientHedgeDelay());
+    }
+
+    static TimestamperClient getInstance() {
+        return InstanceHolder.INSTANCE;
+    }
+
+    TimestamperClient(int connectTimeout, int readTimeout, int hedgePercentile, long hedgeDelayMillis) {
+        this.hedgePercentile = hedgePercentile;
+        this.hedgeDelayMillis = hedgeDelayMillis;
+        this.httpClient = HttpClients.custom()
+                .setConnectionManager(PoolingHttpClientConnectionManagerBuilder.create()
+                        .setDefaultConnectionConfig(ConnectionConfig.custom()
+                                .setConnectTimeout(Timeout.ofMilliseconds(connectTimeout))
+                                .setSocketTimeout(Timeout.ofMilliseconds(readTimeout))
+                                .build())
+                        .setMaxConnPerRoute(MAX_CONNECTIONS_PER_ROUTE)
+                        .setMaxConnTotal(MAX_CONNECTIONS_TOTAL)
+                        .build())
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setResponseTimeout(Timeout.ofMilliseconds(readTimeout))
+                        .build())
+                .disableAutomaticRetries()
+                .disableCookieManagement()
+                .build();
+        this.executor = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+                .setNameFormat("timestamper-client-%d")
+                .setDaemon(true)
+                .build());
+    }
+
+    /**
+     * Sends the time-stamp request to the providers and returns the first response accepted by the handler.
+     * @param tspUrls the provider URLs
+     * @param request the DER encoded time-stamp request
+     * @param handler the handler that parses and verifies a response, called concurrently for hedged attempts
+     * @return the first valid response
+     * @throws Exception if no provider returned a valid response
+     */
+    <T> Response<T> execute(List<String> tspUrls, byte[] request, ResponseHandler<T> handler) throws Exception {
+        final List<String> urls = order(tspUrls);
+        log.debug("tspUrls: {}", urls);
+
+        final CompletionService<Response<T>> completion = new ExecutorCompletionService<>(executor);
+        final List<Attempt<T>> attempts = new ArrayList<>();
+        try {
+            attempts.add(start(completion, urls.get(0), request, handler));
+            int pending = 1;
+            while (pending > 0) {
+                final Future<Response<T>> done;
+                if (attempts.size() < urls.size() && hedgePercentile > 0) {
+                    final String last = attempts.get(attempts.size() - 1).url();
+                    done = completion.poll(hedgeDelay(last), TimeUnit.MILLISECONDS);
+                    if (done == null) {
+                        final String next = urls.get(attempts.size());
+                        log.debug("No time-stamp response from {}, sending the request also to {}", last, next);
+                        attempts.add(start(completion, next, request, handler));
+                        pending++;
+                        continue;
+                    }
+                } else {
+                    done = completion.take();
+                }
+                pending--;
+                try {
+                    return done.get();
+                } catch (ExecutionException e) {
+                    // the failure has been logged by the attempt
+                    if (attempts.size() < urls.size()) {
+                        attempts.add(start(completion, urls.get(attempts.size()), request, handler));
+                        pending++;
+                    }
+                }
+            }
+        } finally {
+            cancel(attempts);
+        }
+
+        // All the URLs failed. Throw exception.
+        throw new RuntimeException("Failed to get time stamp from any time-stamping providers");
+    }
+
+    /**
+     * Orders the provider URLs so that the ones with fewer than {@link #FAILURE_THRESHOLD} consecutive failures
+     * come first, by ascending average latency. Providers without latency measurements are considered the
+     * fastest, so that they get measured. The order of providers with equal scores is preserved.
+     */
+    List<String> order(List<String> tspUrls) {
+        final String[] ordered = tspUrls.toArray(new String[0]);
+        Arrays.sort(ordered, Comparator
+                .comparing((String url) -> health(url).isFailing())
+                .thenComparingDouble(url -> health(url).getScore()));
+        return List.of(ordered);
+    }
+
+    /**
+     * @return the time to wait for a response from the provider before hedging the request to the next one
+     */
+    long hedgeDelay(String url) {
+        final long percentile = health(url).getLatencyPercentile(hedgePercentile);
+        return Math.max(MIN_HEDGE_DELAY_MILLIS, percentile < 0 ? hedgeDelayMillis : percentile);
+    }
+
+    ProviderHealth health(String url) {
+        return providers.computeIfAbsent(url, u -> new ProviderHealth());
+    }
+
+    @Override
+    public void close() throws IOException {
+        executor.shutdownNow();
+        httpClient.close();
+    }
+
+    private <T> Attempt<T> start(CompletionService<Response<T>> completion, String url, byte[] request,
+                                 ResponseHandler<T> handler) {
+        log.debug("Sending time-stamp request to {}", url);
+
+        final HttpPost post = new HttpPost(url);
+        post.setEntity(new ByteArrayEntity(request, ContentType.create("application/timestamp-query")));
+        final long start = System.nanoTime();
+        final Future<Response<T>> future = completion.submit(() -> {
+            try {
+                final T value = handler.handle(new ByteArrayInputStream(send(post)));
+                health(url).recordSuccess(System.nanoTime() - start);
+                return new Response<>(url, value);
+            } catch (Exception e) {
+                if (!post.isCancelled()) {
+                    health(url).recordFailure();
+                    log.error("Failed to get time stamp from " + url, e);
+                }
+                throw e;
+            }
+        });
+        return new Attempt<>(url, post, start, future);
+    }
+
+    private byte[] send(HttpPost post) throws IOException {
+        return httpClient.execute(post, response -> {
+            if (response.getCode() != HttpStatus.SC_OK) {
+                throw new IOException("Received HTTP error: " + response.getCode() + " - "
+                        + response.getReasonPhrase());
+            } else if (response.getEntity() == null) {
+                throw new IOException("Could not get response from TSP");
+            }
+            return EntityUtils.toByteArray(response.getEntity());
+        });
+    }
+
+    private <T> void cancel(List<Attempt<T>> attempts) {
+        for (Attempt<T> attempt : attempts) {
+            if (!attempt.future().isDone()) {
+                attempt.post().cancel();
+                attempt.future().cancel(true);
+                // the provider was slower than the winner, so that it is not preferred just for being unmeasured
+                health(attempt.url()).recordAbandoned(System.nanoTime() - attempt.startNanos());
+            }
+        }
+    }
+
+    /**
+     * Response latency and failures of a single time-stamping provider.
+     */
+    static final class ProviderHealth {
+        private final long[] latencies = new long[LATENCY_SAMPLES];
+        private int latencyCount;
+        private int nextLatency;
+        private double latencyMillis = Double.NaN;
+        private int consecutiveFailures;
+
+        synchronized boolean isFailing() {
+            return consecutiveFailures >= FAILURE_THRESHOLD;
+        }
+
+        /**
+         * @return the average latency in milliseconds, unknown latency is counted as zero
+         */
+        synchronized double getScore() {
+            return Double.isNaN(latencyMillis) ? 0 : latencyMillis;
+        }
+
+        /**
+         * @return the given percentile of the latest latencies in milliseconds or -1, if there are too few of them
+         */
+        synchronized long getLatencyPercentile(int percentile) {
+            final int count = latencyCount;
+            if (count < MIN_LATENCY_SAMPLES) {
+                return -1;
+            }
+            final long[] sorted = Arrays.copyOf(latencies, count);
+            Arrays.sort(sorted);
+            final int index = (int) Math.ceil(percentile / 100d * count) - 1;
+            return sorted[Math.max(0, Math.min(count - 1, index))];
+        }
+
+        synchronized void recordSuccess(long nanos) {
+            final long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+            latencies[nextLatency] = millis;
+            nextLatency = (nextLatency + 1) % LATENCY_SAMPLES;
+            latencyCount = Math.min(latencyCount + 1, LATENCY_SAMPLES);
+            average(millis);
+            consecutiveFailures = 0;
+        }
+
+        /**
+         * Records the elapsed time of an attempt that was cancelled, a lower bound of the actual latency.
+         */
+        synchronized void recordAbandoned(long nanos) {
+            final long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+            if (Double.isNaN(latencyMillis) || millis > latencyMillis) {
+                average(millis);
+            }
+        }
+
+        synchronized void recordFailure() {
+            consecutiveFailures++;
+        }
+
+        private void average(long millis) {
+            latencyMillis = Double.isNaN(latencyMillis) ? millis : EWMA_WEIGHT * millis + (1 - EWMA_WEIGHT) * latencyMillis;
+        }
+    }
+}
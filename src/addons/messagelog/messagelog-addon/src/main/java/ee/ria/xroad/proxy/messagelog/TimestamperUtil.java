@@ -25,8 +25,6 @@
  */
 package ee.ria.xroad.proxy.messagelog;
 
-import ee.ria.xroad.common.messagelog.MessageLogProperties;
-
 import lombok.extern.slf4j.Slf4j;
 import org.bouncycastle.asn1.ASN1InputStream;
 import org.bouncycastle.asn1.cmp.PKIFreeText;
@@ -39,12 +37,8 @@ import org.bouncycastle.tsp.TimeStampRequest;
 import org.bouncycastle.tsp.TimeStampResponse;
 import org.bouncycastle.tsp.TimeStampToken;
 
-import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 import java.math.BigInteger;
-import java.net.HttpURLConnection;
-import java.net.URL;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.List;
@@ -68,36 +62,6 @@ final class TimestamperUtil {
                 new JcaCertStore(collection), cms.getAttributeCertificates(), cms.getCRLs()));
     }
 
-    static InputStream makeTsRequest(TimeStampRequest req, String tspUrl) throws Exception {
-        byte[] request = req.getEncoded();
-
-        URL url = new URL(tspUrl);
-        HttpURLConnection con = (HttpURLConnection) url.openConnection();
-
-        con.setDoOutput(true);
-        con.setDoInput(true);
-        con.setConnectTimeout(MessageLogProperties.getTimestamperClientConnectTimeout());
-        con.setReadTimeout(MessageLogProperties.getTimestamperClientReadTimeout());
-        con.setRequestMethod("POST");
-        con.setRequestProperty("Content-type", "application/timestamp-query");
-        con.setRequestProperty("Content-length", String.valueOf(request.length));
-
-        OutputStream out = con.getOutputStream();
-        out.write(request);
-        out.flush();
-
-        if (con.getResponseCode() != HttpURLConnection.HTTP_OK) {
-            con.disconnect();
-            throw new RuntimeException("Received HTTP error: " + con.getResponseCode() + " - "
-                    + con.getResponseMessage());
-        } else if (con.getInputStream() == null) {
-            con.disconnect();
-            throw new IOException("Could not get response from TSP");
-        }
-
-        return con.getInputStream();
-    }
-
     static TimeStampResponse getTimestampResponse(InputStream in) throws Exception {
         TimeStampResp response = TimeStampResp.getInstance(new ASN1InputStream(in).readObject());
 
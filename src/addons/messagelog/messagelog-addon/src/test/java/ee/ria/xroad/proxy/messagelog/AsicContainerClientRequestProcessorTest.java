@@ -26,6 +26,7 @@
  */
 package ee.ria.xroad.proxy.messagelog;
 
+import ee.ria.xroad.common.CodedExceptionWithHttpStatus;
 import ee.ria.xroad.common.SystemProperties;
 import ee.ria.xroad.common.message.RestRequest;
 import ee.ria.xroad.common.messagelog.AbstractLogManager;
@@ -39,6 +40,7 @@ import org.apache.commons.lang3.SystemUtils;
 import org.bouncycastle.bcpg.BCPGInputStream;
 import org.bouncycastle.bcpg.PacketTags;
 import org.bouncycastle.bcpg.PublicKeyEncSessionPacket;
+import org.eclipse.jetty.http.HttpStatus;
 import org.eclipse.jetty.http.HttpURI;
 import org.junit.After;
 import org.junit.Assume;
@@ -68,6 +70,7 @@ import static ee.ria.xroad.proxy.messagelog.TestUtil.initForTest;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertThrows;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
@@ -219,6 +222,70 @@ public class AsicContainerClientRequestProcessorTest extends AbstractMessageLogT
         }
     }
 
+    @Test
+    public void downloadAsicContainersForRepeatedQueryId() throws Exception {
+        final String queryId = "q-" + UUID.randomUUID();
+        RestRequest message = null;
+        for (int i = 0; i < 3; i++) {
+            message = createRestRequest(queryId, UUID.randomUUID().toString());
+            log(message, createSignature(), ("\"test message body " + i + "\"").getBytes(StandardCharsets.UTF_8));
+        }
+        startTimestamping();
+        waitForTimestampSuccessful();
+
+        final var request = mockAsicRequest(message, queryId);
+        final var response = mock(ResponseWrapper.class);
+        final MockOutputStream mockOutputStream = new MockOutputStream();
+        when(response.getOutputStream()).thenReturn(mockOutputStream);
+
+        new AsicContainerClientRequestProcessor(globalConfProvider, keyConfProvider, serverConfProvider, certChainFactory,
+                "/asic", request, response).process();
+
+        if (encrypted) {
+            assertPGPStream(mockOutputStream);
+        } else {
+            try (ZipInputStream zip = new ZipInputStream(
+                    new ByteArrayInputStream(mockOutputStream.bos.toByteArray()))) {
+                int count = 0;
+                while (zip.getNextEntry() != null) {
+                    count++;
+                }
+                assertEquals(3, count);
+            }
+        }
+    }
+
+    @Test
+    public void downloadAsicContainerNotFound() throws Exception {
+        final String queryId = "q-" + UUID.randomUUID();
+        final RestRequest message = createRestRequest(queryId, UUID.randomUUID().toString());
+
+        final var request = mockAsicRequest(message, queryId);
+        final var response = mock(ResponseWrapper.class);
+        final MockOutputStream mockOutputStream = new MockOutputStream();
+        when(response.getOutputStream()).thenReturn(mockOutputStream);
+
+        final AsicContainerClientRequestProcessor processor =
+                new AsicContainerClientRequestProcessor(globalConfProvider, keyConfProvider, serverConfProvider, certChainFactory,
+                        "/asic", request, response);
+
+        final CodedExceptionWithHttpStatus e = assertThrows(CodedExceptionWithHttpStatus.class, processor::process);
+        assertEquals(HttpStatus.NOT_FOUND_404, e.getStatus());
+        assertEquals(0, mockOutputStream.bos.size());
+    }
+
+    private RequestWrapper mockAsicRequest(RestRequest message, String queryId) {
+        final var request = mock(RequestWrapper.class);
+        final var httpURI = mock(HttpURI.class);
+        when(request.getHttpURI()).thenReturn(httpURI);
+        when(request.getParameter(Mockito.eq("xRoadInstance"))).thenReturn(message.getClientId().getXRoadInstance());
+        when(request.getParameter(Mockito.eq("memberClass"))).thenReturn(message.getClientId().getMemberClass());
+        when(request.getParameter(Mockito.eq("memberCode"))).thenReturn(message.getClientId().getMemberCode());
+        when(request.getParameter(Mockito.eq("subsystemCode"))).thenReturn(message.getClientId().getSubsystemCode());
+        when(request.getParameter(Mockito.eq("queryId"))).thenReturn(queryId);
+        return request;
+    }
+
     private void assertPGPStream(MockOutputStream mockOutputStream)
             throws IOException {
         try (BCPGInputStream is = new BCPGInputStream(
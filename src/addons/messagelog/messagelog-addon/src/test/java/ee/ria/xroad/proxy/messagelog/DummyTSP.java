@@ -25,18 +25,31 @@
  */
 package ee.ria.xroad.proxy.messagelog;
 
+import lombok.Getter;
 import org.bouncycastle.tsp.TimeStampRequest;
 
 import java.io.FileInputStream;
+import java.io.InputStream;
 
 final class DummyTSP {
 
     private DummyTSP() {
     }
 
-    static AbstractTimestampRequest.TsRequest makeRequest(TimeStampRequest req) throws Exception {
-        return new AbstractTimestampRequest.TsRequest(new FileInputStream("src/test/resources/tsp.response"),
+    static TsRequest makeRequest(TimeStampRequest req) throws Exception {
+        return new TsRequest(new FileInputStream("src/test/resources/tsp.response"),
                 "src/test/resources/tsp.response");
     }
 
+    @Getter
+    static final class TsRequest {
+        private final InputStream inputStream;
+        private final String url;
+
+        TsRequest(final InputStream inputStream, final String url) {
+            this.inputStream = inputStream;
+            this.url = url;
+        }
+    }
+
 }
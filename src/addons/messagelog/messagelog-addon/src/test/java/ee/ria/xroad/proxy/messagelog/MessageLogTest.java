@@ -38,6 +38,7 @@ import ee.ria.xroad.common.messagelog.LogRecord;
 import ee.ria.xroad.common.messagelog.MessageLogProperties;
 import ee.ria.xroad.common.messagelog.MessageRecord;
 import ee.ria.xroad.common.messagelog.RestLogMessage;
+import ee.ria.xroad.common.messagelog.SoapLogMessage;
 import ee.ria.xroad.common.messagelog.TimestampRecord;
 import ee.ria.xroad.common.messagelog.archive.ArchiveDigest;
 import ee.ria.xroad.common.messagelog.archive.DigestEntry;
@@ -90,6 +91,7 @@ import static ee.ria.xroad.proxy.messagelog.TestUtil.createSignature;
 import static ee.ria.xroad.proxy.messagelog.TestUtil.initForTest;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
@@ -191,7 +193,7 @@ public class MessageLogTest extends AbstractMessageLogTest {
         assertEquals(3, timestamp.getMessageRecords().length);
         assertNotNull(timestamp.getTimestampDer());
         assertNotNull(timestamp.getHashChainResult());
-        assertEquals(3, timestamp.getHashChains().length);
+        assertEquals(3, timestamp.getHashChains().size());
 
         assertTaskQueueSize(0);
     }
@@ -321,6 +323,68 @@ public class MessageLogTest extends AbstractMessageLogTest {
         assertArchiveHashChain();
     }
 
+    /**
+     * Logs messages of two subsystems, time-stamps them and archives the groups in parallel.
+     *
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void logTimestampAndArchiveGroupsInParallel() throws Exception {
+        log.trace("logTimestampAndArchiveGroupsInParallel()");
+
+        System.setProperty(MessageLogProperties.ARCHIVE_PARALLELISM, "2");
+
+        log(createMessage(), createSignature());
+        // server side records belong to the service provider
+        logManager.log(new SoapLogMessage(createMessage(), createSignature(), false));
+        log(createMessage(), createSignature());
+        assertTaskQueueSize(3);
+
+        startTimestamping();
+        waitForTimestampSuccessful();
+        assertTrue(TestTaskQueue.waitForTimestampSaved());
+
+        startArchiving();
+        TestLogArchiver.waitForArchiveSuccessful();
+
+        assertEquals(4, getNumberOfRecords(true));
+        assertEquals(0, getNumberOfRecords(false));
+    }
+
+    /**
+     * Archives the groups in parallel while archiving one of them fails. The other group must be archived and the
+     * archiving run must fail.
+     */
+    @Test
+    public void failArchivingWhenGroupFails() throws Exception {
+        log.trace("failArchivingWhenGroupFails()");
+
+        System.setProperty(MessageLogProperties.ARCHIVE_PARALLELISM, "2");
+
+        log(createMessage(), createSignature());
+        // server side records belong to the service provider
+        logManager.log(new SoapLogMessage(createMessage(), createSignature(), false));
+        log(createMessage(), createSignature());
+        assertTaskQueueSize(3);
+
+        startTimestamping();
+        waitForTimestampSuccessful();
+        assertTrue(TestTaskQueue.waitForTimestampSaved());
+
+        TestLogArchiver.archivingDone();
+        TestLogArchiver.failArchivingOf("producer");
+        try {
+            startArchiving();
+        } finally {
+            TestLogArchiver.failArchivingOf(null);
+        }
+
+        assertFalse(TestLogArchiver.archivingDone());
+        // the timestamp record stays until the record of the failed group is archived
+        assertEquals(2, getNumberOfRecords(true));
+        assertEquals(2, getNumberOfRecords(false));
+    }
+
     /**
      * Logs 3 messages, time-stamping fails. Task queue must have 3 tasks. Logs 1 more message, task queue must
      * have 4 tasks.
@@ -513,6 +577,7 @@ public class MessageLogTest extends AbstractMessageLogTest {
      */
     @After
     public void tearDown() throws Exception {
+        System.clearProperty(MessageLogProperties.ARCHIVE_PARALLELISM);
         System.clearProperty(MessageLogProperties.MESSAGELOG_ENCRYPTION_ENABLED);
         System.clearProperty(MessageLogProperties.MESSAGELOG_KEYSTORE_PASSWORD);
         System.clearProperty(MessageLogProperties.MESSAGELOG_KEYSTORE);
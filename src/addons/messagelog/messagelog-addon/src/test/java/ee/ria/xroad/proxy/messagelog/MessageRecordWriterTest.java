@@ -0,0 +1,150 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.messagelog;
+
+import ee.ria.xroad.common.identifier.ClientId;
+import ee.ria.xroad.common.messagelog.MessageRecord;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests {@link MessageRecordWriter} batching.
+ */
+public class MessageRecordWriterTest {
+
+    private static final ClientId.Conf CLIENT = ClientId.Conf.create("EE", "BUSINESS", "consumer");
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(8);
+    private MessageRecordWriter writer;
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+        if (writer != null) {
+            writer.shutdown();
+        }
+    }
+
+    @Test
+    public void writesConcurrentRecordsInBatches() throws Exception {
+        List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+        CountDownLatch firstBatchStarted = new CountDownLatch(1);
+        CountDownLatch releaseFirstBatch = new CountDownLatch(1);
+
+        writer = new MessageRecordWriter(records -> {
+            batchSizes.add(records.size());
+            firstBatchStarted.countDown();
+            releaseFirstBatch.await(5, TimeUnit.SECONDS);
+        }, 100, 10, 1000, 0);
+
+        Future<?> first = executor.submit(() -> write(writer, "q0"));
+        assertTrue(firstBatchStarted.await(5, TimeUnit.SECONDS));
+
+        // records queued while the first batch is being committed join the next batch within its max latency
+        List<Future<?>> others = new ArrayList<>();
+        for (int i = 1; i <= 5; i++) {
+            String queryId = "q" + i;
+            others.add(executor.submit(() -> write(writer, queryId)));
+        }
+        releaseFirstBatch.countDown();
+
+        first.get(5, TimeUnit.SECONDS);
+        for (Future<?> f : others) {
+            f.get(5, TimeUnit.SECONDS);
+        }
+
+        assertEquals(List.of(1, 5), batchSizes);
+    }
+
+    @Test
+    public void failsAllRecordsOfFailedBatch() throws Exception {
+        Exception failure = new Exception("db down");
+        writer = new MessageRecordWriter(records -> {
+            throw failure;
+        }, 100, 10, 1, 0);
+
+        try {
+            writer.write(record("q"));
+            fail("Expected failure");
+        } catch (Exception e) {
+            assertSame(failure, e);
+        }
+    }
+
+    @Test
+    public void refusesRecordsAfterShutdown() throws Exception {
+        writer = new MessageRecordWriter(records -> { }, 100, 10, 1, 0);
+        writer.write(record("q"));
+        writer.shutdown();
+
+        try {
+            writer.write(record("q"));
+            fail("Expected failure");
+        } catch (IllegalStateException expected) {
+            // expected
+        }
+    }
+
+    @Test
+    public void stopsWaitingAfterWriteTimeout() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        writer = new MessageRecordWriter(records -> release.await(5, TimeUnit.SECONDS), 100, 10, 1, 50);
+
+        try {
+            writer.write(record("q"));
+            fail("Expected timeout");
+        } catch (TimeoutException expected) {
+            // expected
+        } finally {
+            release.countDown();
+        }
+    }
+
+    private static Void write(MessageRecordWriter writer, String queryId) throws Exception {
+        writer.write(record(queryId));
+        return null;
+    }
+
+    private static MessageRecord record(String queryId) {
+        return new MessageRecord(queryId, "message", "signature", false, CLIENT, null);
+    }
+}
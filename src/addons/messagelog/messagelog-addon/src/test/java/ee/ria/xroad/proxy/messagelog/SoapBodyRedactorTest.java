@@ -0,0 +1,153 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.messagelog;
+
+import ee.ria.xroad.common.message.Soap;
+import ee.ria.xroad.common.message.SoapBuilder;
+import ee.ria.xroad.common.message.SoapMessageImpl;
+import ee.ria.xroad.common.message.SoapParserImpl;
+import ee.ria.xroad.common.message.SoapUtils;
+import ee.ria.xroad.common.util.MimeTypes;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static ee.ria.xroad.proxy.messagelog.MessageBodyManipulatorTest.QUERY_DIR;
+import static ee.ria.xroad.proxy.messagelog.MessageBodyManipulatorTest.createSoapMessage;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the SOAP body redaction
+ */
+public class SoapBodyRedactorTest {
+
+    private static final Path EXPECTED_DIR = Paths.get("src/test/resources/redacted");
+
+    /**
+     * Test that every test message is redacted exactly like it was by building a new message with SoapBuilder
+     * @throws Exception when error occurs
+     */
+    @Test
+    public void matchesSoapBuilderOutput() throws Exception {
+        for (String fileName : soapMessageFiles()) {
+            SoapMessageImpl message = (SoapMessageImpl) createSoapMessage(fileName);
+
+            assertEquals(fileName, buildWithSoapBuilder(message), redact(message));
+        }
+    }
+
+    /**
+     * Test that every test message is redacted exactly like the recorded output of the SoapBuilder based redaction
+     * @throws Exception when error occurs
+     */
+    @Test
+    public void matchesRecordedOutput() throws Exception {
+        List<String> fileNames = soapMessageFiles();
+        try (Stream<Path> expected = Files.list(EXPECTED_DIR)) {
+            assertEquals(fileNames, expected.map(path -> path.getFileName().toString()).sorted().toList());
+        }
+
+        for (String fileName : fileNames) {
+            String redacted = redact((SoapMessageImpl) createSoapMessage(fileName));
+
+            assertEquals(fileName, Files.readString(EXPECTED_DIR.resolve(fileName)), redacted);
+        }
+    }
+
+    /**
+     * Test that the body content does not end up in the redacted message
+     * @throws Exception when error occurs
+     */
+    @Test
+    public void dropsBodyText() throws Exception {
+        SoapMessageImpl message = (SoapMessageImpl) createSoapMessage("nowhitespace.answer");
+
+        assertTrue(message.getXml().contains("<response>"));
+        assertFalse(redact(message).contains("<response>"));
+    }
+
+    /**
+     * Test that header elements and comments not modelled by SoapHeader do not end up in the redacted message
+     * @throws Exception when error occurs
+     */
+    @Test
+    public void dropsUnknownHeaderContent() throws Exception {
+        String xml = Files.readString(Paths.get(QUERY_DIR, "simple.query")).replace("<xroad:id>",
+                "<secret xmlns=\"http://example.org/secret\">s3cr3t</secret><!-- secret --><xroad:id>");
+        SoapMessageImpl message = (SoapMessageImpl) new SoapParserImpl().parse(MimeTypes.TEXT_XML_UTF8,
+                new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+
+        assertTrue(message.getXml().contains("s3cr3t"));
+        String redacted = redact(message);
+        assertFalse(redacted.contains("secret"));
+        assertEquals(Files.readString(EXPECTED_DIR.resolve("simple.query")), redacted);
+    }
+
+    private static List<String> soapMessageFiles() throws Exception {
+        List<String> fileNames = new ArrayList<>();
+        try (Stream<Path> files = Files.list(Paths.get(QUERY_DIR))) {
+            for (Path file : files.sorted().toList()) {
+                String fileName = file.getFileName().toString();
+                if (parse(fileName) instanceof SoapMessageImpl) {
+                    fileNames.add(fileName);
+                }
+            }
+        }
+        return fileNames;
+    }
+
+    private static Soap parse(String fileName) {
+        try {
+            return createSoapMessage(fileName);
+        } catch (Exception e) {
+            // invalid test queries are never logged
+            return null;
+        }
+    }
+
+    private static String redact(SoapMessageImpl message) throws Exception {
+        String bodyElementName = message.getService().getServiceCode() + (message.isResponse() ? "Response" : "");
+        return SoapBodyRedactor.redact(message.getHeader(), bodyElementName);
+    }
+
+    private static String buildWithSoapBuilder(SoapMessageImpl message) throws Exception {
+        SoapBuilder builder = new SoapBuilder();
+        builder.setHeader(message.getHeader());
+        builder.setRpcEncoded(false);
+        SoapMessageImpl built = builder.build();
+        return (message.isResponse() ? SoapUtils.toResponse(built) : built).getXml();
+    }
+}
@@ -26,17 +26,23 @@
 package ee.ria.xroad.proxy.messagelog;
 
 import ee.ria.xroad.common.conf.globalconf.GlobalConfProvider;
+import ee.ria.xroad.common.messagelog.MessageRecord;
 import ee.ria.xroad.messagelog.archiver.LogArchiver;
+import ee.ria.xroad.messagelog.archiver.LogArchiverMetrics;
+
+import org.hibernate.Session;
 
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
 
 class TestLogArchiver extends LogArchiver {
 
     private static CountDownLatch gate = new CountDownLatch(1);
+    private static volatile String failingMemberCode;
 
     TestLogArchiver(GlobalConfProvider globalConfProvider) {
-        super(globalConfProvider);
+        super(globalConfProvider, new LogArchiverMetrics());
     }
 
     public static void waitForArchiveSuccessful() throws Exception {
@@ -47,6 +53,33 @@ class TestLogArchiver extends LogArchiver {
         }
     }
 
+    /**
+     * @return whether the last archiving run completed, clears the state for the next run
+     */
+    public static boolean archivingDone() {
+        try {
+            return gate.getCount() == 0;
+        } finally {
+            gate = new CountDownLatch(1);
+        }
+    }
+
+    /**
+     * Makes archiving the group of the given member fail, null to archive all groups normally.
+     */
+    public static void failArchivingOf(String memberCode) {
+        failingMemberCode = memberCode;
+    }
+
+    @Override
+    protected Stream<MessageRecord> getNonArchivedMessageRecords(Session session, Long maxId, int limit,
+                                                                 ArchiveGroup group) {
+        if (group != null && group.memberCode().equals(failingMemberCode)) {
+            throw new IllegalStateException("Archiving of " + group + " failed");
+        }
+        return super.getNonArchivedMessageRecords(session, maxId, limit, group);
+    }
+
     @Override
     protected void onArchivingDone() {
         gate.countDown();
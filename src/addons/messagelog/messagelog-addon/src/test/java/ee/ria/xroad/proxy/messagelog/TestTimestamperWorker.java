@@ -68,7 +68,7 @@ class TestTimestamperWorker extends TimestamperWorker {
                         throw new RuntimeException("time-stamping failed");
                     }
                 }
-                TsRequest req = DummyTSP.makeRequest(tsRequest);
+                DummyTSP.TsRequest req = DummyTSP.makeRequest(tsRequest);
 
                 TimeStampResponse tsResponse = getTimestampResponse(req.getInputStream());
                 verify(tsRequest, tsResponse);
@@ -99,7 +99,7 @@ class TestTimestamperWorker extends TimestamperWorker {
                         throw new RuntimeException("time-stamping failed");
                     }
                 }
-                TsRequest req = DummyTSP.makeRequest(tsRequest);
+                DummyTSP.TsRequest req = DummyTSP.makeRequest(tsRequest);
 
                 TimeStampResponse tsResponse = getTimestampResponse(req.getInputStream());
                 verify(tsRequest, tsResponse);
@@ -0,0 +1,223 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.messagelog;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the time-stamping provider client against local stub providers that answer with their own name after
+ * an injected delay, or fail.
+ */
+public class TimestamperClientTest {
+
+    private static final byte[] REQUEST = {1, 2, 3};
+    private static final TimestamperClient.ResponseHandler<String> HANDLER = in -> {
+        final String body = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        if (body.startsWith("invalid")) {
+            throw new IllegalStateException("invalid response");
+        }
+        return body;
+    };
+
+    private final List<StubTsa> stubs = new ArrayList<>();
+    private TimestamperClient client;
+
+    @Before
+    public void setUp() {
+        client = new TimestamperClient(1000, 5000, 95, 200);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        client.close();
+        stubs.forEach(StubTsa::stop);
+    }
+
+    @Test
+    public void hedgesToNextProviderWhenFirstIsSlow() throws Exception {
+        final StubTsa slow = stub("slow", 3000, 200);
+        final StubTsa fast = stub("fast", 0, 200);
+
+        final long start = System.nanoTime();
+        final TimestamperClient.Response<String> response = client.execute(List.of(slow.url, fast.url), REQUEST, HANDLER);
+
+        assertEquals("fast", response.value());
+        assertEquals(fast.url, response.url());
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 2000);
+        // the abandoned attempt counts as slow, so the faster provider is tried first next time
+        assertEquals(List.of(fast.url, slow.url), client.order(List.of(slow.url, fast.url)));
+    }
+
+    @Test
+    public void failureStartsNextProviderWithoutHedging() throws Exception {
+        client.close();
+        client = new TimestamperClient(1000, 5000, 0, 200);
+        final StubTsa failing = stub("failing", 0, 500);
+        final StubTsa invalid = stub("invalid", 0, 200);
+        final StubTsa working = stub("working", 0, 200);
+
+        final TimestamperClient.Response<String> response =
+                client.execute(List.of(failing.url, invalid.url, working.url), REQUEST, HANDLER);
+
+        assertEquals("working", response.value());
+        assertEquals(1, failing.requests.size());
+        assertEquals(1, invalid.requests.size());
+    }
+
+    @Test
+    public void failsWhenNoProviderReturnsValidResponse() throws Exception {
+        final StubTsa failing = stub("failing", 0, 500);
+        final StubTsa invalid = stub("invalid", 0, 200);
+
+        final Exception e = assertThrows(RuntimeException.class,
+                () -> client.execute(List.of(failing.url, invalid.url), REQUEST, HANDLER));
+        assertEquals("Failed to get time stamp from any time-stamping providers", e.getMessage());
+    }
+
+    @Test
+    public void reusesPersistentConnections() throws Exception {
+        final StubTsa tsa = stub("tsa", 0, 200);
+
+        for (int i = 0; i < 5; i++) {
+            assertEquals("tsa", client.execute(List.of(tsa.url), REQUEST, HANDLER).value());
+        }
+
+        assertEquals(5, tsa.requestCount());
+        assertEquals(1, tsa.requests.size());
+    }
+
+    @Test
+    public void ordersProvidersByHealth() {
+        final String a = "http://a";
+        final String b = "http://b";
+        final String c = "http://c";
+        client.health(a).recordSuccess(TimeUnit.MILLISECONDS.toNanos(300));
+        client.health(b).recordSuccess(TimeUnit.MILLISECONDS.toNanos(100));
+        for (int i = 0; i < TimestamperClient.FAILURE_THRESHOLD; i++) {
+            client.health(c).recordFailure();
+        }
+
+        assertEquals(List.of(b, a, c), client.order(List.of(a, b, c)));
+
+        client.health(c).recordSuccess(TimeUnit.MILLISECONDS.toNanos(50));
+        assertEquals(List.of(c, b, a), client.order(List.of(a, b, c)));
+    }
+
+    @Test
+    public void hedgeDelayFollowsLatencyPercentile() {
+        final String url = "http://a";
+        assertEquals(200, client.hedgeDelay(url));
+
+        for (int i = 1; i <= 20; i++) {
+            client.health(url).recordSuccess(TimeUnit.MILLISECONDS.toNanos(i * 10));
+        }
+        assertEquals(190, client.hedgeDelay(url));
+    }
+
+    @Test
+    public void latencyAverageIsExponentiallyWeighted() {
+        final TimestamperClient.ProviderHealth health = new TimestamperClient.ProviderHealth();
+        assertEquals(0, health.getScore(), 0);
+
+        health.recordSuccess(TimeUnit.MILLISECONDS.toNanos(100));
+        assertEquals(100, health.getScore(), 0.001);
+        health.recordSuccess(TimeUnit.MILLISECONDS.toNanos(200));
+        assertEquals(130, health.getScore(), 0.001);
+
+        // a cancelled attempt only raises the average when it already took longer
+        health.recordAbandoned(TimeUnit.MILLISECONDS.toNanos(50));
+        assertEquals(130, health.getScore(), 0.001);
+        health.recordAbandoned(TimeUnit.MILLISECONDS.toNanos(400));
+        assertEquals(211, health.getScore(), 0.001);
+    }
+
+    private StubTsa stub(String name, long delayMillis, int status) throws IOException {
+        final StubTsa stub = new StubTsa(name, delayMillis, status);
+        stubs.add(stub);
+        return stub;
+    }
+
+    /**
+     * Stub time-stamping provider. Records the remote addresses of the connections the requests came from.
+     */
+    private static final class StubTsa {
+        private final HttpServer server;
+        private final String url;
+        private final Set<InetSocketAddress> requests = ConcurrentHashMap.newKeySet();
+        private int count;
+
+        StubTsa(String name, long delayMillis, int status) throws IOException {
+            server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+            server.setExecutor(Executors.newCachedThreadPool());
+            server.createContext("/", exchange -> {
+                synchronized (this) {
+                    count++;
+                }
+                requests.add(exchange.getRemoteAddress());
+                exchange.getRequestBody().readAllBytes();
+                try {
+                    Thread.sleep(delayMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                final byte[] body = name.getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().add("Content-Type", "application/timestamp-reply");
+                exchange.sendResponseHeaders(status, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            });
+            server.start();
+            url = "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+        }
+
+        synchronized int requestCount() {
+            return count;
+        }
+
+        void stop() {
+            server.stop(0);
+        }
+    }
+}
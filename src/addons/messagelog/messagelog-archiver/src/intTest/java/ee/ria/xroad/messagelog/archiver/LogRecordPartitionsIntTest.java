@@ -0,0 +1,218 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.messagelog.archiver;
+
+import ee.ria.xroad.common.SystemProperties;
+import ee.ria.xroad.common.db.HibernateUtil;
+
+import liquibase.Contexts;
+import liquibase.LabelExpression;
+import liquibase.Liquibase;
+import liquibase.database.Database;
+import liquibase.database.DatabaseFactory;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.resource.ClassLoaderResourceAccessor;
+import liquibase.resource.CompositeResourceAccessor;
+import liquibase.resource.DirectoryResourceAccessor;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.niis.xroad.ss.test.container.database.PostgresContextualContainer;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Migrates a populated log record table of the previous schema to the partitioned one and maintains its partitions
+ * like the archiver and cleaner do.
+ */
+class LogRecordPartitionsIntTest {
+
+    private static final long DAY = ChronoUnit.DAYS.getDuration().toMillis();
+    private static final int LEGACY_RECORDS = 100;
+    private static final int ATTACHMENT_EVERY = 10;
+    private static final long TIMESTAMP_RECORD_ID = 1;
+    private static final long NULL_TIME_RECORD_ID = 2;
+    private static final long NEW_RECORD_ID = 1000;
+    private static final long FUTURE_RECORD_ID = 1001;
+
+    private static PostgresContextualContainer.XRoadTestPostgreSQLContainer postgres;
+
+    @TempDir
+    static Path tempDir;
+
+    @BeforeAll
+    static void startDatabase() throws Exception {
+        postgres = new PostgresContextualContainer.XRoadTestPostgreSQLContainer();
+        postgres.start();
+
+        System.setProperty(SystemProperties.DATABASE_PROPERTIES,
+                Files.createFile(tempDir.resolve("db.properties")).toString());
+        System.setProperty("messagelog.hibernate.connection.driver_class", "org.postgresql.Driver");
+        System.setProperty("messagelog.hibernate.connection.url", postgres.getJdbcUrl());
+        System.setProperty("messagelog.hibernate.connection.username", postgres.getUsername());
+        System.setProperty("messagelog.hibernate.connection.password", postgres.getPassword());
+    }
+
+    @AfterAll
+    static void stopDatabase() {
+        HibernateUtil.closeSessionFactories();
+        postgres.stop();
+    }
+
+    @Test
+    void shouldMigrateLegacyTableAndMaintainPartitions() throws Exception {
+        final long now = System.currentTimeMillis();
+
+        update("messagelog-legacy-changelog.xml");
+        try (Connection connection = connect()) {
+            insertLegacyRecords(connection, now);
+        }
+        update("messagelog-changelog.xml");
+
+        try (Connection connection = connect()) {
+            assertTrue(LogRecordPartitions.isPartitioned());
+            assertEquals(LEGACY_RECORDS, count(connection, "SELECT count(*) FROM logrecord_legacy"));
+            assertEquals(1, count(connection, "SELECT count(*) FROM logrecord WHERE \"time\" = 0"));
+            assertEquals(LEGACY_RECORDS / ATTACHMENT_EVERY, largeObjects(connection));
+
+            // the migration created the partitions for the next two intervals
+            insert(connection, NEW_RECORD_ID, now + 13 * DAY, false, false);
+            assertEquals(0, count(connection, "SELECT count(*) FROM logrecord_default"));
+
+            // until the archiver creates the partition, a record beyond the created ones is in the default partition
+            insert(connection, FUTURE_RECORD_ID, now + 30 * DAY, true, true);
+            assertEquals(1, count(connection, "SELECT count(*) FROM logrecord_default"));
+
+            assertTrue(LogRecordPartitions.createPartitions(Instant.ofEpochMilli(now + 30 * DAY)) > 0);
+            assertEquals(0, LogRecordPartitions.createPartitions(Instant.ofEpochMilli(now + 30 * DAY)));
+            assertEquals(0, count(connection, "SELECT count(*) FROM logrecord_default"));
+            assertEquals(1, count(connection, "SELECT count(*) FROM logrecord WHERE id = " + FUTURE_RECORD_ID));
+            // moving the record out of the default partition keeps its attachment
+            assertEquals(LEGACY_RECORDS / ATTACHMENT_EVERY + 1, largeObjects(connection));
+
+            // the legacy partition is dropped only when all of its records have been archived
+            final long legacyEnd = count(connection,
+                    "SELECT logrecord_partition_upper('logrecord_legacy'::regclass)") - 1;
+            assertEquals(0, LogRecordPartitions.dropArchivedPartitions(legacyEnd));
+            try (Statement statement = connection.createStatement()) {
+                statement.executeUpdate("UPDATE logrecord SET archived = true WHERE \"time\" <= " + legacyEnd);
+            }
+            assertEquals(LEGACY_RECORDS, LogRecordPartitions.dropArchivedPartitions(legacyEnd));
+
+            assertFalse(exists(connection, "SELECT to_regclass('logrecord_legacy') IS NOT NULL"));
+            assertEquals(2, count(connection, "SELECT count(*) FROM logrecord"));
+            assertEquals(1, largeObjects(connection));
+        }
+    }
+
+    /**
+     * Inserts a timestamp record, a message record without time and message records spread over the past 60 days,
+     * half of them archived and every tenth with an attachment.
+     */
+    private static void insertLegacyRecords(Connection connection, long now) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(
+                "INSERT INTO logrecord (id, discriminator, \"time\", archived, signaturehash) VALUES (?, 't', ?, false, 'h')")) {
+            statement.setLong(1, TIMESTAMP_RECORD_ID);
+            statement.setLong(2, now - DAY);
+            statement.executeUpdate();
+        }
+        try (PreparedStatement statement = connection.prepareStatement(
+                "INSERT INTO logrecord (id, discriminator, \"time\", archived, queryid, message, timestamprecord) "
+                        + "VALUES (?, 'm', NULL, false, 'q', 'message', ?)")) {
+            statement.setLong(1, NULL_TIME_RECORD_ID);
+            statement.setLong(2, TIMESTAMP_RECORD_ID);
+            statement.executeUpdate();
+        }
+        for (int i = 3; i <= LEGACY_RECORDS; i++) {
+            insert(connection, i, now - 60 * DAY + i * (59 * DAY / LEGACY_RECORDS), i % 2 == 0,
+                    i % ATTACHMENT_EVERY == 0);
+        }
+    }
+
+    private static void insert(Connection connection, long id, long time, boolean archived, boolean attachment)
+            throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(
+                "INSERT INTO logrecord (id, discriminator, \"time\", archived, queryid, message, timestamprecord, "
+                        + "attachment) VALUES (?, 'm', ?, ?, 'q', 'message', ?, "
+                        + (attachment ? "lo_from_bytea(0, 'attachment'::bytea)" : "NULL") + ")")) {
+            statement.setLong(1, id);
+            statement.setLong(2, time);
+            statement.setBoolean(3, archived);
+            statement.setLong(4, TIMESTAMP_RECORD_ID);
+            statement.executeUpdate();
+        }
+    }
+
+    private static long largeObjects(Connection connection) throws SQLException {
+        return count(connection, "SELECT count(*) FROM pg_largeobject_metadata");
+    }
+
+    private static long count(Connection connection, String sql) throws SQLException {
+        try (Statement statement = connection.createStatement(); ResultSet rs = statement.executeQuery(sql)) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+
+    private static boolean exists(Connection connection, String sql) throws SQLException {
+        try (Statement statement = connection.createStatement(); ResultSet rs = statement.executeQuery(sql)) {
+            rs.next();
+            return rs.getBoolean(1);
+        }
+    }
+
+    private static Connection connect() throws SQLException {
+        return DriverManager.getConnection(postgres.getJdbcUrl(), postgres.getUsername(), postgres.getPassword());
+    }
+
+    /**
+     * Runs the changelog on its own connection, closing the Liquibase instance closes the connection.
+     */
+    private static void update(String changelog) throws Exception {
+        final Database database = DatabaseFactory.getInstance().findCorrectDatabaseImplementation(
+                new JdbcConnection(connect()));
+        try (Liquibase liquibase = new Liquibase(changelog, new CompositeResourceAccessor(
+                new DirectoryResourceAccessor(Paths.get(System.getProperty("messagelog.changelog.dir"))),
+                new ClassLoaderResourceAccessor()), database)) {
+            liquibase.update(new Contexts("int-test"), new LabelExpression());
+        }
+    }
+}
@@ -33,14 +33,20 @@ import ee.ria.xroad.common.messagelog.MessageLogProperties;
 import ee.ria.xroad.common.messagelog.MessageRecord;
 import ee.ria.xroad.common.messagelog.archive.ArchiveDigest;
 import ee.ria.xroad.common.messagelog.archive.DigestEntry;
+import ee.ria.xroad.common.messagelog.archive.GroupingStrategy;
 import ee.ria.xroad.common.messagelog.archive.LogArchiveBase;
 import ee.ria.xroad.common.messagelog.archive.LogArchiveWriter;
+import ee.ria.xroad.common.util.TimeUtils;
 import ee.ria.xroad.messagelog.database.MessageRecordEncryption;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import jakarta.persistence.Tuple;
 import jakarta.persistence.criteria.CriteriaBuilder;
 import jakarta.persistence.criteria.CriteriaQuery;
 import jakarta.persistence.criteria.Expression;
+import jakarta.persistence.criteria.Predicate;
 import jakarta.persistence.criteria.Root;
+import jakarta.persistence.criteria.Selection;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.io.IOUtils;
 import org.hibernate.Session;
@@ -57,8 +63,13 @@ import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Stream;
 
+import static ee.ria.xroad.common.messagelog.MessageLogProperties.getArchiveParallelism;
 import static ee.ria.xroad.common.messagelog.MessageLogProperties.getArchiveTransactionBatchSize;
 import static ee.ria.xroad.common.messagelog.MessageLogProperties.getArchiveTransferCommand;
 import static ee.ria.xroad.messagelog.database.MessageLogDatabaseCtx.doInTransaction;
@@ -72,23 +83,34 @@ import static org.apache.commons.lang3.StringUtils.isBlank;
 public class LogArchiver implements Job {
 
     private static final String PROPERTY_NAME_ARCHIVED = "archived";
+    private static final String PROPERTY_NAME_MEMBER_CLASS = "memberClass";
+    private static final String PROPERTY_NAME_MEMBER_CODE = "memberCode";
+    private static final String PROPERTY_NAME_SUBSYSTEM_CODE = "subsystemCode";
 
     public static final int FETCH_SIZE = 10;
 
     private final GlobalConfProvider globalConfProvider;
+    private final LogArchiverMetrics metrics;
     private final Path archivePath = Paths.get(MessageLogProperties.getArchivePath());
 
-    public LogArchiver(GlobalConfProvider globalConfProvider) {
+    public LogArchiver(GlobalConfProvider globalConfProvider, LogArchiverMetrics metrics) {
         this.globalConfProvider = globalConfProvider;
+        this.metrics = metrics;
     }
 
     @Override
     public void execute(JobExecutionContext context) {
-        try {
+        createPartitions();
+        try (var ignored = metrics.timeRun()) {
             Long maxRecordId = doInTransaction(this::getMaxRecordId);
             if (maxRecordId != null) {
-                while (handleArchive(maxRecordId)) {
-                    // body intentionally empty
+                final int parallelism = getArchiveParallelism();
+                final GroupingStrategy groupingStrategy = MessageLogProperties.getArchiveGrouping();
+
+                if (parallelism > 1 && groupingStrategy != GroupingStrategy.NONE) {
+                    archiveGroups(maxRecordId, groupingStrategy, parallelism);
+                } else {
+                    archive(maxRecordId, null);
                 }
             }
             onArchivingDone();
@@ -97,25 +119,122 @@ public class LogArchiver implements Job {
         }
     }
 
+    /**
+     * Creates the upcoming log record partitions on every archiving run, so that they exist well before records
+     * for them are written even if the cleaner runs rarely.
+     */
+    private static void createPartitions() {
+        try {
+            if (LogRecordPartitions.isPartitioned()) {
+                LogRecordPartitions.createPartitions(TimeUtils.now());
+            }
+        } catch (Exception e) {
+            log.error("Failed to create log record partitions", e);
+        }
+    }
+
+    /**
+     * Archives the records of each group in its own transactions on a bounded worker pool. Every group is a
+     * separate chain of linked archives, so the groups do not depend on each other. The groups that fail do not
+     * stop the others, the run fails once all of them have finished.
+     */
+    private void archiveGroups(long maxRecordId, GroupingStrategy groupingStrategy, int parallelism)
+            throws Exception {
+        final long start = System.currentTimeMillis();
+        final List<ArchiveGroup> groups = doInTransaction(session ->
+                getNonArchivedGroups(session, maxRecordId, groupingStrategy == GroupingStrategy.SUBSYSTEM));
+        if (groups.isEmpty()) {
+            return;
+        }
+
+        log.info("Archiving log records of {} groups using {} threads", groups.size(), parallelism);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, groups.size()),
+                new ThreadFactoryBuilder().setNameFormat("log-archiver-%d").build());
+        long recordsArchived = 0;
+        CodedException failure = null;
+        try {
+            List<Future<Long>> results = new ArrayList<>(groups.size());
+            for (ArchiveGroup group : groups) {
+                results.add(executor.submit(() -> archiveGroup(maxRecordId, group)));
+            }
+
+            for (int i = 0; i < results.size(); i++) {
+                try {
+                    recordsArchived += results.get(i).get();
+                } catch (ExecutionException e) {
+                    metrics.groupFailed();
+                    CodedException groupFailure = new CodedException(ErrorCodes.X_INTERNAL_ERROR, e.getCause(),
+                            "Failed to archive log records of group %s", groups.get(i));
+                    if (failure == null) {
+                        failure = groupFailure;
+                    } else {
+                        failure.addSuppressed(groupFailure);
+                    }
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // the records of the archived groups are committed, mark their timestamps even if some groups failed
+        doInTransaction(this::markTimestampRecordsArchived);
+
+        if (failure != null) {
+            throw failure;
+        }
+
+        log.info("Archived {} log records of {} groups in {} ms", recordsArchived, groups.size(),
+                System.currentTimeMillis() - start);
+    }
+
+    private long archiveGroup(long maxRecordId, ArchiveGroup group) throws Exception {
+        try (var ignored = metrics.timeGroup()) {
+            return archive(maxRecordId, group);
+        }
+    }
+
+    /**
+     * Archives the records of one group (or all records if group is null) in batches, one transaction per batch.
+     * @return the number of archived records
+     */
+    private long archive(long maxRecordId, ArchiveGroup group) throws Exception {
+        final int limit = getArchiveTransactionBatchSize();
+        long recordsArchived = 0;
+        int batch;
+        do {
+            batch = handleArchive(maxRecordId, group, limit);
+            metrics.recordsArchived(batch);
+            recordsArchived += batch;
+            //try to continue if the batch was full (there might be more)
+        } while (batch == limit);
+
+        return recordsArchived;
+    }
+
     private void markArchived(Session session, List<Long> recordIds) {
         session.createQuery("UPDATE AbstractLogRecord r SET r.archived = true WHERE r.id in (?1)")
                 .setParameter(1, recordIds)
                 .executeUpdate();
     }
 
-    private boolean handleArchive(long maxRecordId) throws Exception {
+    private int handleArchive(long maxRecordId, ArchiveGroup group, int limit) throws Exception {
         return doInTransaction(session -> {
-            final int limit = getArchiveTransactionBatchSize();
             final String archiveTransferCommand = getArchiveTransferCommand();
             final long start = System.currentTimeMillis();
             final MessageRecordEncryption messageRecordEncryption = MessageRecordEncryption.getInstance();
 
             int recordsArchived = 0;
-            log.info("Archiving log records...");
+            if (group == null) {
+                log.info("Archiving log records...");
+            } else {
+                log.info("Archiving log records of group {}...", group);
+            }
 
             try (LogArchiveWriter archiveWriter = createLogArchiveWriter(session)) {
                 List<Long> recordIds = new ArrayList<>(100);
-                try (Stream<MessageRecord> records = getNonArchivedMessageRecords(session, maxRecordId, limit)) {
+                try (Stream<MessageRecord> records = getNonArchivedMessageRecords(session, maxRecordId, limit,
+                        group)) {
                     for (Iterator<MessageRecord> it = records.iterator(); it.hasNext(); ) {
                         MessageRecord messageRecord = it.next();
                         recordIds.add(messageRecord.getId());
@@ -138,7 +257,10 @@ public class LogArchiver implements Job {
                         markArchived(session, recordIds);
                         recordIds.clear();
                     }
-                    markTimestampRecordsArchived(session);
+                    if (group == null) {
+                        // with parallel archiving, done once all the groups are archived
+                        markTimestampRecordsArchived(session);
+                    }
                 }
                 session.flush();
             } catch (Exception e) {
@@ -149,8 +271,7 @@ public class LogArchiver implements Job {
                     log.info("Archived {} log records in {} ms", recordsArchived, System.currentTimeMillis() - start);
                 }
             }
-            //try to continue if the batch was full (there might be more)
-            return recordsArchived == limit;
+            return recordsArchived;
         });
     }
 
@@ -196,20 +317,36 @@ public class LogArchiver implements Job {
     }
 
     protected Stream<MessageRecord> getNonArchivedMessageRecords(Session session, Long maxId, int limit) {
+        return getNonArchivedMessageRecords(session, maxId, limit, null);
+    }
+
+    protected Stream<MessageRecord> getNonArchivedMessageRecords(Session session, Long maxId, int limit,
+                                                                 ArchiveGroup group) {
         final CriteriaBuilder cb = session.getCriteriaBuilder();
         final CriteriaQuery<MessageRecord> query = cb.createQuery(MessageRecord.class);
         final Root<MessageRecord> m = query.from(MessageRecord.class);
 
+        final List<Predicate> predicates = new ArrayList<>(List.of(
+                cb.isNotNull(m.get("timestampRecord")),
+                cb.isFalse(m.get(PROPERTY_NAME_ARCHIVED)),
+                cb.lessThanOrEqualTo(m.get("id"), maxId)));
+        if (group != null) {
+            predicates.add(cb.equal(m.get(PROPERTY_NAME_MEMBER_CLASS), group.memberClass()));
+            predicates.add(cb.equal(m.get(PROPERTY_NAME_MEMBER_CODE), group.memberCode()));
+            if (group.bySubsystem()) {
+                predicates.add(group.subsystemCode() == null
+                        ? cb.isNull(m.get(PROPERTY_NAME_SUBSYSTEM_CODE))
+                        : cb.equal(m.get(PROPERTY_NAME_SUBSYSTEM_CODE), group.subsystemCode()));
+            }
+        }
+
         query.select(m)
-                .where(cb.and(
-                        cb.isNotNull(m.get("timestampRecord")),
-                        cb.isFalse(m.get(PROPERTY_NAME_ARCHIVED)),
-                        cb.lessThanOrEqualTo(m.get("id"), maxId)))
+                .where(predicates.toArray(new Predicate[0]))
                 .orderBy(
                         // order is important for archive grouping
-                        cb.asc(m.get("memberClass")),
-                        cb.asc(m.get("memberCode")),
-                        cb.asc(m.get("subsystemCode")),
+                        cb.asc(m.get(PROPERTY_NAME_MEMBER_CLASS)),
+                        cb.asc(m.get(PROPERTY_NAME_MEMBER_CODE)),
+                        cb.asc(m.get(PROPERTY_NAME_SUBSYSTEM_CODE)),
                         cb.asc(m.get("id")));
 
         return session
@@ -222,11 +359,48 @@ public class LogArchiver implements Job {
                 .getResultStream();
     }
 
+    protected List<ArchiveGroup> getNonArchivedGroups(Session session, Long maxId, boolean bySubsystem) {
+        final CriteriaBuilder cb = session.getCriteriaBuilder();
+        final CriteriaQuery<Tuple> query = cb.createTupleQuery();
+        final Root<MessageRecord> m = query.from(MessageRecord.class);
+
+        final List<Selection<?>> selections = new ArrayList<>(List.of(
+                m.get(PROPERTY_NAME_MEMBER_CLASS), m.get(PROPERTY_NAME_MEMBER_CODE)));
+        if (bySubsystem) {
+            selections.add(m.get(PROPERTY_NAME_SUBSYSTEM_CODE));
+        }
+
+        query.multiselect(selections)
+                .distinct(true)
+                .where(cb.and(
+                        cb.isNotNull(m.get("timestampRecord")),
+                        cb.isFalse(m.get(PROPERTY_NAME_ARCHIVED)),
+                        cb.lessThanOrEqualTo(m.get("id"), maxId)));
+
+        return session.createQuery(query).getResultStream()
+                .map(t -> new ArchiveGroup(t.get(0, String.class), t.get(1, String.class),
+                        bySubsystem ? t.get(2, String.class) : null, bySubsystem))
+                .toList();
+    }
+
     protected void onArchivingDone() {
         //hook for testing
     }
 
-    private static void runTransferCommand(String transferCommand) {
+    /**
+     * Records of one archive group. With member grouping the subsystem code is not used.
+     */
+    protected record ArchiveGroup(String memberClass, String memberCode, String subsystemCode, boolean bySubsystem) {
+        @Override
+        public String toString() {
+            return bySubsystem && subsystemCode != null
+                    ? memberClass + "/" + memberCode + "/" + subsystemCode
+                    : memberClass + "/" + memberCode;
+        }
+    }
+
+    // synchronized, archive groups must not run the transfer command concurrently
+    private static synchronized void runTransferCommand(String transferCommand) {
         if (isBlank(transferCommand)) {
             return;
         }
@@ -56,6 +56,11 @@ public class LogArchiverConfig {
         return jobManager;
     }
 
+    @Bean
+    LogArchiverMetrics logArchiverMetrics() {
+        return new LogArchiverMetrics();
+    }
+
     @Bean
     SpringBeanJobFactory springBeanJobFactory() {
         return new SpringBeanJobFactory();
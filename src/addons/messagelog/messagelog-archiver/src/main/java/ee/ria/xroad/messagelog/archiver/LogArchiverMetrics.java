@@ -0,0 +1,86 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.messagelog.archiver;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.codahale.metrics.jmx.JmxReporter;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
+/**
+ * Archiving statistics reported over JMX as {@code logArchiver.<statistic>}: the rate of archived records, the
+ * duration of archiving runs and of archiving single groups, and the number of groups that failed.
+ */
+public class LogArchiverMetrics implements InitializingBean, DisposableBean {
+    static final String METRIC_PREFIX = "logArchiver";
+
+    private final Meter archivedRecords;
+    private final Timer runs;
+    private final Timer groups;
+    private final Counter failedGroups;
+    private final JmxReporter reporter;
+
+    public LogArchiverMetrics() {
+        this(new MetricRegistry());
+    }
+
+    LogArchiverMetrics(MetricRegistry metrics) {
+        this.archivedRecords = metrics.meter(MetricRegistry.name(METRIC_PREFIX, "archivedRecords"));
+        this.runs = metrics.timer(MetricRegistry.name(METRIC_PREFIX, "runs"));
+        this.groups = metrics.timer(MetricRegistry.name(METRIC_PREFIX, "groups"));
+        this.failedGroups = metrics.counter(MetricRegistry.name(METRIC_PREFIX, "failedGroups"));
+        this.reporter = JmxReporter.forRegistry(metrics).build();
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        reporter.start();
+    }
+
+    @Override
+    public void destroy() {
+        reporter.stop();
+    }
+
+    void recordsArchived(int count) {
+        archivedRecords.mark(count);
+    }
+
+    Timer.Context timeRun() {
+        return runs.time();
+    }
+
+    Timer.Context timeGroup() {
+        return groups.time();
+    }
+
+    void groupFailed() {
+        failedGroups.inc();
+    }
+}
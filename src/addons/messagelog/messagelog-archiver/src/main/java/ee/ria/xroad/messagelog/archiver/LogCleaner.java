@@ -34,10 +34,15 @@ import org.hibernate.query.Query;
 import org.quartz.Job;
 import org.quartz.JobExecutionContext;
 
+import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 
 /**
  * Deletes all archived log records from the database.
+ * <p>
+ * When the log record table is partitioned by time (PostgreSQL), partitions that contain only archived records
+ * older than the retention period are dropped as a whole, see {@link LogRecordPartitions}. Records in partially
+ * archived partitions and in the default partition are deleted in batches as before.
  */
 @Slf4j
 public class LogCleaner implements Job {
@@ -61,9 +66,13 @@ public class LogCleaner implements Job {
 
     protected long handleClean() throws Exception {
 
-        final Long time =
-                TimeUtils.now().minus(MessageLogProperties.getKeepRecordsForDays(), ChronoUnit.DAYS).toEpochMilli();
+        final Instant now = TimeUtils.now();
+        final Long time = now.minus(MessageLogProperties.getKeepRecordsForDays(), ChronoUnit.DAYS).toEpochMilli();
         long count = 0;
+        if (LogRecordPartitions.isPartitioned()) {
+            LogRecordPartitions.createPartitions(now);
+            count += LogRecordPartitions.dropArchivedPartitions(time);
+        }
         int removed;
         do {
             removed = MessageLogDatabaseCtx.doInTransaction(session -> {
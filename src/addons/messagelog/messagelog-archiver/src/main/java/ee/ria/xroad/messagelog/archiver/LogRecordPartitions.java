@@ -0,0 +1,99 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.messagelog.archiver;
+
+import ee.ria.xroad.common.messagelog.MessageLogProperties;
+import ee.ria.xroad.messagelog.database.MessageLogDatabaseCtx;
+
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.query.Query;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * Maintains the time range partitions of the log record table on PostgreSQL. The archiver creates the partitions
+ * for the upcoming intervals on every run, and the cleaner drops the partitions that only contain archived records
+ * older than the retention period.
+ */
+@Slf4j
+final class LogRecordPartitions {
+
+    private LogRecordPartitions() {
+    }
+
+    /**
+     * @return true if the log record table is partitioned, which is only the case on PostgreSQL
+     * @throws Exception if the database can not be queried
+     */
+    static boolean isPartitioned() throws Exception {
+        return MessageLogDatabaseCtx.doInTransaction(session -> {
+            final String product = session.doReturningWork(c -> c.getMetaData().getDatabaseProductName());
+            if (!"PostgreSQL".equals(product)) {
+                return false;
+            }
+            return ((Number) session.getNamedQuery("is-logrecord-partitioned").uniqueResult()).intValue() > 0;
+        });
+    }
+
+    /**
+     * Creates the partitions up to two intervals past the given time, so that new records never end up in
+     * the default partition. Records that already are in the default partition are moved to the new partitions.
+     * @param now current time
+     * @return number of partitions created
+     * @throws Exception if creating the partitions fails
+     */
+    static int createPartitions(Instant now) throws Exception {
+        final long interval = ChronoUnit.DAYS.getDuration().toMillis() * MessageLogProperties.getPartitionIntervalDays();
+        final long until = now.toEpochMilli() + 2 * interval;
+        final int created = MessageLogDatabaseCtx.doInTransaction(session -> {
+            final Query query = session.getNamedQuery("create-logrecord-partitions");
+            query.setParameter("until", until);
+            query.setParameter("interval", interval);
+            return ((Number) query.uniqueResult()).intValue();
+        });
+        if (created > 0) {
+            log.info("Created {} log record partitions", created);
+        }
+        return created;
+    }
+
+    /**
+     * Drops the partitions whose records are all archived and not newer than the given time.
+     * @param time records up to this time (epoch millis) may be removed
+     * @return number of records removed
+     * @throws Exception if dropping the partitions fails
+     */
+    static long dropArchivedPartitions(long time) throws Exception {
+        final long removed = MessageLogDatabaseCtx.doInTransaction(session -> {
+            final Query query = session.getNamedQuery("drop-archived-logrecord-partitions");
+            query.setParameter("time", time);
+            return ((Number) query.uniqueResult()).longValue();
+        });
+        log.debug("Removed {} archived records by dropping partitions", removed);
+        return removed;
+    }
+}
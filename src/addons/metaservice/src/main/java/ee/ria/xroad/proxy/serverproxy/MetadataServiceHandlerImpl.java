@@ -157,9 +157,10 @@ class MetadataServiceHandlerImpl extends AbstractServiceHandler {
 
         return switch (requestServiceId.getServiceCode()) {
             case LIST_METHODS, ALLOWED_METHODS, GET_WSDL -> {
-                requestMessage = (SoapMessageImpl) new SoapParserImpl().parse(
-                        requestProxyMessage.getSoapContentType(),
-                        requestProxyMessage.getSoapContent());
+                try (InputStream soapContent = requestProxyMessage.getSoapContent()) {
+                    requestMessage = (SoapMessageImpl) new SoapParserImpl().parse(
+                            requestProxyMessage.getSoapContentType(), soapContent);
+                }
                 yield true;
             }
             default -> false;
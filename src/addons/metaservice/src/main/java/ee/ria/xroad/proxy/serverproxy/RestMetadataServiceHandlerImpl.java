@@ -149,7 +149,9 @@ public class RestMetadataServiceHandlerImpl implements RestServiceHandler {
         }
 
         messageEncoder.restResponse(restResponse);
-        messageEncoder.restBody(restResponseBody.getCachedContents());
+        try (InputStream body = restResponseBody.getCachedContents()) {
+            messageEncoder.restBody(body);
+        }
 
         // It's required that in case of metadata service (where message is
         // not forwarded) the requestOutTs must be equal with the requestInTs
@@ -44,4 +44,10 @@ public class OcspResponderStatus implements Serializable {
     String url;
     OffsetDateTime prevUpdate;
     OffsetDateTime nextUpdate;
+    /** Duration of the last request to the responder in milliseconds, null if no request has been made. */
+    Long latencyMillis;
+
+    public OcspResponderStatus(int status, String url, OffsetDateTime prevUpdate, OffsetDateTime nextUpdate) {
+        this(status, url, prevUpdate, nextUpdate, null);
+    }
 }
@@ -331,6 +331,12 @@ public final class SystemProperties {
     public static final String CLIENTPROXY_FASTEST_CONNECTING_SSL_URI_CACHE_PERIOD =
             PROXY_PREFIX + "client-fastest-connecting-ssl-uri-cache-period";
 
+    private static final String CLIENTPROXY_CONNECT_STAGGER_DELAY =
+            PROXY_PREFIX + "client-connect-stagger-delay";
+
+    private static final String CLIENTPROXY_ENDPOINT_CIRCUIT_OPEN_PERIOD =
+            PROXY_PREFIX + "client-endpoint-circuit-open-period";
+
     private static final String CLIENTPROXY_POOL_VALIDATE_CONNECTIONS_AFTER_INACTIVITY_OF_MS =
             PROXY_PREFIX + "pool-validate-connections-after-inactivity-of-millis";
 
@@ -351,6 +357,26 @@ public final class SystemProperties {
     private static final String HSM_HEALTH_CHECK_ENABLED = PROXY_PREFIX + "hsm-health-check-enabled";
     private static final String PROXY_MESSAGE_SIGN_DIGEST_NAME = PROXY_PREFIX + "message-sign-digest-name";
 
+    /** Property name of the maximum number of pending signing requests per signing key in the proxy */
+    private static final String PROXY_BATCH_SIGNER_QUEUE_SIZE = PROXY_PREFIX + "batch-signer-queue-size";
+
+    /** Property name of the maximum number of signing requests signed in a single batch */
+    private static final String PROXY_BATCH_SIGNER_MAX_BATCH_SIZE = PROXY_PREFIX + "batch-signer-max-batch-size";
+
+    /** Property name of the maximum time a batch is held open for additional signing requests, in milliseconds */
+    private static final String PROXY_BATCH_SIGNER_MAX_WAIT = PROXY_PREFIX + "batch-signer-max-wait";
+
+    /** Property name of the size up to which a single cached message body is kept in memory, in bytes */
+    private static final String PROXY_CACHING_STREAM_MEMORY_THRESHOLD =
+            PROXY_PREFIX + "caching-stream-memory-threshold";
+
+    /** Property name of the total amount of memory all in-flight cached message bodies may use, in bytes */
+    private static final String PROXY_CACHING_STREAM_MEMORY_BUDGET =
+            PROXY_PREFIX + "caching-stream-memory-budget";
+
+    /** Property name of the time the OCSP responder caches encoded OCSP responses, in seconds */
+    private static final String PROXY_OCSP_RESPONDER_CACHE_PERIOD = PROXY_PREFIX + "ocsp-responder-cache-period";
+
     private static final String FALSE = Boolean.FALSE.toString();
     private static final String TRUE = Boolean.TRUE.toString();
     private static final String DEFAULT_HSM_HEALTH_CHECK_ENABLED = FALSE;
@@ -402,6 +428,10 @@ public final class SystemProperties {
 
     private static final String DEFAULT_CLIENTPROXY_FASTEST_CONNECTING_SSL_URI_CACHE_PERIOD = "3600";
 
+    private static final String DEFAULT_CLIENTPROXY_CONNECT_STAGGER_DELAY = "250";
+
+    private static final String DEFAULT_CLIENTPROXY_ENDPOINT_CIRCUIT_OPEN_PERIOD = "30";
+
     private static final String DEFAULT_ENV_MONITOR_LIMIT_REMOTE_DATA_SET = FALSE;
 
     private static final String DEFAULT_CLIENTPROXY_POOL_VALIDATE_CONNECTIONS_AFTER_INACTIVITY_OF_MS = "2000";
@@ -425,6 +455,9 @@ public final class SystemProperties {
 
     private static final int OCSP_VERIFIER_CACHE_PERIOD_MAX = 180;
 
+    private static final String CERT_CHAIN_VERIFIER_CACHE_SIZE =
+            PROXY_PREFIX + "cert-chain-verifier-cache-size";
+
     // Signer -----------------------------------------------------------------
 
     /** Property name of the key configuration file. */
@@ -459,6 +492,9 @@ public final class SystemProperties {
 
     private static final String DEFAULT_SIGNER_OCSP_RETRY_DELAY = "60";
 
+    /** Property name of the maximum number of concurrent OCSP requests sent to a single OCSP responder */
+    private static final String SIGNER_OCSP_RESPONDER_CONCURRENCY = SIGNER_PREFIX + "ocsp-responder-concurrency";
+
     public static final String SIGNER_MODULE_MANAGER_UPDATE_INTERVAL = SIGNER_PREFIX + "module-manager-update-interval";
     public static final String SOFT_TOKEN_RSA_SIGN_MECHANISM = SIGNER_PREFIX + "soft-token-rsa-sign-mechanism";
     public static final String SOFT_TOKEN_EC_SIGN_MECHANISM = SIGNER_PREFIX + "soft-token-ec-sign-mechanism";
@@ -1153,6 +1189,14 @@ public final class SystemProperties {
                 DEFAULT_SIGNER_OCSP_RETRY_DELAY));
     }
 
+    /**
+     * @return the maximum number of concurrent OCSP requests the signer sends to a single OCSP responder
+     * during an OCSP-response refresh, 4 by default. Different responders are queried in parallel.
+     */
+    public static int getOcspResponderConcurrency() {
+        return Integer.parseInt(System.getProperty(SIGNER_OCSP_RESPONDER_CONCURRENCY, "4"));
+    }
+
     /**
      * @return the module manager update interval in seconds that should be set for signer, 60 by default
      */
@@ -1656,6 +1700,14 @@ public final class SystemProperties {
         return period < OCSP_VERIFIER_CACHE_PERIOD_MAX ? period : OCSP_VERIFIER_CACHE_PERIOD_MAX;
     }
 
+    /**
+     * @return the maximum number of successfully verified certificate chains the verifier caches,
+     * '10000' by default. Value 0 disables the cache. Entries expire after the OCSP verifier cache period.
+     */
+    public static int getCertChainVerifierCacheSize() {
+        return Integer.parseInt(System.getProperty(CERT_CHAIN_VERIFIER_CACHE_SIZE, "10000"));
+    }
+
     /**
      * @return serverproxy initial idle time (used until the request processing starts)
      */
@@ -1790,6 +1842,24 @@ public final class SystemProperties {
                 DEFAULT_CLIENTPROXY_FASTEST_CONNECTING_SSL_URI_CACHE_PERIOD));
     }
 
+    /**
+     * @return delay in milliseconds before a connection attempt to the next provider address is started while
+     * the previous attempts are still pending, '250' by default
+     */
+    public static int getClientProxyConnectStaggerDelay() {
+        return Integer.parseInt(System.getProperty(CLIENTPROXY_CONNECT_STAGGER_DELAY,
+                DEFAULT_CLIENTPROXY_CONNECT_STAGGER_DELAY));
+    }
+
+    /**
+     * @return period in seconds a provider address is tried last after repeated connection failures, or 0 to
+     * disable, '30' by default
+     */
+    public static int getClientProxyEndpointCircuitOpenPeriod() {
+        return Integer.parseInt(System.getProperty(CLIENTPROXY_ENDPOINT_CIRCUIT_OPEN_PERIOD,
+                DEFAULT_CLIENTPROXY_ENDPOINT_CIRCUIT_OPEN_PERIOD));
+    }
+
     /**
      * @return the time in milliseconds, after which connections in a pool should be check for validity, ie.
      * after this time, check if pooled connections are still alive, don't just assume they are.
@@ -1926,6 +1996,54 @@ public final class SystemProperties {
                 .orElse(DigestAlgorithm.SHA512);
     }
 
+    /**
+     * @return the maximum number of pending signing requests per signing key, '10000' by default.
+     * Requests exceeding the limit are rejected.
+     */
+    public static int getBatchSignerQueueSize() {
+        return Integer.parseInt(System.getProperty(PROXY_BATCH_SIGNER_QUEUE_SIZE, "10000"));
+    }
+
+    /**
+     * @return the maximum number of signing requests that are signed in a single batch, '256' by default.
+     */
+    public static int getBatchSignerMaxBatchSize() {
+        return Integer.parseInt(System.getProperty(PROXY_BATCH_SIGNER_MAX_BATCH_SIZE, "256"));
+    }
+
+    /**
+     * @return the maximum time in milliseconds a signing batch is held open to collect additional
+     * requests, '10' by default. The actual wait adapts to the observed signing latency and request
+     * rate and is never longer than this value. Value 0 disables waiting.
+     */
+    public static long getBatchSignerMaxWait() {
+        return Long.parseLong(System.getProperty(PROXY_BATCH_SIGNER_MAX_WAIT, "10"));
+    }
+
+    /**
+     * @return the size in bytes up to which a cached message body is kept in memory before it is spilled
+     * to a temporary file, '65536' by default. Value 0 disables in-memory caching.
+     */
+    public static long getCachingStreamMemoryThreshold() {
+        return Long.parseLong(System.getProperty(PROXY_CACHING_STREAM_MEMORY_THRESHOLD, "65536"));
+    }
+
+    /**
+     * @return the total size in bytes of memory that all in-flight cached message bodies may use,
+     * '67108864' (64 MiB) by default.
+     */
+    public static long getCachingStreamMemoryBudget() {
+        return Long.parseLong(System.getProperty(PROXY_CACHING_STREAM_MEMORY_BUDGET, "67108864"));
+    }
+
+    /**
+     * @return the time in seconds the OCSP responder serves encoded OCSP responses from its cache before
+     * asking the signer again, '60' by default. Value 0 disables caching.
+     */
+    public static int getOcspResponderCachePeriod() {
+        return Integer.parseInt(System.getProperty(PROXY_OCSP_RESPONDER_CACHE_PERIOD, "60"));
+    }
+
     /**
      * @return gRPC signer host.
      */
@@ -36,14 +36,20 @@ import java.nio.channels.SeekableByteChannel;
  */
 public final class CacheInputStream extends FilterInputStream {
     private final long size;
+    private final boolean propagateClose;
 
     CacheInputStream(SeekableByteChannel ch) throws IOException {
         this(Channels.newInputStream(ch.position(0)), ch.size());
     }
 
     public CacheInputStream(InputStream is, long size) {
+        this(is, size, false);
+    }
+
+    CacheInputStream(InputStream is, long size, boolean propagateClose) {
         super(is);
         this.size = size;
+        this.propagateClose = propagateClose;
     }
 
     public long size() {
@@ -51,8 +57,11 @@ public final class CacheInputStream extends FilterInputStream {
     }
 
     @Override
-    public void close() {
-        //NOP
+    public void close() throws IOException {
+        // the channel of a spilled cache is shared by all readers and closed when the cache is consumed
+        if (propagateClose) {
+            in.close();
+        }
     }
 
     @Override
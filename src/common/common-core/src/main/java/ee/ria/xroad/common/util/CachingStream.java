@@ -27,42 +27,128 @@ package ee.ria.xroad.common.util;
 
 import ee.ria.xroad.common.DefaultFilepaths;
 import ee.ria.xroad.common.ErrorCodes;
+import ee.ria.xroad.common.SystemProperties;
 
 import lombok.extern.slf4j.Slf4j;
 
-import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.ref.Cleaner;
 import java.nio.channels.Channels;
 import java.nio.channels.SeekableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
- * Caches stuff in a temporary file.
+ * Caches stuff in memory and spills it over to a temporary file when the cached content
+ * grows beyond {@link SystemProperties#getCachingStreamMemoryThreshold()} or when the memory
+ * budget shared by all in-flight caching streams ({@link SystemProperties#getCachingStreamMemoryBudget()})
+ * is exhausted.
  */
 @Slf4j
-public class CachingStream extends FilterOutputStream {
+public class CachingStream extends OutputStream {
+    static final int SEGMENT_SIZE = 8 * 1024;
+    private static final int MAX_POOLED_SEGMENTS = 1024;
+
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    private static final SegmentPool SHARED_POOL = new SegmentPool();
+
+    private final long memoryThreshold;
+    private final long memoryBudget;
+    private final SegmentPool pool;
+
+    private final MemorySegments memory;
+    private final Cleaner.Cleanable cleanable;
+    private boolean memoryHeld = true;
+
+    private long size;
+
     private SeekableByteChannel channel;
+    private OutputStream fileOut;
     private Path tempFile;
 
     /**
-     * Constructs a new caching stream that caches data in a temporary file.
+     * Constructs a new caching stream that caches data in memory, spilling over
+     * to a temporary file if needed.
      *
      * @throws IOException if I/O errors occurred
      */
     public CachingStream() throws IOException {
-        // Construct the parent class with null stream and replace it later.
-        super(null);
+        this(SystemProperties.getCachingStreamMemoryThreshold(), SystemProperties.getCachingStreamMemoryBudget(),
+                SHARED_POOL);
+    }
 
-        tempFile = DefaultFilepaths.createTempFile("tmpattach", null);
-        channel = Files.newByteChannel(tempFile, StandardOpenOption.CREATE,
-                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING,
-                StandardOpenOption.READ, StandardOpenOption.DELETE_ON_CLOSE);
+    CachingStream(long memoryThreshold, long memoryBudget, SegmentPool pool) throws IOException {
+        this.memoryThreshold = memoryThreshold;
+        this.memoryBudget = memoryBudget;
+        this.pool = pool;
+        this.memory = new MemorySegments(pool);
+        this.cleanable = CLEANER.register(this, memory);
+        this.memory.cleanable = cleanable;
+        pool.created.increment();
+
+        if (memoryThreshold <= 0) {
+            spill();
+        }
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (fileOut == null && !ensureCapacity(1)) {
+            spill();
+        }
 
-        // Now that we are set up, we can set the output stream in the
-        // parent class.
-        out = Channels.newOutputStream(channel);
+        if (fileOut != null) {
+            fileOut.write(b);
+        } else {
+            memory.segment(size)[(int) (size % SEGMENT_SIZE)] = (byte) b;
+        }
+
+        size++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (fileOut == null && !ensureCapacity(len)) {
+            spill();
+        }
+
+        if (fileOut != null) {
+            fileOut.write(b, off, len);
+            size += len;
+            return;
+        }
+
+        int remaining = len;
+        int srcPos = off;
+
+        while (remaining > 0) {
+            int segmentPos = (int) (size % SEGMENT_SIZE);
+            int count = Math.min(remaining, SEGMENT_SIZE - segmentPos);
+
+            System.arraycopy(b, srcPos, memory.segment(size), segmentPos, count);
+
+            srcPos += count;
+            remaining -= count;
+            size += count;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (fileOut != null) {
+            fileOut.flush();
+        }
     }
 
     @Override
@@ -71,18 +157,33 @@ public class CachingStream extends FilterOutputStream {
         flush();
     }
 
-    @Override
-    public void write(byte[] b, int off, int len) throws IOException {
-        // prevent FilterOutputStream from writing inefficiently
-        out.write(b, off, len);
+    /**
+     * @return the number of bytes written to the cache.
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * @return true if the cached contents have been spilled over to a temporary file.
+     */
+    public boolean isSpilled() {
+        return channel != null;
     }
 
     /**
      * @return input stream that contains the encoded attachment contents.
-     * The returned stream does not support mark, and closing the stream has no effect.
+     * The returned stream does not support mark. When the contents are held in memory, the memory is kept
+     * until both the cache is consumed and all the returned streams are closed (or have become unreachable),
+     * so the streams can still be read on another thread after {@link #consume()}.
      * @see #consume() to free resources used by the cache.
      */
     public CacheInputStream getCachedContents() {
+        if (channel == null) {
+            // a stream of already released contents fails on read
+            return new CacheInputStream(new SegmentsInputStream(size, !memory.retain()), size, true);
+        }
+
         try {
             return new CacheInputStream(channel);
         } catch (IOException ex) { // the position shouldn't really throw
@@ -91,14 +192,304 @@ public class CachingStream extends FilterOutputStream {
     }
 
     /**
-     * Finalize caching stream. Use to avoid file handle leaks.
+     * Finalize caching stream. Use to avoid file handle leaks and to return
+     * the memory used by the cache to the shared budget once the streams
+     * returned by {@link #getCachedContents()} have been closed.
      */
     public void consume() {
-        try {
-            channel.close();
-        } catch (IOException e) {
-            log.warn("Error closing channel of the temporary file '{}'", tempFile.toString(), e);
+        releaseMemory();
+
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.warn("Error closing channel of the temporary file '{}'", tempFile.toString(), e);
+            }
         }
     }
 
+    /**
+     * @return the number of bytes currently held in memory by all caching streams.
+     */
+    public static long getMemoryInUse() {
+        return SHARED_POOL.getMemoryInUse();
+    }
+
+    /**
+     * @return the number of caching streams created.
+     */
+    public static long getCreatedCount() {
+        return SHARED_POOL.getCreatedCount();
+    }
+
+    /**
+     * @return the number of caching streams spilled over to a temporary file.
+     */
+    public static long getSpilledCount() {
+        return SHARED_POOL.getSpilledCount();
+    }
+
+    private boolean ensureCapacity(int len) {
+        long required = size + len;
+
+        if (required > memoryThreshold) {
+            return false;
+        }
+
+        long capacity = (long) memory.segments.size() * SEGMENT_SIZE;
+
+        if (required <= capacity) {
+            return true;
+        }
+
+        int newSegments = (int) ((required - capacity + SEGMENT_SIZE - 1) / SEGMENT_SIZE);
+
+        if (!reserve((long) newSegments * SEGMENT_SIZE)) {
+            return false;
+        }
+
+        for (int i = 0; i < newSegments; i++) {
+            memory.segments.add(pool.acquire());
+        }
+
+        memory.reserved += (long) newSegments * SEGMENT_SIZE;
+
+        return true;
+    }
+
+    private boolean reserve(long bytes) {
+        long current;
+
+        do {
+            current = pool.memoryInUse.get();
+
+            if (current + bytes > memoryBudget) {
+                return false;
+            }
+        } while (!pool.memoryInUse.compareAndSet(current, current + bytes));
+
+        return true;
+    }
+
+    private void spill() throws IOException {
+        tempFile = DefaultFilepaths.createTempFile("tmpattach", null);
+        channel = Files.newByteChannel(tempFile, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.DELETE_ON_CLOSE);
+        fileOut = Channels.newOutputStream(channel);
+
+        long remaining = size;
+
+        for (byte[] segment : memory.segments) {
+            if (remaining <= 0) {
+                break;
+            }
+
+            int count = (int) Math.min(remaining, SEGMENT_SIZE);
+            fileOut.write(segment, 0, count);
+            remaining -= count;
+        }
+
+        releaseMemory();
+        pool.spilled.increment();
+
+        if (memoryThreshold > 0) {
+            log.trace("Cached content spilled over to temporary file after {} bytes", size);
+        }
+    }
+
+    private void releaseMemory() {
+        if (memoryHeld) {
+            memoryHeld = false;
+            memory.release();
+        }
+    }
+
+    /**
+     * Pool of free segments and the memory reserved by the caching streams using it.
+     */
+    static final class SegmentPool {
+        private final Queue<byte[]> segments = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger pooledSegments = new AtomicInteger(0);
+        private final AtomicLong memoryInUse = new AtomicLong(0);
+        private final LongAdder created = new LongAdder();
+        private final LongAdder spilled = new LongAdder();
+
+        /**
+         * @return the number of bytes currently reserved by the caching streams using this pool.
+         */
+        long getMemoryInUse() {
+            return memoryInUse.get();
+        }
+
+        /**
+         * @return the number of caching streams created with this pool.
+         */
+        long getCreatedCount() {
+            return created.sum();
+        }
+
+        /**
+         * @return the number of caching streams using this pool that have spilled over to a temporary file.
+         */
+        long getSpilledCount() {
+            return spilled.sum();
+        }
+
+        private byte[] acquire() {
+            byte[] segment = segments.poll();
+
+            if (segment != null) {
+                pooledSegments.decrementAndGet();
+                return segment;
+            }
+
+            return new byte[SEGMENT_SIZE];
+        }
+
+        private void release(byte[] segment) {
+            if (pooledSegments.incrementAndGet() <= MAX_POOLED_SEGMENTS) {
+                segments.offer(segment);
+            } else {
+                pooledSegments.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * In-memory segments of a caching stream. The segments are referenced by the stream itself until it is
+     * consumed or spilled, and by each open stream returned by {@link #getCachedContents()}. The segments are
+     * returned to the pool and the reserved memory to the budget when the last reference is released, or, as
+     * a fallback, when the stream and its readers have become unreachable without being released.
+     */
+    private static final class MemorySegments implements Runnable {
+        private final SegmentPool pool;
+        private final List<byte[]> segments = new ArrayList<>();
+        private final AtomicInteger references = new AtomicInteger(1);
+        private Cleaner.Cleanable cleanable;
+        private long reserved;
+
+        MemorySegments(SegmentPool pool) {
+            this.pool = pool;
+        }
+
+        byte[] segment(long position) {
+            return segments.get((int) (position / SEGMENT_SIZE));
+        }
+
+        boolean retain() {
+            int current;
+
+            do {
+                current = references.get();
+
+                if (current <= 0) {
+                    return false;
+                }
+            } while (!references.compareAndSet(current, current + 1));
+
+            return true;
+        }
+
+        void release() {
+            if (references.decrementAndGet() == 0) {
+                cleanable.clean();
+            }
+        }
+
+        @Override
+        public void run() {
+            references.set(0);
+            segments.forEach(pool::release);
+            segments.clear();
+            pool.memoryInUse.addAndGet(-reserved);
+            reserved = 0;
+        }
+    }
+
+    /**
+     * Reads the in-memory contents up to the size at the time the stream was created. Being an inner class,
+     * it keeps the caching stream, and thus its cleanup action, reachable while the reader is in use.
+     */
+    private final class SegmentsInputStream extends InputStream {
+        private final long limit;
+        private long position;
+        private boolean closed;
+
+        SegmentsInputStream(long limit, boolean closed) {
+            this.limit = limit;
+            this.closed = closed;
+        }
+
+        @Override
+        public int read() throws IOException {
+            checkNotClosed();
+
+            if (position >= limit) {
+                return -1;
+            }
+
+            int b = memory.segment(position)[(int) (position % SEGMENT_SIZE)] & 0xFF;
+            position++;
+
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            checkNotClosed();
+
+            if (len == 0) {
+                return 0;
+            }
+
+            if (position >= limit) {
+                return -1;
+            }
+
+            int total = (int) Math.min(len, limit - position);
+            int remaining = total;
+            int dstPos = off;
+
+            while (remaining > 0) {
+                int segmentPos = (int) (position % SEGMENT_SIZE);
+                int count = Math.min(remaining, SEGMENT_SIZE - segmentPos);
+
+                System.arraycopy(memory.segment(position), segmentPos, b, dstPos, count);
+
+                dstPos += count;
+                remaining -= count;
+                position += count;
+            }
+
+            return total;
+        }
+
+        @Override
+        public long skip(long n) {
+            long skipped = Math.max(0, Math.min(n, limit - position));
+            position += skipped;
+
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(Integer.MAX_VALUE, limit - position);
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                memory.release();
+            }
+        }
+
+        private void checkNotClosed() throws IOException {
+            if (closed) {
+                throw new IOException("Cached contents stream has been closed");
+            }
+        }
+    }
 }
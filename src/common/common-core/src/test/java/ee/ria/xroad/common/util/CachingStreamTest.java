@@ -0,0 +1,221 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.util;
+
+import ee.ria.xroad.common.SystemProperties;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CachingStreamTest {
+
+    private static final long THRESHOLD = 4 * CachingStream.SEGMENT_SIZE;
+    private static final long BUDGET = 1024L * 1024;
+
+    private CachingStream.SegmentPool pool;
+
+    @BeforeAll
+    static void setup() {
+        System.setProperty(SystemProperties.TEMP_FILES_PATH, "build/tmp");
+    }
+
+    @BeforeEach
+    void createPool() {
+        pool = new CachingStream.SegmentPool();
+    }
+
+    @Test
+    void smallContentIsKeptInMemory() throws IOException {
+        byte[] data = randomBytes(CachingStream.SEGMENT_SIZE + 17);
+        CachingStream stream = new CachingStream(THRESHOLD, BUDGET, pool);
+
+        stream.write(data, 0, 10);
+        stream.write(data[10]);
+        stream.write(data, 11, data.length - 11);
+        stream.close();
+
+        assertThat(stream.isSpilled()).isFalse();
+        assertThat(stream.size()).isEqualTo(data.length);
+        assertThat(stream.getCachedContents().size()).isEqualTo(data.length);
+        assertThat(IOUtils.toByteArray(stream.getCachedContents())).isEqualTo(data);
+        // contents can be read more than once
+        assertThat(IOUtils.toByteArray(stream.getCachedContents())).isEqualTo(data);
+
+        stream.consume();
+    }
+
+    @Test
+    void contentOverThresholdIsSpilled() throws IOException {
+        byte[] data = randomBytes((int) THRESHOLD + 1);
+        CachingStream stream = new CachingStream(THRESHOLD, BUDGET, pool);
+
+        stream.write(data, 0, 100);
+        assertThat(stream.isSpilled()).isFalse();
+
+        stream.write(data, 100, data.length - 100);
+        stream.close();
+
+        assertThat(stream.isSpilled()).isTrue();
+        assertThat(pool.getMemoryInUse()).isZero();
+        assertThat(stream.getCachedContents().size()).isEqualTo(data.length);
+        assertThat(IOUtils.toByteArray(stream.getCachedContents())).isEqualTo(data);
+
+        stream.consume();
+    }
+
+    @Test
+    void contentIsSpilledWhenBudgetIsExhausted() throws IOException {
+        byte[] data = randomBytes(CachingStream.SEGMENT_SIZE * 2);
+        long budget = CachingStream.SEGMENT_SIZE * 3L;
+
+        CachingStream first = new CachingStream(THRESHOLD, budget, pool);
+        first.write(data);
+        CachingStream second = new CachingStream(THRESHOLD, budget, pool);
+        second.write(data);
+
+        assertThat(first.isSpilled()).isFalse();
+        assertThat(second.isSpilled()).isTrue();
+        assertThat(IOUtils.toByteArray(second.getCachedContents())).isEqualTo(data);
+
+        first.consume();
+        second.consume();
+
+        CachingStream third = new CachingStream(THRESHOLD, budget, pool);
+        third.write(data);
+        assertThat(third.isSpilled()).isFalse();
+        third.consume();
+    }
+
+    @Test
+    void countsCreatedAndSpilledStreams() throws IOException {
+        CachingStream small = new CachingStream(THRESHOLD, BUDGET, pool);
+        small.write(randomBytes(100));
+        CachingStream large = new CachingStream(THRESHOLD, BUDGET, pool);
+        large.write(randomBytes((int) THRESHOLD + 1));
+
+        assertThat(pool.getCreatedCount()).isEqualTo(2);
+        assertThat(pool.getSpilledCount()).isEqualTo(1);
+
+        small.consume();
+        large.consume();
+    }
+
+    @Test
+    void consumeReleasesMemory() throws IOException {
+        CachingStream stream = new CachingStream(THRESHOLD, BUDGET, pool);
+        stream.write(randomBytes(100));
+
+        assertThat(pool.getMemoryInUse()).isEqualTo(CachingStream.SEGMENT_SIZE);
+
+        stream.consume();
+
+        assertThat(pool.getMemoryInUse()).isZero();
+        assertThatThrownBy(() -> stream.getCachedContents().read()).isInstanceOf(IOException.class);
+    }
+
+    @Test
+    void openReaderKeepsMemoryAfterConsume() throws IOException {
+        byte[] data = randomBytes(CachingStream.SEGMENT_SIZE * 2);
+        CachingStream stream = new CachingStream(THRESHOLD, BUDGET, pool);
+        stream.write(data);
+        stream.close();
+
+        CacheInputStream contents = stream.getCachedContents();
+        CacheInputStream closedContents = stream.getCachedContents();
+        closedContents.close();
+        stream.consume();
+
+        // the segments must not be reused by another stream while the reader is open
+        assertThat(pool.getMemoryInUse()).isEqualTo(CachingStream.SEGMENT_SIZE * 2L);
+        CachingStream other = new CachingStream(THRESHOLD, BUDGET, pool);
+        other.write(new byte[data.length]);
+
+        assertThat(IOUtils.toByteArray(contents)).isEqualTo(data);
+
+        contents.close();
+        contents.close();
+        assertThat(pool.getMemoryInUse()).isEqualTo(CachingStream.SEGMENT_SIZE * 2L);
+        assertThatThrownBy(contents::read).isInstanceOf(IOException.class);
+
+        other.consume();
+        assertThat(pool.getMemoryInUse()).isZero();
+    }
+
+    @Test
+    void readerOnAnotherThreadSurvivesConsume() throws Exception {
+        byte[] data = randomBytes(CachingStream.SEGMENT_SIZE * 3 + 5);
+        CachingStream stream = new CachingStream(THRESHOLD, BUDGET, pool);
+        stream.write(data);
+        stream.close();
+
+        CacheInputStream contents = stream.getCachedContents();
+        CountDownLatch consumed = new CountDownLatch(1);
+        CompletableFuture<byte[]> read = CompletableFuture.supplyAsync(() -> {
+            try (contents) {
+                consumed.await();
+                return IOUtils.toByteArray(contents);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+
+        stream.consume();
+        consumed.countDown();
+
+        assertThat(read.get(10, TimeUnit.SECONDS)).isEqualTo(data);
+        assertThat(pool.getMemoryInUse()).isZero();
+    }
+
+    @Test
+    void zeroThresholdAlwaysUsesTemporaryFile() throws IOException {
+        byte[] data = randomBytes(10);
+        CachingStream stream = new CachingStream(0, BUDGET, pool);
+        stream.write(data);
+        stream.close();
+
+        assertThat(stream.isSpilled()).isTrue();
+        assertThat(IOUtils.toByteArray(stream.getCachedContents())).isEqualTo(data);
+
+        stream.consume();
+    }
+
+    private static byte[] randomBytes(int size) {
+        byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        return data;
+    }
+}
@@ -28,7 +28,6 @@ package ee.ria.xroad.common;
 import ee.ria.xroad.common.util.TimeUtils;
 
 import lombok.AccessLevel;
-import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
@@ -43,13 +42,30 @@ import java.time.OffsetDateTime;
 @Getter
 @ToString
 @NoArgsConstructor(force = true, access = AccessLevel.PRIVATE)
-@AllArgsConstructor
 public class DiagnosticsStatus implements Serializable {
     private int returnCode;
     private OffsetDateTime prevUpdate;
     private OffsetDateTime nextUpdate;
     @Setter
     private String description;
+    /** Duration of the last request in milliseconds, null if not measured. */
+    @Setter
+    private Long latencyMillis;
+
+    /**
+     * Constructor
+     * @param returnCode return code
+     * @param prevUpdate previous update
+     * @param nextUpdate next update
+     * @param description status description
+     */
+    public DiagnosticsStatus(int returnCode, OffsetDateTime prevUpdate, OffsetDateTime nextUpdate,
+                             String description) {
+        this.returnCode = returnCode;
+        this.prevUpdate = prevUpdate;
+        this.nextUpdate = nextUpdate;
+        this.description = description;
+    }
 
     /**
      * Constructor
@@ -45,6 +45,7 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 
 import static ee.ria.xroad.common.util.EncoderUtils.encodeBase64;
@@ -66,6 +67,8 @@ public class SharedParametersCache {
     private final Map<SecurityServerId, Set<ClientId>> securityServerClients = new HashMap<>();
     private final Set<String> knownAddresses = new HashSet<>();
     private final Map<SecurityServerId, SharedParameters.SecurityServer> securityServersById = new HashMap<>();
+    private final Map<String, SharedParameters.GlobalGroup> globalGroupsByCode = new HashMap<>();
+    private final Map<String, Set<ClientId>> globalGroupMembers = new HashMap<>();
 
     public String getInstanceIdentifier() {
         return sharedParameters.getInstanceIdentifier();
@@ -78,6 +81,7 @@ public class SharedParametersCache {
         cacheCaCerts();
         cacheKnownAddresses();
         cacheSecurityServers();
+        cacheGlobalGroups();
     }
 
 
@@ -155,6 +159,16 @@ public class SharedParametersCache {
         }
     }
 
+    private void cacheGlobalGroups() {
+        for (SharedParameters.GlobalGroup globalGroup : sharedParameters.getGlobalGroups()) {
+            // like the lookups by group code before, the first group with a given code wins
+            if (globalGroupsByCode.putIfAbsent(globalGroup.getGroupCode(), globalGroup) == null) {
+                globalGroupMembers.put(globalGroup.getGroupCode(),
+                        new HashSet<>(Objects.requireNonNullElse(globalGroup.getGroupMembers(), List.of())));
+            }
+        }
+    }
+
     private void addServerClient(ClientId client, SharedParameters.SecurityServer server) {
         // Add the mapping from client to security server address.
         if (isNotBlank(server.getAddress())) {
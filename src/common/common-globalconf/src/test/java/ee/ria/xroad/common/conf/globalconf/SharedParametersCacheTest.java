@@ -0,0 +1,107 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.conf.globalconf;
+
+import ee.ria.xroad.common.identifier.ClientId;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SharedParametersCacheTest {
+    private static final String INSTANCE = "EE";
+
+    private static final ClientId MEMBER = ClientId.Conf.create(INSTANCE, "GOV", "member1");
+    private static final ClientId SUBSYSTEM = ClientId.Conf.create(INSTANCE, "GOV", "member1", "subsystem");
+    private static final ClientId OTHER_MEMBER = ClientId.Conf.create(INSTANCE, "GOV", "member2");
+
+    @Test
+    void indexesGlobalGroupsByCode() {
+        SharedParameters.GlobalGroup group = new SharedParameters.GlobalGroup("group", "Group", List.of(MEMBER));
+        SharedParametersCache cache = new SharedParametersCache(sharedParameters(group));
+
+        assertThat(cache.getGlobalGroupsByCode()).containsOnlyKeys("group");
+        assertThat(cache.getGlobalGroupsByCode().get("group")).isSameAs(group);
+        assertThat(cache.getGlobalGroupsByCode().get("unknown")).isNull();
+    }
+
+    @Test
+    void indexesGlobalGroupMembers() {
+        SharedParametersCache cache = new SharedParametersCache(sharedParameters(
+                new SharedParameters.GlobalGroup("group1", "Group 1", List.of(MEMBER, SUBSYSTEM)),
+                new SharedParameters.GlobalGroup("group2", "Group 2", List.of(OTHER_MEMBER))));
+
+        assertThat(cache.getGlobalGroupMembers().get("group1")).containsExactlyInAnyOrder(MEMBER, SUBSYSTEM);
+        assertThat(cache.getGlobalGroupMembers().get("group1")).doesNotContain(OTHER_MEMBER);
+        assertThat(cache.getGlobalGroupMembers().get("group2")).containsExactly(OTHER_MEMBER);
+        assertThat(cache.getGlobalGroupMembers().get("unknown")).isNull();
+    }
+
+    @Test
+    void groupMembershipDoesNotMatchOtherIdentifierTypes() {
+        SharedParametersCache cache = new SharedParametersCache(sharedParameters(
+                new SharedParameters.GlobalGroup("group", "Group", List.of(MEMBER))));
+
+        // a member and its subsystem are different subjects
+        assertThat(cache.getGlobalGroupMembers().get("group")).contains(ClientId.Conf.create(INSTANCE, "GOV", "member1"));
+        assertThat(cache.getGlobalGroupMembers().get("group")).doesNotContain(SUBSYSTEM);
+    }
+
+    @Test
+    void groupWithoutMembersIsIndexedAsEmpty() {
+        SharedParametersCache cache = new SharedParametersCache(sharedParameters(
+                new SharedParameters.GlobalGroup("empty", "Empty", null)));
+
+        assertThat(cache.getGlobalGroupsByCode()).containsKey("empty");
+        assertThat(cache.getGlobalGroupMembers().get("empty")).isEmpty();
+    }
+
+    @Test
+    void firstGroupWithDuplicateCodeWins() {
+        SharedParameters.GlobalGroup first = new SharedParameters.GlobalGroup("group", "First", List.of(MEMBER));
+        SharedParametersCache cache = new SharedParametersCache(sharedParameters(
+                first,
+                new SharedParameters.GlobalGroup("group", "Second", List.of(OTHER_MEMBER))));
+
+        assertThat(cache.getGlobalGroupsByCode().get("group")).isSameAs(first);
+        assertThat(cache.getGlobalGroupMembers().get("group")).containsExactly(MEMBER);
+    }
+
+    private static SharedParameters sharedParameters(SharedParameters.GlobalGroup... groups) {
+        return SharedParameters.builder()
+                .instanceIdentifier(INSTANCE)
+                .sources(List.of())
+                .approvedCAs(List.of())
+                .approvedTSAs(List.of())
+                .members(List.of())
+                .securityServers(List.of())
+                .globalGroups(Arrays.asList(groups))
+                .build();
+    }
+}
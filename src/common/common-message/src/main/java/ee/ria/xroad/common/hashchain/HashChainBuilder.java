@@ -27,19 +27,16 @@ package ee.ria.xroad.common.hashchain;
 
 import ee.ria.xroad.common.crypto.identifier.DigestAlgorithm;
 
-import jakarta.xml.bind.JAXBContext;
-import jakarta.xml.bind.JAXBElement;
-import jakarta.xml.bind.Marshaller;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 import static ee.ria.xroad.common.hashchain.DigestList.digestHashStep;
+import static ee.ria.xroad.common.util.EncoderUtils.encodeBase64;
 import static ee.ria.xroad.common.util.MessageFileNames.attachment;
 import static java.lang.Integer.numberOfLeadingZeros;
 
@@ -55,6 +52,8 @@ import static java.lang.Integer.numberOfLeadingZeros;
  * - getHashChainResult -- returns XML-encoded form of the hash chain result.
  * - getHashChains -- returns array of XML-encoded hash chains, one for
  *   each input data item.
+ * - getHashChainSequence -- returns the same hash chains, rendered one at
+ *   a time, so that large batches need not be kept in memory as strings.
  *
  * Implementation: the binary Merkle tree is stored as an array.
  * This representation does not use pointers to child nodes, the indexes of
@@ -66,6 +65,9 @@ import static java.lang.Integer.numberOfLeadingZeros;
  * treated as a single array consisting of nodes+inputs.
  *
  * For incomplete binary trees, some inputs and nodes can be null.
+ *
+ * The XML is written directly into a reusable buffer in the same form that
+ * JAXB would produce for the hashchain.xsd types.
  */
 public final class HashChainBuilder {
 
@@ -74,9 +76,6 @@ public final class HashChainBuilder {
     private static final Logger LOG =
             LoggerFactory.getLogger(HashChainBuilder.class);
 
-    /** For accessing JAXB functionality. Shared between all the builders. */
-    private static JAXBContext jaxbCtx;
-
     /**
      * Index of the root of the tree.
      */
@@ -84,6 +83,14 @@ public final class HashChainBuilder {
 
     private static final String STEP = "STEP";
 
+    private static final String XML_DECLARATION =
+            "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n";
+
+    private static final String NAMESPACE_DECLARATIONS =
+            " xmlns:ns2=\"http://cyber.ee/hashchain\" xmlns=\"http://www.w3.org/2000/09/xmldsig#\"";
+
+    private static final String INDENT = "    ";
+
     /** Hash algorithm used to hash tree nodes and inputs. */
     private final DigestAlgorithm hashAlgorithm;
 
@@ -105,11 +112,8 @@ public final class HashChainBuilder {
     /** Maximum index a tree node can have. */
     private int maxIndex;
 
-    /** Used for serializing XML objects. */
-    private Marshaller marshaller;
-
-    /** Factory for creating XML objects. */
-    private ObjectFactory objectFactory = new ObjectFactory();
+    /** Reusable buffer for serializing XML objects. */
+    private final StringBuilder xml = new StringBuilder();
 
     /**
      * Constructs a hash chain builder.
@@ -121,10 +125,6 @@ public final class HashChainBuilder {
      */
     public HashChainBuilder(DigestAlgorithm hashAlgorithm) throws Exception {
         this.hashAlgorithm = hashAlgorithm;
-
-        marshaller = jaxbCtx.createMarshaller();
-        // Format the XML, good for debugging.
-        marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, Boolean.TRUE);
     }
 
     /**
@@ -213,13 +213,17 @@ public final class HashChainBuilder {
                             + "without attachments.");
         }
 
-        HashChainResultType result = new HashChainResultType();
+        xml.setLength(0);
+        xml.append(XML_DECLARATION).append("<ns2:HashChainResult URI=\"");
+        appendEscaped(hashChainFileName + "#" + STEP + "0");
+        xml.append('"').append(NAMESPACE_DECLARATIONS).append(">\n");
+
+        digestMethod(1, "DigestMethod");
+        digestValue(1, getTreeTop());
 
-        result.setDigestValue(getTreeTop());
-        result.setDigestMethod(digestMethod());
-        result.setURI(hashChainFileName + "#" + STEP + "0");
+        xml.append("</ns2:HashChainResult>\n");
 
-        return elementToString(objectFactory.createHashChainResult(result));
+        return xml.toString();
     }
 
     /**
@@ -229,6 +233,29 @@ public final class HashChainBuilder {
      * @throws Exception in case of any errors
      */
     public String[] getHashChains(String dataFileName) throws Exception {
+        HashChains hashChains = getHashChainSequence(dataFileName);
+
+        if (hashChains == null) {
+            return null;
+        }
+
+        String[] ret = new String[hashChains.size()];
+
+        for (int i = 0; i < ret.length; ++i) {
+            ret[i] = hashChains.get(i);
+        }
+
+        return ret;
+    }
+
+    /**
+     * Returns XML-encoded hash chains for the input data items, rendered
+     * on demand. The returned sequence shares the serialization buffer of
+     * this builder and must not be used concurrently.
+     * @param dataFileName name of the file containing data input items
+     * @return hash chain sequence or null, if the tree has no inputs
+     */
+    public HashChains getHashChainSequence(String dataFileName) {
         if (nodes == null) {
             throw new IllegalStateException("Tree must be finished");
         }
@@ -249,18 +276,18 @@ public final class HashChainBuilder {
                     "dataRefFileName must not be null");
         }
 
-        String[] ret = new String[inputs.size()];
-
-        if (inputs.size() > 1) {
-            for (int i = 0; i < inputs.size(); ++i) {
-                ret[i] = makeHashChain(i);
+        return new HashChains() {
+            @Override
+            public int size() {
+                return inputs.size();
             }
-        } else {
-            // Special case for one input.
-            ret[0] = makeSingleInputHashChain();
-        }
 
-        return ret;
+            @Override
+            public String get(int index) {
+                // Special case for one input.
+                return inputs.size() > 1 ? makeHashChain(index) : makeSingleInputHashChain();
+            }
+        };
     }
 
     /**
@@ -405,11 +432,10 @@ public final class HashChainBuilder {
     /**
      * Returns XML-encoded hash chain for a n-th input data item.
      */
-    private String makeHashChain(int itemIndex) throws Exception {
+    private String makeHashChain(int itemIndex) {
         LOG.trace("makeHashChain({})", itemIndex);
 
-        HashChainType hashChain = new HashChainType();
-        hashChain.setDefaultDigestMethod(digestMethod());
+        startHashChain();
 
         // Hash step count is used to generate references.
         int stepCount = 0;
@@ -438,35 +464,28 @@ public final class HashChainBuilder {
                 --currentLevel;
             }
 
-            // For the other node, we always use hash value.
-            AbstractValueType otherData = hashValue(getDeep(otherChildIdx));
-            AbstractValueType myData;
-
             // If the child is leaf node and there are no attachments,
             // use the data ref. Otherwise use the StepRef.
-            if (isLeaf(myChildIdx) && !multiparts.containsKey(itemIndex)) {
-                // Plain data ref.
-                myData = dataRef(get(myChildIdx));
-            } else {
-                // Non-leaf nodes refer to other hash steps.
-                myData = stepRef(stepCount + 1);
+            boolean useDataRef = isLeaf(myChildIdx) && !multiparts.containsKey(itemIndex);
+
+            // Construct the hash step, the data items are written
+            // in the order of their direction.
+            startHashStep(stepCount);
+
+            for (int direction = 0; direction < 2; ++direction) {
+                if (direction != myDirection) {
+                    // For the other node, we always use hash value.
+                    hashValue(getDeep(otherChildIdx));
+                } else if (useDataRef) {
+                    // Plain data ref.
+                    dataRef(dataRefFileName, get(myChildIdx));
+                } else {
+                    // Non-leaf nodes refer to other hash steps.
+                    stepRef(stepCount + 1);
+                }
             }
 
-            // Construct the hash step.
-            HashStepType hashStep = new HashStepType();
-            hashStep.setId(STEP + stepCount);
-            // Create two elements.
-            hashStep.getHashValueOrStepRefOrDataRef().add(null);
-            hashStep.getHashValueOrStepRefOrDataRef().add(null);
-
-            // Set the data items.
-            hashStep.getHashValueOrStepRefOrDataRef().set(
-                    myDirection, myData);
-            hashStep.getHashValueOrStepRefOrDataRef().set(
-                    1 - myDirection, otherData);
-
-            // Add to chain
-            hashChain.getHashStep().add(hashStep);
+            endHashStep();
 
             // Update state variables.
             ++stepCount;
@@ -478,99 +497,133 @@ public final class HashChainBuilder {
         // step that references all the individual parts.
         if (multiparts.containsKey(itemIndex)) {
             LOG.trace("Adding attachments");
-            hashChain.getHashStep().add(
-                    multipartStep(multiparts.get(itemIndex), stepCount));
+            multipartStep(multiparts.get(itemIndex), stepCount);
         }
 
-        return elementToString(objectFactory.createHashChain(hashChain));
-    }
-
-    /**
-     * Creates reference to input data.
-     */
-    private DataRefType dataRef(byte[] digest) {
-        return dataRef(dataRefFileName, digest);
-    }
-
-    /**
-     * Creates reference to input data with given file name.
-     */
-    private static DataRefType dataRef(String fileName, byte[] digest) {
-        DataRefType dataRef = new DataRefType();
-        dataRef.setURI(fileName);
-        dataRef.setDigestValue(digest);
-        return dataRef;
-    }
-
-    /**
-     * Creates reference to another hash step.
-     */
-    private static StepRefType stepRef(int stepCount) {
-        StepRefType stepRef = new StepRefType();
-        stepRef.setURI("#" + STEP + stepCount);
-        return stepRef;
-    }
-
-    /**
-     * Creates a concrete hash value.
-     */
-    private static HashValueType hashValue(byte[] data) {
-        HashValueType hashValue = new HashValueType();
-        hashValue.setDigestValue(data);
-        return hashValue;
+        return endHashChain();
     }
 
     /**
      * Makes hash chain for special case of inputs.size() == 1.
      */
-    private String makeSingleInputHashChain() throws Exception {
+    private String makeSingleInputHashChain() {
         LOG.trace("makeSingleInputHashChain()");
 
-        HashChainType hashChain = new HashChainType();
-        hashChain.setDefaultDigestMethod(digestMethod());
+        startHashChain();
 
         // This is a multipart input. Add single step for all
         // the input parts
-        hashChain.getHashStep().add(multipartStep(multiparts.get(0), 0));
+        multipartStep(multiparts.get(0), 0);
 
-        return elementToString(objectFactory.createHashChain(hashChain));
+        return endHashChain();
     }
 
-    private HashStepType multipartStep(byte[][] inputSet, int stepCount) {
-        HashStepType ret = new HashStepType();
-        ret.setId(STEP + stepCount);
+    private void multipartStep(byte[][] inputSet, int stepCount) {
+        startHashStep(stepCount);
 
         for (int i = 0; i < inputSet.length; ++i) {
             if (i == 0) {
                 // The first input is message
-                ret.getHashValueOrStepRefOrDataRef().add(dataRef(inputSet[i]));
+                dataRef(dataRefFileName, inputSet[i]);
             } else {
                 // All the other inputs are attachments, starting from 1.
-                ret.getHashValueOrStepRefOrDataRef().add(
-                        dataRef(attachment(i), inputSet[i]));
+                dataRef(attachment(i), inputSet[i]);
             }
         }
 
-        return ret;
+        endHashStep();
     }
 
     /**
-     * Creates a DigestMethod element, based on the current hash algorithm.
+     * Starts the HashChain element with the DefaultDigestMethod, based on
+     * the current hash algorithm.
      */
-    private DigestMethodType digestMethod() {
-        DigestMethodType digestMethod = new DigestMethodType();
-        digestMethod.setAlgorithm(hashAlgorithm.uri());
-        return digestMethod;
+    private void startHashChain() {
+        xml.setLength(0);
+        xml.append(XML_DECLARATION).append("<ns2:HashChain").append(NAMESPACE_DECLARATIONS).append(">\n");
+
+        digestMethod(1, "ns2:DefaultDigestMethod");
+    }
+
+    private String endHashChain() {
+        xml.append("</ns2:HashChain>\n");
+
+        return xml.toString();
+    }
+
+    private void startHashStep(int stepCount) {
+        xml.append(INDENT).append("<ns2:HashStep id=\"").append(STEP).append(stepCount).append("\">\n");
+    }
+
+    private void endHashStep() {
+        xml.append(INDENT).append("</ns2:HashStep>\n");
     }
 
     /**
-     * Serializes the given XML element to a string.
+     * Writes reference to input data with given file name.
      */
-    private <T> String elementToString(JAXBElement<T> element)
-            throws Exception {
-        StringWriter writer = new StringWriter();
-        marshaller.marshal(element, writer);
-        return writer.toString();
+    private void dataRef(String fileName, byte[] digest) {
+        xml.append(INDENT).append(INDENT).append("<ns2:DataRef URI=\"");
+        appendEscaped(fileName);
+        xml.append("\">\n");
+
+        digestValue(3, digest);
+
+        xml.append(INDENT).append(INDENT).append("</ns2:DataRef>\n");
+    }
+
+    /**
+     * Writes reference to another hash step.
+     */
+    private void stepRef(int stepCount) {
+        xml.append(INDENT).append(INDENT).append("<ns2:StepRef URI=\"#").append(STEP).append(stepCount)
+                .append("\"/>\n");
+    }
+
+    /**
+     * Writes a concrete hash value.
+     */
+    private void hashValue(byte[] data) {
+        xml.append(INDENT).append(INDENT).append("<ns2:HashValue>\n");
+
+        digestValue(3, data);
+
+        xml.append(INDENT).append(INDENT).append("</ns2:HashValue>\n");
+    }
+
+    /**
+     * Writes a digest method element, based on the current hash algorithm.
+     */
+    private void digestMethod(int depth, String elementName) {
+        indent(depth);
+        xml.append('<').append(elementName).append(" Algorithm=\"");
+        appendEscaped(hashAlgorithm.uri());
+        xml.append("\"/>\n");
+    }
+
+    private void digestValue(int depth, byte[] digest) {
+        indent(depth);
+        xml.append("<DigestValue>").append(encodeBase64(digest)).append("</DigestValue>\n");
+    }
+
+    private void indent(int depth) {
+        for (int i = 0; i < depth; ++i) {
+            xml.append(INDENT);
+        }
+    }
+
+    private void appendEscaped(String value) {
+        for (int i = 0; i < value.length(); ++i) {
+            char c = value.charAt(i);
+
+            switch (c) {
+                case '&' -> xml.append("&amp;");
+                case '<' -> xml.append("&lt;");
+                case '>' -> xml.append("&gt;");
+                case '"' -> xml.append("&quot;");
+                default -> xml.append(c);
+            }
+        }
     }
 
     /**
@@ -623,12 +676,4 @@ public final class HashChainBuilder {
     private static int pow2(int n) {
         return 1 << n;
     }
-
-    static {
-        try {
-            jaxbCtx = JAXBContext.newInstance(ObjectFactory.class);
-        } catch (Exception ex) {
-            LOG.error("Failed to initialize JAXB context", ex);
-        }
-    }
 }
@@ -66,7 +66,9 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Stack;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.function.Consumer;
 
 import static ee.ria.xroad.common.ErrorCodes.X_DUPLICATE_HEADER_FIELD;
@@ -195,27 +197,38 @@ public class SaxSoapParserImpl implements SoapParser {
     private Soap parseMessage(InputStream is, String mimeType, String contentType, String charset) throws Exception {
         log.trace("parseMessage({}, {})", mimeType, charset);
 
-        ByteArrayOutputStream rawXml = new ByteArrayOutputStream();
-        ByteArrayOutputStream processedXml = new ByteArrayOutputStream();
+        final boolean processedXmlRequired = isProcessedXmlRequired();
 
-        InputStream proxyStream = excludeUtf8Bom(contentType, new TeeInputStream(is, rawXml));
-        Writer outputWriter = new OutputStreamWriter(processedXml, charset);
-        XRoadSoapHandler handler = handleSoap(outputWriter, proxyStream);
-
-        CodedException fault = handler.getFault();
-        if (fault != null) {
-            return createSoapFault(charset, rawXml, fault);
-        }
+        PooledByteArrayOutputStream rawXml = new PooledByteArrayOutputStream();
+        PooledByteArrayOutputStream processedXml = processedXmlRequired ? new PooledByteArrayOutputStream() : null;
+        try {
+            InputStream proxyStream = excludeUtf8Bom(contentType, new TeeInputStream(is, rawXml));
+            // the handler only writes to the output if processed XML is required
+            Writer outputWriter = processedXmlRequired
+                    ? new BufferedWriter(new OutputStreamWriter(processedXml, charset))
+                    : Writer.nullWriter();
+            XRoadSoapHandler handler = handleSoap(outputWriter, proxyStream);
+
+            CodedException fault = handler.getFault();
+            if (fault != null) {
+                return createSoapFault(charset, rawXml, fault);
+            }
 
-        byte[] xmlBytes = isProcessedXmlRequired() ? processedXml.toByteArray() : rawXml.toByteArray();
+            byte[] xmlBytes = processedXmlRequired ? processedXml.toByteArray() : rawXml.toByteArray();
 
-        return createSoapMessage(contentType, charset, handler, xmlBytes);
+            return createSoapMessage(contentType, charset, handler, xmlBytes);
+        } finally {
+            rawXml.release();
+            if (processedXml != null) {
+                processedXml.release();
+            }
+        }
     }
 
     private XRoadSoapHandler handleSoap(Writer writer, InputStream inputStream)
             throws Exception {
-        try (BufferedWriter out = new BufferedWriter(writer)) {
-            XRoadSoapHandler handler = new XRoadSoapHandler(out);
+        try {
+            XRoadSoapHandler handler = new XRoadSoapHandler(writer);
             SAXParser saxParser = PARSER_FACTORY.newSAXParser();
             XMLReader xmlReader = saxParser.getXMLReader();
             xmlReader.setProperty(LEXICAL_HANDLER_PROPERTY, handler);
@@ -224,6 +237,8 @@ public class SaxSoapParserImpl implements SoapParser {
             xmlReader.setFeature("http://apache.org/xml/features/scanner/notify-builtin-refs", true);
 
             saxParser.parse(inputStream, handler);
+            // flush, not close, the buffers are copied and released by the caller
+            writer.flush();
             return handler;
         } catch (SAXException ex) {
             throw new SOAPException(ex);
@@ -307,7 +322,7 @@ public class SaxSoapParserImpl implements SoapParser {
 
         private static final String XML_VERSION_ENCODING = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>";
 
-        private final BufferedWriter out;
+        private final Writer out;
 
         private char[] xmlEntity;
 
@@ -465,13 +480,13 @@ public class SaxSoapParserImpl implements SoapParser {
 
         @SneakyThrows
         private void writeNewLine() {
-            out.newLine();
+            out.write(System.lineSeparator());
         }
 
         @SneakyThrows
         private void writeXmlDeclaration() {
             out.append(XML_VERSION_ENCODING);
-            out.newLine();
+            out.write(System.lineSeparator());
         }
 
         private String findNamespacePrefix(String qName) {
@@ -1087,4 +1102,51 @@ public class SaxSoapParserImpl implements SoapParser {
         }
 
     }
+
+    /**
+     * Byte array output stream whose backing array is taken from a small shared pool and returned to it by
+     * {@link #release()}, so that parsing a message allocates only the exact-size copy returned by
+     * {@link #toByteArray()}. Closing the stream does not release the array. The used part of a released array is
+     * cleared, so that message content does not stay in the pool, and arrays that have grown larger than
+     * {@link #MAX_POOLED_SIZE} are left to the garbage collector.
+     */
+    static final class PooledByteArrayOutputStream extends ByteArrayOutputStream {
+        private static final int INITIAL_SIZE = 16 * 1024;
+        private static final int MAX_POOLED_SIZE = 1024 * 1024;
+        private static final int POOL_CAPACITY = 64;
+
+        private static final Queue<byte[]> POOL = new ArrayBlockingQueue<>(POOL_CAPACITY);
+
+        private boolean released;
+
+        PooledByteArrayOutputStream() {
+            super(0);
+            byte[] pooled = POOL.poll();
+            buf = pooled != null ? pooled : new byte[INITIAL_SIZE];
+        }
+
+        /**
+         * Returns the backing array to the pool. The stream must not be used afterwards, calling this again has
+         * no effect.
+         */
+        synchronized void release() {
+            if (released) {
+                return;
+            }
+            released = true;
+
+            byte[] array = buf;
+            int used = count;
+            buf = new byte[0];
+            count = 0;
+            if (array.length <= MAX_POOLED_SIZE) {
+                Arrays.fill(array, 0, used, (byte) 0);
+                POOL.offer(array);
+            }
+        }
+
+        synchronized boolean isReleased() {
+            return released;
+        }
+    }
 }
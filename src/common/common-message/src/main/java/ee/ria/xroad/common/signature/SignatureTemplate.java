@@ -0,0 +1,171 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.signature;
+
+import ee.ria.xroad.common.crypto.identifier.DigestAlgorithm;
+
+import lombok.Getter;
+import org.bouncycastle.cert.ocsp.OCSPResp;
+import org.bouncycastle.operator.OperatorCreationException;
+
+import java.io.IOException;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static ee.ria.xroad.common.crypto.Digests.calculateDigest;
+import static ee.ria.xroad.common.util.EncoderUtils.encodeBase64;
+
+/**
+ * Holds the pre-rendered, signature-independent values of a XAdES signature: certificate encodings,
+ * digests, issuer names and serial numbers, and encoded OCSP responses. A template is created once per
+ * signing certificate, certificate chain and OCSP responses, and reused for all signatures made with them.
+ */
+public final class SignatureTemplate {
+
+    private final X509Certificate signingCert;
+    private final List<X509Certificate> extraCertificates;
+    private final List<OCSPResp> ocspResponses;
+
+    @Getter
+    private final CertValues signingCertValues;
+
+    @Getter
+    private final List<CertValues> extraCertValues;
+
+    @Getter
+    private final List<String> encodedOcspResponses;
+
+    /**
+     * Creates a new template for the given signing certificate, extra certificates and OCSP responses.
+     * @param signingCert the signing certificate
+     * @param extraCertificates the extra certificates included in the signature
+     * @param ocspResponses the OCSP responses included in the signature
+     * @throws CertificateEncodingException if a certificate cannot be encoded
+     * @throws IOException if an OCSP response cannot be encoded
+     */
+    public SignatureTemplate(X509Certificate signingCert, List<X509Certificate> extraCertificates,
+            List<OCSPResp> ocspResponses) throws CertificateEncodingException, IOException {
+        this.signingCert = signingCert;
+        this.extraCertificates = List.copyOf(extraCertificates);
+        this.ocspResponses = List.copyOf(ocspResponses);
+
+        this.signingCertValues = new CertValues(signingCert);
+
+        List<CertValues> certValues = new ArrayList<>(extraCertificates.size());
+
+        for (X509Certificate cert : extraCertificates) {
+            certValues.add(new CertValues(cert));
+        }
+
+        this.extraCertValues = Collections.unmodifiableList(certValues);
+
+        List<String> encodedResponses = new ArrayList<>(ocspResponses.size());
+
+        for (OCSPResp ocspResponse : ocspResponses) {
+            encodedResponses.add(encodeBase64(ocspResponse.getEncoded()));
+        }
+
+        this.encodedOcspResponses = Collections.unmodifiableList(encodedResponses);
+    }
+
+    /**
+     * @param cert the signing certificate
+     * @param certificates the extra certificates
+     * @param responses the OCSP responses
+     * @return true if this template was created for the given signing certificate, extra certificates
+     * and OCSP responses
+     */
+    public boolean matches(X509Certificate cert, List<X509Certificate> certificates, List<OCSPResp> responses) {
+        return same(signingCert, cert) && same(extraCertificates, certificates) && same(ocspResponses, responses);
+    }
+
+    private static boolean same(List<?> expected, List<?> actual) {
+        if (expected.size() != actual.size()) {
+            return false;
+        }
+
+        for (int i = 0; i < expected.size(); i++) {
+            if (!same(expected.get(i), actual.get(i))) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static boolean same(Object expected, Object actual) {
+        return expected == actual || Objects.equals(expected, actual);
+    }
+
+    /**
+     * Pre-rendered values of a single certificate.
+     */
+    public static final class CertValues {
+
+        private final byte[] encoded;
+
+        @Getter
+        private final String base64Encoded;
+
+        @Getter
+        private final String issuerName;
+
+        @Getter
+        private final String serialNumber;
+
+        private final Map<DigestAlgorithm, String> digests = new ConcurrentHashMap<>(2);
+
+        CertValues(X509Certificate cert) throws CertificateEncodingException {
+            this.encoded = cert.getEncoded();
+            this.base64Encoded = encodeBase64(encoded);
+            this.issuerName = cert.getIssuerX500Principal().getName();
+            this.serialNumber = cert.getSerialNumber().toString();
+        }
+
+        /**
+         * @param algorithm the digest algorithm
+         * @return base64 encoded digest of the certificate, calculated once per algorithm
+         * @throws OperatorCreationException if the digest calculator cannot be created
+         * @throws IOException if the digest cannot be calculated
+         */
+        public String getDigest(DigestAlgorithm algorithm) throws OperatorCreationException, IOException {
+            String digest = digests.get(algorithm);
+
+            if (digest == null) {
+                digest = encodeBase64(calculateDigest(algorithm, encoded));
+                digests.putIfAbsent(algorithm, digest);
+            }
+
+            return digest;
+        }
+    }
+}
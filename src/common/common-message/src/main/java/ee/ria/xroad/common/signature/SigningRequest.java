@@ -25,8 +25,11 @@
  */
 package ee.ria.xroad.common.signature;
 
+import lombok.RequiredArgsConstructor;
+import lombok.Setter;
 import lombok.ToString;
 import lombok.Value;
+import lombok.experimental.NonFinal;
 import org.bouncycastle.cert.ocsp.OCSPResp;
 
 import java.security.cert.X509Certificate;
@@ -37,7 +40,8 @@ import java.util.List;
  * Encapsulates contents of a signing request.
  */
 @Value
-@ToString(exclude = {"signingCert", "extraCertificates", "ocspResponses"})
+@RequiredArgsConstructor
+@ToString(exclude = {"signingCert", "extraCertificates", "ocspResponses", "template"})
 public final class SigningRequest {
 
     private final X509Certificate signingCert;
@@ -47,6 +51,11 @@ public final class SigningRequest {
     private final List<X509Certificate> extraCertificates = new ArrayList<>();
     private final List<OCSPResp> ocspResponses = new ArrayList<>();
 
+    /** Optional pre-rendered values of the signing certificate, extra certificates and OCSP responses. */
+    @NonFinal
+    @Setter
+    private SignatureTemplate template;
+
     /**
      * @return true if signing request is for a single message
      */
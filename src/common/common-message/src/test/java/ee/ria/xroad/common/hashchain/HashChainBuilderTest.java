@@ -29,12 +29,14 @@ import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 
 import static ee.ria.xroad.common.crypto.Digests.calculateDigest;
 import static ee.ria.xroad.common.crypto.identifier.DigestAlgorithm.SHA256;
 import static ee.ria.xroad.common.util.EncoderUtils.encodeBase64;
 import static ee.ria.xroad.common.util.EncoderUtils.encodeHex;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNull;
@@ -130,6 +132,75 @@ public class HashChainBuilderTest {
         printChains(builder);
     }
 
+    /**
+     * Test to ensure the hash chain XML is identical to the reference documents.
+     * @throws Exception in case of unexpected errors
+     */
+    @Test
+    public void hashChainXml() throws Exception {
+        HashChainBuilder builder = new HashChainBuilder(SHA256);
+        add(builder, "one");
+        add(builder, "two");
+        add(builder, "three");
+        add(builder, "four");
+
+        builder.finishBuilding();
+
+        assertEquals(load("hc-verifier1-hashchainresult.xml"), builder.getHashChainResult("/hashchain.xml"));
+
+        HashChains hashChains = builder.getHashChainSequence("/message.xml");
+
+        assertEquals(4, hashChains.size());
+        assertEquals(load("hc-verifier1-hashchain.xml"), hashChains.get(1));
+    }
+
+    /**
+     * Test to ensure the hash chain XML is identical to what the JAXB marshaller produced, for complete and
+     * incomplete trees, with and without attachments.
+     * @throws Exception in case of unexpected errors
+     */
+    @Test
+    public void hashChainXmlMatchesJaxbOutput() throws Exception {
+        for (int treeSize = 1; treeSize < 40; ++treeSize) {
+            HashChainBuilder builder = new HashChainBuilder(SHA256);
+            JaxbHashChainBuilder reference = new JaxbHashChainBuilder(SHA256);
+            for (int i = 0; i < treeSize; ++i) {
+                byte[][] hashes = inputHashes(i, treeSize == 1 || i % 3 == 0 ? 2 + i % 4 : 1);
+                builder.addInputHash(hashes);
+                reference.addInputHash(hashes);
+            }
+            builder.finishBuilding();
+            reference.finishBuilding();
+
+            String message = "size = " + treeSize;
+            assertEquals(message, reference.getHashChainResult("/hashchain.xml"),
+                    builder.getHashChainResult("/hashchain.xml"));
+
+            String[] expected = reference.getHashChains("/message.xml");
+            HashChains hashChains = builder.getHashChainSequence("/message.xml");
+            assertEquals(message, expected.length, hashChains.size());
+            for (int i = 0; i < expected.length; ++i) {
+                assertEquals(message + ", i = " + i, expected[i], hashChains.get(i));
+            }
+            assertArrayEquals(message, expected, builder.getHashChains("/message.xml"));
+        }
+    }
+
+    private static byte[][] inputHashes(int input, int parts) throws Exception {
+        byte[][] hashes = new byte[parts][];
+        for (int part = 0; part < parts; ++part) {
+            hashes[part] = calculateDigest(SHA256,
+                    (input + "/" + part).getBytes(StandardCharsets.UTF_8));
+        }
+        return hashes;
+    }
+
+    private static String load(String fileName) throws Exception {
+        try (InputStream is = Thread.currentThread().getContextClassLoader().getResourceAsStream(fileName)) {
+            return new String(is.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
     private static void printChains(HashChainBuilder builder) throws Exception {
         String[] chains = builder.getHashChains("foo.xml");
         LOG.debug("Hash chains:");
@@ -41,6 +41,7 @@ import javax.xml.namespace.QName;
 
 import java.io.ByteArrayInputStream;
 import java.io.FileInputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 
 import static ee.ria.xroad.common.ErrorCodes.X_DUPLICATE_HEADER_FIELD;
@@ -60,6 +61,7 @@ import static ee.ria.xroad.common.message.SoapMessageTestUtil.fileToBytes;
 import static ee.ria.xroad.common.message.SoapMessageTestUtil.messageToBytes;
 import static ee.ria.xroad.common.message.SoapUtils.getChildElements;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
@@ -90,6 +92,77 @@ public class SoapMessageTest {
         assertEquals("1234567890", message.getQueryId());
     }
 
+    /**
+     * Tests that the streaming parser returns raw message bytes that are not shared with later parses.
+     *
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void saxParserReturnsUnsharedMessageBytes() throws Exception {
+        byte[] simple = fileToBytes("simple.query");
+        byte[] rpc = fileToBytes("simple-rpc.query");
+
+        SaxSoapParserImpl parser = new SaxSoapParserImpl();
+        SoapMessageImpl first = (SoapMessageImpl) parser.parse(MimeTypes.TEXT_XML_UTF8,
+                new ByteArrayInputStream(simple));
+        parser.parse(MimeTypes.TEXT_XML_UTF8, new ByteArrayInputStream(rpc));
+
+        assertTrue(Arrays.areEqual(simple, first.getBytes()));
+    }
+
+    /**
+     * Tests that the streaming parser returns the complete re-encoded XML when processed XML is required, and that
+     * the bytes are not shared with later parses.
+     *
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void saxParserReturnsProcessedXml() throws Exception {
+        byte[] simple = fileToBytes("simple.query");
+        byte[] rpc = fileToBytes("simple-rpc.query");
+
+        SaxSoapParserImpl parser = new SaxSoapParserImpl() {
+            @Override
+            protected boolean isProcessedXmlRequired() {
+                return true;
+            }
+        };
+        SoapMessageImpl processed = (SoapMessageImpl) parser.parse(MimeTypes.TEXT_XML_UTF8,
+                new ByteArrayInputStream(simple));
+        byte[] processedBytes = processed.getBytes().clone();
+        parser.parse(MimeTypes.TEXT_XML_UTF8, new ByteArrayInputStream(rpc));
+
+        assertTrue(processedBytes.length > 0);
+        assertTrue(new String(processedBytes, StandardCharsets.UTF_8).startsWith("<?xml"));
+        assertTrue(Arrays.areEqual(processedBytes, processed.getBytes()));
+
+        SoapMessageImpl reparsed = createSoapMessageFromBytes(processedBytes);
+        SoapMessageImpl original = createRequest("simple.query");
+        assertEquals(original.getQueryId(), reparsed.getQueryId());
+        assertEquals(original.getService(), reparsed.getService());
+        assertEquals(original.getClient(), reparsed.getClient());
+        assertEquals(original.getUserId(), reparsed.getUserId());
+    }
+
+    /**
+     * Tests that closing a pooled buffer keeps its content and that releasing it more than once is harmless.
+     */
+    @Test
+    public void pooledBufferIsReleasedOnlyExplicitly() throws Exception {
+        SaxSoapParserImpl.PooledByteArrayOutputStream buffer = new SaxSoapParserImpl.PooledByteArrayOutputStream();
+        buffer.write(new byte[]{1, 2, 3});
+        buffer.close();
+
+        assertFalse(buffer.isReleased());
+        assertTrue(Arrays.areEqual(new byte[]{1, 2, 3}, buffer.toByteArray()));
+
+        buffer.release();
+        buffer.release();
+
+        assertTrue(buffer.isReleased());
+        assertEquals(0, buffer.size());
+    }
+
     /**
      * Test that reading a normal RPC encoded request message is successful
      * and that header and body are correctly parsed.
@@ -178,6 +251,10 @@ public class SoapMessageTest {
         createSoapMessage("faulty-header.query");
     }
 
+    private static SoapMessageImpl createSoapMessageFromBytes(byte[] bytes) throws Exception {
+        return (SoapMessageImpl) createSoapMessage(bytes);
+    }
+
     /**
      * Tests that userId header field is optional.
      *
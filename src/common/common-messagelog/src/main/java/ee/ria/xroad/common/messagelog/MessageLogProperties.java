@@ -56,10 +56,21 @@ public final class MessageLogProperties {
 
     private static final int DEFAULT_TIMESTAMPER_CLIENT_READ_TIMEOUT = 60000;
 
+    private static final int DEFAULT_TIMESTAMPER_CLIENT_HEDGE_PERCENTILE = 95;
+
+    private static final int DEFAULT_TIMESTAMPER_CLIENT_HEDGE_DELAY = 2000;
+
     private static final int DEFAULT_TIMESTAMP_RETRY_DELAY = 60;
 
+    private static final int DEFAULT_WRITE_BATCH_SIZE = 1;
+    private static final int DEFAULT_WRITE_BATCH_MAX_LATENCY = 5;
+    private static final int DEFAULT_WRITE_QUEUE_SIZE = 1000;
+    private static final int DEFAULT_WRITE_TIMEOUT = 60000;
+
     private static final int DEFAULT_ARCHIVE_TRANSACTION_BATCH_SIZE = 10000;
+    private static final int DEFAULT_ARCHIVE_PARALLELISM = 1;
     private static final int DEFAULT_CLEAN_TRANSACTION_BATCH_SIZE = 10000;
+    private static final int DEFAULT_PARTITION_INTERVAL = 7;
 
     private static final long DEFAULT_MAX_LOGGABLE_MESSAGE_BODY_SIZE = 10 * 1024 * 1024;
     private static final long MAX_LOGGABLE_MESSAGE_BODY_SIZE_LIMIT = 1024 * 1024 * 1024;
@@ -76,6 +87,17 @@ public final class MessageLogProperties {
      */
     public static final String TIMESTAMPER_CLIENT_READ_TIMEOUT = PREFIX + "timestamper-client-read-timeout";
 
+    /**
+     * Property name of the response latency percentile of a time-stamping provider after which the request is
+     * also sent to the next provider.
+     */
+    public static final String TIMESTAMPER_CLIENT_HEDGE_PERCENTILE = PREFIX + "timestamper-client-hedge-percentile";
+
+    /**
+     * Property name of the timestamper client hedge delay (milliseconds).
+     */
+    public static final String TIMESTAMPER_CLIENT_HEDGE_DELAY = PREFIX + "timestamper-client-hedge-delay";
+
     public static final String TIMESTAMP_IMMEDIATELY = PREFIX + "timestamp-immediately";
 
     public static final String TIMESTAMP_RECORDS_LIMIT = PREFIX + "timestamp-records-limit";
@@ -85,6 +107,26 @@ public final class MessageLogProperties {
      */
     public static final String TIMESTAMP_RETRY_DELAY = PREFIX + "timestamp-retry-delay";
 
+    /**
+     * Property name of the maximum number of message records written to the database in one transaction.
+     */
+    public static final String WRITE_BATCH_SIZE = PREFIX + "write-batch-size";
+
+    /**
+     * Property name of the maximum time a message record waits for its write batch to fill up (milliseconds).
+     */
+    public static final String WRITE_BATCH_MAX_LATENCY = PREFIX + "write-batch-max-latency";
+
+    /**
+     * Property name of the maximum number of message records waiting to be written.
+     */
+    public static final String WRITE_QUEUE_SIZE = PREFIX + "write-queue-size";
+
+    /**
+     * Property name of the maximum time logging waits for its message record to be written (milliseconds).
+     */
+    public static final String WRITE_TIMEOUT = PREFIX + "write-timeout";
+
     public static final String ACCEPTABLE_TIMESTAMP_FAILURE_PERIOD = PREFIX + "acceptable-timestamp-failure-period";
 
     public static final String KEEP_RECORDS_FOR = PREFIX + "keep-records-for";
@@ -97,10 +139,14 @@ public final class MessageLogProperties {
 
     public static final String ARCHIVE_TRANSACTION_BATCH = PREFIX + "archive-transaction-batch";
 
+    public static final String ARCHIVE_PARALLELISM = PREFIX + "archive-parallelism";
+
     public static final String CLEAN_INTERVAL = PREFIX + "clean-interval";
 
     private static final String CLEAN_TRANSACTION_BATCH = "clean-transaction-batch";
 
+    public static final String PARTITION_INTERVAL = PREFIX + "partition-interval";
+
     public static final String HASH_ALGO_ID = PREFIX + "hash-algo-id";
 
     public static final String ARCHIVE_TRANSFER_COMMAND = PREFIX + "archive-transfer-command";
@@ -162,6 +208,8 @@ public final class MessageLogProperties {
 
     public static final String ARCHIVE_DEFAULT_ENCRYPTION_KEY = PREFIX + "archive-default-encryption-key";
 
+    public static final String ARCHIVE_ENCRYPTION_IN_PROCESS = PREFIX + "archive-encryption-in-process";
+
     public static final String MESSAGELOG_ENCRYPTION_ENABLED = PREFIX + "messagelog-encryption-enabled";
 
     public static final String MESSAGELOG_KEYSTORE = PREFIX + "messagelog-keystore";
@@ -198,6 +246,28 @@ public final class MessageLogProperties {
                 DEFAULT_TIMESTAMPER_CLIENT_READ_TIMEOUT);
     }
 
+    /**
+     * @return the response latency percentile of a time-stamping provider after which a pending time-stamp
+     * request is also sent to the next provider. Zero disables hedging, the providers are then tried one after
+     * another. '95' by default.
+     */
+    public static int getTimestamperClientHedgePercentile() {
+        final int value = getInt(System.getProperty(TIMESTAMPER_CLIENT_HEDGE_PERCENTILE),
+                DEFAULT_TIMESTAMPER_CLIENT_HEDGE_PERCENTILE);
+        if (value < 0 || value > 100) {
+            throw new IllegalArgumentException(TIMESTAMPER_CLIENT_HEDGE_PERCENTILE + " must be between 0 and 100");
+        }
+        return value;
+    }
+
+    /**
+     * @return the time in milliseconds after which a pending time-stamp request is also sent to the next provider
+     * while too few response latencies of the provider have been recorded. '2000' by default.
+     */
+    public static int getTimestamperClientHedgeDelay() {
+        return getInt(System.getProperty(TIMESTAMPER_CLIENT_HEDGE_DELAY), DEFAULT_TIMESTAMPER_CLIENT_HEDGE_DELAY);
+    }
+
     /**
      * @return the timestamp retry delay in seconds. A retry delay of zero is
      * interpreted as retry delay is disabled. '60' by default.
@@ -222,6 +292,39 @@ public final class MessageLogProperties {
         return getInt(System.getProperty(TIMESTAMP_RECORDS_LIMIT), DEFAULT_TIMESTAMP_RECORDS_LIMIT);
     }
 
+    /**
+     * @return the maximum number of message records written to the database in one transaction. Values greater
+     * than one enable group commit, where a background writer batches the records of concurrent requests. '1' by
+     * default, meaning each record is written by the request thread in its own transaction.
+     */
+    public static int getWriteBatchSize() {
+        return getInt(System.getProperty(WRITE_BATCH_SIZE), DEFAULT_WRITE_BATCH_SIZE);
+    }
+
+    /**
+     * @return the maximum time in milliseconds a message record waits for other records to join its write batch.
+     * '5' by default.
+     */
+    public static int getWriteBatchMaxLatency() {
+        return getInt(System.getProperty(WRITE_BATCH_MAX_LATENCY), DEFAULT_WRITE_BATCH_MAX_LATENCY);
+    }
+
+    /**
+     * @return the maximum number of message records waiting to be written when group commit is enabled. Logging
+     * blocks while the queue is full. '1000' by default.
+     */
+    public static int getWriteQueueSize() {
+        return getInt(System.getProperty(WRITE_QUEUE_SIZE), DEFAULT_WRITE_QUEUE_SIZE);
+    }
+
+    /**
+     * @return the maximum time in milliseconds logging waits for its message record to be committed when group
+     * commit is enabled. A timeout of zero is interpreted as an infinite timeout. '60000' by default.
+     */
+    public static int getWriteTimeout() {
+        return getInt(System.getProperty(WRITE_TIMEOUT), DEFAULT_WRITE_TIMEOUT);
+    }
+
     /**
      * @return the time period in seconds, how long is time-stamping allowed to be failed before message log stops
      * accepting any more messages.
@@ -245,6 +348,14 @@ public final class MessageLogProperties {
         return getInt(System.getProperty(ARCHIVE_TRANSACTION_BATCH), DEFAULT_ARCHIVE_TRANSACTION_BATCH_SIZE);
     }
 
+    /**
+     * @return the number of archive groups archived concurrently. Only used when archive grouping is enabled.
+     * '1' by default.
+     */
+    public static int getArchiveParallelism() {
+        return getInt(System.getProperty(ARCHIVE_PARALLELISM), DEFAULT_ARCHIVE_PARALLELISM);
+    }
+
     /**
      * @return the time interval as Cron expression for cleaning archived records from online database.
      */
@@ -354,6 +465,17 @@ public final class MessageLogProperties {
         return Integer.getInteger(CLEAN_TRANSACTION_BATCH, DEFAULT_CLEAN_TRANSACTION_BATCH_SIZE);
     }
 
+    /**
+     * @return the time range in days covered by one partition of a partitioned (PostgreSQL) log record table.
+     */
+    public static int getPartitionIntervalDays() {
+        final int value = getInt(System.getProperty(PARTITION_INTERVAL), DEFAULT_PARTITION_INTERVAL);
+        if (value < 1) {
+            throw new IllegalArgumentException(PARTITION_INTERVAL + " must be at least 1");
+        }
+        return value;
+    }
+
     public static boolean isArchiveEncryptionEnabled() {
         return Boolean.getBoolean(ARCHIVE_ENCRYPTION_ENABLED);
     }
@@ -371,6 +493,11 @@ public final class MessageLogProperties {
         return System.getProperty(ARCHIVE_DEFAULT_ENCRYPTION_KEY);
     }
 
+    /** @return whether archives are signed and encrypted in process instead of by an external gpg process */
+    public static boolean isArchiveEncryptionInProcess() {
+        return Boolean.parseBoolean(System.getProperty(ARCHIVE_ENCRYPTION_IN_PROCESS, "true"));
+    }
+
     /** @return keystore path for messagelog encryption keys or null if one is not defined */
     public static Path getMessageLogKeyStore() {
         final String property = System.getProperty(MESSAGELOG_KEYSTORE);
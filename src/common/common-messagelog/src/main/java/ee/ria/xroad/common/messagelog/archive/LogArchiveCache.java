@@ -211,7 +211,7 @@ class LogArchiveCache implements Closeable {
         deleteArchiveArtifacts(null);
         archiveTmpFile = Files.createTempFile(workingDir, "tmp-mlog-", ".tmp");
         if (encryptionConfig.isEnabled()) {
-            outputStream = new GPGOutputStream(encryptionConfig.getGpgHomeDir(), archiveTmpFile,
+            outputStream = OpenPGPOutputStream.open(encryptionConfig.getGpgHomeDir(), archiveTmpFile,
                     encryptionConfig.getEncryptionKeys());
         } else {
             outputStream = Files.newOutputStream(archiveTmpFile);
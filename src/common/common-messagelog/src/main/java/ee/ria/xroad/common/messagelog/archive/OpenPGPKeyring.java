@@ -0,0 +1,321 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.messagelog.archive;
+
+import lombok.extern.slf4j.Slf4j;
+import org.bouncycastle.bcpg.RSAPublicBCPGKey;
+import org.bouncycastle.bcpg.sig.KeyFlags;
+import org.bouncycastle.gpg.SExprParser;
+import org.bouncycastle.gpg.keybox.KeyBlob;
+import org.bouncycastle.gpg.keybox.PublicKeyRingBlob;
+import org.bouncycastle.gpg.keybox.bc.BcKeyBox;
+import org.bouncycastle.openpgp.PGPException;
+import org.bouncycastle.openpgp.PGPPrivateKey;
+import org.bouncycastle.openpgp.PGPPublicKey;
+import org.bouncycastle.openpgp.PGPPublicKeyRing;
+import org.bouncycastle.openpgp.PGPSecretKey;
+import org.bouncycastle.openpgp.PGPSignature;
+import org.bouncycastle.openpgp.bc.BcPGPPublicKeyRingCollection;
+import org.bouncycastle.openpgp.operator.bc.BcKeyFingerprintCalculator;
+import org.bouncycastle.openpgp.operator.bc.BcPGPDigestCalculatorProvider;
+import org.bouncycastle.util.encoders.Hex;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Read-only view of the keys in a GnuPG home directory, for use by {@link OpenPGPOutputStream}.
+ * <p>
+ * Public keys are read from the keybox ({@code pubring.kbx}) or legacy ({@code pubring.gpg}) keyring, the signing
+ * key from the unprotected gpg-agent key files in {@code private-keys-v1.d}. Key lookup follows gpg: the default
+ * (signing) key is the first key in the keyring with a secret key, and recipients are resolved by fingerprint,
+ * key id or user id to the newest valid encryption capable (sub)key.
+ * <p>
+ * Loaded keyrings are cached per home directory and reloaded when the keyring files change. A keyring that can
+ * not be used is cached the same way, so that callers falling back to gpg do not re-read it for every archive.
+ */
+@Slf4j
+final class OpenPGPKeyring {
+
+    private static final String PUBRING_KBX = "pubring.kbx";
+    private static final String PUBRING_GPG = "pubring.gpg";
+    private static final String PRIVATE_KEYS_DIR = "private-keys-v1.d";
+    private static final int ENCRYPTION_FLAGS = KeyFlags.ENCRYPT_COMMS | KeyFlags.ENCRYPT_STORAGE;
+
+    private static final Map<Path, CacheEntry> CACHE = new ConcurrentHashMap<>();
+
+    private final List<PGPPublicKeyRing> publicKeyRings;
+    private final PGPPublicKeyRing defaultKeyRing;
+    private final PGPPrivateKey signingKey;
+
+    private OpenPGPKeyring(List<PGPPublicKeyRing> publicKeyRings, PGPPublicKeyRing defaultKeyRing,
+            PGPPrivateKey signingKey) {
+        this.publicKeyRings = publicKeyRings;
+        this.defaultKeyRing = defaultKeyRing;
+        this.signingKey = signingKey;
+    }
+
+    /**
+     * Returns the keyring of the given GnuPG home directory, loading it if it is not cached or has changed.
+     * If loading failed and the keyring files have not changed since, the cached failure is rethrown.
+     * @param gpgHome GnuPG home directory
+     * @return the keyring
+     * @throws IOException if the keyring can not be read or contains no usable signing key
+     */
+    static OpenPGPKeyring load(Path gpgHome) throws IOException {
+        final List<FileTime> stamp = stamp(gpgHome);
+        final CacheEntry cached = CACHE.get(gpgHome);
+        if (cached != null && cached.stamp().equals(stamp)) {
+            return cached.get();
+        }
+
+        CacheEntry entry;
+        try {
+            entry = new CacheEntry(stamp, read(gpgHome), null);
+        } catch (IOException e) {
+            log.warn("Unable to load keyring in {}, not retrying until the keyring changes: {}", gpgHome,
+                    e.getMessage());
+            entry = new CacheEntry(stamp, null, e);
+        }
+        CACHE.put(gpgHome, entry);
+        return entry.get();
+    }
+
+    /**
+     * @return the private key of the default key, used for signing
+     */
+    PGPPrivateKey getSigningKey() {
+        return signingKey;
+    }
+
+    /**
+     * @return the public key matching the signing key
+     */
+    PGPPublicKey getSigningPublicKey() {
+        return defaultKeyRing.getPublicKey();
+    }
+
+    /**
+     * Resolves the encryption keys for the given recipients.
+     * @param recipients recipient key identifiers (fingerprint, key id or user id); if empty or null,
+     * the default key is the only recipient
+     * @return encryption keys, one per recipient
+     * @throws IOException if a recipient does not resolve to a valid encryption key
+     */
+    List<PGPPublicKey> getEncryptionKeys(Set<String> recipients) throws IOException {
+        final List<PGPPublicKey> result = new ArrayList<>();
+        if (recipients == null || recipients.isEmpty()) {
+            result.add(encryptionKey(defaultKeyRing, "default key"));
+            return result;
+        }
+
+        final Set<Long> keyIds = new LinkedHashSet<>();
+        for (String recipient : recipients) {
+            final PGPPublicKey key = encryptionKey(find(recipient), recipient);
+            if (keyIds.add(key.getKeyID())) {
+                result.add(key);
+            }
+        }
+        return result;
+    }
+
+    private PGPPublicKeyRing find(String recipient) throws IOException {
+        final String spec = recipient.trim();
+        final String hex = spec.startsWith("0x") || spec.startsWith("0X") ? spec.substring(2) : spec;
+
+        if (hex.matches("(?i)[0-9a-f]{8}|[0-9a-f]{16}|[0-9a-f]{40}")) {
+            final String id = hex.toUpperCase(Locale.ROOT);
+            for (PGPPublicKeyRing ring : publicKeyRings) {
+                for (PGPPublicKey key : ring) {
+                    if (Hex.toHexString(key.getFingerprint()).toUpperCase(Locale.ROOT).endsWith(id)) {
+                        return ring;
+                    }
+                }
+            }
+        } else if (!spec.isEmpty()) {
+            final boolean exact = spec.startsWith("=");
+            final String name = exact ? spec.substring(1) : spec.toLowerCase(Locale.ROOT);
+            for (PGPPublicKeyRing ring : publicKeyRings) {
+                for (Iterator<String> it = ring.getPublicKey().getUserIDs(); it.hasNext();) {
+                    final String userId = it.next();
+                    if (exact ? userId.equals(name) : userId.toLowerCase(Locale.ROOT).contains(name)) {
+                        return ring;
+                    }
+                }
+            }
+        }
+
+        throw new IOException("No public key found for recipient " + recipient);
+    }
+
+    private static PGPPublicKey encryptionKey(PGPPublicKeyRing ring, String recipient) throws IOException {
+        PGPPublicKey result = null;
+        if (isValid(ring.getPublicKey())) {
+            for (PGPPublicKey key : ring) {
+                if (isValid(key) && isEncryptionKey(key)
+                        && (result == null || !key.getCreationTime().before(result.getCreationTime()))) {
+                    result = key;
+                }
+            }
+        }
+
+        if (result == null) {
+            throw new IOException("No valid encryption key found for recipient " + recipient);
+        }
+        return result;
+    }
+
+    private static boolean isEncryptionKey(PGPPublicKey key) {
+        if (!key.isEncryptionKey()) {
+            return false;
+        }
+
+        // key flags of the primary key are in its self-signatures, those of a subkey in the binding signature
+        final Iterator<PGPSignature> signatures = key.isMasterKey()
+                ? key.getSignatures()
+                : key.getSignaturesOfType(PGPSignature.SUBKEY_BINDING);
+        boolean hasFlags = false;
+        while (signatures.hasNext()) {
+            final PGPSignature signature = signatures.next();
+            final int flags = signature.getHashedSubPackets() != null ? signature.getHashedSubPackets().getKeyFlags() : 0;
+            if (flags != 0 && (!key.isMasterKey() || signature.getKeyID() == key.getKeyID())) {
+                hasFlags = true;
+                if ((flags & ENCRYPTION_FLAGS) != 0) {
+                    return true;
+                }
+            }
+        }
+        // keys without key flags are usable for anything their algorithm allows
+        return !hasFlags;
+    }
+
+    private static boolean isValid(PGPPublicKey key) {
+        if (key.hasRevocation()) {
+            return false;
+        }
+        final long validSeconds = key.getValidSeconds();
+        return validSeconds == 0
+                || key.getCreationTime().getTime() + validSeconds * 1000L > System.currentTimeMillis();
+    }
+
+    private static OpenPGPKeyring read(Path gpgHome) throws IOException {
+        final List<PGPPublicKeyRing> rings = readPublicKeyRings(gpgHome);
+        final SExprParser parser = new SExprParser(new BcPGPDigestCalculatorProvider());
+
+        for (PGPPublicKeyRing ring : rings) {
+            final PGPPublicKey key = ring.getPublicKey();
+            if (!isValid(key)) {
+                continue;
+            }
+            final Path keyFile = gpgHome.resolve(PRIVATE_KEYS_DIR).resolve(keygrip(key) + ".key");
+            if (!Files.isRegularFile(keyFile)) {
+                continue;
+            }
+
+            try (InputStream in = new BufferedInputStream(Files.newInputStream(keyFile))) {
+                final PGPSecretKey secretKey = parser.parseSecretKey(in, null, key);
+                final PGPPrivateKey privateKey = secretKey.extractPrivateKey(null);
+                log.debug("Using key {} in {} for signing", Hex.toHexString(key.getFingerprint()), gpgHome);
+                return new OpenPGPKeyring(rings, ring, privateKey);
+            } catch (PGPException | RuntimeException e) {
+                throw new IOException("Unable to read secret key " + keyFile, e);
+            }
+        }
+
+        throw new IOException("No usable secret key found in " + gpgHome);
+    }
+
+    private static List<PGPPublicKeyRing> readPublicKeyRings(Path gpgHome) throws IOException {
+        final List<PGPPublicKeyRing> rings = new ArrayList<>();
+        final Path kbx = gpgHome.resolve(PUBRING_KBX);
+        if (Files.isRegularFile(kbx)) {
+            try (InputStream in = new BufferedInputStream(Files.newInputStream(kbx))) {
+                for (KeyBlob blob : new BcKeyBox(in).getKeyBlobs()) {
+                    if (blob instanceof PublicKeyRingBlob publicKeyRingBlob) {
+                        rings.add(publicKeyRingBlob.getPGPPublicKeyRing());
+                    }
+                }
+            }
+        } else {
+            try (InputStream in = new BufferedInputStream(Files.newInputStream(gpgHome.resolve(PUBRING_GPG)))) {
+                new BcPGPPublicKeyRingCollection(in).forEach(rings::add);
+            } catch (PGPException e) {
+                throw new IOException("Unable to read public keyring in " + gpgHome, e);
+            }
+        }
+        return rings;
+    }
+
+    /**
+     * Computes the libgcrypt keygrip used to name the gpg-agent key files. Only RSA keys are supported,
+     * which is what the security server key generation creates.
+     */
+    private static String keygrip(PGPPublicKey key) throws IOException {
+        if (!(key.getPublicKeyPacket().getKey() instanceof RSAPublicBCPGKey rsaKey)) {
+            throw new IOException("Unsupported key algorithm " + key.getAlgorithm() + " for key "
+                    + Hex.toHexString(key.getFingerprint()));
+        }
+        try {
+            // keygrip of an RSA key is the SHA-1 of the modulus as a signed big-endian integer
+            final byte[] grip = MessageDigest.getInstance("SHA-1").digest(rsaKey.getModulus().toByteArray());
+            return Hex.toHexString(grip).toUpperCase(Locale.ROOT);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private static List<FileTime> stamp(Path gpgHome) throws IOException {
+        final List<FileTime> stamp = new ArrayList<>();
+        for (Path path : List.of(gpgHome.resolve(PUBRING_KBX), gpgHome.resolve(PUBRING_GPG),
+                gpgHome.resolve(PRIVATE_KEYS_DIR))) {
+            stamp.add(Files.exists(path) ? Files.getLastModifiedTime(path) : FileTime.fromMillis(0));
+        }
+        return stamp;
+    }
+
+    private record CacheEntry(List<FileTime> stamp, OpenPGPKeyring keyring, IOException failure) {
+        OpenPGPKeyring get() throws IOException {
+            if (failure != null) {
+                throw failure;
+            }
+            return keyring;
+        }
+    }
+}
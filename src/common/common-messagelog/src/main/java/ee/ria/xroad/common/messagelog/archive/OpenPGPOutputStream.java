@@ -0,0 +1,185 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.messagelog.archive;
+
+import ee.ria.xroad.common.messagelog.MessageLogProperties;
+
+import lombok.extern.slf4j.Slf4j;
+import org.bouncycastle.bcpg.HashAlgorithmTags;
+import org.bouncycastle.bcpg.SymmetricKeyAlgorithmTags;
+import org.bouncycastle.openpgp.PGPEncryptedDataGenerator;
+import org.bouncycastle.openpgp.PGPException;
+import org.bouncycastle.openpgp.PGPLiteralData;
+import org.bouncycastle.openpgp.PGPLiteralDataGenerator;
+import org.bouncycastle.openpgp.PGPPublicKey;
+import org.bouncycastle.openpgp.PGPSignature;
+import org.bouncycastle.openpgp.PGPSignatureGenerator;
+import org.bouncycastle.openpgp.PGPSignatureSubpacketGenerator;
+import org.bouncycastle.openpgp.operator.jcajce.JcaPGPContentSignerBuilder;
+import org.bouncycastle.openpgp.operator.jcajce.JcePGPDataEncryptorBuilder;
+import org.bouncycastle.openpgp.operator.jcajce.JcePublicKeyKeyEncryptionMethodGenerator;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.SecureRandom;
+import java.util.Date;
+import java.util.Set;
+
+/**
+ * Output stream that signs and encrypts its content in process, producing the same OpenPGP message as
+ * {@link GPGOutputStream}: a signed literal data packet, without compression, encrypted with AES-256 in an
+ * integrity protected packet for each recipient, signed with SHA-256 by the default key of the GnuPG home.
+ * The output is decryptable with {@code gpg --decrypt}.
+ * <p>
+ * Cryptographic operations go through the default JCA providers, so that the JDK AES and SHA intrinsics are used.
+ */
+@Slf4j
+public final class OpenPGPOutputStream extends OutputStream {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final OutputStream fileOut;
+    private final PGPEncryptedDataGenerator encryptedDataGenerator;
+    private final OutputStream encryptedOut;
+    private final PGPLiteralDataGenerator literalDataGenerator;
+    private final OutputStream literalOut;
+    private final PGPSignatureGenerator signatureGenerator;
+
+    private boolean closed = false;
+
+    /**
+     * Constructs a stream that signs and encrypts data to the given file.
+     * @param gpgHome GnuPG home directory containing the secret key for signing.
+     * @param output Path to the output file, overwritten if present.
+     * @param encryptionKeys Zero or more encryption (recipient) key identifiers
+     * @throws IOException if the keys can not be read or the output file can not be opened
+     */
+    public OpenPGPOutputStream(Path gpgHome, Path output, Set<String> encryptionKeys) throws IOException {
+        this(OpenPGPKeyring.load(gpgHome), output, encryptionKeys);
+    }
+
+    private OpenPGPOutputStream(OpenPGPKeyring keyring, Path output, Set<String> encryptionKeys) throws IOException {
+        try {
+            encryptedDataGenerator = new PGPEncryptedDataGenerator(
+                    new JcePGPDataEncryptorBuilder(SymmetricKeyAlgorithmTags.AES_256)
+                            .setWithIntegrityPacket(true)
+                            .setSecureRandom(RANDOM));
+            for (PGPPublicKey key : keyring.getEncryptionKeys(encryptionKeys)) {
+                encryptedDataGenerator.addMethod(new JcePublicKeyKeyEncryptionMethodGenerator(key));
+            }
+
+            final PGPPublicKey signingKey = keyring.getSigningPublicKey();
+            signatureGenerator = new PGPSignatureGenerator(
+                    new JcaPGPContentSignerBuilder(signingKey.getAlgorithm(), HashAlgorithmTags.SHA256));
+            signatureGenerator.init(PGPSignature.BINARY_DOCUMENT, keyring.getSigningKey());
+            final PGPSignatureSubpacketGenerator subpackets = new PGPSignatureSubpacketGenerator();
+            subpackets.setIssuerFingerprint(false, signingKey);
+            signatureGenerator.setHashedSubpackets(subpackets.generate());
+
+            fileOut = new BufferedOutputStream(Files.newOutputStream(output), BUFFER_SIZE);
+            encryptedOut = encryptedDataGenerator.open(fileOut, new byte[BUFFER_SIZE]);
+            signatureGenerator.generateOnePassVersion(false).encode(encryptedOut);
+            literalDataGenerator = new PGPLiteralDataGenerator();
+            literalOut = literalDataGenerator.open(encryptedOut, PGPLiteralData.BINARY, "", new Date(),
+                    new byte[BUFFER_SIZE]);
+        } catch (PGPException e) {
+            throw new IOException("Encryption failed", e);
+        }
+    }
+
+    /**
+     * Opens a signing and encrypting stream to the given file. Uses {@link OpenPGPOutputStream} unless in process
+     * encryption is disabled or the GnuPG home has keys it can not use (e.g. passphrase protected or non-RSA keys,
+     * or recipients it can not resolve), in which case {@link GPGOutputStream} is used. A keyring that can not be
+     * used is not re-read until its files change, so an archiving run falls back to gpg without retrying it.
+     * @param gpgHome GnuPG home directory containing the secret key for signing.
+     * @param output Path to the output file, overwritten if present.
+     * @param encryptionKeys Zero or more encryption (recipient) key identifiers
+     * @return encrypting output stream
+     * @throws IOException if opening the stream fails
+     */
+    public static OutputStream open(Path gpgHome, Path output, Set<String> encryptionKeys) throws IOException {
+        if (MessageLogProperties.isArchiveEncryptionInProcess()) {
+            final OpenPGPKeyring keyring;
+            try {
+                keyring = OpenPGPKeyring.load(gpgHome);
+            } catch (IOException e) {
+                // the failure is logged once by the keyring when it is first loaded
+                log.debug("In process encryption not available, falling back to gpg: {}", e.getMessage());
+                return new GPGOutputStream(gpgHome, output, encryptionKeys);
+            }
+            try {
+                keyring.getEncryptionKeys(encryptionKeys);
+            } catch (IOException e) {
+                log.warn("In process encryption not available, falling back to gpg: {}", e.getMessage());
+                return new GPGOutputStream(gpgHome, output, encryptionKeys);
+            }
+            return new OpenPGPOutputStream(keyring, output, encryptionKeys);
+        }
+        return new GPGOutputStream(gpgHome, output, encryptionKeys);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        literalOut.write(b);
+        signatureGenerator.update((byte) b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        literalOut.write(b, off, len);
+        signatureGenerator.update(b, off, len);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        literalOut.flush();
+    }
+
+    /**
+     * Finishes the literal data, writes the signature and closes the encryption and the output file.
+     * @throws IOException if writing the output fails
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+
+        try (fileOut) {
+            literalDataGenerator.close();
+            signatureGenerator.generate().encode(encryptedOut);
+            encryptedDataGenerator.close();
+        } catch (PGPException e) {
+            throw new IOException("Encryption failed", e);
+        }
+    }
+}
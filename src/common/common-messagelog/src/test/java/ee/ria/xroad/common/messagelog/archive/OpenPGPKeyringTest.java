@@ -0,0 +1,80 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.messagelog.archive;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class OpenPGPKeyringTest {
+    private static final Path GPG_HOME = Paths.get("build/gpg");
+    private static final long SELF_ENCRYPTION_KEY_ID = 0x63631751550C3140L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void shouldCacheLoadFailureUntilKeyringChanges() throws IOException {
+        final Path gpgHome = folder.newFolder("gpg").toPath();
+        Files.write(gpgHome.resolve("pubring.gpg"), new byte[0]);
+
+        final IOException first = loadFailure(gpgHome);
+        assertSame(first, loadFailure(gpgHome));
+
+        Files.copy(GPG_HOME.resolve("pubring.kbx"), gpgHome.resolve("pubring.kbx"));
+        final Path privateKeys = Files.createDirectories(gpgHome.resolve("private-keys-v1.d"));
+        try (var keys = Files.list(GPG_HOME.resolve("private-keys-v1.d"))) {
+            for (Path key : keys.toList()) {
+                Files.copy(key, privateKeys.resolve(key.getFileName()));
+            }
+        }
+
+        final OpenPGPKeyring keyring = OpenPGPKeyring.load(gpgHome);
+        assertNotNull(keyring.getSigningKey());
+        assertEquals(SELF_ENCRYPTION_KEY_ID, keyring.getEncryptionKeys(null).get(0).getKeyID());
+        assertSame(keyring, OpenPGPKeyring.load(gpgHome));
+    }
+
+    private static IOException loadFailure(Path gpgHome) {
+        try {
+            OpenPGPKeyring.load(gpgHome);
+        } catch (IOException e) {
+            return e;
+        }
+        fail("Expected keyring load to fail");
+        return null;
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.messagelog.archive;
+
+import ee.ria.xroad.common.SystemProperties;
+
+import org.apache.commons.io.IOUtils;
+import org.bouncycastle.bcpg.BCPGInputStream;
+import org.bouncycastle.bcpg.PacketTags;
+import org.bouncycastle.bcpg.PublicKeyEncSessionPacket;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class OpenPGPOutputStreamTest {
+    private static final Path GPG_HOME = Paths.get("build/gpg");
+    // encryption subkeys of the keys in the test keyring
+    private static final long SELF_ENCRYPTION_KEY_ID = 0x63631751550C3140L;
+    private static final long OTHER_ENCRYPTION_KEY_ID = 0xCB2BB7FDE39390E1L;
+
+    private Path path;
+
+    @Before
+    public void before() throws IOException {
+        System.setProperty(SystemProperties.TEMP_FILES_PATH, "build/tmp");
+        Files.createDirectories(Paths.get(SystemProperties.getTempFilesPath()));
+        path = Files.createTempFile(Paths.get(SystemProperties.getTempFilesPath()), null, null);
+    }
+
+    @Test(expected = IOException.class)
+    public void shouldFailIfInvalidRecipient() throws IOException {
+        try (OpenPGPOutputStream out = new OpenPGPOutputStream(GPG_HOME, path, Collections.singleton("AAAA"))) {
+            out.write(42);
+        }
+    }
+
+    @Test
+    public void shouldEncryptToSelf() throws IOException {
+        try (OpenPGPOutputStream out = new OpenPGPOutputStream(GPG_HOME, path, null)) {
+            out.write(42);
+        }
+
+        assertEquals(SELF_ENCRYPTION_KEY_ID, readRecipientKeyId());
+    }
+
+    @Test
+    public void shouldEncryptToRecipientByFingerprint() throws IOException {
+        try (OpenPGPOutputStream out = new OpenPGPOutputStream(GPG_HOME, path,
+                Collections.singleton("B23B8E993AC4632A896D39A27BE94D3451C16D33"))) {
+            out.write(42);
+        }
+
+        assertEquals(OTHER_ENCRYPTION_KEY_ID, readRecipientKeyId());
+    }
+
+    @Test
+    public void shouldEncryptToRecipientByUserId() throws IOException {
+        try (OpenPGPOutputStream out = new OpenPGPOutputStream(GPG_HOME, path,
+                Collections.singleton("=INSTANCE:memberClass:memberCode"))) {
+            out.write(42);
+        }
+
+        assertEquals(SELF_ENCRYPTION_KEY_ID, readRecipientKeyId());
+    }
+
+    @Test
+    public void shouldBeDecryptableByGpg() throws IOException {
+        Assume.assumeTrue(Files.isExecutable(Paths.get("/usr/bin/gpg")));
+
+        final byte[] data = new byte[200_000];
+        new Random(42).nextBytes(data);
+        try (OpenPGPOutputStream out = new OpenPGPOutputStream(GPG_HOME, path, null)) {
+            out.write(data, 0, 1000);
+            out.write(data[1000]);
+            out.write(data, 1001, data.length - 1001);
+        }
+
+        final GPGInputStream in = new GPGInputStream(GPG_HOME, path);
+        final byte[] decrypted;
+        try (InputStream is = in) {
+            decrypted = IOUtils.toByteArray(is);
+        }
+        assertArrayEquals(data, decrypted);
+        assertEquals(2, in.getStatus().stream()
+                .filter(it -> it.contains("DECRYPTION_OKAY") || it.contains("GOODSIG"))
+                .count());
+    }
+
+    private long readRecipientKeyId() throws IOException {
+        try (BCPGInputStream is = new BCPGInputStream(Files.newInputStream(path))) {
+            assertEquals(PacketTags.PUBLIC_KEY_ENC_SESSION, is.nextPacketTag());
+            return ((PublicKeyEncSessionPacket) is.readPacket()).getKeyID();
+        }
+    }
+}
@@ -30,7 +30,9 @@ import ee.ria.xroad.common.conf.globalconf.GlobalConfProvider;
 import ee.ria.xroad.common.ocsp.OcspVerifier;
 import ee.ria.xroad.common.ocsp.OcspVerifierOptions;
 
+import org.bouncycastle.cert.ocsp.BasicOCSPResp;
 import org.bouncycastle.cert.ocsp.OCSPResp;
+import org.bouncycastle.cert.ocsp.SingleResp;
 
 import java.security.cert.CertPath;
 import java.security.cert.CertPathBuilder;
@@ -84,6 +86,13 @@ public class CertChainVerifier {
      */
     private final CertChain certChain;
 
+    /**
+     * Holds the time window in which the verification result holds,
+     * narrowed down during verification.
+     */
+    private Date validFrom;
+    private Date validUntil;
+
     /**
      * Builds the certificate path for the target certificate using a list
      * of trust anchors and a list of intermediate certificates.
@@ -160,10 +169,44 @@ public class CertChainVerifier {
         verifyImpl(ocspResponses, atDate);
     }
 
+    /**
+     * Same as {@link #verify(List, Date)}, but reuses the result of an earlier successful
+     * verification of the same certificate chain and OCSP responses, if the result
+     * still holds at the given date.
+     *
+     * @param ocspResponses list of OCSP responses that are used to
+     *                      validate the certificates.
+     * @param atDate        The date at which the verification is performed.
+     * @see VerifiedCertChainCache
+     */
+    public void verifyCached(List<OCSPResp> ocspResponses, Date atDate) {
+        if (ocspResponses == null || ocspResponses.isEmpty()) {
+            throw new IllegalArgumentException(
+                    "List of OCSP responses cannot be null or empty");
+        }
+
+        String key = VerifiedCertChainCache.createKey(certChain, ocspResponses);
+
+        VerifiedCertChainCache.Entry cached = VerifiedCertChainCache.get(key, globalConfProvider, atDate);
+        if (cached != null) {
+            certPath = cached.certPath();
+            return;
+        }
+
+        verifyImpl(ocspResponses, atDate);
+
+        VerifiedCertChainCache.put(key, new VerifiedCertChainCache.Entry(globalConfProvider, certPath,
+                validFrom, validUntil, globalConfProvider.getOcspFreshnessSeconds(),
+                globalConfProvider.getGlobalConfExtensions().shouldVerifyOcspNextUpdate()));
+    }
+
     private void verifyImpl(List<OCSPResp> ocspResponses, Date atDate) {
         pkixParams.setDate(atDate);
+        validFrom = certChain.getTrustedRootCert().getNotBefore();
+        validUntil = certChain.getTrustedRootCert().getNotAfter();
         try {
             certPath = buildCertPath(pkixParams);
+            getCerts().forEach(cert -> narrowValidity(cert.getNotBefore(), cert.getNotAfter()));
 
             PKIXCertPathValidatorResult pkixResult =
                     verifyCertPath(certPath, pkixParams);
@@ -198,6 +241,22 @@ public class CertChainVerifier {
                     new OcspVerifierOptions(globalConfProvider.getGlobalConfExtensions().shouldVerifyOcspNextUpdate()));
             verifier.verifyValidityAndStatus(response, subject, issuer,
                     atDate);
+
+            SingleResp singleResp = ((BasicOCSPResp) response.getResponseObject()).getResponses()[0];
+            narrowValidity(null, Date.from(singleResp.getThisUpdate().toInstant()
+                    .plusSeconds(globalConfProvider.getOcspFreshnessSeconds())));
+            if (globalConfProvider.getGlobalConfExtensions().shouldVerifyOcspNextUpdate()) {
+                narrowValidity(null, singleResp.getNextUpdate());
+            }
+        }
+    }
+
+    private void narrowValidity(Date notBefore, Date notAfter) {
+        if (notBefore != null && notBefore.after(validFrom)) {
+            validFrom = notBefore;
+        }
+        if (notAfter != null && notAfter.before(validUntil)) {
+            validUntil = notAfter;
         }
     }
 
@@ -78,7 +78,7 @@ public final class CertHelper {
 
         // Verify certificate against CAs.
         try {
-            new CertChainVerifier(globalConfProvider, chain).verify(ocspResponses, Date.from(TimeUtils.now()));
+            new CertChainVerifier(globalConfProvider, chain).verifyCached(ocspResponses, Date.from(TimeUtils.now()));
         } catch (CodedException e) {
             // meaningful errors get SSL auth verification prefix
             throw e.withPrefix(X_SSL_AUTH_FAILED);
@@ -0,0 +1,145 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.cert;
+
+import ee.ria.xroad.common.SystemProperties;
+import ee.ria.xroad.common.conf.globalconf.GlobalConfProvider;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import lombok.extern.slf4j.Slf4j;
+import org.bouncycastle.cert.ocsp.OCSPResp;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CertPath;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+import java.util.Date;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cache of successfully verified certificate chains. An entry records the certificate path that
+ * was built and the time window in which the verification result holds (certificate validity
+ * periods, OCSP response freshness and next update). Entries are keyed by the hash of the chain
+ * certificates and the OCSP responses, so a cache hit means exactly the same input was verified before.
+ * <p>
+ * The cache must be invalidated when the trust configuration (global configuration) changes.
+ */
+@Slf4j
+public final class VerifiedCertChainCache {
+
+    private static final Cache<String, Entry> CACHE;
+
+    static {
+        CACHE = CacheBuilder.newBuilder()
+                .expireAfterWrite(SystemProperties.getOcspVerifierCachePeriod(), TimeUnit.SECONDS)
+                .maximumSize(Math.max(0, SystemProperties.getCertChainVerifierCacheSize()))
+                .build();
+    }
+
+    private VerifiedCertChainCache() {
+    }
+
+    /**
+     * Discards all cached verification results.
+     */
+    public static void invalidateAll() {
+        log.trace("Invalidating verified certificate chain cache");
+        CACHE.invalidateAll();
+    }
+
+    static String createKey(CertChain certChain, List<OCSPResp> ocspResponses) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            md.update(certChain.getInstanceIdentifier().getBytes(StandardCharsets.UTF_8));
+            update(md, certChain.getEndEntityCert());
+            update(md, certChain.getTrustedRootCert());
+            for (X509Certificate cert : certChain.getAdditionalCerts()) {
+                update(md, cert);
+            }
+            for (OCSPResp response : ocspResponses) {
+                md.update((byte) 0);
+                md.update(response.getEncoded());
+            }
+            return HexFormat.of().formatHex(md.digest());
+        } catch (NoSuchAlgorithmException | CertificateEncodingException | IOException e) {
+            // not cacheable, verify without cache
+            log.warn("Unable to create certificate chain cache key", e);
+            return null;
+        }
+    }
+
+    static Entry get(String key, GlobalConfProvider globalConfProvider, Date atDate) {
+        if (key == null) {
+            return null;
+        }
+
+        Entry entry = CACHE.getIfPresent(key);
+        if (entry != null && entry.isValid(globalConfProvider, atDate)) {
+            return entry;
+        }
+
+        return null;
+    }
+
+    static void put(String key, Entry entry) {
+        if (key != null) {
+            CACHE.put(key, entry);
+        }
+    }
+
+    private static void update(MessageDigest md, X509Certificate cert) throws CertificateEncodingException {
+        md.update((byte) 0);
+        md.update(cert.getEncoded());
+    }
+
+    /**
+     * Successful verification result.
+     *
+     * @param globalConfProvider the provider the chain was verified against
+     * @param certPath           the verified certificate path
+     * @param validFrom          start of the time window in which the result holds
+     * @param validUntil         end of the time window in which the result holds
+     * @param freshnessSeconds   OCSP freshness limit that was in effect
+     * @param verifyNextUpdate   whether OCSP next update was verified
+     */
+    record Entry(GlobalConfProvider globalConfProvider, CertPath certPath, Date validFrom, Date validUntil,
+                 int freshnessSeconds, boolean verifyNextUpdate) {
+
+        boolean isValid(GlobalConfProvider provider, Date atDate) {
+            return globalConfProvider == provider
+                    && !atDate.before(validFrom)
+                    && !atDate.after(validUntil)
+                    && freshnessSeconds == provider.getOcspFreshnessSeconds()
+                    && verifyNextUpdate == provider.getGlobalConfExtensions().shouldVerifyOcspNextUpdate();
+        }
+    }
+}
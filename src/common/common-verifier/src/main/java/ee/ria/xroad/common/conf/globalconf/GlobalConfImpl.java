@@ -28,6 +28,7 @@ package ee.ria.xroad.common.conf.globalconf;
 import ee.ria.xroad.common.CodedException;
 import ee.ria.xroad.common.cert.CertChain;
 import ee.ria.xroad.common.cert.CertChainFactory;
+import ee.ria.xroad.common.cert.VerifiedCertChainCache;
 import ee.ria.xroad.common.certificateprofile.AuthCertificateProfileInfo;
 import ee.ria.xroad.common.certificateprofile.CertificateProfileInfoProvider;
 import ee.ria.xroad.common.certificateprofile.GetCertificateProfile;
@@ -46,6 +47,7 @@ import org.bouncycastle.cert.X509CertificateHolder;
 import org.bouncycastle.operator.OperatorCreationException;
 
 import java.io.IOException;
+import java.security.MessageDigest;
 import java.security.cert.CertificateEncodingException;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
@@ -84,7 +86,32 @@ public class GlobalConfImpl implements GlobalConfProvider {
 
     @Override
     public void reload() {
+        byte[] trustFingerprint = getTrustFingerprint();
         globalConfSource.reload();
+
+        if (!Arrays.equals(trustFingerprint, getTrustFingerprint())) {
+            VerifiedCertChainCache.invalidateAll();
+        }
+    }
+
+    /**
+     * Digest over the certificates that certificate chain verification trusts. Used to detect
+     * whether a reload changed anything that cached verification results depend on.
+     */
+    private byte[] getTrustFingerprint() {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            for (X509Certificate cert : getAllCaCerts()) {
+                md.update(cert.getEncoded());
+            }
+            for (X509Certificate cert : getOcspResponderCertificates()) {
+                md.update(cert.getEncoded());
+            }
+            return md.digest();
+        } catch (Exception e) {
+            log.trace("Unable to calculate trust fingerprint", e);
+            return null;
+        }
     }
 
     // ------------------------------------------------------------------------
@@ -203,18 +230,14 @@ public class GlobalConfImpl implements GlobalConfProvider {
 
     @Override
     public String getGlobalGroupDescription(GlobalGroupId globalGroupId) {
-        Optional<SharedParameters> p;
+        Optional<SharedParameters.GlobalGroup> group;
         try {
-            p = globalConfSource.findShared(globalGroupId.getXRoadInstance());
+            group = findGlobalGroup(globalGroupId);
         } catch (Exception e) {
             throw new CodedException(X_INTERNAL_ERROR, e);
         }
 
-        return p.flatMap(params -> params.getGlobalGroups().stream()
-                .filter(g -> g.getGroupCode().equals(globalGroupId.getGroupCode()))
-                .map(SharedParameters.GlobalGroup::getDescription)
-                .findFirst()
-        ).orElse(null);
+        return group.map(SharedParameters.GlobalGroup::getDescription).orElse(null);
     }
 
     @Override
@@ -558,16 +581,15 @@ public class GlobalConfImpl implements GlobalConfProvider {
 
     @Override
     public boolean isSubjectInGlobalGroup(ClientId subjectId, GlobalGroupId groupId) {
-        return findGlobalGroup(groupId)
-                .filter(group -> group.getGroupMembers().stream().anyMatch(m -> m.equals(subjectId)))
+        return globalConfSource.findSharedParametersCache(groupId.getXRoadInstance())
+                .map(p -> p.getGlobalGroupMembers().get(groupId.getGroupCode()))
+                .filter(members -> members.contains(subjectId))
                 .isPresent();
     }
 
     Optional<SharedParameters.GlobalGroup> findGlobalGroup(GlobalGroupId groupId) {
-        Optional<SharedParameters> sharedParameters = globalConfSource.findShared(groupId.getXRoadInstance());
-        return sharedParameters.flatMap(params -> params.getGlobalGroups().stream()
-                .filter(g -> g.getGroupCode().equals(groupId.getGroupCode()))
-                .findFirst());
+        return globalConfSource.findSharedParametersCache(groupId.getXRoadInstance())
+                .map(p -> p.getGlobalGroupsByCode().get(groupId.getGroupCode()));
     }
 
     @Override
@@ -368,7 +368,7 @@ public class SignatureVerifier {
         CertChain certChain =
                 certChainFactory.create(signer.getXRoadInstance(), signingCert,
                         signature.getExtraCertificates());
-        new CertChainVerifier(globalConfProvider, certChain).verify(signature.getOcspResponses(),
+        new CertChainVerifier(globalConfProvider, certChain).verifyCached(signature.getOcspResponses(),
                 atDate);
     }
 
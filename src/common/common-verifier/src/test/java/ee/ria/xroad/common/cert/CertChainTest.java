@@ -46,6 +46,7 @@ import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -242,6 +243,42 @@ public class CertChainTest {
         }
     }
 
+    /**
+     * Tests that a cached verification result is reused only within the validity
+     * period of the chain.
+     *
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void cachedVerificationHonoursValidityPeriod() throws Exception {
+        X509Certificate rootCa = TestCertUtil.getCertChainCert("root_ca.p12");
+        X509Certificate interCa1 = TestCertUtil.getCertChainCert("ca_1.p12");
+        X509Certificate interCa2 = TestCertUtil.getCertChainCert("ca_2.p12");
+        X509Certificate interCa3 = TestCertUtil.getCertChainCert("ca_3.p12");
+        X509Certificate userCert = TestCertUtil.getCertChainCert("user_3.p12");
+
+        CertChain chain = new CertChain("EE",
+                userCert,
+                rootCa,
+                Arrays.asList(interCa1, interCa2, interCa3));
+        List<OCSPResp> ocsp = getAllOcspResponses();
+        Date atDate = makeDate(rootCa.getNotBefore(), 1);
+
+        CertChainVerifier verifier = new CertChainVerifier(GLOBAL_CONF_PROVIDER, chain);
+        verifier.verifyCached(ocsp, atDate);
+
+        CertChainVerifier cachedVerifier = new CertChainVerifier(GLOBAL_CONF_PROVIDER, chain);
+        cachedVerifier.verifyCached(ocsp, makeDate(atDate, 1));
+        assertEquals(verifier.getCerts(), cachedVerifier.getCerts());
+
+        try {
+            new CertChainVerifier(GLOBAL_CONF_PROVIDER, chain).verifyCached(ocsp, makeDate(userCert.getNotAfter(), 1));
+            fail("Verification of expired chain should fail");
+        } catch (CodedException expected) {
+            // expected
+        }
+    }
+
     // -- Utility methods
 
     private static void verify(CertChain chain, List<OCSPResp> ocspResponses,
@@ -0,0 +1,149 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.cert;
+
+import ee.ria.xroad.common.OcspTestUtils;
+import ee.ria.xroad.common.TestCertUtil;
+import ee.ria.xroad.common.TestSecurityUtil;
+import ee.ria.xroad.common.conf.globalconf.EmptyGlobalConf;
+import ee.ria.xroad.common.conf.globalconf.GlobalConfProvider;
+
+import org.bouncycastle.cert.ocsp.CertificateStatus;
+import org.bouncycastle.cert.ocsp.OCSPResp;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures certificate path validation with {@link CertChainVerifier}, both uncached and through
+ * the verification result cache, for chains with and without intermediate CAs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CertChainBenchmark {
+    private static final long DAY_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    @Param({"0", "3"})
+    private int intermediateCount;
+
+    private GlobalConfProvider globalConfProvider;
+    private CertChain chain;
+    private List<OCSPResp> ocspResponses;
+    private Date atDate;
+
+    @Setup
+    public void setup() throws Exception {
+        TestSecurityUtil.initSecurity();
+
+        X509Certificate rootCa = TestCertUtil.getCertChainCert("root_ca.p12");
+        List<X509Certificate> intermediates = new ArrayList<>();
+        for (int i = 1; i <= intermediateCount; i++) {
+            intermediates.add(TestCertUtil.getCertChainCert("ca_" + i + ".p12"));
+        }
+        X509Certificate userCert = TestCertUtil.getCertChainCert("user_" + intermediateCount + ".p12");
+
+        globalConfProvider = new StubGlobalConf(intermediates, rootCa);
+        chain = new CertChain("EE", userCert, rootCa, intermediates);
+
+        List<X509Certificate> subjects = new ArrayList<>(intermediates);
+        subjects.add(userCert);
+        ocspResponses = new ArrayList<>();
+        for (X509Certificate subject : subjects) {
+            ocspResponses.add(OcspTestUtils.createOCSPResponse(subject, issuerOf(subject, intermediates, rootCa),
+                    TestCertUtil.getOcspSigner().certChain[0], TestCertUtil.getOcspSigner().key,
+                    CertificateStatus.GOOD));
+        }
+
+        atDate = new Date(Math.max(rootCa.getNotBefore().getTime(), userCert.getNotBefore().getTime()) + DAY_MILLIS);
+    }
+
+    @Benchmark
+    public CertChainVerifier verify() {
+        CertChainVerifier verifier = new CertChainVerifier(globalConfProvider, chain);
+        verifier.verify(ocspResponses, atDate);
+        return verifier;
+    }
+
+    @Benchmark
+    public CertChainVerifier verifyCached() {
+        CertChainVerifier verifier = new CertChainVerifier(globalConfProvider, chain);
+        verifier.verifyCached(ocspResponses, atDate);
+        return verifier;
+    }
+
+    private static X509Certificate issuerOf(X509Certificate subject, List<X509Certificate> candidates,
+                                            X509Certificate rootCa) {
+        return candidates.stream()
+                .filter(c -> c.getSubjectX500Principal().equals(subject.getIssuerX500Principal()))
+                .findFirst()
+                .orElse(rootCa);
+    }
+
+    /**
+     * Global configuration that knows only the OCSP responder and the CA certificates of the chain.
+     */
+    private static final class StubGlobalConf extends EmptyGlobalConf {
+        private final List<X509Certificate> caCerts;
+        private final X509Certificate rootCa;
+
+        StubGlobalConf(List<X509Certificate> caCerts, X509Certificate rootCa) {
+            this.caCerts = caCerts;
+            this.rootCa = rootCa;
+        }
+
+        @Override
+        public List<X509Certificate> getOcspResponderCertificates() {
+            try {
+                return List.of(TestCertUtil.getOcspSigner().certChain[0]);
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        @Override
+        public X509Certificate getCaCert(String instanceIdentifier, X509Certificate orgCert) {
+            return issuerOf(orgCert, caCerts, rootCa);
+        }
+    }
+}
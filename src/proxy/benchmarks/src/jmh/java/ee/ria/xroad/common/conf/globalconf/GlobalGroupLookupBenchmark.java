@@ -0,0 +1,133 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.conf.globalconf;
+
+import ee.ria.xroad.common.identifier.ClientId;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares global group membership lookup through the {@link SharedParametersCache} index
+ * against the linear scan over shared parameters it replaced.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GlobalGroupLookupBenchmark {
+    private static final String INSTANCE = "EE";
+    private static final String MEMBER_CLASS = "GOV";
+    private static final int GROUP_COUNT = 50;
+
+    @Param({"10", "1000", "100000"})
+    private int groupSize;
+
+    private SharedParameters sharedParameters;
+    private SharedParametersCache cache;
+    private String groupCode;
+    private ClientId lastMember;
+    private ClientId nonMember;
+
+    @Setup
+    public void setup() {
+        List<SharedParameters.Member> members = new ArrayList<>();
+        List<ClientId> groupMembers = new ArrayList<>();
+        for (int i = 0; i < groupSize; i++) {
+            ClientId id = ClientId.Conf.create(INSTANCE, MEMBER_CLASS, "member" + i);
+            SharedParameters.Member member = new SharedParameters.Member();
+            member.setId(id);
+            member.setMemberCode("member" + i);
+            member.setMemberClass(new SharedParameters.MemberClass(MEMBER_CLASS, MEMBER_CLASS));
+            members.add(member);
+            groupMembers.add(id);
+        }
+
+        List<SharedParameters.GlobalGroup> groups = new ArrayList<>();
+        for (int i = 0; i < GROUP_COUNT; i++) {
+            groups.add(new SharedParameters.GlobalGroup("group" + i, "group " + i, List.of()));
+        }
+        groupCode = "group" + GROUP_COUNT;
+        groups.add(new SharedParameters.GlobalGroup(groupCode, "benchmark group", groupMembers));
+
+        sharedParameters = SharedParameters.builder()
+                .instanceIdentifier(INSTANCE)
+                .sources(List.of())
+                .approvedCAs(List.of())
+                .approvedTSAs(List.of())
+                .members(members)
+                .securityServers(List.of())
+                .globalGroups(groups)
+                .build();
+        cache = new SharedParametersCache(sharedParameters);
+
+        lastMember = ClientId.Conf.create(INSTANCE, MEMBER_CLASS, "member" + (groupSize - 1));
+        nonMember = ClientId.Conf.create(INSTANCE, MEMBER_CLASS, "unknown");
+    }
+
+    @Benchmark
+    public boolean indexedMember() {
+        return cache.getGlobalGroupMembers().get(groupCode).contains(lastMember);
+    }
+
+    @Benchmark
+    public boolean indexedNonMember() {
+        return cache.getGlobalGroupMembers().get(groupCode).contains(nonMember);
+    }
+
+    @Benchmark
+    public boolean linearScanMember() {
+        return linearScan(lastMember);
+    }
+
+    @Benchmark
+    public boolean linearScanNonMember() {
+        return linearScan(nonMember);
+    }
+
+    private boolean linearScan(ClientId subjectId) {
+        return sharedParameters.getGlobalGroups().stream()
+                .filter(g -> g.getGroupCode().equals(groupCode))
+                .findFirst()
+                .filter(group -> group.getGroupMembers().stream().anyMatch(m -> m.equals(subjectId)))
+                .isPresent();
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.messagelog.archive;
+
+import ee.ria.xroad.common.SystemProperties;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares signing and encrypting an archive in process with {@link OpenPGPOutputStream} against piping it
+ * through an external gpg process with {@link GPGOutputStream}. Uses the test keyring copied to build/gpg
+ * by the copyGpg task.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ArchiveEncryptionBenchmark {
+    private static final Path GPG_HOME = Paths.get("build/gpg");
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    @Param({"10240", "1048576", "104857600"})
+    private long archiveSize;
+
+    private byte[] chunk;
+    private Path output;
+
+    @Setup
+    public void setup() throws IOException {
+        System.setProperty(SystemProperties.TEMP_FILES_PATH, "build/tmp");
+        Files.createDirectories(Paths.get(SystemProperties.getTempFilesPath()));
+        output = Files.createTempFile(Paths.get(SystemProperties.getTempFilesPath()), "archive", ".gpg");
+        chunk = new byte[CHUNK_SIZE];
+        new Random(1).nextBytes(chunk);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(output);
+    }
+
+    @Benchmark
+    public long inProcess() throws IOException {
+        return write(new OpenPGPOutputStream(GPG_HOME, output, null));
+    }
+
+    @Benchmark
+    public long gpgProcess() throws IOException {
+        return write(new GPGOutputStream(GPG_HOME, output, null));
+    }
+
+    private long write(OutputStream stream) throws IOException {
+        try (OutputStream out = stream) {
+            for (long written = 0; written < archiveSize; written += CHUNK_SIZE) {
+                out.write(chunk, 0, (int) Math.min(CHUNK_SIZE, archiveSize - written));
+            }
+        }
+        return Files.size(output);
+    }
+}
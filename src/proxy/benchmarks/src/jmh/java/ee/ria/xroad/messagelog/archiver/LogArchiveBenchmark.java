@@ -0,0 +1,163 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.messagelog.archiver;
+
+import ee.ria.xroad.common.SystemProperties;
+import ee.ria.xroad.common.conf.globalconf.TestGlobalConfImpl;
+import ee.ria.xroad.common.messagelog.MessageLogProperties;
+import ee.ria.xroad.common.messagelog.archive.GroupingStrategy;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Measures how long the archiver takes to catch up with a backlog of time-stamped message records spread over a
+ * number of members, archiving the members one after another or in parallel. Needs a local PostgreSQL database with
+ * the message log schema given with the system properties benchmark.jdbc.url, benchmark.jdbc.user and
+ * benchmark.jdbc.password. The database must not hold any other data, the log records in it are deleted before
+ * every iteration.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class LogArchiveBenchmark {
+    private static final int MEMBERS = 16;
+    private static final int MESSAGE_SIZE = 2000;
+
+    @Param({"100000"})
+    private int backlog;
+
+    @Param({"1", "4"})
+    private int parallelism;
+
+    private Connection connection;
+    private Path databaseProperties;
+    private Path archivePath;
+    private LogArchiver archiver;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        final String url = System.getProperty("benchmark.jdbc.url", "jdbc:postgresql://localhost:5432/messagelog");
+        final String user = System.getProperty("benchmark.jdbc.user", "messagelog");
+        final String password = System.getProperty("benchmark.jdbc.password", "");
+
+        databaseProperties = Files.createTempFile("log-archive-benchmark", ".properties");
+        archivePath = Files.createTempDirectory("log-archive-benchmark");
+        System.setProperty(SystemProperties.DATABASE_PROPERTIES, databaseProperties.toString());
+        System.setProperty("messagelog.hibernate.connection.driver_class", "org.postgresql.Driver");
+        System.setProperty("messagelog.hibernate.connection.url", url);
+        System.setProperty("messagelog.hibernate.connection.username", user);
+        System.setProperty("messagelog.hibernate.connection.password", password);
+        System.setProperty(MessageLogProperties.ARCHIVE_PATH, archivePath.toString());
+        System.setProperty(MessageLogProperties.ARCHIVE_GROUPING, GroupingStrategy.MEMBER.name());
+        System.setProperty(MessageLogProperties.ARCHIVE_PARALLELISM, String.valueOf(parallelism));
+
+        connection = DriverManager.getConnection(url, user, password);
+        connection.setAutoCommit(true);
+        archiver = new LogArchiver(new TestGlobalConfImpl(), new LogArchiverMetrics());
+    }
+
+    @Setup(Level.Iteration)
+    public void populate() throws SQLException, IOException {
+        deleteArchives();
+
+        final long now = System.currentTimeMillis();
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("TRUNCATE logrecord, last_archive_digest");
+
+            // one batch time-stamp for the whole backlog
+            stmt.execute("INSERT INTO logrecord (id, discriminator, \"time\", archived, timestamp, hashchainresult) "
+                    + "VALUES (0, 't', " + now + ", false, 'dGltZXN0YW1w', 'hash chain result')");
+            stmt.execute("INSERT INTO logrecord (id, discriminator, \"time\", archived, queryid, message, signature, "
+                    + "signaturehash, response, memberclass, membercode, timestamprecord, timestamphashchain) "
+                    + "SELECT n, 'm', " + now + ", false, 'q' || n, repeat('x', " + MESSAGE_SIZE + "), 'signature', "
+                    + "'hash', false, 'COM', 'member' || (n % " + MEMBERS + "), 0, 'hash chain' "
+                    + "FROM generate_series(1, " + backlog + ") n");
+            stmt.execute("VACUUM ANALYZE logrecord");
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void verify() throws SQLException {
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT count(*) FROM logrecord WHERE archived = false")) {
+            rs.next();
+            if (rs.getLong(1) != 0) {
+                throw new IllegalStateException(rs.getLong(1) + " log records were not archived");
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException, IOException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("TRUNCATE logrecord, last_archive_digest");
+        } finally {
+            connection.close();
+            deleteArchives();
+            Files.delete(archivePath);
+            Files.delete(databaseProperties);
+        }
+    }
+
+    @Benchmark
+    public void archiveBacklog() {
+        archiver.execute(null);
+    }
+
+    private void deleteArchives() throws IOException {
+        try (Stream<Path> archives = Files.list(archivePath)) {
+            for (Path archive : archives.toList()) {
+                Files.delete(archive);
+            }
+        }
+    }
+}
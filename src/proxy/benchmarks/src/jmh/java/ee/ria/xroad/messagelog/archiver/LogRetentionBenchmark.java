@@ -0,0 +1,155 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.messagelog.archiver;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares removing a week of archived log records with the batched delete used for unpartitioned tables against
+ * dropping the partition holding them. Needs a local PostgreSQL database given with the system properties
+ * benchmark.jdbc.url, benchmark.jdbc.user and benchmark.jdbc.password; the tables are created in a separate
+ * schema that is dropped after the run.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 5)
+@Fork(1)
+public class LogRetentionBenchmark {
+    private static final String SCHEMA = "retention_benchmark";
+    private static final long DAY = TimeUnit.DAYS.toMillis(1);
+    private static final long WEEK = 7 * DAY;
+    private static final int BATCH_LIMIT = 10000;
+
+    @Param({"100000", "1000000"})
+    private int recordsPerWeek;
+
+    private Connection connection;
+
+    @Setup(Level.Trial)
+    public void connect() throws SQLException {
+        connection = DriverManager.getConnection(
+                System.getProperty("benchmark.jdbc.url", "jdbc:postgresql://localhost:5432/messagelog"),
+                System.getProperty("benchmark.jdbc.user", "messagelog"),
+                System.getProperty("benchmark.jdbc.password", ""));
+        connection.setAutoCommit(true);
+    }
+
+    @Setup(Level.Iteration)
+    public void populate() throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("DROP SCHEMA IF EXISTS " + SCHEMA + " CASCADE");
+            stmt.execute("CREATE SCHEMA " + SCHEMA);
+            stmt.execute("SET search_path TO " + SCHEMA);
+
+            stmt.execute("CREATE TABLE logrecord_plain (id bigint PRIMARY KEY, time bigint NOT NULL, "
+                    + "archived boolean NOT NULL, message text)");
+            stmt.execute("CREATE INDEX ON logrecord_plain (id) WHERE archived = false");
+
+            stmt.execute("CREATE TABLE logrecord_partitioned (id bigint, time bigint NOT NULL, "
+                    + "archived boolean NOT NULL, message text, PRIMARY KEY (id, time)) PARTITION BY RANGE (time)");
+            stmt.execute("CREATE INDEX ON logrecord_partitioned (id) WHERE archived = false");
+            stmt.execute("CREATE TABLE logrecord_old PARTITION OF logrecord_partitioned FOR VALUES FROM (0) TO (" + WEEK + ")");
+            stmt.execute("CREATE TABLE logrecord_new PARTITION OF logrecord_partitioned FOR VALUES FROM (" + WEEK
+                    + ") TO (" + 2 * WEEK + ")");
+
+            // an archived week followed by a week of records that are not archived yet
+            for (String table : new String[] {"logrecord_plain", "logrecord_partitioned"}) {
+                stmt.execute("INSERT INTO " + table + " SELECT n, (n - 1)::bigint * " + (2 * WEEK) + " / " + (2 * recordsPerWeek)
+                        + ", n <= " + recordsPerWeek + ", repeat('x', 1000) FROM generate_series(1, "
+                        + (2 * recordsPerWeek) + ") n");
+            }
+            stmt.execute("VACUUM ANALYZE");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void disconnect() throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("DROP SCHEMA IF EXISTS " + SCHEMA + " CASCADE");
+        } finally {
+            connection.close();
+        }
+    }
+
+    @Benchmark
+    public long batchDelete() throws SQLException {
+        long count = 0;
+        int removed;
+        try (PreparedStatement stmt = connection.prepareStatement("DELETE FROM logrecord_plain"
+                + " WHERE archived = true AND time < ? AND id > 0"
+                + " AND id <= (SELECT max(l.id) FROM (SELECT id FROM logrecord_plain ORDER BY id LIMIT ?) l)")) {
+            do {
+                stmt.setLong(1, WEEK);
+                stmt.setInt(2, BATCH_LIMIT);
+                removed = stmt.executeUpdate();
+                count += removed;
+            } while (removed > 0);
+        }
+        return count;
+    }
+
+    @Benchmark
+    public long dropPartition() throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            long count;
+            try (ResultSet rs = stmt.executeQuery("SELECT count(*) FROM logrecord_old WHERE archived = false")) {
+                rs.next();
+                if (rs.getLong(1) > 0) {
+                    return 0;
+                }
+            }
+            try (ResultSet rs = stmt.executeQuery("SELECT count(*) FROM logrecord_old")) {
+                rs.next();
+                count = rs.getLong(1);
+            }
+            stmt.execute("ALTER TABLE logrecord_partitioned DETACH PARTITION logrecord_old");
+            stmt.execute("DROP TABLE logrecord_old");
+            return count;
+        }
+    }
+}
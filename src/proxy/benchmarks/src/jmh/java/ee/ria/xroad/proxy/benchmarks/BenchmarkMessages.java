@@ -0,0 +1,130 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.benchmarks;
+
+import ee.ria.xroad.common.message.SaxSoapParserImpl;
+import ee.ria.xroad.common.message.Soap;
+import ee.ria.xroad.common.message.SoapMessageImpl;
+import ee.ria.xroad.common.util.MimeTypes;
+
+import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Message fixtures shared by the proxy benchmarks.
+ */
+final class BenchmarkMessages {
+
+    /** Base directory of the source tree, relative to the benchmark module. */
+    static final String SRC_DIR = "../../";
+
+    private static final String ENVELOPE_START = """
+            <?xml version="1.0" encoding="utf-8"?>
+            <SOAP-ENV:Envelope
+                    xmlns:SOAP-ENV="http://schemas.xmlsoap.org/soap/envelope/"
+                    xmlns:xroad="http://x-road.eu/xsd/xroad.xsd"
+                    xmlns:id="http://x-road.eu/xsd/identifiers">
+                <SOAP-ENV:Header>
+                    <xroad:client id:objectType="MEMBER">
+                        <id:xRoadInstance>EE</id:xRoadInstance>
+                        <id:memberClass>BUSINESS</id:memberClass>
+                        <id:memberCode>consumer</id:memberCode>
+                    </xroad:client>
+                    <xroad:service id:objectType="SERVICE">
+                        <id:xRoadInstance>EE</id:xRoadInstance>
+                        <id:memberClass>BUSINESS</id:memberClass>
+                        <id:memberCode>producer</id:memberCode>
+                        <id:serviceCode>getState</id:serviceCode>
+                    </xroad:service>
+                    <xroad:userId>EE:PIN:abc4567</xroad:userId>
+                    <xroad:id>411d6755661409fed365ad8135f8210be07613da</xroad:id>
+                    <xroad:protocolVersion>4.0</xroad:protocolVersion>
+                </SOAP-ENV:Header>
+                <SOAP-ENV:Body>
+                    <xroad:getState>""";
+
+    private static final String ENVELOPE_END = """
+            </xroad:getState>
+                </SOAP-ENV:Body>
+            </SOAP-ENV:Envelope>
+            """;
+
+    private static final int ITEMS_PER_LINE = 16;
+
+    private BenchmarkMessages() {
+    }
+
+    /**
+     * Creates a SOAP request whose body carries approximately the given number of payload bytes,
+     * split into small elements so that the parser sees a realistic number of events.
+     * @param bodySize approximate size of the body payload in bytes
+     * @return the serialized SOAP message
+     */
+    static byte[] soapMessage(int bodySize) {
+        StringBuilder sb = new StringBuilder(ENVELOPE_START.length() + bodySize + ENVELOPE_END.length());
+        sb.append(ENVELOPE_START);
+
+        int written = 0;
+        for (int i = 0; written < bodySize; i++) {
+            String item = "<item>" + "value-" + i + "</item>";
+            sb.append(item);
+            written += item.length();
+            if (i % ITEMS_PER_LINE == ITEMS_PER_LINE - 1) {
+                sb.append('\n');
+            }
+        }
+
+        sb.append(ENVELOPE_END);
+        return sb.toString().getBytes(UTF_8);
+    }
+
+    /**
+     * Parses the given bytes as a SOAP request.
+     * @param message serialized SOAP message
+     * @return the parsed message
+     */
+    static SoapMessageImpl parse(byte[] message) {
+        Soap soap = new SaxSoapParserImpl().parse(MimeTypes.TEXT_XML_UTF8, new ByteArrayInputStream(message));
+        if (soap instanceof SoapMessageImpl soapMessage) {
+            return soapMessage;
+        }
+
+        throw new IllegalStateException("Fixture is not a SOAP request: " + soap.getClass());
+    }
+
+    /**
+     * Creates attachment content of the given size.
+     * @param size attachment size in bytes
+     * @return attachment bytes
+     */
+    static byte[] attachment(int size) {
+        byte[] data = new byte[size];
+        Arrays.fill(data, (byte) 'a');
+        return data;
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.benchmarks;
+
+import ee.ria.xroad.common.crypto.identifier.DigestAlgorithm;
+import ee.ria.xroad.common.hashchain.DigestValue;
+import ee.ria.xroad.common.hashchain.HashChainBuilder;
+import ee.ria.xroad.common.hashchain.HashChainReferenceResolver;
+import ee.ria.xroad.common.hashchain.HashChainVerifier;
+import ee.ria.xroad.common.util.MessageFileNames;
+
+import org.apache.xml.security.Init;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static ee.ria.xroad.common.crypto.Digests.calculateDigest;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Measures building the batch signature hash tree with {@link HashChainBuilder} and verifying
+ * the hash chain of a single input with {@link HashChainVerifier}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HashChainBenchmark {
+    private static final DigestAlgorithm DIGEST_ALGORITHM = DigestAlgorithm.SHA256;
+
+    @Param({"1000", "10000", "100000"})
+    private int leafCount;
+
+    private byte[][] leaves;
+    private byte[] hashChainResult;
+    private byte[] hashChain;
+    private Map<String, DigestValue> inputs;
+
+    @Setup
+    public void setup() throws Exception {
+        Init.init();
+
+        leaves = new byte[leafCount][];
+        for (int i = 0; i < leafCount; i++) {
+            leaves[i] = calculateDigest(DIGEST_ALGORITHM, String.valueOf(i).getBytes(UTF_8));
+        }
+
+        HashChainBuilder builder = build();
+        int index = leafCount / 2;
+        hashChainResult = builder.getHashChainResult(MessageFileNames.SIG_HASH_CHAIN).getBytes(UTF_8);
+        hashChain = builder.getHashChainSequence(MessageFileNames.MESSAGE).get(index).getBytes(UTF_8);
+        inputs = Map.of(MessageFileNames.MESSAGE, new DigestValue(DIGEST_ALGORITHM, leaves[index]));
+    }
+
+    @Benchmark
+    public String buildResult() throws Exception {
+        return build().getHashChainResult(MessageFileNames.SIG_HASH_CHAIN);
+    }
+
+    @Benchmark
+    public Map<String, DigestValue> verify() throws Exception {
+        HashChainVerifier.verify(new ByteArrayInputStream(hashChainResult), new HashChainReferenceResolver() {
+            @Override
+            public InputStream resolve(String uri) {
+                return MessageFileNames.SIG_HASH_CHAIN.equals(uri) ? new ByteArrayInputStream(hashChain) : null;
+            }
+
+            @Override
+            public boolean shouldResolve(String uri, byte[] digestValue) {
+                return MessageFileNames.SIG_HASH_CHAIN.equals(uri);
+            }
+        }, inputs);
+        return inputs;
+    }
+
+    private HashChainBuilder build() throws Exception {
+        HashChainBuilder builder = new HashChainBuilder(DIGEST_ALGORITHM);
+        for (byte[] leaf : leaves) {
+            builder.addInputHash(leaf);
+        }
+        builder.finishBuilding();
+        return builder;
+    }
+}
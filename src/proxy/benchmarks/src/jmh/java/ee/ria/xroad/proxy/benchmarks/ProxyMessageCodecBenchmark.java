@@ -0,0 +1,137 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.benchmarks;
+
+import ee.ria.xroad.common.conf.globalconf.GlobalConfProvider;
+import ee.ria.xroad.common.conf.globalconf.TestGlobalConfImpl;
+import ee.ria.xroad.common.crypto.Digests;
+import ee.ria.xroad.common.message.SoapMessageImpl;
+import ee.ria.xroad.common.signature.SignatureData;
+import ee.ria.xroad.common.util.MimeTypes;
+import ee.ria.xroad.proxy.protocol.ProxyMessage;
+import ee.ria.xroad.proxy.protocol.ProxyMessageDecoder;
+import ee.ria.xroad.proxy.protocol.ProxyMessageEncoder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Measures encoding and decoding of the multipart messages exchanged between security servers
+ * by {@link ProxyMessageEncoder} and {@link ProxyMessageDecoder}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProxyMessageCodecBenchmark {
+    private static final int ATTACHMENT_SIZE = 64 * 1024;
+
+    @Param({"1024", "65536", "1048576"})
+    private int bodySize;
+
+    @Param({"0", "1", "10"})
+    private int attachmentCount;
+
+    private GlobalConfProvider globalConfProvider;
+    private SoapMessageImpl soap;
+    private byte[] attachment;
+    private SignatureData signature;
+
+    private byte[] encoded;
+    private String encodedContentType;
+    private ProxyMessage decoded;
+
+    @Setup
+    public void setup() throws Exception {
+        globalConfProvider = new TestGlobalConfImpl();
+        soap = BenchmarkMessages.parse(BenchmarkMessages.soapMessage(bodySize));
+        attachment = BenchmarkMessages.attachment(ATTACHMENT_SIZE);
+        signature = new SignatureData(
+                Files.readString(Path.of(BenchmarkMessages.SRC_DIR, "proxy/core/src/test/queries/signature.xml"), UTF_8),
+                null, null);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        encodedContentType = encode(out);
+        encoded = out.toByteArray();
+    }
+
+    @TearDown(Level.Invocation)
+    public void cleanup() throws Exception {
+        if (decoded != null) {
+            decoded.consume();
+            decoded = null;
+        }
+    }
+
+    @Benchmark
+    public int encode() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(encoded.length);
+        encode(out);
+        return out.size();
+    }
+
+    @Benchmark
+    public ProxyMessage decode() throws Exception {
+        decoded = new ProxyMessage(MimeTypes.TEXT_XML);
+        ProxyMessageDecoder decoder = new ProxyMessageDecoder(globalConfProvider, decoded, encodedContentType,
+                Digests.DEFAULT_DIGEST_ALGORITHM);
+        decoder.parse(new ByteArrayInputStream(encoded));
+        return decoded;
+    }
+
+    private String encode(ByteArrayOutputStream out) throws Exception {
+        ProxyMessageEncoder encoder = new ProxyMessageEncoder(out, Digests.DEFAULT_DIGEST_ALGORITHM);
+        encoder.soap(soap, new HashMap<>());
+        for (int i = 0; i < attachmentCount; i++) {
+            encoder.attachment(MimeTypes.BINARY, new ByteArrayInputStream(attachment), null);
+        }
+        encoder.signature(signature);
+        encoder.close();
+        return encoder.getContentType();
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.benchmarks;
+
+import ee.ria.xroad.common.OcspTestUtils;
+import ee.ria.xroad.common.SystemProperties;
+import ee.ria.xroad.common.TestCertUtil;
+import ee.ria.xroad.common.TestSecurityUtil;
+import ee.ria.xroad.common.conf.globalconf.GlobalConfProvider;
+import ee.ria.xroad.common.conf.globalconf.TestGlobalConfImpl;
+import ee.ria.xroad.common.crypto.identifier.DigestAlgorithm;
+import ee.ria.xroad.common.identifier.ClientId;
+import ee.ria.xroad.common.signature.MessagePart;
+import ee.ria.xroad.common.signature.Signature;
+import ee.ria.xroad.common.signature.SignatureBuilder;
+import ee.ria.xroad.common.signature.SignatureData;
+import ee.ria.xroad.common.signature.SignatureVerifier;
+import ee.ria.xroad.common.signature.TestSigningKey;
+import ee.ria.xroad.common.util.MessageFileNames;
+import ee.ria.xroad.common.util.TimeUtils;
+
+import org.bouncycastle.cert.ocsp.CertificateStatus;
+import org.bouncycastle.cert.ocsp.OCSPResp;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static ee.ria.xroad.common.crypto.Digests.calculateDigest;
+
+/**
+ * Measures building a message signature with {@link SignatureBuilder} and verifying one with
+ * {@link SignatureVerifier}. The signed parts are the SOAP message and the given number of attachments.
+ * Verification uses the signature fixture of the common-test module, which is valid on 2014-10-30.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SignatureBenchmark {
+    private static final String SIGNATURES_DIR = BenchmarkMessages.SRC_DIR + "common/common-test/src/test/signatures/";
+    private static final String GLOBALCONF_DIR = BenchmarkMessages.SRC_DIR + "common/common-globalconf/src/test/resources/";
+    private static final ClientId CONSUMER_ID = ClientId.Conf.create("EE", "BUSINESS", "consumer");
+    private static final int ATTACHMENT_SIZE = 64 * 1024;
+
+    @Param({"1024", "65536", "1048576"})
+    private int bodySize;
+
+    @Param({"0", "1", "10"})
+    private int attachmentCount;
+
+    private List<MessagePart> parts;
+    private X509Certificate signingCert;
+    private TestSigningKey signingKey;
+    private OCSPResp ocsp;
+
+    private GlobalConfProvider globalConfProvider;
+    private byte[] fixtureSignature;
+    private List<MessagePart> fixtureParts;
+    private Date fixtureValidationDate;
+
+    @Setup
+    public void setup() throws Exception {
+        TestSecurityUtil.initSecurity();
+        System.setProperty(SystemProperties.CONFIGURATION_PATH, GLOBALCONF_DIR + "globalconf_good_v2");
+        System.setProperty(SystemProperties.CONFIGURATION_ANCHOR_FILE, GLOBALCONF_DIR + "configuration-anchor1.xml");
+
+        parts = new ArrayList<>();
+        parts.add(part(MessageFileNames.MESSAGE, BenchmarkMessages.soapMessage(bodySize)));
+        byte[] attachment = BenchmarkMessages.attachment(ATTACHMENT_SIZE);
+        for (int i = 1; i <= attachmentCount; i++) {
+            parts.add(new MessagePart(MessageFileNames.attachment(i), DigestAlgorithm.SHA512,
+                    calculateDigest(DigestAlgorithm.SHA512, attachment), null));
+        }
+
+        signingCert = TestCertUtil.getConsumer().certChain[0];
+        PrivateKey key = TestCertUtil.getConsumer().key;
+        signingKey = new TestSigningKey(key);
+        ocsp = OcspTestUtils.createOCSPResponse(signingCert, TestCertUtil.getCaCert(),
+                TestCertUtil.getOcspSigner().certChain[0], TestCertUtil.getOcspSigner().key,
+                CertificateStatus.GOOD, Date.from(TimeUtils.now().plus(1, ChronoUnit.DAYS)), null);
+
+        globalConfProvider = new TestGlobalConfImpl() {
+            @Override
+            public X509Certificate getCaCert(String instanceIdentifier, X509Certificate memberCert) throws Exception {
+                return TestCertUtil.getCaCert();
+            }
+        };
+        fixtureSignature = Files.readAllBytes(Path.of(SIGNATURES_DIR + "sign-0.xml"));
+        fixtureParts = List.of(part(MessageFileNames.MESSAGE, Files.readAllBytes(Path.of(SIGNATURES_DIR + "message-0.xml"))));
+
+        Calendar cal = Calendar.getInstance();
+        cal.clear();
+        cal.set(2014, Calendar.OCTOBER, 30);
+        fixtureValidationDate = cal.getTime();
+    }
+
+    @Benchmark
+    public SignatureData build() throws Exception {
+        SignatureBuilder builder = new SignatureBuilder();
+        parts.forEach(builder::addPart);
+        builder.setSigningCert(signingCert);
+        builder.addOcspResponses(List.of(ocsp));
+        return builder.build(signingKey, DigestAlgorithm.SHA512);
+    }
+
+    @Benchmark
+    public SignatureVerifier verify() throws Exception {
+        SignatureVerifier verifier = new SignatureVerifier(globalConfProvider,
+                new Signature(new ByteArrayInputStream(fixtureSignature)));
+        verifier.addParts(fixtureParts);
+        verifier.verify(CONSUMER_ID, fixtureValidationDate);
+        return verifier;
+    }
+
+    private static MessagePart part(String name, byte[] data) throws Exception {
+        return new MessagePart(name, DigestAlgorithm.SHA512, calculateDigest(DigestAlgorithm.SHA512, data), data);
+    }
+}
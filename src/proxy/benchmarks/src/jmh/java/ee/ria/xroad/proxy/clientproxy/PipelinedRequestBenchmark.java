@@ -0,0 +1,153 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.clientproxy;
+
+import ee.ria.xroad.common.crypto.Digests;
+import ee.ria.xroad.common.message.SaxSoapParserImpl;
+import ee.ria.xroad.common.message.SoapMessageImpl;
+import ee.ria.xroad.common.signature.SignatureData;
+import ee.ria.xroad.common.util.MimeTypes;
+import ee.ria.xroad.proxy.protocol.ProxyMessageEncoder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Measures how fast a request with one attachment of 1 KB to 100 MB is sent to the server proxy when it is encoded
+ * by a separate thread straight into the connection through {@link PipelinedRequestEntity}, compared with encoding
+ * the whole request into memory before writing it. The connection is a stream that discards the bytes, so the
+ * results show the cost of encoding, hashing and the hand-off between the threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = "-Xmx1g")
+public class PipelinedRequestBenchmark {
+    private static final String QUERIES_DIR = "../../proxy/core/src/test/queries/";
+
+    @Param({"1024", "65536", "1048576", "16777216", "104857600"})
+    private int attachmentSize;
+
+    private SoapMessageImpl soap;
+    private byte[] attachment;
+    private SignatureData signature;
+    private ExecutorService encoder;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        try (InputStream in = Files.newInputStream(Path.of(QUERIES_DIR, "getstate.query"))) {
+            soap = (SoapMessageImpl) new SaxSoapParserImpl().parse(MimeTypes.TEXT_XML_UTF8, in);
+        }
+        attachment = new byte[attachmentSize];
+        Arrays.fill(attachment, (byte) 'a');
+        signature = new SignatureData(Files.readString(Path.of(QUERIES_DIR, "signature.xml"), UTF_8), null, null);
+        encoder = Executors.newSingleThreadExecutor();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        encoder.shutdownNow();
+    }
+
+    @Benchmark
+    public long pipelined() throws Exception {
+        PipelinedRequestEntity entity = new PipelinedRequestEntity();
+        Future<?> encoding = encoder.submit(() -> {
+            try {
+                encode(entity.getEncoderOutput());
+                entity.encodingCompleted();
+            } catch (Exception e) {
+                entity.encodingFailed(e);
+            }
+        });
+
+        CountingOutputStream connection = new CountingOutputStream();
+        entity.writeTo(connection);
+        encoding.get();
+        return connection.count;
+    }
+
+    @Benchmark
+    public long buffered() throws Exception {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        encode(buffer);
+
+        CountingOutputStream connection = new CountingOutputStream();
+        buffer.writeTo(connection);
+        return connection.count;
+    }
+
+    private void encode(OutputStream out) throws Exception {
+        ProxyMessageEncoder request = new ProxyMessageEncoder(out, Digests.DEFAULT_DIGEST_ALGORITHM);
+        request.soap(soap, new HashMap<>());
+        request.attachment(MimeTypes.BINARY, new ByteArrayInputStream(attachment), null);
+        request.signature(signature);
+        request.close();
+        out.close();
+    }
+
+    private static final class CountingOutputStream extends OutputStream {
+        private long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.conf;
+
+import ee.ria.xroad.common.SystemProperties;
+import ee.ria.xroad.common.conf.globalconf.TestGlobalConfImpl;
+import ee.ria.xroad.common.conf.serverconf.CachingServerConfImpl;
+import ee.ria.xroad.common.conf.serverconf.ServerConfImpl;
+import ee.ria.xroad.common.conf.serverconf.ServerConfProvider;
+import ee.ria.xroad.common.identifier.ClientId;
+import ee.ria.xroad.common.identifier.ServiceId;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import static ee.ria.xroad.proxy.conf.TestUtil.CLIENT_CODE;
+import static ee.ria.xroad.proxy.conf.TestUtil.SERVICE_VERSION;
+import static ee.ria.xroad.proxy.conf.TestUtil.client;
+import static ee.ria.xroad.proxy.conf.TestUtil.createTestClientId;
+import static ee.ria.xroad.proxy.conf.TestUtil.createTestServiceId;
+import static ee.ria.xroad.proxy.conf.TestUtil.service;
+
+/**
+ * Measures access right checks of {@link ServerConfImpl#isQueryAllowed} against the serverconf test data
+ * in an in-memory database, directly and through {@link CachingServerConfImpl}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ServerConfBenchmark {
+
+    @Param({"false", "true"})
+    private boolean cached;
+
+    private ServerConfProvider serverConfProvider;
+    private ClientId client;
+    private ClientId unknownClient;
+    private ServiceId soapService;
+    private ServiceId restService;
+
+    @Setup
+    public void setup() throws Exception {
+        System.setProperty(SystemProperties.DATABASE_PROPERTIES,
+                "../../serverconf/src/test/resources/hibernate.properties");
+        TestUtil.prepareDB(true);
+
+        TestGlobalConfImpl globalConfProvider = new TestGlobalConfImpl();
+        serverConfProvider = cached
+                ? new CachingServerConfImpl(globalConfProvider)
+                : new ServerConfImpl(globalConfProvider);
+
+        client = createTestClientId(client(1));
+        unknownClient = createTestClientId(CLIENT_CODE + "X");
+        soapService = createTestServiceId(client.getMemberCode(), service(1, 1), SERVICE_VERSION);
+        restService = createTestServiceId(client.getMemberCode(), "rest", null);
+    }
+
+    @Benchmark
+    public boolean soapAllowed() {
+        return serverConfProvider.isQueryAllowed(client, soapService);
+    }
+
+    @Benchmark
+    public boolean soapDenied() {
+        return serverConfProvider.isQueryAllowed(unknownClient, soapService);
+    }
+
+    @Benchmark
+    public boolean restAllowed() {
+        return serverConfProvider.isQueryAllowed(client, restService, "POST", "/api/test/foo");
+    }
+
+    @Benchmark
+    public boolean restDenied() {
+        return serverConfProvider.isQueryAllowed(client, restService, "POST", "/api/test/foo/bar");
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.messagelog;
+
+import ee.ria.xroad.common.message.SoapBuilder;
+import ee.ria.xroad.common.message.SoapMessageImpl;
+import ee.ria.xroad.common.message.SoapParserImpl;
+import ee.ria.xroad.common.util.MimeTypes;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares removing the body of a SOAP request for the message log by building a new message with SoapBuilder
+ * against writing the parsed header with SoapBodyRedactor. Neither reads the original body, so the size of the
+ * body content does not matter.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageBodyRedactionBenchmark {
+    private static final String SERVICE_CODE = "testQuery";
+
+    private static final String MESSAGE = """
+            <?xml version="1.0" encoding="UTF-8"?>
+            <SOAP-ENV:Envelope xmlns:SOAP-ENV="http://schemas.xmlsoap.org/soap/envelope/"
+                    xmlns:xroad="http://x-road.eu/xsd/xroad.xsd" xmlns:id="http://x-road.eu/xsd/identifiers">
+                <SOAP-ENV:Header>
+                    <xroad:client id:objectType="MEMBER">
+                        <id:xRoadInstance>EE</id:xRoadInstance>
+                        <id:memberClass>BUSINESS</id:memberClass>
+                        <id:memberCode>consumer</id:memberCode>
+                    </xroad:client>
+                    <xroad:service id:objectType="SERVICE">
+                        <id:xRoadInstance>EE</id:xRoadInstance>
+                        <id:memberClass>BUSINESS</id:memberClass>
+                        <id:memberCode>producer</id:memberCode>
+                        <id:serviceCode>testQuery</id:serviceCode>
+                    </xroad:service>
+                    <xroad:userId>EE37702211234</xroad:userId>
+                    <xroad:id>1234567890</xroad:id>
+                    <xroad:protocolVersion>4.0</xroad:protocolVersion>
+                </SOAP-ENV:Header>
+                <SOAP-ENV:Body>
+                    <xroad:testQuery>
+                        <item><name>benchmark</name><value>0123456789abcdef</value></item>
+                    </xroad:testQuery>
+                </SOAP-ENV:Body>
+            </SOAP-ENV:Envelope>
+            """;
+
+    private SoapMessageImpl message;
+
+    @Setup
+    public void setup() throws Exception {
+        message = (SoapMessageImpl) new SoapParserImpl().parse(MimeTypes.TEXT_XML_UTF8,
+                new ByteArrayInputStream(MESSAGE.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Benchmark
+    public String soapBuilder() throws Exception {
+        SoapBuilder builder = new SoapBuilder();
+        builder.setHeader(message.getHeader());
+        builder.setRpcEncoded(false);
+        return builder.build().getXml();
+    }
+
+    @Benchmark
+    public String soapBodyRedactor() throws Exception {
+        return SoapBodyRedactor.redact(message.getHeader(), SERVICE_CODE);
+    }
+}
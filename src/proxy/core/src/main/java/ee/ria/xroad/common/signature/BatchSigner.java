@@ -30,6 +30,10 @@ import ee.ria.xroad.common.SystemProperties;
 import ee.ria.xroad.common.crypto.identifier.SignAlgorithm;
 import ee.ria.xroad.signer.SignerProxy;
 
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.jmx.JmxReporter;
 import lombok.Data;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
@@ -37,15 +41,17 @@ import org.springframework.beans.factory.DisposableBean;
 
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 import static ee.ria.xroad.common.ErrorCodes.X_INTERNAL_ERROR;
 import static ee.ria.xroad.common.crypto.Digests.calculateDigest;
@@ -59,30 +65,60 @@ import static ee.ria.xroad.common.util.CryptoUtils.calculateCertHexHash;
  * Moreover, multiple signing requests for the same signing certificate
  * (and thus the same key id) are signed in batch and the resulting hash
  * chain is produced for each request.
+ * <p>
+ * A batch is held open for a short window to collect more requests. The window adapts to the
+ * observed signing latency and request rate and never exceeds {@link SystemProperties#getBatchSignerMaxWait()}.
+ * Pending requests per signing certificate are bounded by {@link SystemProperties#getBatchSignerQueueSize()};
+ * requests over the limit are rejected instead of queued.
+ * <p>
+ * The statistics of every signing certificate are exported over JMX as metrics named
+ * {@value #METRIC_PREFIX}.&lt;certificate hash&gt;.&lt;statistic&gt;.
  */
 @Slf4j
 public class BatchSigner implements DisposableBean {
 
     private static final int TIMEOUT_MILLIS = SystemProperties.getSignerClientTimeout();
 
+    private static final double EWMA_WEIGHT = 0.2;
+
+    static final String METRIC_PREFIX = "batchSigner";
+
     private static BatchSigner instance;
 
     private final Map<String, WorkerImpl> workers = new ConcurrentHashMap<>();
 
+    private final KeySigner keySigner;
+    private final int maxBatchSize;
+    private final long maxWaitNanos;
+    private final int queueSize;
+    private final MetricRegistry metrics;
+    private final JmxReporter metricReporter;
+
+    BatchSigner(KeySigner keySigner, int maxBatchSize, long maxWaitMillis, int queueSize, MetricRegistry metrics) {
+        this.keySigner = keySigner;
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, maxWaitMillis));
+        this.queueSize = queueSize;
+        this.metrics = metrics;
+        this.metricReporter = JmxReporter.forRegistry(metrics).build();
+    }
+
     public static BatchSigner init() {
-        instance = new BatchSigner();
+        instance = new BatchSigner(SignerProxyKeySigner.INSTANCE, SystemProperties.getBatchSignerMaxBatchSize(),
+                SystemProperties.getBatchSignerMaxWait(), SystemProperties.getBatchSignerQueueSize(),
+                new MetricRegistry());
+        instance.metricReporter.start();
         return instance;
     }
 
     @Override
     public void destroy() {
-        if (instance != null) {
-            instance.workers.values().forEach(WorkerImpl::stop);
-        }
+        metricReporter.stop();
+        workers.values().forEach(WorkerImpl::stop);
     }
 
     /**
-     * Submits the given signing request for batch signing.
+     * Submits the given signing request for batch signing and waits for the result.
      *
      * @param keyId                the signing key
      * @param signatureAlgorithmId ID of the signature algorithm to use
@@ -92,21 +128,53 @@ public class BatchSigner implements DisposableBean {
      */
     public static SignatureData sign(String keyId, SignAlgorithm signatureAlgorithmId, SigningRequest request)
             throws Exception {
+        try {
+            return signAsync(keyId, signatureAlgorithmId, request).get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof TimeoutException) {
+                throw new CodedException(X_INTERNAL_ERROR, "Signature creation timed out");
+            }
+
+            if (e.getCause() instanceof Exception cause) {
+                throw cause;
+            }
+
+            throw e;
+        }
+    }
+
+    /**
+     * Submits the given signing request for batch signing without blocking the caller.
+     * The returned future completes exceptionally with a {@link TimeoutException} if the signature
+     * is not created within the signer client timeout.
+     *
+     * @param keyId                the signing key
+     * @param signatureAlgorithmId ID of the signature algorithm to use
+     * @param request              the signing request
+     * @return future of the signature data
+     */
+    public static CompletableFuture<SignatureData> signAsync(String keyId, SignAlgorithm signatureAlgorithmId,
+                                                             SigningRequest request) {
         if (instance == null) {
-            throw new IllegalStateException("BatchSigner is not initialized");
+            return CompletableFuture.failedFuture(new IllegalStateException("BatchSigner is not initialized"));
         }
 
+        return instance.submit(keyId, signatureAlgorithmId, request);
+    }
+
+    CompletableFuture<SignatureData> submit(String keyId, SignAlgorithm signatureAlgorithmId, SigningRequest request) {
         CompletableFuture<SignatureData> completableFuture = new CompletableFuture<>();
         final SigningRequestWrapper signRequestWrapper = new SigningRequestWrapper(
                 completableFuture,
                 keyId, signatureAlgorithmId, request);
-        instance.handle(signRequestWrapper);
 
         try {
-            return completableFuture.get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
-        } catch (TimeoutException timeoutException) {
-            throw new CodedException(X_INTERNAL_ERROR, "Signature creation timed out");
+            handle(signRequestWrapper);
+        } catch (Exception e) {
+            completableFuture.completeExceptionally(e);
         }
+
+        return completableFuture.orTimeout(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
     }
 
     private void handle(SigningRequestWrapper signRequest) {
@@ -122,7 +190,7 @@ public class BatchSigner implements DisposableBean {
 
             return workers.computeIfAbsent(name, key -> {
                 log.trace("Creating new worker for cert '{}'", name);
-                return new WorkerImpl(signRequest.getKeyId());
+                return new WorkerImpl(name, signRequest.getKeyId());
             });
         } catch (Exception e) {
             throw new RuntimeException("Unable to get worker", e);
@@ -130,30 +198,109 @@ public class BatchSigner implements DisposableBean {
     }
 
     /**
-     * This is the worker that does the heavy lifting.
+     * Signs digests with the key of a token, and tells whether the token supports batch signing.
      */
-    private static class WorkerImpl {
+    interface KeySigner {
+        boolean isBatchSigningEnabled(String keyId) throws Exception;
+
+        byte[] sign(String keyId, SignAlgorithm signatureAlgorithmId, byte[] digest) throws Exception;
+    }
 
-        private final boolean batchSigningEnabled;
-        private final BlockingQueue<SigningRequestWrapper> requestsQueue = new LinkedBlockingQueue<>();
-        private boolean stopping;
+    private enum SignerProxyKeySigner implements KeySigner {
+        INSTANCE;
+
+        @Override
+        public boolean isBatchSigningEnabled(String keyId) throws Exception {
+            return SignerProxy.isTokenBatchSigningEnabled(keyId);
+        }
+
+        @Override
+        public byte[] sign(String keyId, SignAlgorithm signatureAlgorithmId, byte[] digest) throws Exception {
+            return SignerProxy.sign(keyId, signatureAlgorithmId, digest);
+        }
+    }
+
+    /**
+     * This is the worker that does the heavy lifting.
+     */
+    private final class WorkerImpl {
+        private final int workerMaxBatchSize;
+        private final BlockingQueue<SigningRequestWrapper> requestsQueue;
+        private volatile boolean stopping;
         private final Thread workerThread;
 
-        protected WorkerImpl(String keyId) {
+        private final AtomicLong lastArrivalNanos = new AtomicLong(System.nanoTime());
+        private volatile long avgInterArrivalNanos = Long.MAX_VALUE;
+        private volatile long avgSignNanos;
+
+        private final LongAdder rejected = new LongAdder();
+        private final Histogram batchSizes;
+
+        WorkerImpl(String certHash, String keyId) {
+            boolean batchSigningEnabled;
             try {
-                batchSigningEnabled = SignerProxy.isTokenBatchSigningEnabled(keyId);
+                batchSigningEnabled = keySigner.isBatchSigningEnabled(keyId);
             } catch (Exception e) {
                 log.error("Failed to query if batch signing is enabled for token with key {}", keyId, e);
                 throw new RuntimeException(e);
             }
-            workerThread = new Thread(this::process);
-            workerThread.setDaemon(true);
-            workerThread.start();
+
+            workerMaxBatchSize = batchSigningEnabled ? maxBatchSize : 1;
+            requestsQueue = new LinkedBlockingQueue<>(queueSize);
+
+            batchSizes = metrics.histogram(MetricRegistry.name(METRIC_PREFIX, certHash, "batchSize"));
+            registerGauge(certHash, "queueDepth", requestsQueue::size);
+            registerGauge(certHash, "rejectedRequests", rejected::sum);
+            registerGauge(certHash, "signOperations", batchSizes::getCount);
+            registerGauge(certHash, "avgSignLatencyMicros", () -> TimeUnit.NANOSECONDS.toMicros(avgSignNanos));
+            registerGauge(certHash, "batchWindowMicros",
+                    () -> TimeUnit.NANOSECONDS.toMicros(batchWindowNanos()));
+
+            workerThread = Thread.ofPlatform()
+                    .name("batch-signer-" + certHash)
+                    .daemon(true)
+                    .start(this::process);
         }
 
         public void handleSignRequest(SigningRequestWrapper signRequest) {
             log.trace("handleSignRequest()");
-            requestsQueue.add(signRequest);
+
+            updateInterArrivalTime();
+
+            if (!requestsQueue.offer(signRequest)) {
+                rejected.increment();
+                throw new CodedException(X_INTERNAL_ERROR, "Signing queue is full");
+            }
+        }
+
+        private void registerGauge(String certHash, String statistic, Gauge<?> gauge) {
+            String name = MetricRegistry.name(METRIC_PREFIX, certHash, statistic);
+            metrics.remove(name);
+            metrics.register(name, gauge);
+        }
+
+        private void updateInterArrivalTime() {
+            long now = System.nanoTime();
+            long interval = now - lastArrivalNanos.getAndSet(now);
+            long avg = avgInterArrivalNanos;
+
+            // races between concurrent callers only make the estimate slightly less accurate
+            avgInterArrivalNanos = avg == Long.MAX_VALUE ? interval : ewma(avg, interval);
+        }
+
+        /**
+         * Waiting for more requests pays off only if signing is slow compared to the rate at which
+         * requests arrive. The window is half of the average signing latency, capped by the configured
+         * maximum, and zero if the next request is not expected to arrive within the window.
+         */
+        private long batchWindowNanos() {
+            if (workerMaxBatchSize == 1) {
+                return 0;
+            }
+
+            long window = Math.min(maxWaitNanos, avgSignNanos / 2);
+
+            return avgInterArrivalNanos < window ? window : 0;
         }
 
         private void sendSignatureResponse(BatchSignatureCtx ctx, byte[] signatureValue) throws Exception {
@@ -177,25 +324,51 @@ public class BatchSigner implements DisposableBean {
         }
 
         private boolean isExpired(SigningRequestWrapper requestWrapper) {
-            // do not sign requests if timeout is already passed.
-            return System.currentTimeMillis() - requestWrapper.getCreatedOn() > TIMEOUT_MILLIS;
+            // do not sign requests if timeout is already passed or the client has given up.
+            return requestWrapper.getClientFuture().isDone()
+                    || System.currentTimeMillis() - requestWrapper.getCreatedOn() > TIMEOUT_MILLIS;
         }
 
-        private synchronized void process() {
+        private void collectBatch(SigningRequestWrapper first, List<SigningRequestWrapper> requests)
+                throws InterruptedException {
+            requests.add(first);
+
+            if (workerMaxBatchSize == 1) {
+                return;
+            }
+
+            requestsQueue.drainTo(requests, workerMaxBatchSize - requests.size());
+
+            long window = batchWindowNanos();
+            long deadline = System.nanoTime() + window;
+
+            while (requests.size() < workerMaxBatchSize) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    break;
+                }
+
+                SigningRequestWrapper next = requestsQueue.poll(remaining, TimeUnit.NANOSECONDS);
+                if (next == null) {
+                    break;
+                }
+
+                requests.add(next);
+                requestsQueue.drainTo(requests, workerMaxBatchSize - requests.size());
+            }
+        }
+
+        private void process() {
             while (!stopping) {
                 log.trace("polling queue");
-                List<SigningRequestWrapper> requests = new LinkedList<>();
+                List<SigningRequestWrapper> requests = new ArrayList<>();
                 try {
                     SigningRequestWrapper first;
                     do {
                         first = requestsQueue.take();
                     } while (isExpired(first));
 
-                    requests.add(first);
-                    if (batchSigningEnabled) {
-                        // poll all remaining
-                        requestsQueue.drainTo(requests);
-                    }
+                    collectBatch(first, requests);
 
                     log.trace("processing {} sign requests", requests.size());
                     BatchSignatureCtx ctx = new BatchSignatureCtx(first.getKeyId(), first.getSignatureAlgorithmId());
@@ -203,23 +376,47 @@ public class BatchSigner implements DisposableBean {
                             .filter(req -> !isExpired(req))
                             .forEach(req -> ctx.add(req.getClientFuture(), req.getRequest()));
 
-                    try {
-                        byte[] digest = calculateDigest(ctx.getSignatureAlgorithmId().digest(),
-                                ctx.getDataToBeSigned());
-                        final byte[] response = SignerProxy.sign(ctx.getKeyId(), ctx.getSignatureAlgorithmId(), digest);
-                        sendSignatureResponse(ctx, response);
-                    } catch (Exception exception) {
-                        sendException(ctx, exception);
+                    if (ctx.getClients().isEmpty()) {
+                        continue;
                     }
+
+                    sign(ctx);
                 } catch (InterruptedException interruptedException) {
                     log.trace("queue polling interrupted");
                     Thread.currentThread().interrupt();
+                    stopping = true;
                 }
             }
             log.trace("Worker thread stopped");
         }
 
-        protected void stop() {
+        private void sign(BatchSignatureCtx ctx) {
+            try {
+                byte[] digest = calculateDigest(ctx.getSignatureAlgorithmId().digest(),
+                        ctx.getDataToBeSigned());
+
+                long start = System.nanoTime();
+                final byte[] response = keySigner.sign(ctx.getKeyId(), ctx.getSignatureAlgorithmId(), digest);
+                recordSignature(ctx.getClients().size(), System.nanoTime() - start);
+
+                sendSignatureResponse(ctx, response);
+            } catch (Exception exception) {
+                sendException(ctx, exception);
+            }
+        }
+
+        private void recordSignature(int batchSize, long latencyNanos) {
+            long avg = avgSignNanos;
+            avgSignNanos = avg == 0 ? latencyNanos : ewma(avg, latencyNanos);
+
+            batchSizes.update(batchSize);
+        }
+
+        private static long ewma(long average, long sample) {
+            return (long) (average + EWMA_WEIGHT * (sample - average));
+        }
+
+        void stop() {
             log.trace("stop()");
             this.stopping = true;
             this.workerThread.interrupt();
@@ -47,6 +47,7 @@ public class SignatureBuilder {
     private final List<OCSPResp> ocspResponses = new ArrayList<>();
 
     private X509Certificate signingCert;
+    private SignatureTemplate template;
 
     /**
      * Adds a hash to be signed.
@@ -80,6 +81,15 @@ public class SignatureBuilder {
         this.ocspResponses.addAll(extraOcspResponses);
     }
 
+    /**
+     * Sets the pre-rendered signature template. The template must have been created for the same signing
+     * certificate, extra certificates and OCSP responses that are added to this builder.
+     * @param signatureTemplate the signature template
+     */
+    public void setTemplate(SignatureTemplate signatureTemplate) {
+        this.template = signatureTemplate;
+    }
+
     /**
      * Builds signature data using the given signing key and signature digest algorithm.
      * @param signingKey the signing key
@@ -93,6 +103,7 @@ public class SignatureBuilder {
         SigningRequest request = new SigningRequest(signingCert, parts);
         request.getExtraCertificates().addAll(extraCertificates);
         request.getOcspResponses().addAll(ocspResponses);
+        request.setTemplate(template);
 
         return signingKey.calculateSignature(request, signatureDigestAlgorithmId);
     }
@@ -39,19 +39,14 @@ import org.apache.xml.security.signature.SignedInfo;
 import org.apache.xml.security.signature.XMLSignature;
 import org.apache.xml.security.signature.XMLSignatureException;
 import org.apache.xml.security.utils.resolver.ResourceResolverSpi;
-import org.bouncycastle.cert.ocsp.OCSPResp;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Text;
 
-import java.io.IOException;
 import java.security.cert.X509Certificate;
-import java.util.ArrayList;
 import java.util.Calendar;
-import java.util.List;
 import java.util.TimeZone;
 
-import static ee.ria.xroad.common.crypto.Digests.calculateDigest;
 import static ee.ria.xroad.common.signature.Helper.ALGORITHM_ATTRIBUTE;
 import static ee.ria.xroad.common.signature.Helper.CERTIFFICATE_VALUES_TAG;
 import static ee.ria.xroad.common.signature.Helper.CERT_DIGEST_TAG;
@@ -105,7 +100,6 @@ import static ee.ria.xroad.common.signature.Helper.createSignatureElement;
 import static ee.ria.xroad.common.signature.Helper.elementNotFound;
 import static ee.ria.xroad.common.signature.Helper.getSignatureRefereceIdForMessage;
 import static ee.ria.xroad.common.signature.Helper.getSignatureReferenceIdForSignedProperties;
-import static ee.ria.xroad.common.util.EncoderUtils.encodeBase64;
 
 /**
  * Encapsulates the AsiC XAdES signature profile. This class creates the signature used in signing the messages.
@@ -125,10 +119,8 @@ final class SignatureXmlBuilder {
 
     private static final int MAX_LINE_LENGTH = 76;
 
-    private final List<X509Certificate> extraCertificates = new ArrayList<>();
-    private final List<OCSPResp> ocspResponses = new ArrayList<>();
-
     private final X509Certificate signingCert;
+    private final SignatureTemplate template;
     private final DigestAlgorithm hashAlgorithmId;
 
     private Document document;
@@ -138,8 +130,8 @@ final class SignatureXmlBuilder {
 
     SignatureXmlBuilder(SigningRequest request, DigestAlgorithm hashAlgorithmId) throws Exception {
         this.signingCert = request.getSigningCert();
-        this.extraCertificates.addAll(request.getExtraCertificates());
-        this.ocspResponses.addAll(request.getOcspResponses());
+        this.template = request.getTemplate() != null ? request.getTemplate()
+                : new SignatureTemplate(signingCert, request.getExtraCertificates(), request.getOcspResponses());
         this.hashAlgorithmId = hashAlgorithmId;
     }
 
@@ -250,7 +242,7 @@ final class SignatureXmlBuilder {
         Element signingCertificate = createXadesElement(signedSignatureProperties, SIGNING_CERTIFICATE_TAG);
         Element cert = createXadesElement(signingCertificate, CERT_TAG);
 
-        createCertDigestAndIssuerSerial(signature.getKeyInfo().getX509Certificate(), cert);
+        createCertDigestAndIssuerSerial(template.getSigningCertValues(), cert);
     }
 
     private void createSignaturePolicyIdentifier(Element signedSignatureProperties) throws Exception {
@@ -303,7 +295,8 @@ final class SignatureXmlBuilder {
         }
     }
 
-    private void createCertDigestAndIssuerSerial(X509Certificate cert, Element certElement) throws Exception {
+    private void createCertDigestAndIssuerSerial(SignatureTemplate.CertValues cert, Element certElement)
+            throws Exception {
         Element certDigest = createXadesElement(certElement, CERT_DIGEST_TAG);
         createCertDigestAlgAndValue(cert, certDigest);
 
@@ -311,8 +304,8 @@ final class SignatureXmlBuilder {
         createCertId(cert, issuerSerial);
     }
 
-    private void createCertDigestAlgAndValue(X509Certificate cert, Element element) throws Exception {
-        createDigestAlgAndValue(getHashAlgorithmId(), digest(cert, getHashAlgorithmId()), element);
+    private void createCertDigestAlgAndValue(SignatureTemplate.CertValues cert, Element element) throws Exception {
+        createDigestAlgAndValue(getHashAlgorithmId(), cert.getDigest(getHashAlgorithmId()), element);
     }
 
     private void createDigestAlgAndValue(DigestAlgorithm algorithmUri, String digest, Element element) throws Exception {
@@ -323,23 +316,23 @@ final class SignatureXmlBuilder {
         digestValue.setTextContent(digest);
     }
 
-    private void createCertId(X509Certificate cert, Element element) {
+    private void createCertId(SignatureTemplate.CertValues cert, Element element) {
         Element issuerName = createDsElement(element, X509_ISSUER_NAME_TAG);
-        issuerName.setTextContent(cert.getIssuerX500Principal().getName());
+        issuerName.setTextContent(cert.getIssuerName());
 
         Element issuerNumber = createDsElement(element, X509_SERIAL_NUMBER_TAG);
-        issuerNumber.setTextContent(cert.getSerialNumber().toString());
+        issuerNumber.setTextContent(cert.getSerialNumber());
     }
 
     private Element createUnsignedProperties() throws Exception {
         Element unsignedProperties = createXadesElement(UNSIGNED_PROPS_TAG);
         Element unsignedSignatureProperties = createXadesElement(unsignedProperties, UNSIGNED_SIGNATURE_PROPS_TAG);
 
-        if (!extraCertificates.isEmpty()) {
+        if (!template.getExtraCertValues().isEmpty()) {
             createCompleteCertificateRefs(unsignedSignatureProperties);
         }
 
-        if (!extraCertificates.isEmpty()) {
+        if (!template.getExtraCertValues().isEmpty()) {
             createCertificateValues(unsignedSignatureProperties);
         }
 
@@ -354,15 +347,15 @@ final class SignatureXmlBuilder {
 
         int c = 1;
 
-        for (OCSPResp ocspResp : ocspResponses) {
-            createOcspValue(ocspValues, ocspResp, OCSP_RESPONSE_ID + (c++));
+        for (String encodedOcspResponse : template.getEncodedOcspResponses()) {
+            createOcspValue(ocspValues, encodedOcspResponse, OCSP_RESPONSE_ID + (c++));
         }
     }
 
-    private void createOcspValue(Element ocspValues, OCSPResp ocspResponse, String id) throws IOException {
+    private void createOcspValue(Element ocspValues, String encodedOcspResponse, String id) {
         Element encapsulatedOcspValue = createXadesElement(ocspValues, ENCAPSULATED_OCSP_VALUE_TAG);
         encapsulatedOcspValue.setAttribute(ID_ATTRIBUTE, id);
-        encapsulatedOcspValue.setTextContent(encodeBase64(ocspResponse.getEncoded()));
+        encapsulatedOcspValue.setTextContent(encodedOcspResponse);
     }
 
     private void createCertificateValues(Element unsignedSignatureProperties) throws Exception {
@@ -370,10 +363,10 @@ final class SignatureXmlBuilder {
 
         int c = 1;
 
-        for (X509Certificate cert : extraCertificates) {
+        for (SignatureTemplate.CertValues cert : template.getExtraCertValues()) {
             Element encapsulatedX509Certificate = createXadesElement(certificateValues,
                     ENCAPSULATED_X509_CERTIFICATE_TAG);
-            encapsulatedX509Certificate.setTextContent(encodeBase64(cert.getEncoded()));
+            encapsulatedX509Certificate.setTextContent(cert.getBase64Encoded());
             encapsulatedX509Certificate.setAttribute(ID_ATTRIBUTE, ENCAPSULATED_CERT_ID + (c++));
         }
     }
@@ -388,7 +381,7 @@ final class SignatureXmlBuilder {
         // add references to all the extra certificates
         int c = 1;
 
-        for (X509Certificate cert : extraCertificates) {
+        for (SignatureTemplate.CertValues cert : template.getExtraCertValues()) {
             Element certElement = createXadesElement(certRefs, CERT_TAG);
             certElement.setAttribute(URI_ATTRIBUTE, "#" + ENCAPSULATED_CERT_ID + (c++));
             createCertDigestAndIssuerSerial(cert, certElement);
@@ -416,12 +409,4 @@ final class SignatureXmlBuilder {
     private Element createDsElement(String name) {
         return document.createElement(PREFIX_DS + name);
     }
-
-    private static String digest(X509Certificate cert, DigestAlgorithm method) throws Exception {
-        return digest(cert.getEncoded(), method);
-    }
-
-    private static String digest(byte[] encoded, DigestAlgorithm method) throws Exception {
-        return encodeBase64(calculateDigest(method, encoded));
-    }
 }
@@ -40,6 +40,7 @@ import ee.ria.xroad.proxy.conf.CachingKeyConfImpl;
 import ee.ria.xroad.proxy.conf.KeyConfProvider;
 import ee.ria.xroad.proxy.opmonitoring.OpMonitoring;
 import ee.ria.xroad.proxy.serverproxy.ServerProxy;
+import ee.ria.xroad.proxy.util.CachingStreamMetrics;
 import ee.ria.xroad.proxy.util.CertHashBasedOcspResponder;
 
 import org.springframework.context.annotation.Bean;
@@ -97,6 +98,11 @@ public class ProxyConfig {
         return new ServerProxy(globalConfProvider, keyConfProvider, serverConfProvider, certChainFactory);
     }
 
+    @Bean
+    CachingStreamMetrics cachingStreamMetrics() {
+        return new CachingStreamMetrics();
+    }
+
     @Bean
     CertHashBasedOcspResponder certHashBasedOcspResponder(KeyConfProvider keyConfProvider) throws Exception {
         return new CertHashBasedOcspResponder(keyConfProvider);
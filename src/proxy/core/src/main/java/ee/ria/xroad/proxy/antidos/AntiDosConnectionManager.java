@@ -32,43 +32,68 @@ import lombok.extern.slf4j.Slf4j;
 
 import java.io.IOException;
 import java.util.Deque;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
-import java.util.concurrent.LinkedBlockingDeque;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Manages the incoming connections and prevents system resource exhaustion.
+ * <p>
+ * Partners with waiting connections are served in round-robin order. Each
+ * partner is in the round-robin ring at most once, which is tracked by a flag
+ * in the partner's data, so accepting and taking connections are O(1) and
+ * do not require a global lock.
  */
 @Slf4j
 class AntiDosConnectionManager<T extends SocketChannelWrapper> {
 
     // Tiny wrapper class for active connections of a partner
     final class HostData {
-        final Deque<T> connections = new LinkedBlockingDeque<>();
+        final Deque<T> connections = new ConcurrentLinkedDeque<>();
+
+        // True while the partner is in the ring of active partners
+        final AtomicBoolean active = new AtomicBoolean();
     }
 
     // The IP used for unknown members
     private static final String UNKNOWN_ORG_IP = "0.0.0.0";
 
+    // Minimum interval between checks for changes in the known member addresses
+    private static final long DATABASE_SYNC_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
     private final GlobalConfProvider globalConfProvider;
 
     // Holds the configuration
     protected final AntiDosConfiguration configuration;
 
-    // IP to HostData mapping
-    protected Map<String, HostData> database = new HashMap<>();
+    // Shared by all connections from unknown addresses
+    private final HostData unknownPartner = new HostData();
+
+    // IP to HostData mapping, replaced as a whole when the known addresses change
+    protected volatile Map<String, HostData> database = new ConcurrentHashMap<>();
+
+    // Ring of partners with waiting connections
+    protected final Queue<HostData> activePartners = new ConcurrentLinkedQueue<>();
 
-    // Buffer of partners with waiting connections
-    protected LinkedBlockingQueue<HostData> activePartners =
-            new LinkedBlockingQueue<>();
+    // Number of partners in the ring, used for blocking until one is available
+    private final Semaphore activePartnerCount = new Semaphore(0);
 
     // Holds a cache of previously known member IPs.
     // Used to determine if should sync the database when conf changed.
     private Set<String> previousKnownOrganizations = new HashSet<>();
 
+    private final ReentrantLock syncLock = new ReentrantLock();
+
+    private volatile long nextDatabaseSync;
+
     // Fallback cpu load value in cases where OS fails to properly respond.
     private double previousCpuLoad = 0d;
 
@@ -80,12 +105,17 @@ class AntiDosConnectionManager<T extends SocketChannelWrapper> {
 
         this.configuration = configuration;
         this.previousKnownOrganizations.add(UNKNOWN_ORG_IP);
-        this.database.put(UNKNOWN_ORG_IP, new HostData());
+        this.database.put(UNKNOWN_ORG_IP, unknownPartner);
     }
 
     void init() throws Exception {
         // Populate the database based on registered members' IPs.
-        syncDatabase();
+        syncLock.lock();
+        try {
+            syncDatabase();
+        } finally {
+            syncLock.unlock();
+        }
     }
 
     /**
@@ -101,9 +131,9 @@ class AntiDosConnectionManager<T extends SocketChannelWrapper> {
     /**
      * Adds the connection into the partner's connection queue.
      */
-    synchronized void accept(T connection) {
-        // We need to synchronize the database with the existing members.
-        syncDatabase();
+    void accept(T connection) {
+        // Pick up changes in the known members, at most once per sync interval.
+        syncDatabaseIfDue();
 
         // Find the host data for the incoming connection and register
         // the new connection to this host data
@@ -112,8 +142,8 @@ class AntiDosConnectionManager<T extends SocketChannelWrapper> {
 
         // If the host data is not for an active partner,
         // add it to the connection buffer as the newest partner.
-        if (!activePartners.contains(currentPartner)) {
-            activePartners.add(currentPartner);
+        if (currentPartner.active.compareAndSet(false, true)) {
+            addActivePartner(currentPartner);
         }
     }
 
@@ -140,18 +170,28 @@ class AntiDosConnectionManager<T extends SocketChannelWrapper> {
      */
     protected T getNextConnection() throws InterruptedException {
         // Take the oldest partner from the buffer (blocks until available).
-        HostData oldestPartner = activePartners.take();
+        activePartnerCount.acquire();
+        HostData oldestPartner = activePartners.poll();
 
         // Take the oldest connection.
         T sock = oldestPartner.connections.pollLast();
-        if (sock == null) {
-            return null;
-        }
 
         // If there are more connections left for this partner, add the partner
-        // back to the buffer as the first partner.
+        // back to the buffer as the newest partner.
         if (!oldestPartner.connections.isEmpty()) {
-            activePartners.add(oldestPartner);
+            addActivePartner(oldestPartner);
+        } else {
+            oldestPartner.active.set(false);
+
+            // A connection may have been accepted after the emptiness check
+            // while the partner was still marked active.
+            if (!oldestPartner.connections.isEmpty() && oldestPartner.active.compareAndSet(false, true)) {
+                addActivePartner(oldestPartner);
+            }
+        }
+
+        if (sock == null) {
+            return null;
         }
 
         // Processing a connection consumes file handles and other resources
@@ -168,7 +208,6 @@ class AntiDosConnectionManager<T extends SocketChannelWrapper> {
 
         return null;
     }
-
     protected long getFreeFileDescriptorCount() {
         return SystemMetrics.getFreeFileDescriptorCount();
     }
@@ -193,12 +232,31 @@ class AntiDosConnectionManager<T extends SocketChannelWrapper> {
         return SystemMetrics.getHeapUsage();
     }
 
+    private void addActivePartner(HostData partner) {
+        activePartners.add(partner);
+        activePartnerCount.release();
+    }
+
     private HostData getHostData(String ip) {
-        return database.containsKey(ip)
-                ? database.get(ip) : database.get(UNKNOWN_ORG_IP);
+        return database.getOrDefault(ip, unknownPartner);
     }
 
+    private void syncDatabaseIfDue() {
+        if (System.nanoTime() - nextDatabaseSync < 0 || !syncLock.tryLock()) {
+            return;
+        }
+
+        try {
+            syncDatabase();
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    // Must be called while holding syncLock
     private void syncDatabase() {
+        nextDatabaseSync = System.nanoTime() + DATABASE_SYNC_INTERVAL_NANOS;
+
         Set<String> knownAddresses = getAllAddresses();
 
         if (previousKnownOrganizations.equals(knownAddresses)) {
@@ -206,7 +264,7 @@ class AntiDosConnectionManager<T extends SocketChannelWrapper> {
             return;
         }
 
-        Map<String, HostData> newDatabase = new HashMap<>();
+        Map<String, HostData> newDatabase = new ConcurrentHashMap<>();
 
         // Retain existing members connections
         database.keySet().stream()
@@ -61,19 +61,20 @@ import org.apache.http.client.HttpClient;
 import org.bouncycastle.cert.ocsp.OCSPResp;
 import org.bouncycastle.util.Arrays;
 
+import java.io.IOException;
 import java.io.InputStream;
-import java.io.PipedInputStream;
-import java.io.PipedOutputStream;
 import java.net.URI;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
-import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import static ee.ria.xroad.common.ErrorCodes.X_INCONSISTENT_RESPONSE;
 import static ee.ria.xroad.common.ErrorCodes.X_INTERNAL_ERROR;
@@ -82,7 +83,6 @@ import static ee.ria.xroad.common.ErrorCodes.X_MISSING_SOAP;
 import static ee.ria.xroad.common.ErrorCodes.X_SERVICE_FAILED_X;
 import static ee.ria.xroad.common.ErrorCodes.translateException;
 import static ee.ria.xroad.common.SystemProperties.isSslEnabled;
-import static ee.ria.xroad.common.util.AbstractHttpSender.CHUNKED_LENGTH;
 import static ee.ria.xroad.common.util.EncoderUtils.decodeBase64;
 import static ee.ria.xroad.common.util.EncoderUtils.encodeBase64;
 import static ee.ria.xroad.common.util.MimeUtils.HEADER_ORIGINAL_CONTENT_TYPE;
@@ -100,20 +100,10 @@ class ClientMessageProcessor extends AbstractClientMessageProcessor {
     private static final int WAIT_FOR_SOAP_TIMEOUT = 30; // seconds
 
     /**
-     * By using a count down latch we can make the main thread wait for the
-     * request handler thread to read the SOAP request, since we cannot open
-     * connection to server proxy before we haven't read the receiver name from
-     * request SOAP.
+     * Completed when the request handler thread has read the SOAP request, since we cannot open
+     * connection to server proxy before we haven't read the receiver name from request SOAP.
      */
-    private final CountDownLatch requestHandlerGate = new CountDownLatch(1);
-
-    /**
-     * By using a count down latch we can make the main thread wait for the
-     * HTTP sender to finish sending the entire request to the piped output
-     * stream, so we can check for errors in the handler thread before
-     * receiving the response.
-     */
-    private final CountDownLatch httpSenderGate = new CountDownLatch(1);
+    private final CompletableFuture<Void> soapRead = new CompletableFuture<>();
 
     /**
      * Holds the incoming request SOAP message.
@@ -128,11 +118,9 @@ class ClientMessageProcessor extends AbstractClientMessageProcessor {
     private volatile CodedException executionException;
 
     /**
-     * Holds the proxy message output stream and associated info.
+     * Request entity the request handler thread encodes the proxy message into.
      */
-    private PipedInputStream reqIns;
-    private volatile PipedOutputStream reqOuts;
-    private volatile String outputContentType;
+    private volatile PipelinedRequestEntity requestEntity;
 
     /**
      * Holds the request to the server proxy.
@@ -168,8 +156,6 @@ class ClientMessageProcessor extends AbstractClientMessageProcessor {
             throws Exception {
         super(globalConfProvider, keyConfProvider, serverConfProvider, certChainFactory, request, response, httpClient, clientCert,
                 opMonitoringData);
-        this.reqIns = new PipedInputStream();
-        this.reqOuts = new PipedOutputStream(reqIns);
         this.xRequestId = UUID.randomUUID().toString();
     }
 
@@ -206,9 +192,7 @@ class ClientMessageProcessor extends AbstractClientMessageProcessor {
                 sendResponse();
             }
         } catch (Exception e) {
-            if (reqIns != null) {
-                reqIns.close();
-            }
+            abortRequestEntity(e);
 
             // Let's interrupt the handler thread so that it won't block forever waiting for us to do something.
             soapHandler.cancel(true);
@@ -248,7 +232,6 @@ class ClientMessageProcessor extends AbstractClientMessageProcessor {
             sendRequest(httpSender);
 
             // Check for any errors from the handler thread once more.
-            waitForRequestSent();
             checkError();
 
             parseResponse(httpSender);
@@ -271,13 +254,23 @@ class ClientMessageProcessor extends AbstractClientMessageProcessor {
             httpSender.addHeader(HEADER_REQUEST_ID, xRequestId);
 
             opMonitoringData.setRequestOutTs(getEpochMillisecond());
-            httpSender.doPost(getServiceAddress(addresses), reqIns, CHUNKED_LENGTH, outputContentType);
+            httpSender.doPost(getServiceAddress(addresses), requestEntity);
             opMonitoringData.setResponseInTs(getEpochMillisecond());
+        } catch (Exception e) {
+            // An error from the handler thread explains the failed request better than the sender.
+            checkError();
 
+            throw e;
         } finally {
-            if (reqIns != null) {
-                reqIns.close();
-            }
+            // Release the handler thread if the request entity was never written.
+            abortRequestEntity(new CodedException(X_INTERNAL_ERROR, "Request was not sent to server proxy"));
+        }
+    }
+
+    private void abortRequestEntity(Exception cause) {
+        PipelinedRequestEntity entity = requestEntity;
+        if (entity != null) {
+            entity.abort(cause);
         }
     }
 
@@ -392,38 +385,38 @@ class ClientMessageProcessor extends AbstractClientMessageProcessor {
         log.trace("waitForSoapMessage()");
 
         try {
-            if (!requestHandlerGate.await(WAIT_FOR_SOAP_TIMEOUT, TimeUnit.SECONDS)) {
-                throw new CodedException(X_INTERNAL_ERROR, "Reading SOAP from request timed out");
-            }
+            soapRead.get(WAIT_FOR_SOAP_TIMEOUT, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            throw new CodedException(X_INTERNAL_ERROR, "Reading SOAP from request timed out");
         } catch (InterruptedException e) {
             log.error("waitForSoapMessage interrupted", e);
 
             Thread.currentThread().interrupt();
-        }
-    }
-
-    private void waitForRequestSent() {
-        log.trace("waitForRequestSent()");
-
-        try {
-            httpSenderGate.await();
-        } catch (InterruptedException e) {
-            log.error("waitForRequestSent interrupted", e);
-
-            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            // never completed exceptionally, errors are passed via executionException
+            setError(e.getCause());
         }
     }
 
     private void continueProcessing() {
         log.trace("continueProcessing()");
 
-        requestHandlerGate.countDown();
+        soapRead.complete(null);
     }
 
     private void continueReadingResponse() {
         log.trace("continueReadingResponse()");
 
-        httpSenderGate.countDown();
+        PipelinedRequestEntity entity = requestEntity;
+        if (entity == null) {
+            return;
+        }
+
+        if (executionException != null) {
+            entity.encodingFailed(executionException);
+        } else {
+            entity.encodingCompleted();
+        }
     }
 
     private void checkError() throws Exception {
@@ -475,8 +468,11 @@ class ClientMessageProcessor extends AbstractClientMessageProcessor {
             updateOpMonitoringDataBySoapMessage(opMonitoringData, requestSoap);
 
             if (request == null) {
-                request = new ProxyMessageEncoder(reqOuts, SoapUtils.getHashAlgoId());
-                outputContentType = request.getContentType();
+                String hashAlgoId = SoapUtils.getHashAlgoId();
+                PipelinedRequestEntity entity = new PipelinedRequestEntity();
+                request = new ProxyMessageEncoder(entity.getEncoderOutput(), hashAlgoId);
+                entity.setContentType(request.getContentType());
+                requestEntity = entity;
             }
 
             // We have the request SOAP message, we can start sending the
@@ -568,5 +564,4 @@ class ClientMessageProcessor extends AbstractClientMessageProcessor {
             }
         }
     }
-
 }
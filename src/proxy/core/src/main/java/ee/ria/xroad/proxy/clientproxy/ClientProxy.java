@@ -35,6 +35,8 @@ import ee.ria.xroad.proxy.conf.KeyConfProvider;
 import ee.ria.xroad.proxy.serverproxy.IdleConnectionMonitorThread;
 import ee.ria.xroad.proxy.util.SSLContextUtil;
 
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.jmx.JmxReporter;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.http.client.config.RequestConfig;
@@ -103,6 +105,11 @@ public class ClientProxy implements InitializingBean, DisposableBean {
 
     private final Server server = new Server();
 
+    // Connection health of the remote security servers, exported over JMX
+    private final MetricRegistry endpointMetricRegistry = new MetricRegistry();
+    private final JmxReporter endpointMetricReporter = JmxReporter.forRegistry(endpointMetricRegistry).build();
+    private final EndpointHealthTable endpointHealth = new EndpointHealthTable(endpointMetricRegistry);
+
     private CloseableHttpClient client;
     private IdleConnectionMonitorThread connectionMonitor;
 
@@ -200,7 +207,7 @@ public class ClientProxy implements InitializingBean, DisposableBean {
 
     private SSLConnectionSocketFactory createSSLSocketFactory() throws Exception {
         return new FastestConnectionSelectingSSLSocketFactory(authTrustVerifier,
-                SSLContextUtil.createXroadSSLContext(globalConfProvider, keyConfProvider));
+                SSLContextUtil.createXroadSSLContext(globalConfProvider, keyConfProvider), endpointHealth);
     }
 
     private void createConnectors() throws Exception {
@@ -316,6 +323,8 @@ public class ClientProxy implements InitializingBean, DisposableBean {
         if (connectionMonitor != null) {
             connectionMonitor.start();
         }
+
+        endpointMetricReporter.start();
     }
 
     @Override
@@ -326,6 +335,8 @@ public class ClientProxy implements InitializingBean, DisposableBean {
             connectionMonitor.shutdown();
         }
 
+        endpointMetricReporter.stop();
+
         client.close();
         server.stop();
 
@@ -38,6 +38,7 @@ import ee.ria.xroad.common.identifier.ServiceId;
 import ee.ria.xroad.common.message.RestRequest;
 import ee.ria.xroad.common.message.RestResponse;
 import ee.ria.xroad.common.opmonitoring.OpMonitoringData;
+import ee.ria.xroad.common.util.CacheInputStream;
 import ee.ria.xroad.common.util.CachingStream;
 import ee.ria.xroad.common.util.HttpSender;
 import ee.ria.xroad.common.util.MimeUtils;
@@ -266,11 +267,13 @@ class ClientRestMessageProcessor extends AbstractClientMessageProcessor {
         }
     }
 
-    private void logResponseMessage() {
-        MessageLog.log(restRequest,
-                response.getRestResponse(),
-                response.getSignature(),
-                response.getRestBody(), true, xRequestId);
+    private void logResponseMessage() throws IOException {
+        try (CacheInputStream body = response.getRestBody()) {
+            MessageLog.log(restRequest,
+                    response.getRestResponse(),
+                    response.getSignature(),
+                    body, true, xRequestId);
+        }
     }
 
     private void sendResponse() throws Exception {
@@ -285,8 +288,8 @@ class ClientRestMessageProcessor extends AbstractClientMessageProcessor {
             }
         }
         if (response.hasRestBody()) {
-            try (var out = jResponse.getOutputStream()) {
-                IOUtils.copy(response.getRestBody(), out);
+            try (var out = jResponse.getOutputStream(); InputStream body = response.getRestBody()) {
+                IOUtils.copy(body, out);
             }
         }
     }
@@ -337,8 +340,9 @@ class ClientRestMessageProcessor extends AbstractClientMessageProcessor {
                             cache.write(buf, 0, count);
                             enc.restBody(buf, count, tee);
                             enc.sign(keyConfProvider.getSigningCtx(senderId));
-                            MessageLog.log(restRequest, enc.getSignature(), cache.getCachedContents(), true,
-                                    xRequestId);
+                            try (CacheInputStream body = cache.getCachedContents()) {
+                                MessageLog.log(restRequest, enc.getSignature(), body, true, xRequestId);
+                            }
                         } finally {
                             cache.consume();
                         }
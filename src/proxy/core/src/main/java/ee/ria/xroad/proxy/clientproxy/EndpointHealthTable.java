@@ -0,0 +1,255 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.clientproxy;
+
+import ee.ria.xroad.common.SystemProperties;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricFilter;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalNotification;
+import lombok.extern.slf4j.Slf4j;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps track of the connection health of remote security server addresses.
+ * <p>
+ * For every address (host and port) an exponentially weighted moving average of the TCP connect and TLS
+ * handshake latencies and the number of failures are recorded. After {@link #FAILURE_THRESHOLD} consecutive
+ * failures the circuit of the address is opened for a period, during which the address is tried only after
+ * all the other addresses.
+ * <p>
+ * The health of every address is exported as gauges of the given metric registry.
+ */
+@Slf4j
+final class EndpointHealthTable {
+
+    static final int FAILURE_THRESHOLD = 3;
+
+    static final String METRIC_PREFIX = "endpoint";
+
+    // Weight of the latest sample in the latency averages
+    private static final double EWMA_WEIGHT = 0.3;
+
+    private static final int MAXIMUM_SIZE = 10000;
+
+    private static final long EXPIRE_AFTER_ACCESS_HOURS = 24;
+
+    private final MetricRegistry metrics;
+    private final Ticker ticker;
+    private final long circuitOpenNanos;
+    private final Cache<String, EndpointHealth> endpoints;
+
+    EndpointHealthTable(MetricRegistry metrics) {
+        this(metrics, Ticker.systemTicker(),
+                TimeUnit.SECONDS.toNanos(SystemProperties.getClientProxyEndpointCircuitOpenPeriod()));
+    }
+
+    EndpointHealthTable(MetricRegistry metrics, Ticker ticker, long circuitOpenNanos) {
+        this.metrics = metrics;
+        this.ticker = ticker;
+        this.circuitOpenNanos = circuitOpenNanos;
+        this.endpoints = CacheBuilder.newBuilder()
+                .expireAfterAccess(EXPIRE_AFTER_ACCESS_HOURS, TimeUnit.HOURS)
+                .maximumSize(MAXIMUM_SIZE)
+                .ticker(ticker)
+                .removalListener(this::onRemoval)
+                .build();
+    }
+
+    /**
+     * Orders the addresses so that the ones with a closed circuit come first, by ascending average latency.
+     * Addresses without any latency measurements are considered the fastest, so that they get measured.
+     * The order of addresses with equal scores is preserved.
+     */
+    URI[] order(URI... addresses) {
+        final long now = ticker.read();
+        final Comparator<URI> byHealth = Comparator
+                .comparing((URI uri) -> get(uri).isCircuitOpen(now))
+                .thenComparingDouble(uri -> get(uri).getScore());
+        final URI[] ordered = addresses.clone();
+        Arrays.sort(ordered, byHealth);
+        return ordered;
+    }
+
+    /**
+     * Records a TCP connect latency to the address.
+     */
+    void recordConnect(URI address, long nanos) {
+        get(address).recordConnect(nanos);
+    }
+
+    /**
+     * Records a connection attempt to the address that was abandoned because of a faster address. The elapsed
+     * time is only a lower bound of the latency, so it is recorded only if it exceeds the current average.
+     */
+    void recordAbandoned(URI address, long nanos) {
+        get(address).recordAbandoned(nanos);
+    }
+
+    /**
+     * Records a successfully completed TLS handshake to the address, closing the circuit.
+     */
+    void recordSuccess(URI address, long handshakeNanos) {
+        get(address).recordSuccess(handshakeNanos);
+    }
+
+    /**
+     * Records a failed connection attempt to the address.
+     */
+    void recordFailure(URI address) {
+        if (get(address).recordFailure(ticker.read(), circuitOpenNanos)) {
+            log.warn("Opened the circuit of '{}' after {} consecutive failures", address, FAILURE_THRESHOLD);
+        }
+    }
+
+    EndpointHealth get(URI address) {
+        final String key = key(address);
+        try {
+            return endpoints.get(key, () -> register(key));
+        } catch (ExecutionException e) {
+            // register() does not throw checked exceptions
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private EndpointHealth register(String key) {
+        final EndpointHealth health = new EndpointHealth();
+        registerGauge(key, "connectLatency", health::getConnectMillis);
+        registerGauge(key, "handshakeLatency", health::getHandshakeMillis);
+        registerGauge(key, "successes", health::getSuccesses);
+        registerGauge(key, "failures", health::getFailures);
+        registerGauge(key, "circuitOpen", () -> health.isCircuitOpen(ticker.read()));
+        return health;
+    }
+
+    private void registerGauge(String key, String name, Gauge<?> gauge) {
+        // A gauge of a previously evicted endpoint could not be replaced otherwise
+        final String metricName = MetricRegistry.name(METRIC_PREFIX, key, name);
+        metrics.remove(metricName);
+        metrics.register(metricName, gauge);
+    }
+
+    private void onRemoval(RemovalNotification<String, EndpointHealth> notification) {
+        if (notification.wasEvicted()) {
+            final String prefix = MetricRegistry.name(METRIC_PREFIX, notification.getKey()) + ".";
+            metrics.removeMatching(MetricFilter.startsWith(prefix));
+        }
+    }
+
+    private static String key(URI address) {
+        return address.getHost() + ":" + address.getPort();
+    }
+
+    /**
+     * Connection health of a single address.
+     */
+    static final class EndpointHealth {
+        private double connectMillis = Double.NaN;
+        private double handshakeMillis = Double.NaN;
+        private long successes;
+        private long failures;
+        private int consecutiveFailures;
+        private long circuitOpenedAt;
+        private long circuitOpenPeriod;
+        private boolean circuitOpen;
+
+        synchronized double getConnectMillis() {
+            return connectMillis;
+        }
+
+        synchronized double getHandshakeMillis() {
+            return handshakeMillis;
+        }
+
+        synchronized long getSuccesses() {
+            return successes;
+        }
+
+        synchronized long getFailures() {
+            return failures;
+        }
+
+        /**
+         * @return the sum of the average connect and handshake latencies in milliseconds,
+         * unknown latencies are counted as zero
+         */
+        synchronized double getScore() {
+            return (Double.isNaN(connectMillis) ? 0 : connectMillis)
+                    + (Double.isNaN(handshakeMillis) ? 0 : handshakeMillis);
+        }
+
+        synchronized boolean isCircuitOpen(long now) {
+            return circuitOpen && now - circuitOpenedAt < circuitOpenPeriod;
+        }
+
+        synchronized void recordConnect(long nanos) {
+            connectMillis = average(connectMillis, nanos);
+        }
+
+        synchronized void recordAbandoned(long nanos) {
+            if (Double.isNaN(connectMillis) || nanos / 1_000_000d > connectMillis) {
+                connectMillis = average(connectMillis, nanos);
+            }
+        }
+
+        synchronized void recordSuccess(long handshakeNanos) {
+            handshakeMillis = average(handshakeMillis, handshakeNanos);
+            successes++;
+            consecutiveFailures = 0;
+            circuitOpen = false;
+        }
+
+        /**
+         * @return true if this failure opened the circuit
+         */
+        synchronized boolean recordFailure(long now, long openNanos) {
+            failures++;
+            consecutiveFailures++;
+            if (openNanos <= 0 || consecutiveFailures < FAILURE_THRESHOLD || isCircuitOpen(now)) {
+                return false;
+            }
+            // a failure after the open period (re)opens the circuit
+            circuitOpen = true;
+            circuitOpenedAt = now;
+            circuitOpenPeriod = openNanos;
+            return true;
+        }
+
+        private static double average(double current, long sampleNanos) {
+            final double sample = sampleNanos / 1_000_000d;
+            return Double.isNaN(current) ? sample : EWMA_WEIGHT * sample + (1 - EWMA_WEIGHT) * current;
+        }
+    }
+}
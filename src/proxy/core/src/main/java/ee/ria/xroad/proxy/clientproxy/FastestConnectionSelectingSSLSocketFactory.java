@@ -31,6 +31,7 @@ import ee.ria.xroad.common.opmonitoring.OpMonitoringData;
 import ee.ria.xroad.common.util.CryptoUtils;
 import ee.ria.xroad.proxy.clientproxy.FastestSocketSelector.SocketInfo;
 
+import com.codahale.metrics.MetricRegistry;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import lombok.extern.slf4j.Slf4j;
@@ -59,8 +60,11 @@ import static ee.ria.xroad.common.ErrorCodes.X_SSL_AUTH_FAILED;
  * This is a custom SSL socket factory that connects to the fastest target
  * address given a list of target addresses.
  * <p>
- * The fastest target address is selected by initializing socket connection
- * to all provided addresses and choosing the first one to respond.
+ * The fastest target address is selected by initializing socket connections
+ * to the provided addresses, ordered by their recorded connection health,
+ * and choosing the first one to respond. Connection attempts are staggered,
+ * so that a healthy address is usually connected to without attempts to
+ * the other addresses.
  * <p>
  * If an SSL session already exists to one of the provided addresses, then
  * that address is selected immediately without previous selection algorithm.
@@ -84,14 +88,23 @@ class FastestConnectionSelectingSSLSocketFactory
 
     private final AuthTrustVerifier authTrustVerifier;
     private final javax.net.ssl.SSLSocketFactory socketfactory;
+    private final EndpointHealthTable endpointHealth;
+    private final int staggerDelay;
 
     private final Cache<CacheKey, URI> selectedHosts;
     private final boolean cachingEnabled;
 
     FastestConnectionSelectingSSLSocketFactory(AuthTrustVerifier authTrustVerifier, SSLContext sslContext) {
+        this(authTrustVerifier, sslContext, new EndpointHealthTable(new MetricRegistry()));
+    }
+
+    FastestConnectionSelectingSSLSocketFactory(AuthTrustVerifier authTrustVerifier, SSLContext sslContext,
+                                               EndpointHealthTable endpointHealth) {
         super(sslContext, null, SystemProperties.getXroadTLSCipherSuites(), (HostnameVerifier) null);
         this.authTrustVerifier = authTrustVerifier;
         this.socketfactory = sslContext.getSocketFactory();
+        this.endpointHealth = endpointHealth;
+        this.staggerDelay = SystemProperties.getClientProxyConnectStaggerDelay();
         this.selectedHosts = CacheBuilder.newBuilder()
                 .expireAfterWrite(SystemProperties.getClientProxyFastestConnectingSslUriCachePeriod(), TimeUnit.SECONDS)
                 .maximumSize(CACHE_MAXIMUM_SIZE)
@@ -114,7 +127,7 @@ class FastestConnectionSelectingSSLSocketFactory
         // Read target addresses from the context.
         final URI[] addressesFromContext = getAddressesFromContext(context);
         final boolean useCache = cachingEnabled && (addressesFromContext.length > 1);
-        final FastestSocketSelector selector = new FastestSocketSelector();
+        final FastestSocketSelector selector = new FastestSocketSelector(endpointHealth, staggerDelay);
 
         CacheKey cacheKey = null;
         URI cachedURI = null;
@@ -136,7 +149,7 @@ class FastestConnectionSelectingSSLSocketFactory
         }
 
         if (selector.isEmpty()) {
-            selector.addAll(addressesFromContext);
+            selector.addAll(endpointHealth.order(addressesFromContext));
         }
 
         Exception deferredException = null;
@@ -148,8 +161,10 @@ class FastestConnectionSelectingSSLSocketFactory
                 // Select the fastest address if more than one address is provided.
                 // see also FastestSocketSelector
                 selectedSocket = selector.select(connectTimeout);
+                final long handshakeStart = System.nanoTime();
                 sslSocket = wrapToSSLSocket(selectedSocket.getSocket(), connectTimeout);
                 prepareAndVerify(sslSocket, selectedSocket.getUri(), context);
+                endpointHealth.recordSuccess(selectedSocket.getUri(), System.nanoTime() - handshakeStart);
                 configureSocket(sslSocket);
                 log.trace("Connected to {}", selectedSocket.getUri());
                 updateOpMonitoringData(context, selectedSocket);
@@ -164,13 +179,14 @@ class FastestConnectionSelectingSSLSocketFactory
                 closeQuietly(sslSocket);
                 if (selectedSocket != null) {
                     log.warn("Failed to connect to {}", selectedSocket.getUri(), e);
+                    endpointHealth.recordFailure(selectedSocket.getUri());
                     closeQuietly(selectedSocket.getSocket());
                 } else {
                     log.warn("Failed to connect", e);
                 }
                 if (cachedURI != null) {
                     selectedHosts.asMap().remove(cacheKey, cachedURI);
-                    selector.addAll(addressesFromContext);
+                    selector.addAll(endpointHealth.order(addressesFromContext));
                     selector.remove(cachedURI);
                     cachedURI = null;
                     connectTimeout = timeout;
@@ -26,6 +26,7 @@
 package ee.ria.xroad.proxy.clientproxy;
 
 import lombok.Data;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
 import javax.net.SocketFactory;
@@ -41,19 +42,24 @@ import java.nio.channels.SocketChannel;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import static ee.ria.xroad.proxy.clientproxy.FastestConnectionSelectingSSLSocketFactory.closeQuietly;
 
 /**
  * Given a list of addresses, selects the first one to respond.
- * More specifically, we initiate a connection to all specified addresses and
- * wait for any connection events using Selector. We return the first address
- * from the selector or null, if no connections can be made.
- *
+ * More specifically, we initiate a connection to the addresses in the given order, starting the next attempt
+ * when the previous ones have not completed within the stagger delay or have failed, and wait for any
+ * connection events using Selector. We return the first address from the selector or throw an exception,
+ * if no connections can be made. With a zero stagger delay, connections to all addresses are initiated at once.
+ * <p>
+ * Connect latencies and failures are recorded to the endpoint health table.
+ * <p>
  * Note! During selection, the selector will remove addresses from the provided list if the address is
  * unresolvable or there is an error during connecting to the address.
  */
 @Slf4j
+@RequiredArgsConstructor
 final class FastestSocketSelector {
 
     @Data
@@ -62,6 +68,13 @@ final class FastestSocketSelector {
         private final Socket socket;
     }
 
+    // Key attachment of a pending connection attempt
+    private record Attempt(URI uri, long startNanos) {
+    }
+
+    private final EndpointHealthTable endpointHealth;
+    private final int staggerDelay;
+
     private List<URI> addresses = new ArrayList<>();
 
     void add(URI address) {
@@ -100,10 +113,13 @@ final class FastestSocketSelector {
         try {
             socket = SocketFactory.getDefault().createSocket();
             final InetSocketAddress address = new InetSocketAddress(uri.getHost(), uri.getPort());
+            final long start = System.nanoTime();
             socket.connect(address, timeout);
+            endpointHealth.recordConnect(uri, System.nanoTime() - start);
             return new SocketInfo(uri, socket);
         } catch (Exception e) {
             addresses.remove(uri);
+            endpointHealth.recordFailure(uri);
             closeQuietly(socket);
             throw e;
         }
@@ -113,12 +129,11 @@ final class FastestSocketSelector {
         log.trace("select()");
         Selector selector = Selector.open();
         try {
-            initConnections(selector);
             SelectionKey key = selectFirstConnectedSocketChannel(selector, timeout);
             final SocketChannel channel = (SocketChannel) key.channel();
             key.cancel();
             channel.configureBlocking(true);
-            return new SocketInfo((URI) key.attachment(), channel.socket());
+            return new SocketInfo(((Attempt) key.attachment()).uri(), channel.socket());
         } finally {
             try {
                 closeSelector(selector);
@@ -132,67 +147,117 @@ final class FastestSocketSelector {
             IOException {
         log.trace("selectFirstConnectedSocketChannel()");
 
-        while (!selector.keys().isEmpty()) {
-            if (selector.select(connectTimeout) == 0) { // Block until something happens
+        final Iterator<URI> candidates = new ArrayList<>(addresses).iterator();
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(connectTimeout);
+        final long staggerNanos = TimeUnit.MILLISECONDS.toNanos(staggerDelay);
+        long nextStart = System.nanoTime();
+
+        while (true) {
+            final long now = System.nanoTime();
+            if (now - deadline >= 0) {
                 break;
             }
+
+            if (candidates.hasNext() && (now - nextStart >= 0 || !hasPendingConnections(selector))) {
+                SelectionKey key = initConnection(selector, candidates.next());
+                if (key != null && isConnected(key)) {
+                    return key;
+                }
+                nextStart = now + staggerNanos;
+                continue;
+            }
+
+            if (!hasPendingConnections(selector)) {
+                break;
+            }
+
+            long waitUntil = candidates.hasNext() && nextStart - deadline < 0 ? nextStart : deadline;
+            long waitMillis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(waitUntil - now));
+            if (selector.select(waitMillis) == 0) {
+                continue;
+            }
             Iterator<SelectionKey> it = selector.selectedKeys().iterator();
             while (it.hasNext()) {
                 SelectionKey key = it.next();
-                if (isConnected(key)) {
+                it.remove();
+                if (key.isValid() && key.isConnectable() && isConnected(key)) {
                     return key;
                 }
-                it.remove();
             }
         }
         throw new IOException("Unable to connect to any of the provided addresses.");
     }
 
+    private static boolean hasPendingConnections(Selector selector) {
+        for (SelectionKey key : selector.keys()) {
+            if (key.isValid()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     private boolean isConnected(SelectionKey key) {
-        if (key.isValid() && key.isConnectable()) {
-            SocketChannel channel = (SocketChannel) key.channel();
-            try {
-                return channel.finishConnect();
-            } catch (Exception e) {
-                //connection failed, do not consider this address any more
-                addresses.remove(key.attachment());
-                key.cancel();
-                closeQuietly(channel);
-                log.trace("Error connecting socket channel: {}", e.getMessage());
+        SocketChannel channel = (SocketChannel) key.channel();
+        Attempt attempt = (Attempt) key.attachment();
+        try {
+            if (channel.finishConnect()) {
+                recordConnected(key.selector(), attempt);
+                return true;
             }
+        } catch (Exception e) {
+            //connection failed, do not consider this address any more
+            addresses.remove(attempt.uri());
+            endpointHealth.recordFailure(attempt.uri());
+            key.cancel();
+            closeQuietly(channel);
+            log.trace("Error connecting socket channel: {}", e.getMessage());
         }
         return false;
     }
 
-    private void initConnections(Selector selector) {
-        log.trace("initConnections()");
+    private void recordConnected(Selector selector, Attempt winner) {
+        final long now = System.nanoTime();
+        endpointHealth.recordConnect(winner.uri(), now - winner.startNanos());
 
-        for (Iterator<URI> iterator = addresses.iterator(); iterator.hasNext(); ) {
-            final URI target = iterator.next();
-            final InetSocketAddress address = new InetSocketAddress(target.getHost(), target.getPort());
-            if (address.isUnresolved()) {
-                iterator.remove();
-                continue;
+        // The abandoned attempts took at least this long, which is recorded so that
+        // slow addresses are not considered unmeasured and tried first again. A lower
+        // bound never lowers the average of an address.
+        for (SelectionKey key : selector.keys()) {
+            Attempt attempt = (Attempt) key.attachment();
+            if (key.isValid() && attempt != winner) {
+                endpointHealth.recordAbandoned(attempt.uri(), now - attempt.startNanos());
             }
-            SocketChannel channel = null;
-            SelectionKey key = null;
-            try {
-                channel = SocketChannel.open();
-                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
-                channel.configureBlocking(false);
-                key = channel.register(selector, SelectionKey.OP_CONNECT, target);
-                if (channel.connect(address)) {
-                    // connected immediately
-                    break;
-                }
-            } catch (Exception e) {
-                if (key != null) {
-                    key.cancel();
-                    iterator.remove();
-                }
-                closeQuietly(channel);
-                log.trace("Error connecting to '{}': {}", target, e);
+        }
+    }
+
+    private SelectionKey initConnection(Selector selector, URI target) {
+        log.trace("initConnection({})", target);
+
+        final InetSocketAddress address = new InetSocketAddress(target.getHost(), target.getPort());
+        if (address.isUnresolved()) {
+            addresses.remove(target);
+            endpointHealth.recordFailure(target);
+            return null;
+        }
+        SocketChannel channel = null;
+        SelectionKey key = null;
+        try {
+            channel = SocketChannel.open();
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            channel.configureBlocking(false);
+            key = channel.register(selector, SelectionKey.OP_CONNECT, new Attempt(target, System.nanoTime()));
+            channel.connect(address);
+            return key;
+        } catch (Exception e) {
+            if (key != null) {
+                key.cancel();
             }
+            addresses.remove(target);
+            endpointHealth.recordFailure(target);
+            closeQuietly(channel);
+            log.trace("Error connecting to '{}': {}", target, e);
+            return null;
         }
     }
 
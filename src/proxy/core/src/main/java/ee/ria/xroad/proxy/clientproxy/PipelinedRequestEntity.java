@@ -0,0 +1,222 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.clientproxy;
+
+import org.apache.http.entity.AbstractHttpEntity;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static ee.ria.xroad.common.util.AbstractHttpSender.CHUNKED_LENGTH;
+
+/**
+ * Request entity whose content is encoded by another thread straight into the connection output stream.
+ * <p>
+ * The encoding thread writes to {@link #getEncoderOutput()}, which blocks until the HTTP client has opened the
+ * connection and called {@link #writeTo(OutputStream)}. Only the stream reference crosses threads, the request bytes
+ * are not copied between them. {@link #writeTo(OutputStream)} returns once the encoding thread has reported the end
+ * of the request, and fails if the encoding failed, so that the HTTP client does not terminate a truncated request.
+ * <p>
+ * There is no deadline for the whole request. A large request may take longer than any fixed limit, while a stalled
+ * one is ended by the idle timeouts of the client connection the encoding thread reads from and of the server proxy
+ * connection it writes to, after which the encoding thread reports the failure.
+ */
+class PipelinedRequestEntity extends AbstractHttpEntity {
+
+    private static final int PIPE_BUFFER_SIZE = 64 * 1024;
+
+    private final CompletableFuture<OutputStream> connectionOutput = new CompletableFuture<>();
+    private final CompletableFuture<Void> encoded = new CompletableFuture<>();
+    private final OutputStream encoderOutput = new EncoderOutputStream();
+
+    private volatile PipedOutputStream pipe;
+
+    PipelinedRequestEntity() {
+        setChunked(true);
+    }
+
+    /**
+     * @return the stream the encoding thread writes the request to
+     */
+    OutputStream getEncoderOutput() {
+        return encoderOutput;
+    }
+
+    /**
+     * Called by the encoding thread after the whole request has been written.
+     */
+    void encodingCompleted() {
+        encoded.complete(null);
+        closePipe();
+    }
+
+    /**
+     * Called by the encoding thread if the request could not be encoded.
+     */
+    void encodingFailed(Throwable cause) {
+        encoded.completeExceptionally(cause);
+        closePipe();
+    }
+
+    /**
+     * Releases the encoding thread if the request is not going to be sent.
+     */
+    void abort(Throwable cause) {
+        connectionOutput.completeExceptionally(cause);
+    }
+
+    @Override
+    public boolean isRepeatable() {
+        return false;
+    }
+
+    @Override
+    public long getContentLength() {
+        return CHUNKED_LENGTH;
+    }
+
+    @Override
+    public boolean isStreaming() {
+        return true;
+    }
+
+    @Override
+    public InputStream getContent() throws IOException {
+        PipedInputStream in = new PipedInputStream(PIPE_BUFFER_SIZE);
+        pipe = new PipedOutputStream(in);
+        handOver(pipe);
+        if (encoded.isDone()) {
+            // encoding ended before the pipe was set up
+            closePipe();
+        }
+
+        return new FilterInputStream(in) {
+            @Override
+            public int read() throws IOException {
+                return checkEnd(super.read());
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return checkEnd(super.read(b, off, len));
+            }
+
+            private int checkEnd(int result) throws IOException {
+                if (result == -1) {
+                    awaitEncoded();
+                }
+                return result;
+            }
+        };
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        handOver(out);
+        awaitEncoded();
+    }
+
+    private void handOver(OutputStream out) {
+        if (!connectionOutput.complete(out)) {
+            throw new IllegalStateException("Request content has already been consumed");
+        }
+    }
+
+    private void awaitEncoded() throws IOException {
+        try {
+            encoded.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+            throw new InterruptedIOException("Interrupted while encoding the request");
+        } catch (ExecutionException e) {
+            throw new IOException("Encoding the request failed", e.getCause());
+        }
+    }
+
+    private void closePipe() {
+        PipedOutputStream current = pipe;
+        if (current != null) {
+            try {
+                current.close();
+            } catch (IOException ignored) {
+                // the reader has gone away
+            }
+        }
+    }
+
+    /**
+     * Output stream used by the encoding thread, which waits for the connection to be opened before the first
+     * write. Closing it only flushes, the HTTP client ends the request after {@link #writeTo(OutputStream)}.
+     */
+    private final class EncoderOutputStream extends OutputStream {
+        private OutputStream out;
+
+        @Override
+        public void write(int b) throws IOException {
+            target().write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            target().write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            target().flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (out != null) {
+                out.flush();
+            }
+        }
+
+        private OutputStream target() throws IOException {
+            if (out == null) {
+                try {
+                    out = connectionOutput.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+
+                    throw new InterruptedIOException("Interrupted while waiting for server proxy connection");
+                } catch (ExecutionException e) {
+                    throw new IOException("Connection to server proxy was not opened", e.getCause());
+                }
+            }
+            return out;
+        }
+    }
+}
@@ -110,11 +110,12 @@ public class CachingKeyConfImpl extends KeyConfImpl {
     }
 
     /**
-     * Invalidates both auth key and signing info caches
+     * Invalidates both auth key and signing info caches and notifies the change listeners
      */
     protected void invalidateCaches() {
         authKeyInfoCache.invalidateAll();
         signingInfoCache.invalidateAll();
+        notifyChangeListeners();
     }
 
     private static final AuthKey NULL_AUTH_KEY = new AuthKey(null, null);
@@ -47,6 +47,7 @@ import java.security.PrivateKey;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import static ee.ria.xroad.common.ErrorCodes.X_CANNOT_CREATE_SIGNATURE;
 import static ee.ria.xroad.common.util.CertUtils.getSha1Hashes;
@@ -63,6 +64,8 @@ class KeyConfImpl implements KeyConfProvider {
     protected final GlobalConfProvider globalConfProvider;
     protected final ServerConfProvider serverConfProvider;
 
+    private final List<Runnable> changeListeners = new CopyOnWriteArrayList<>();
+
     KeyConfImpl(GlobalConfProvider globalConfProvider, ServerConfProvider serverConfProvider) {
         this.globalConfProvider = globalConfProvider;
         this.serverConfProvider = serverConfProvider;
@@ -156,6 +159,23 @@ class KeyConfImpl implements KeyConfProvider {
         }
 
         SignerProxy.setOcspResponses(getSha1Hashes(certs), base64EncodedResponses);
+
+        notifyChangeListeners();
+    }
+
+    @Override
+    public void addChangeListener(Runnable listener) {
+        changeListeners.add(listener);
+    }
+
+    protected void notifyChangeListeners() {
+        for (Runnable listener : changeListeners) {
+            try {
+                listener.run();
+            } catch (Exception e) {
+                log.error("Key configuration change listener failed", e);
+            }
+        }
     }
 
     SigningCtx createSigningCtx(ClientId subject, String keyId,
@@ -107,6 +107,16 @@ public interface KeyConfProvider {
     void setOcspResponses(List<X509Certificate> certs,
                           List<OCSPResp> responses) throws Exception;
 
+    /**
+     * Registers a listener that is notified when the key configuration or the stored OCSP responses
+     * change, so that data derived from them can be discarded.
+     *
+     * @param listener the listener to notify
+     */
+    default void addChangeListener(Runnable listener) {
+        //NOP
+    }
+
     /**
      * Cleans up any resources hold by KeyConf Provider
      */
@@ -32,6 +32,7 @@ import ee.ria.xroad.common.conf.globalconf.GlobalConfProvider;
 import ee.ria.xroad.common.identifier.ClientId;
 import ee.ria.xroad.common.signature.SignatureBuilder;
 import ee.ria.xroad.common.signature.SignatureData;
+import ee.ria.xroad.common.signature.SignatureTemplate;
 import ee.ria.xroad.proxy.signedmessage.SigningKey;
 
 import lombok.RequiredArgsConstructor;
@@ -40,6 +41,7 @@ import org.bouncycastle.cert.ocsp.OCSPResp;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static ee.ria.xroad.common.ErrorCodes.X_CANNOT_CREATE_SIGNATURE;
 
@@ -66,6 +68,11 @@ public class SigningCtxImpl implements SigningCtx {
      */
     private final X509Certificate cert;
 
+    /**
+     * Pre-rendered signature values, reused while the certificate chain and OCSP responses stay the same.
+     */
+    private final AtomicReference<SignatureTemplate> template = new AtomicReference<>();
+
     @Override
     public SignatureData buildSignature(SignatureBuilder builder) throws Exception {
         List<X509Certificate> extraCerts = getIntermediateCaCerts();
@@ -74,10 +81,25 @@ public class SigningCtxImpl implements SigningCtx {
         builder.addExtraCertificates(extraCerts);
         builder.addOcspResponses(ocspResponses);
         builder.setSigningCert(cert);
+        builder.setTemplate(getTemplate(extraCerts, ocspResponses));
 
         return builder.build(key, SystemProperties.getProxyMessageSignDigestName());
     }
 
+    private SignatureTemplate getTemplate(List<X509Certificate> extraCerts, List<OCSPResp> ocspResponses)
+            throws Exception {
+        SignatureTemplate current = template.get();
+
+        if (current != null && current.matches(cert, extraCerts, ocspResponses)) {
+            return current;
+        }
+
+        SignatureTemplate created = new SignatureTemplate(cert, extraCerts, ocspResponses);
+        template.set(created);
+
+        return created;
+    }
+
     private List<OCSPResp> getOcspResponses(List<X509Certificate> certs) throws Exception {
         List<X509Certificate> allCerts = new ArrayList<>(certs.size() + 1);
         allCerts.add(cert);
@@ -30,6 +30,7 @@ import ee.ria.xroad.common.crypto.identifier.SignMechanism;
 import ee.ria.xroad.common.identifier.ClientId;
 import ee.ria.xroad.proxy.signedmessage.SignerSigningKey;
 
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -49,6 +50,11 @@ class SigningInfo extends AbstractDateValidatableInfo {
     private final Date notBefore;
     private final Date notAfter;
 
+    // Shared by all signatures made with this signing info, so that the signature template
+    // is dropped together with the signing info when the cache is refreshed.
+    @Getter(AccessLevel.NONE)
+    private volatile SigningCtx signingCtx;
+
     // ------------------------------------------------------------------------
 
     @Override
@@ -57,6 +63,14 @@ class SigningInfo extends AbstractDateValidatableInfo {
     }
 
     SigningCtx getSigningCtx(GlobalConfProvider globalConfProvider, KeyConfProvider keyConfProvider) {
-        return new SigningCtxImpl(globalConfProvider, keyConfProvider, clientId, new SignerSigningKey(keyId, signMechanismName), cert);
+        SigningCtx ctx = signingCtx;
+
+        if (ctx == null) {
+            ctx = new SigningCtxImpl(globalConfProvider, keyConfProvider, clientId,
+                    new SignerSigningKey(keyId, signMechanismName), cert);
+            signingCtx = ctx;
+        }
+
+        return ctx;
     }
 }
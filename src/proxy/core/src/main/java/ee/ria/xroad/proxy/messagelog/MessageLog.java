@@ -155,10 +155,20 @@ public final class MessageLog {
      * @return the time-stamp record or null, if time-stamping failed.
      */
     public static TimestampRecord timestamp(MessageRecord record) {
+        return timestamp(record.getId());
+    }
+
+    /**
+     * Returns a time-stamp record for a given message record id.
+     *
+     * @param messageRecordId the message record id
+     * @return the time-stamp record or null, if time-stamping failed.
+     */
+    public static TimestampRecord timestamp(Long messageRecordId) {
         try {
             log.trace("timestamp()");
             assertInitialized();
-            return logManager.timestamp(record.getId());
+            return logManager.timestamp(messageRecordId);
         } catch (Exception e) {
             throw translateWithPrefix(X_TIMESTAMPING_FAILED_X, e);
         }
@@ -265,7 +265,7 @@ public class ProxyMessage implements ProxyMessageConsumer {
     }
 
     /**
-     * Get rest body as inputstream.
+     * Get rest body as inputstream. The caller is responsible for closing the returned stream.
      */
     public CacheInputStream getRestBody() {
         if (attachmentCache != null) {
@@ -273,4 +273,11 @@ public class ProxyMessage implements ProxyMessageConsumer {
         }
         return null;
     }
+
+    /**
+     * @return size of the rest body without opening a stream to it
+     */
+    public long getRestBodySize() {
+        return attachmentCache != null ? attachmentCache.size() : 0;
+    }
 }
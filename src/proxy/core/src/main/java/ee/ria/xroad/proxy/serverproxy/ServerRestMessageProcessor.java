@@ -42,6 +42,7 @@ import ee.ria.xroad.common.message.RestResponse;
 import ee.ria.xroad.common.message.SoapFault;
 import ee.ria.xroad.common.message.SoapUtils;
 import ee.ria.xroad.common.opmonitoring.OpMonitoringData;
+import ee.ria.xroad.common.util.CacheInputStream;
 import ee.ria.xroad.common.util.CachingStream;
 import ee.ria.xroad.common.util.RequestWrapper;
 import ee.ria.xroad.common.util.ResponseWrapper;
@@ -81,6 +82,7 @@ import org.apache.http.protocol.HttpContext;
 import org.apache.http.util.EntityUtils;
 import org.bouncycastle.operator.DigestCalculator;
 
+import java.io.IOException;
 import java.io.OutputStream;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
@@ -382,16 +384,18 @@ class ServerRestMessageProcessor extends MessageProcessorBase {
         decoder.verify(requestMessage.getRest().getClientId(), requestMessage.getSignature());
     }
 
-    private void logRequestMessage() {
+    private void logRequestMessage() throws IOException {
         log.trace("logRequestMessage()");
-        MessageLog.log(requestMessage.getRest(), requestMessage.getSignature(), requestMessage.getRestBody(),
-                false, xRequestId);
+        try (CacheInputStream body = requestMessage.getRestBody()) {
+            MessageLog.log(requestMessage.getRest(), requestMessage.getSignature(), body, false, xRequestId);
+        }
     }
 
-    private void logResponseMessage() {
+    private void logResponseMessage() throws IOException {
         log.trace("log response message");
-        MessageLog.log(requestMessage.getRest(), restResponse, encoder.getSignature(),
-                restResponseBody == null ? null : restResponseBody.getCachedContents(), false, xRequestId);
+        try (CacheInputStream body = restResponseBody == null ? null : restResponseBody.getCachedContents()) {
+            MessageLog.log(requestMessage.getRest(), restResponse, encoder.getSignature(), body, false, xRequestId);
+        }
     }
 
     private void sign() throws Exception {
@@ -517,8 +521,9 @@ class ServerRestMessageProcessor extends MessageProcessorBase {
             }
 
             if (req instanceof HttpEntityEnclosingRequest && requestProxyMessage.hasRestBody()) {
+                // the entity closes the stream once it has been written
                 ((HttpEntityEnclosingRequest) req).setEntity(new InputStreamEntity(requestProxyMessage.getRestBody(),
-                        requestProxyMessage.getRestBody().size()));
+                        requestProxyMessage.getRestBodySize()));
             }
 
             final HttpContext ctx = new BasicHttpContext();
@@ -0,0 +1,69 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.util;
+
+import ee.ria.xroad.common.util.CachingStream;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.jmx.JmxReporter;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
+/**
+ * Exports the statistics of the caching streams that hold message bodies and attachments as JMX metrics named
+ * {@code cachingStream.<statistic>}. The spill rate is the rate of {@code spilled} relative to {@code created}.
+ */
+public class CachingStreamMetrics implements InitializingBean, DisposableBean {
+    static final String METRIC_PREFIX = "cachingStream";
+
+    private final JmxReporter reporter;
+
+    public CachingStreamMetrics() {
+        this(new MetricRegistry());
+    }
+
+    CachingStreamMetrics(MetricRegistry metrics) {
+        register(metrics, "created", CachingStream::getCreatedCount);
+        register(metrics, "spilled", CachingStream::getSpilledCount);
+        register(metrics, "memoryInUse", CachingStream::getMemoryInUse);
+        this.reporter = JmxReporter.forRegistry(metrics).build();
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        reporter.start();
+    }
+
+    @Override
+    public void destroy() {
+        reporter.stop();
+    }
+
+    private static void register(MetricRegistry metrics, String statistic, Gauge<Long> gauge) {
+        metrics.register(MetricRegistry.name(METRIC_PREFIX, statistic), gauge);
+    }
+}
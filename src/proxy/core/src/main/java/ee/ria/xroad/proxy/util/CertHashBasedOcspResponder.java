@@ -26,13 +26,18 @@
 package ee.ria.xroad.proxy.util;
 
 import ee.ria.xroad.common.SystemProperties;
+import ee.ria.xroad.common.crypto.identifier.DigestAlgorithm;
 import ee.ria.xroad.common.util.JettyUtils;
 import ee.ria.xroad.common.util.MimeTypes;
 import ee.ria.xroad.common.util.MimeUtils;
 import ee.ria.xroad.proxy.conf.KeyConfProvider;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import lombok.extern.slf4j.Slf4j;
 import org.bouncycastle.cert.ocsp.OCSPResp;
+import org.bouncycastle.operator.DigestCalculator;
+import org.eclipse.jetty.http.HttpHeader;
 import org.eclipse.jetty.io.Content;
 import org.eclipse.jetty.server.Handler;
 import org.eclipse.jetty.server.HttpConnectionFactory;
@@ -48,13 +53,19 @@ import org.eclipse.jetty.xml.XmlConfiguration;
 import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.InitializingBean;
 
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
+import static ee.ria.xroad.common.crypto.Digests.createDigestCalculator;
+import static ee.ria.xroad.common.util.EncoderUtils.encodeHex;
 import static org.eclipse.jetty.http.HttpStatus.INTERNAL_SERVER_ERROR_500;
+import static org.eclipse.jetty.http.HttpStatus.NOT_MODIFIED_304;
 import static org.eclipse.jetty.http.HttpStatus.OK_200;
 import static org.eclipse.jetty.server.Request.getRemoteAddr;
 
@@ -65,6 +76,10 @@ import static org.eclipse.jetty.server.Request.getRemoteAddr;
  * <p>
  * To retrieve OCSP responses, send a GET request to this service:
  * http://<host>:<port>/?cert=hash1&cert=hash2&cert=hash3 ...
+ * <p>
+ * The encoded OCSP responses and the response bodies are cached for {@link SystemProperties#getOcspResponderCachePeriod()}
+ * seconds or until the key configuration changes. Every response carries an ETag, and a request with a matching
+ * If-None-Match header is answered with 304 Not Modified.
  */
 @Slf4j
 public class CertHashBasedOcspResponder implements InitializingBean, DisposableBean {
@@ -74,9 +89,17 @@ public class CertHashBasedOcspResponder implements InitializingBean, DisposableB
 
     private static final String CERT_PARAM = "cert";
 
+    private static final int MAX_CACHED_RESPONSES = 1000;
+
     private final KeyConfProvider keyConfProvider;
     private final Server server = new Server();
 
+    /** DER-encoded OCSP responses by certificate hash. */
+    private final Cache<String, byte[]> ocspCache;
+
+    /** Complete response bodies by the requested certificate hashes. */
+    private final Cache<List<String>, EncodedResponse> responseCache;
+
     /**
      * Constructs a cert hash responder.
      *
@@ -94,11 +117,32 @@ public class CertHashBasedOcspResponder implements InitializingBean, DisposableB
      */
     public CertHashBasedOcspResponder(KeyConfProvider keyConfProvider, String host) throws Exception {
         this.keyConfProvider = keyConfProvider;
+        this.ocspCache = createCache();
+        this.responseCache = createCache();
+
+        keyConfProvider.addChangeListener(this::invalidateCache);
+
         configureServer();
         createConnector(host);
         createHandler();
     }
 
+    private static <K, V> Cache<K, V> createCache() {
+        int cachePeriod = SystemProperties.getOcspResponderCachePeriod();
+
+        return CacheBuilder.newBuilder()
+                .maximumSize(cachePeriod > 0 ? MAX_CACHED_RESPONSES : 0)
+                .expireAfterWrite(cachePeriod, TimeUnit.SECONDS)
+                .build();
+    }
+
+    private void invalidateCache() {
+        log.trace("invalidateCache()");
+
+        responseCache.invalidateAll();
+        ocspCache.invalidateAll();
+    }
+
     private void configureServer() throws Exception {
         log.trace("configureServer()");
 
@@ -148,20 +192,44 @@ public class CertHashBasedOcspResponder implements InitializingBean, DisposableB
 
     private void doHandleRequest(Request request, Response response) throws Exception {
         var hashes = getCertSha1Hashes(request);
-        List<OCSPResp> ocspResponses = getOcspResponses(hashes);
+        EncodedResponse encodedResponse = getEncodedResponse(hashes);
 
-        log.debug("Returning OCSP responses for cert hashes: " + hashes);
+        response.getHeaders().put(HttpHeader.ETAG, encodedResponse.etag());
 
-        try (MultiPartOutputStream mpResponse = new MultiPartOutputStream(Content.Sink.asOutputStream(response))) {
+        if (isNotModified(request, encodedResponse.etag())) {
+            log.debug("OCSP responses not modified for cert hashes: {}", hashes);
 
-            JettyUtils.setContentType(response, MimeUtils.mpRelatedContentType(mpResponse.getBoundary(), MimeTypes.OCSP_RESPONSE));
-            response.setStatus(OK_200);
+            response.setStatus(NOT_MODIFIED_304);
+            return;
+        }
 
-            for (OCSPResp ocsp : ocspResponses) {
-                mpResponse.startPart(MimeTypes.OCSP_RESPONSE);
-                mpResponse.write(ocsp.getEncoded());
+        log.debug("Returning OCSP responses for cert hashes: {}", hashes);
+
+        JettyUtils.setContentType(response, encodedResponse.contentType());
+        JettyUtils.setContentLength(response, encodedResponse.body().length);
+        response.setStatus(OK_200);
+
+        try (OutputStream out = Content.Sink.asOutputStream(response)) {
+            out.write(encodedResponse.body());
+        }
+    }
+
+    private static boolean isNotModified(Request request, String etag) {
+        String ifNoneMatch = request.getHeaders().get(HttpHeader.IF_NONE_MATCH);
+
+        if (ifNoneMatch == null) {
+            return false;
+        }
+
+        for (String value : ifNoneMatch.split(",")) {
+            String candidate = value.trim();
+
+            if (candidate.equals("*") || candidate.equals(etag) || candidate.equals("W/" + etag)) {
+                return true;
             }
         }
+
+        return false;
     }
 
     private final class RequestHandler extends Handler.Abstract {
@@ -195,24 +263,56 @@ public class CertHashBasedOcspResponder implements InitializingBean, DisposableB
         }
     }
 
-    private List<OCSPResp> getOcspResponses(List<String> certHashes) throws Exception {
-        List<OCSPResp> ocspResponses = new ArrayList<>(certHashes.size());
+    private EncodedResponse getEncodedResponse(List<String> certHashes) throws Exception {
+        try {
+            return responseCache.get(List.copyOf(certHashes), () -> encodeResponse(certHashes));
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception cause ? cause : e;
+        }
+    }
+
+    /**
+     * Encodes the OCSP responses as a multipart body. The ETag is derived from the OCSP responses only,
+     * so it stays the same when the body is re-encoded with a different multipart boundary.
+     */
+    private EncodedResponse encodeResponse(List<String> certHashes) throws Exception {
+        DigestCalculator etagCalculator = createDigestCalculator(DigestAlgorithm.SHA256);
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        String contentType;
+
+        try (MultiPartOutputStream mpResponse = new MultiPartOutputStream(body);
+             OutputStream etagOut = etagCalculator.getOutputStream()) {
+            contentType = MimeUtils.mpRelatedContentType(mpResponse.getBoundary(), MimeTypes.OCSP_RESPONSE);
 
-        for (String certHash : certHashes) {
-            ocspResponses.add(getOcspResponse(certHash));
+            for (String certHash : certHashes) {
+                byte[] ocsp = getEncodedOcspResponse(certHash);
+
+                mpResponse.startPart(MimeTypes.OCSP_RESPONSE);
+                mpResponse.write(ocsp);
+                etagOut.write(ocsp);
+            }
         }
 
-        return ocspResponses;
+        return new EncodedResponse(body.toByteArray(), contentType, "\"" + encodeHex(etagCalculator.getDigest()) + "\"");
     }
 
-    private OCSPResp getOcspResponse(String certHash) throws Exception {
+    private byte[] getEncodedOcspResponse(String certHash) throws Exception {
+        byte[] cached = ocspCache.getIfPresent(certHash);
+
+        if (cached != null) {
+            return cached;
+        }
+
         OCSPResp ocsp = keyConfProvider.getOcspResponse(certHash);
 
         if (ocsp == null) {
             throw new Exception("Could not find OCSP response for certificate " + certHash);
         }
 
-        return ocsp;
+        byte[] encoded = ocsp.getEncoded();
+        ocspCache.put(certHash, encoded);
+
+        return encoded;
     }
 
     private static List<String> getCertSha1Hashes(Request request) throws Exception {
@@ -225,4 +325,7 @@ public class CertHashBasedOcspResponder implements InitializingBean, DisposableB
 
         return paramValues;
     }
+
+    private record EncodedResponse(byte[] body, String contentType, String etag) {
+    }
 }
@@ -0,0 +1,306 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.signature;
+
+import ee.ria.xroad.common.CodedException;
+import ee.ria.xroad.common.TestCertUtil;
+import ee.ria.xroad.common.TestSecurityUtil;
+import ee.ria.xroad.common.crypto.Digests;
+import ee.ria.xroad.common.crypto.identifier.DigestAlgorithm;
+import ee.ria.xroad.common.crypto.identifier.SignAlgorithm;
+import ee.ria.xroad.common.util.MessageFileNames;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static ee.ria.xroad.common.ErrorCodes.X_INTERNAL_ERROR;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the batching, queueing and statistics of the batch signer.
+ */
+public class BatchSignerTest {
+    private static final String KEY_ID = "key";
+    private static final SignAlgorithm ALGORITHM = SignAlgorithm.SHA256_WITH_RSA;
+    private static final long WAIT_SECONDS = 10;
+
+    private static X509Certificate signingCert;
+
+    private BatchSigner batchSigner;
+
+    static {
+        TestSecurityUtil.initSecurity();
+    }
+
+    @BeforeClass
+    public static void setUpBeforeClass() {
+        signingCert = TestCertUtil.getConsumer().certChain[0];
+    }
+
+    @After
+    public void tearDown() {
+        if (batchSigner != null) {
+            batchSigner.destroy();
+        }
+    }
+
+    @Test
+    public void signsRequest() throws Exception {
+        MetricRegistry metrics = new MetricRegistry();
+        batchSigner = new BatchSigner(new StubKeySigner(true, 0), 10, 100, 10, metrics);
+
+        SignatureData data = batchSigner.submit(KEY_ID, ALGORITHM, request(0)).get(WAIT_SECONDS, TimeUnit.SECONDS);
+
+        assertNotNull(data.getSignatureXml());
+        assertArrayEquals(new long[] {1}, batchSizes(metrics));
+        assertEquals(1L, gauge(metrics, "signOperations"));
+    }
+
+    @Test
+    public void queuedRequestsAreSignedInBatch() throws Exception {
+        StubKeySigner signer = new StubKeySigner(true, 0);
+        signer.block();
+        MetricRegistry metrics = new MetricRegistry();
+        batchSigner = new BatchSigner(signer, 10, 100, 10, metrics);
+
+        CompletableFuture<SignatureData> first = batchSigner.submit(KEY_ID, ALGORITHM, request(0));
+        signer.awaitSigning();
+
+        List<CompletableFuture<SignatureData>> queued = new ArrayList<>();
+        for (int i = 1; i <= 4; i++) {
+            queued.add(batchSigner.submit(KEY_ID, ALGORITHM, request(i)));
+        }
+        signer.release();
+
+        assertNotNull(first.get(WAIT_SECONDS, TimeUnit.SECONDS).getSignatureXml());
+        for (CompletableFuture<SignatureData> future : queued) {
+            SignatureData data = future.get(WAIT_SECONDS, TimeUnit.SECONDS);
+            assertNotNull(data.getHashChainResult());
+            assertNotNull(data.getHashChain());
+        }
+
+        // batches of one and four requests
+        assertArrayEquals(new long[] {1, 4}, batchSizes(metrics));
+        assertEquals(2L, gauge(metrics, "signOperations"));
+    }
+
+    @Test
+    public void requestsAreSignedOneByOneWithoutBatchSigningSupport() throws Exception {
+        StubKeySigner signer = new StubKeySigner(false, 0);
+        signer.block();
+        MetricRegistry metrics = new MetricRegistry();
+        batchSigner = new BatchSigner(signer, 10, 100, 10, metrics);
+
+        CompletableFuture<SignatureData> first = batchSigner.submit(KEY_ID, ALGORITHM, request(0));
+        signer.awaitSigning();
+        CompletableFuture<SignatureData> second = batchSigner.submit(KEY_ID, ALGORITHM, request(1));
+        signer.release();
+
+        first.get(WAIT_SECONDS, TimeUnit.SECONDS);
+        second.get(WAIT_SECONDS, TimeUnit.SECONDS);
+
+        assertArrayEquals(new long[] {1, 1}, batchSizes(metrics));
+        assertEquals(0L, gauge(metrics, "batchWindowMicros"));
+    }
+
+    @Test
+    public void requestIsRejectedWhenQueueIsFull() throws Exception {
+        StubKeySigner signer = new StubKeySigner(true, 0);
+        signer.block();
+        MetricRegistry metrics = new MetricRegistry();
+        batchSigner = new BatchSigner(signer, 10, 100, 1, metrics);
+
+        CompletableFuture<SignatureData> signing = batchSigner.submit(KEY_ID, ALGORITHM, request(0));
+        signer.awaitSigning();
+        CompletableFuture<SignatureData> queued = batchSigner.submit(KEY_ID, ALGORITHM, request(1));
+        CompletableFuture<SignatureData> rejected = batchSigner.submit(KEY_ID, ALGORITHM, request(2));
+
+        ExecutionException e = assertThrows(ExecutionException.class,
+                () -> rejected.get(WAIT_SECONDS, TimeUnit.SECONDS));
+        assertTrue(e.getCause() instanceof CodedException);
+        assertEquals(X_INTERNAL_ERROR, ((CodedException) e.getCause()).getFaultCode());
+
+        assertEquals(1, gauge(metrics, "queueDepth"));
+        assertEquals(1L, gauge(metrics, "rejectedRequests"));
+
+        signer.release();
+        signing.get(WAIT_SECONDS, TimeUnit.SECONDS);
+        queued.get(WAIT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void signingFailureIsPropagatedToAllRequestsOfTheBatch() throws Exception {
+        StubKeySigner signer = new StubKeySigner(true, 0);
+        signer.block();
+        signer.failSigningWith(new CodedException(X_INTERNAL_ERROR, "Token not active"));
+        batchSigner = new BatchSigner(signer, 10, 100, 10, new MetricRegistry());
+
+        List<CompletableFuture<SignatureData>> futures = new ArrayList<>();
+        futures.add(batchSigner.submit(KEY_ID, ALGORITHM, request(0)));
+        signer.awaitSigning();
+        futures.add(batchSigner.submit(KEY_ID, ALGORITHM, request(1)));
+        futures.add(batchSigner.submit(KEY_ID, ALGORITHM, request(2)));
+        signer.release();
+
+        for (CompletableFuture<SignatureData> future : futures) {
+            ExecutionException e = assertThrows(ExecutionException.class,
+                    () -> future.get(WAIT_SECONDS, TimeUnit.SECONDS));
+            assertSame(signer.signingFailure, e.getCause());
+        }
+    }
+
+    @Test
+    public void workerCreationFailureIsPropagated() throws Exception {
+        StubKeySigner signer = new StubKeySigner(true, 0);
+        signer.failLookupWith(new CodedException(X_INTERNAL_ERROR, "Key not found"));
+        batchSigner = new BatchSigner(signer, 10, 100, 10, new MetricRegistry());
+
+        CompletableFuture<SignatureData> future = batchSigner.submit(KEY_ID, ALGORITHM, request(0));
+
+        ExecutionException e = assertThrows(ExecutionException.class,
+                () -> future.get(WAIT_SECONDS, TimeUnit.SECONDS));
+        assertTrue(e.getCause().getCause().getCause() instanceof CodedException);
+    }
+
+    @Test
+    public void batchWindowGrowsUnderLoadAndShrinksWhenIdle() throws Exception {
+        MetricRegistry metrics = new MetricRegistry();
+        batchSigner = new BatchSigner(new StubKeySigner(true, 20), 100, 100, 1000, metrics);
+
+        List<CompletableFuture<SignatureData>> futures = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            futures.add(batchSigner.submit(KEY_ID, ALGORITHM, request(i)));
+            Thread.sleep(1);
+        }
+        for (CompletableFuture<SignatureData> future : futures) {
+            future.get(WAIT_SECONDS, TimeUnit.SECONDS);
+        }
+
+        // signing takes about 20 ms and requests arrive every millisecond, so waiting for more requests pays off
+        long window = (Long) gauge(metrics, "batchWindowMicros");
+        assertTrue("window " + window, window > 0);
+        assertTrue((Long) gauge(metrics, "signOperations") < futures.size());
+
+        Thread.sleep(500);
+        batchSigner.submit(KEY_ID, ALGORITHM, request(0)).get(WAIT_SECONDS, TimeUnit.SECONDS);
+
+        // the next request is no longer expected within the window
+        assertEquals(0L, gauge(metrics, "batchWindowMicros"));
+    }
+
+    private static long[] batchSizes(MetricRegistry metrics) {
+        Map<String, Histogram> histograms = metrics.getHistograms((name, metric) -> name.endsWith(".batchSize"));
+        assertEquals(1, histograms.size());
+        return histograms.values().iterator().next().getSnapshot().getValues();
+    }
+
+    private static Object gauge(MetricRegistry metrics, String statistic) {
+        Map.Entry<String, Gauge> entry = metrics.getGauges((name, metric) -> name.endsWith("." + statistic))
+                .entrySet().iterator().next();
+        assertTrue(entry.getKey().startsWith(BatchSigner.METRIC_PREFIX + "."));
+        return entry.getValue().getValue();
+    }
+
+    private static SigningRequest request(int index) throws Exception {
+        byte[] message = ("<message>" + index + "</message>").getBytes(StandardCharsets.UTF_8);
+        return new SigningRequest(signingCert, List.of(new MessagePart(MessageFileNames.MESSAGE,
+                DigestAlgorithm.SHA512, Digests.calculateDigest(DigestAlgorithm.SHA512, message), message)));
+    }
+
+    private static final class StubKeySigner implements BatchSigner.KeySigner {
+        private final boolean batchSigningEnabled;
+        private final long signingMillis;
+        private final CountDownLatch signing = new CountDownLatch(1);
+        private CountDownLatch released = new CountDownLatch(0);
+        private volatile Exception lookupFailure;
+        private volatile Exception signingFailure;
+
+        StubKeySigner(boolean batchSigningEnabled, long signingMillis) {
+            this.batchSigningEnabled = batchSigningEnabled;
+            this.signingMillis = signingMillis;
+        }
+
+        void block() {
+            released = new CountDownLatch(1);
+        }
+
+        void release() {
+            released.countDown();
+        }
+
+        void failLookupWith(Exception exception) {
+            lookupFailure = exception;
+        }
+
+        void failSigningWith(Exception exception) {
+            signingFailure = exception;
+        }
+
+        void awaitSigning() throws InterruptedException {
+            assertTrue(signing.await(WAIT_SECONDS, TimeUnit.SECONDS));
+        }
+
+        @Override
+        public boolean isBatchSigningEnabled(String keyId) throws Exception {
+            if (lookupFailure != null) {
+                throw lookupFailure;
+            }
+            return batchSigningEnabled;
+        }
+
+        @Override
+        public byte[] sign(String keyId, SignAlgorithm signatureAlgorithmId, byte[] digest) throws Exception {
+            signing.countDown();
+            assertTrue(released.await(WAIT_SECONDS, TimeUnit.SECONDS));
+            if (signingMillis > 0) {
+                Thread.sleep(signingMillis);
+            }
+            if (signingFailure != null) {
+                throw signingFailure;
+            }
+            return new byte[256];
+        }
+    }
+}
@@ -50,13 +50,16 @@ import java.time.temporal.ChronoUnit;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
+import java.util.List;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.nio.file.StandardOpenOption.CREATE;
 import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
 import static java.nio.file.StandardOpenOption.WRITE;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 /**
  * Test to verify correct signature builder behavior.
@@ -171,4 +174,42 @@ public class SignatureBuilderTest {
                     data.getHashChain(), UTF_8, CREATE, WRITE, TRUNCATE_EXISTING);
         }
     }
+
+    /**
+     * Test to ensure signature built from a pre-rendered template contains the template values.
+     * @throws Exception in case of any unexpected error
+     */
+    @Test
+    public void buildSuccessfullyWithTemplate() throws Exception {
+        final Date thisUpdate = Date.from(TimeUtils.now().plus(1, ChronoUnit.DAYS));
+
+        OCSPResp ocsp = OcspTestUtils.createOCSPResponse(subjectCert, issuerCert, signerCert, signerKey,
+                CertificateStatus.GOOD, thisUpdate, null);
+
+        List<X509Certificate> extraCerts = Collections.singletonList(issuerCert);
+        List<OCSPResp> ocspResponses = Collections.singletonList(ocsp);
+
+        SignatureTemplate template = new SignatureTemplate(subjectCert, extraCerts, ocspResponses);
+
+        assertTrue(template.matches(subjectCert, extraCerts, ocspResponses));
+        assertFalse(template.matches(subjectCert, Collections.emptyList(), ocspResponses));
+        assertFalse(template.matches(issuerCert, extraCerts, ocspResponses));
+
+        for (int i = 0; i < 2; i++) {
+            SignatureBuilder builder = new SignatureBuilder();
+            builder.addPart(new MessagePart(MessageFileNames.MESSAGE, DigestAlgorithm.SHA512,
+                    Digests.calculateDigest(DigestAlgorithm.SHA512, new byte[] {(byte) i}), new byte[] {(byte) i}));
+            builder.addExtraCertificates(extraCerts);
+            builder.addOcspResponses(ocspResponses);
+            builder.setSigningCert(subjectCert);
+            builder.setTemplate(template);
+
+            String signatureXml = builder.build(new TestSigningKey(subjectKey), DigestAlgorithm.SHA512)
+                    .getSignatureXml();
+
+            assertTrue(signatureXml.contains(template.getEncodedOcspResponses().getFirst()));
+            assertTrue(signatureXml.contains(template.getExtraCertValues().getFirst().getBase64Encoded()));
+            assertTrue(signatureXml.contains(template.getSigningCertValues().getDigest(DigestAlgorithm.SHA512)));
+        }
+    }
 }
@@ -30,9 +30,18 @@ import ee.ria.xroad.common.conf.globalconf.GlobalConfProvider;
 
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
@@ -154,6 +163,99 @@ public class AntiDosConnectionManagerTest {
         cm.assertEmpty();
     }
 
+    /**
+     * Test to ensure known members are served in round-robin order while
+     * being flooded from a large number of unknown addresses.
+     *
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void knownMembersAreServedUnderFloodFromManyAddresses() throws Exception {
+        TestConfiguration conf = new TestConfiguration(5, 1.1);
+
+        TestSystemMetrics sm = new TestSystemMetrics();
+        sm.addLoad(7, 0.1);
+
+        TestConnectionManager cm = createConnectionManager(conf, sm);
+
+        for (int i = 0; i < 10_000; i++) {
+            cm.accept(createConnection("10.0." + (i / 250) + "." + (i % 250)));
+        }
+
+        TestSocketChannel member1 = createConnection("test1");
+        TestSocketChannel member2 = createConnection("test2");
+        cm.accept(member1, member2);
+
+        // Unknown addresses share a single slot in the ring, so each member
+        // is served within the first round regardless of the flood size.
+        cm.assertNextConnection(createConnection("10.0.0.0"));
+        cm.assertConnections(member1, member2);
+
+        for (int i = 1; i < 10_000; i++) {
+            cm.assertNextConnection(createConnection("10.0." + (i / 250) + "." + (i % 250)));
+        }
+
+        cm.assertEmpty();
+    }
+
+    /**
+     * Test to ensure every connection accepted concurrently from many
+     * addresses is handed out exactly once.
+     *
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void concurrentFloodFromManyAddresses() throws Exception {
+        final int producers = 8;
+        final int connectionsPerProducer = 5_000;
+
+        TestConfiguration conf = new TestConfiguration(5, 1.1);
+
+        TestSystemMetrics sm = new TestSystemMetrics();
+        sm.addLoad(7, 0.1);
+
+        TestConnectionManager cm = createConnectionManager(conf, sm);
+
+        List<TestSocketChannel> accepted = Collections.synchronizedList(new ArrayList<>());
+        ExecutorService executor = Executors.newFixedThreadPool(producers + 1);
+        try {
+            Future<Set<TestSocketChannel>> consumer = executor.submit(() -> {
+                Set<TestSocketChannel> taken = Collections.newSetFromMap(new IdentityHashMap<>());
+                for (int i = 0; i < producers * connectionsPerProducer; i++) {
+                    taken.add(cm.takeNextConnection());
+                }
+                return taken;
+            });
+
+            List<Future<?>> producerFutures = new ArrayList<>();
+            for (int p = 0; p < producers; p++) {
+                final int producer = p;
+                producerFutures.add(executor.submit(() -> {
+                    for (int i = 0; i < connectionsPerProducer; i++) {
+                        // Mix known members with a flood of unknown addresses
+                        TestSocketChannel connection = createConnection(i % 10 == 0
+                                ? "test" + (1 + i % 3)
+                                : "192.168." + producer + "." + (i % 250));
+                        accepted.add(connection);
+                        cm.accept(connection);
+                    }
+                }));
+            }
+
+            for (Future<?> future : producerFutures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+
+            Set<TestSocketChannel> taken = consumer.get(30, TimeUnit.SECONDS);
+            assertEquals(accepted.size(), taken.size());
+            accepted.forEach(connection -> assertTrue(taken.contains(connection)));
+        } finally {
+            executor.shutdownNow();
+        }
+
+        cm.assertEmpty();
+    }
+
     // ------------------------------------------------------------------------
 
     private static TestConnectionManager createConnectionManager(
@@ -0,0 +1,151 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.clientproxy;
+
+import ee.ria.xroad.proxy.clientproxy.FastestConnectionSelectingSSLSocketFactoryConnectionCacheTest.FakeTicker;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the endpoint health table and its use in FastestSocketSelector.
+ */
+public class EndpointHealthTableTest {
+
+    private static final long CIRCUIT_OPEN_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    private static final URI A = URI.create("https://a.example.org:5500");
+    private static final URI B = URI.create("https://b.example.org:5500");
+    private static final URI C = URI.create("https://c.example.org:5500");
+
+    private FakeTicker ticker;
+    private MetricRegistry metrics;
+    private EndpointHealthTable table;
+
+    @Before
+    public void setUp() {
+        ticker = new FakeTicker();
+        metrics = new MetricRegistry();
+        table = new EndpointHealthTable(metrics, ticker, CIRCUIT_OPEN_NANOS);
+    }
+
+    @Test
+    public void ordersByLatencyAndProbesUnknownAddressesFirst() {
+        table.recordConnect(A, TimeUnit.MILLISECONDS.toNanos(80));
+        table.recordConnect(B, TimeUnit.MILLISECONDS.toNanos(20));
+        table.recordSuccess(B, TimeUnit.MILLISECONDS.toNanos(100));
+
+        assertArrayEquals(new URI[]{C, A, B}, table.order(A, B, C));
+    }
+
+    @Test
+    public void averagesLatencySamples() {
+        table.recordConnect(A, TimeUnit.MILLISECONDS.toNanos(100));
+        table.recordConnect(A, TimeUnit.MILLISECONDS.toNanos(200));
+
+        assertEquals(130d, table.get(A).getConnectMillis(), 0.001);
+    }
+
+    @Test
+    public void abandonedAttemptsOnlyRaiseLatency() {
+        table.recordAbandoned(A, TimeUnit.MILLISECONDS.toNanos(100));
+        assertEquals(100d, table.get(A).getConnectMillis(), 0.001);
+
+        // a shorter lower bound says nothing about the address
+        table.recordAbandoned(A, TimeUnit.MILLISECONDS.toNanos(10));
+        assertEquals(100d, table.get(A).getConnectMillis(), 0.001);
+
+        table.recordAbandoned(A, TimeUnit.MILLISECONDS.toNanos(200));
+        assertEquals(130d, table.get(A).getConnectMillis(), 0.001);
+    }
+
+    @Test
+    public void opensCircuitAfterConsecutiveFailures() {
+        table.recordConnect(A, TimeUnit.MILLISECONDS.toNanos(10));
+        table.recordConnect(B, TimeUnit.MILLISECONDS.toNanos(50));
+
+        for (int i = 0; i < EndpointHealthTable.FAILURE_THRESHOLD - 1; i++) {
+            table.recordFailure(A);
+        }
+        assertArrayEquals(new URI[]{A, B}, table.order(A, B));
+
+        table.recordFailure(A);
+        assertArrayEquals(new URI[]{B, A}, table.order(A, B));
+        assertEquals(Boolean.TRUE, gauge(A, "circuitOpen").getValue());
+        assertEquals(3L, gauge(A, "failures").getValue());
+
+        ticker.advance(CIRCUIT_OPEN_NANOS, TimeUnit.NANOSECONDS);
+        assertArrayEquals(new URI[]{A, B}, table.order(A, B));
+
+        // the first failure after the open period opens the circuit again
+        table.recordFailure(A);
+        assertTrue(table.get(A).isCircuitOpen(ticker.read()));
+
+        table.recordSuccess(A, 0);
+        assertFalse(table.get(A).isCircuitOpen(ticker.read()));
+    }
+
+    @Test
+    public void selectorConnectsToListeningAddressAndRecordsFailures() throws IOException {
+        try (ServerSocket listening = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+             ServerSocket closed = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            final URI refused = URI.create("https://127.0.0.1:" + closed.getLocalPort());
+            final URI accepted = URI.create("https://127.0.0.1:" + listening.getLocalPort());
+            closed.close();
+
+            FastestSocketSelector selector = new FastestSocketSelector(table, 1000);
+            selector.addAll(refused, accepted);
+
+            FastestSocketSelector.SocketInfo info = selector.select(5000);
+            try {
+                assertEquals(accepted, info.getUri());
+                assertEquals(1L, table.get(refused).getFailures());
+                assertFalse(Double.isNaN(table.get(accepted).getConnectMillis()));
+            } finally {
+                info.getSocket().close();
+            }
+        }
+    }
+
+    private Gauge<?> gauge(URI address, String name) {
+        return metrics.getGauges().get(
+                MetricRegistry.name(EndpointHealthTable.METRIC_PREFIX, address.getHost() + ":" + address.getPort(),
+                        name));
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.clientproxy;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the hand-off between the request encoding thread and the HTTP client in PipelinedRequestEntity.
+ */
+public class PipelinedRequestEntityTest {
+
+    private static final byte[] CONTENT = "request content".getBytes(StandardCharsets.UTF_8);
+
+    private final ExecutorService encoder = Executors.newSingleThreadExecutor();
+
+    @After
+    public void tearDown() {
+        encoder.shutdownNow();
+    }
+
+    @Test
+    public void describesStreamingChunkedContent() {
+        PipelinedRequestEntity entity = new PipelinedRequestEntity();
+
+        assertTrue(entity.isStreaming());
+        assertTrue(entity.isChunked());
+        assertFalse(entity.isRepeatable());
+        assertEquals(-1, entity.getContentLength());
+
+        entity.encodingCompleted();
+
+        assertTrue(entity.isStreaming());
+    }
+
+    @Test
+    public void writesEncodedContentToConnection() throws Exception {
+        PipelinedRequestEntity entity = new PipelinedRequestEntity();
+        Future<?> encoding = encoder.submit(() -> encode(entity));
+
+        ByteArrayOutputStream connection = new ByteArrayOutputStream();
+        entity.writeTo(connection);
+
+        encoding.get(5, TimeUnit.SECONDS);
+        assertArrayEquals(CONTENT, connection.toByteArray());
+    }
+
+    @Test
+    public void failsWriteWhenEncodingFails() {
+        PipelinedRequestEntity entity = new PipelinedRequestEntity();
+        IllegalStateException failure = new IllegalStateException("signing failed");
+        encoder.submit(() -> {
+            try (OutputStream out = entity.getEncoderOutput()) {
+                out.write(CONTENT, 0, 3);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            entity.encodingFailed(failure);
+        });
+
+        IOException thrown = assertThrows(IOException.class, () -> entity.writeTo(new ByteArrayOutputStream()));
+        assertEquals(failure, thrown.getCause());
+    }
+
+    @Test
+    public void doesNotCloseConnectionWhenEncoderIsClosed() throws Exception {
+        PipelinedRequestEntity entity = new PipelinedRequestEntity();
+        CloseTrackingOutputStream connection = new CloseTrackingOutputStream();
+        encoder.submit(() -> encode(entity));
+
+        entity.writeTo(connection);
+
+        assertFalse(connection.closed);
+    }
+
+    @Test
+    public void waitsForEncodingWithoutDeadline() throws Exception {
+        PipelinedRequestEntity entity = new PipelinedRequestEntity();
+        encoder.submit(() -> {
+            try (OutputStream out = entity.getEncoderOutput()) {
+                out.write(CONTENT, 0, 3);
+                TimeUnit.MILLISECONDS.sleep(200);
+                out.write(CONTENT, 3, CONTENT.length - 3);
+            }
+            entity.encodingCompleted();
+            return null;
+        });
+
+        ByteArrayOutputStream connection = new ByteArrayOutputStream();
+        entity.writeTo(connection);
+
+        assertArrayEquals(CONTENT, connection.toByteArray());
+    }
+
+    @Test
+    public void releasesEncoderWhenAborted() throws Exception {
+        PipelinedRequestEntity entity = new PipelinedRequestEntity();
+        Future<?> encoding = encoder.submit(() -> {
+            entity.getEncoderOutput().write(CONTENT);
+            return null;
+        });
+
+        entity.abort(new IllegalStateException("not sent"));
+
+        Exception thrown = assertThrows(Exception.class, () -> encoding.get(5, TimeUnit.SECONDS));
+        assertTrue(thrown.getCause() instanceof IOException);
+    }
+
+    @Test
+    public void rejectsSecondWrite() throws Exception {
+        PipelinedRequestEntity entity = new PipelinedRequestEntity();
+        encoder.submit(() -> encode(entity));
+        entity.writeTo(new ByteArrayOutputStream());
+
+        assertThrows(IllegalStateException.class, () -> entity.writeTo(new ByteArrayOutputStream()));
+    }
+
+    @Test
+    public void providesEncodedContentAsStream() throws Exception {
+        PipelinedRequestEntity entity = new PipelinedRequestEntity();
+        encoder.submit(() -> encode(entity));
+
+        try (InputStream in = entity.getContent()) {
+            assertArrayEquals(CONTENT, IOUtils.toByteArray(in));
+        }
+    }
+
+    @Test
+    public void failsContentStreamWhenEncodingFails() throws Exception {
+        PipelinedRequestEntity entity = new PipelinedRequestEntity();
+        encoder.submit(() -> entity.encodingFailed(new IllegalStateException("signing failed")));
+
+        try (InputStream in = entity.getContent()) {
+            assertThrows(IOException.class, () -> IOUtils.toByteArray(in));
+        }
+    }
+
+    private static void encode(PipelinedRequestEntity entity) {
+        try (OutputStream out = entity.getEncoderOutput()) {
+            out.write(CONTENT);
+        } catch (IOException e) {
+            entity.encodingFailed(e);
+            return;
+        }
+        entity.encodingCompleted();
+    }
+
+    private static final class CloseTrackingOutputStream extends ByteArrayOutputStream {
+        private boolean closed;
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.util;
+
+import ee.ria.xroad.common.OcspTestUtils;
+import ee.ria.xroad.common.SystemProperties;
+import ee.ria.xroad.common.TestCertUtil;
+import ee.ria.xroad.proxy.testsuite.EmptyKeyConf;
+
+import org.bouncycastle.cert.ocsp.CertificateStatus;
+import org.bouncycastle.cert.ocsp.OCSPResp;
+import org.bouncycastle.cert.ocsp.UnknownStatus;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the response caching of CertHashBasedOcspResponder.
+ */
+public class CertHashBasedOcspResponderTest {
+
+    private static final String CERT_HASH = "0123456789abcdef";
+
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    private CountingKeyConf keyConf;
+    private CertHashBasedOcspResponder responder;
+    private URI uri;
+
+    @Before
+    public void setUp() throws Exception {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        System.setProperty(SystemProperties.OCSP_RESPONDER_PORT, Integer.toString(port));
+        System.setProperty(SystemProperties.JETTY_OCSP_RESPONDER_CONFIGURATION_FILE, "src/test/ocsp-responder.xml");
+
+        keyConf = new CountingKeyConf();
+        keyConf.responses.put(CERT_HASH, createOcspResponse(CertificateStatus.GOOD));
+
+        responder = new CertHashBasedOcspResponder(keyConf, "127.0.0.1");
+        responder.afterPropertiesSet();
+
+        uri = URI.create("http://127.0.0.1:" + port + "/?cert=" + CERT_HASH);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        responder.destroy();
+
+        System.clearProperty(SystemProperties.OCSP_RESPONDER_PORT);
+        System.clearProperty(SystemProperties.JETTY_OCSP_RESPONDER_CONFIGURATION_FILE);
+    }
+
+    @Test
+    public void servesRepeatedRequestsFromCache() throws Exception {
+        HttpResponse<byte[]> first = get(null);
+        HttpResponse<byte[]> second = get(null);
+
+        assertEquals(200, first.statusCode());
+        assertEquals(200, second.statusCode());
+        assertArrayEquals(first.body(), second.body());
+        assertTrue(first.headers().firstValue("Content-Type").orElseThrow().startsWith("multipart/related"));
+        assertEquals(1, keyConf.lookups.get());
+    }
+
+    @Test
+    public void answersMatchingEtagWithNotModified() throws Exception {
+        String etag = get(null).headers().firstValue("ETag").orElseThrow();
+
+        HttpResponse<byte[]> notModified = get(etag);
+
+        assertEquals(304, notModified.statusCode());
+        assertEquals(0, notModified.body().length);
+        assertEquals(etag, notModified.headers().firstValue("ETag").orElseThrow());
+
+        assertEquals(304, get("\"other\", W/" + etag).statusCode());
+        assertEquals(200, get("\"other\"").statusCode());
+    }
+
+    @Test
+    public void reloadsResponsesAfterKeyConfChange() throws Exception {
+        String etag = get(null).headers().firstValue("ETag").orElseThrow();
+
+        keyConf.responses.put(CERT_HASH, createOcspResponse(new UnknownStatus()));
+        keyConf.fireChange();
+
+        HttpResponse<byte[]> reloaded = get(etag);
+
+        assertEquals(200, reloaded.statusCode());
+        assertNotEquals(etag, reloaded.headers().firstValue("ETag").orElseThrow());
+        assertEquals(2, keyConf.lookups.get());
+    }
+
+    private HttpResponse<byte[]> get(String ifNoneMatch) throws Exception {
+        HttpRequest.Builder request = HttpRequest.newBuilder(uri).GET();
+        if (ifNoneMatch != null) {
+            request.header("If-None-Match", ifNoneMatch);
+        }
+
+        HttpResponse<byte[]> response = client.send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+        assertNotNull(response.body());
+
+        return response;
+    }
+
+    private static OCSPResp createOcspResponse(CertificateStatus status) {
+        TestCertUtil.PKCS12 ocspSigner = TestCertUtil.getOcspSigner();
+
+        return OcspTestUtils.createOCSPResponse(TestCertUtil.getProducer().certChain[0], TestCertUtil.getCaCert(),
+                ocspSigner.certChain[0], ocspSigner.key, status);
+    }
+
+    private static final class CountingKeyConf extends EmptyKeyConf {
+        private final Map<String, OCSPResp> responses = new ConcurrentHashMap<>();
+        private final List<Runnable> listeners = new ArrayList<>();
+        private final AtomicInteger lookups = new AtomicInteger();
+
+        @Override
+        public OCSPResp getOcspResponse(String certHash) {
+            lookups.incrementAndGet();
+
+            return responses.get(certHash);
+        }
+
+        @Override
+        public void addChangeListener(Runnable listener) {
+            listeners.add(listener);
+        }
+
+        void fireChange() {
+            listeners.forEach(Runnable::run);
+        }
+    }
+}
@@ -75,6 +75,7 @@ public class OcspResponderDiagnosticConverter {
             ocspResponder.setPrevUpdateAt(diagnosticsStatus.getPrevUpdate());
         }
         ocspResponder.setNextUpdateAt(diagnosticsStatus.getNextUpdate());
+        ocspResponder.setLatencyMs(diagnosticsStatus.getLatencyMillis());
         return ocspResponder;
     }
 
@@ -258,6 +258,7 @@ public class DiagnosticService {
                     DiagnosticsStatus diagnosticsStatus = new DiagnosticsStatus(ocspResponderStatus.getStatus(),
                             ocspResponderStatus.getPrevUpdate(), ocspResponderStatus.getNextUpdate());
                     diagnosticsStatus.setDescription(ocspResponderStatus.getUrl());
+                    diagnosticsStatus.setLatencyMillis(ocspResponderStatus.getLatencyMillis());
                     return diagnosticsStatus;
                 })
                 .collect(Collectors.toList());
@@ -52,6 +52,7 @@ public class OcspResponderDiagnosticConverterTest {
     private static final String URL_1 = "https://ocsp1.example.com";
     private static final OffsetDateTime PREVIOUS_UPDATE_1 = OffsetDateTime.parse("2020-03-16T10:16:40.703Z");
     private static final OffsetDateTime NEXT_UPDATE_1 = OffsetDateTime.parse("2020-03-16T10:35:42.123Z");
+    private static final Long LATENCY_1 = 120L;
     private static final String URL_2 = "https://ocsp2.example.com";
     private static final OffsetDateTime NEXT_UPDATE_2 = OffsetDateTime.parse("2020-03-16T10:35:42.123Z");
 
@@ -66,6 +67,7 @@ public class OcspResponderDiagnosticConverterTest {
         DiagnosticsStatus diagnosticsStatus = new DiagnosticsStatus(
                 DiagnosticsErrorCodes.RETURN_SUCCESS, PREVIOUS_UPDATE_1, NEXT_UPDATE_1);
         diagnosticsStatus.setDescription(URL_1);
+        diagnosticsStatus.setLatencyMillis(LATENCY_1);
         status.setOcspResponderStatusMap(Arrays.asList(diagnosticsStatus));
 
         OcspResponderDiagnostics caDiagnostics = ocspResponderDiagnosticConverter.convert(status);
@@ -78,6 +80,7 @@ public class OcspResponderDiagnosticConverterTest {
         assertEquals(PREVIOUS_UPDATE_1, caDiagnostics.getOcspResponders().get(0).getPrevUpdateAt());
         assertEquals(NEXT_UPDATE_1, caDiagnostics.getOcspResponders().get(0).getNextUpdateAt());
         assertEquals(URL_1, caDiagnostics.getOcspResponders().get(0).getUrl());
+        assertEquals(LATENCY_1, caDiagnostics.getOcspResponders().get(0).getLatencyMs());
     }
 
     @Test
@@ -128,6 +131,7 @@ public class OcspResponderDiagnosticConverterTest {
         assertEquals(DiagnosticStatusClass.WAITING, secondDiagnostic.getOcspResponders().get(0).getStatusClass());
         assertEquals(null, secondDiagnostic.getOcspResponders().get(0).getPrevUpdateAt());
         assertEquals(NEXT_UPDATE_2, secondDiagnostic.getOcspResponders().get(0).getNextUpdateAt());
+        assertEquals(null, secondDiagnostic.getOcspResponders().get(0).getLatencyMs());
         assertEquals(URL_2, secondDiagnostic.getOcspResponders().get(0).getUrl());
 
         assertEquals(OcspStatus.ERROR_CODE_OCSP_RESPONSE_INVALID, secondDiagnostic.getOcspResponders()
@@ -0,0 +1,251 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.conf.serverconf;
+
+import ee.ria.xroad.common.conf.globalconf.GlobalConfProvider;
+import ee.ria.xroad.common.conf.serverconf.model.AccessRightType;
+import ee.ria.xroad.common.conf.serverconf.model.ClientType;
+import ee.ria.xroad.common.conf.serverconf.model.EndpointType;
+import ee.ria.xroad.common.conf.serverconf.model.GroupMemberType;
+import ee.ria.xroad.common.conf.serverconf.model.LocalGroupType;
+import ee.ria.xroad.common.identifier.ClientId;
+import ee.ria.xroad.common.identifier.GlobalGroupId;
+import ee.ria.xroad.common.identifier.LocalGroupId;
+import ee.ria.xroad.common.identifier.XRoadId;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import static ee.ria.xroad.common.conf.serverconf.model.EndpointType.ANY_METHOD;
+import static ee.ria.xroad.common.conf.serverconf.model.EndpointType.ANY_PATH;
+
+/**
+ * Precompiled access rights of a single service owner.
+ * <p>
+ * Access right subjects are resolved up front: local groups are expanded into their members, so a decision only
+ * needs a hash lookup for direct and local group rights and a global group membership check for global group rights.
+ * Endpoints are compiled into a method + path segment trie; only path globs that can not be expressed as literal or
+ * whole-segment '*' segments fall back to {@link PathGlob} matching.
+ */
+public final class AclIndex {
+
+    /**
+     * Index that does not allow anything.
+     */
+    public static final AclIndex EMPTY = new AclIndex();
+
+    private final Map<String, ServiceRights> services = new HashMap<>();
+    private int size;
+
+    private AclIndex() {
+    }
+
+    /**
+     * Compiles the access rights of the given service owner.
+     * @param serviceOwner service owner, used for resolving local group members
+     * @param acl access rights of the service owner
+     * @return compiled index
+     */
+    public static AclIndex build(ClientType serviceOwner, Collection<AccessRightType> acl) {
+        final Map<String, List<ClientId>> localGroups = new HashMap<>();
+        for (LocalGroupType group : serviceOwner.getLocalGroup()) {
+            final List<ClientId> members = localGroups.computeIfAbsent(group.getGroupCode(), k -> new ArrayList<>());
+            for (GroupMemberType member : group.getGroupMember()) {
+                members.add(member.getGroupMemberId());
+            }
+        }
+
+        final AclIndex index = new AclIndex();
+        for (AccessRightType right : acl) {
+            final EndpointType endpoint = right.getEndpoint();
+            final ServiceRights service = index.services.computeIfAbsent(endpoint.getServiceCode(),
+                    k -> new ServiceRights());
+            final XRoadId subject = right.getSubjectId();
+
+            if (subject instanceof GlobalGroupId globalGroupId) {
+                service.globalGroups.computeIfAbsent(globalGroupId, k -> new EndpointMatcher()).add(endpoint);
+                index.size++;
+            } else if (subject instanceof LocalGroupId localGroupId) {
+                for (ClientId member : localGroups.getOrDefault(localGroupId.getGroupCode(), List.of())) {
+                    service.clients.computeIfAbsent(member, k -> new EndpointMatcher()).add(endpoint);
+                    index.size++;
+                }
+            } else if (subject instanceof ClientId clientId) {
+                service.clients.computeIfAbsent(clientId, k -> new EndpointMatcher()).add(endpoint);
+                index.size++;
+            }
+        }
+        return index;
+    }
+
+    /**
+     * @return number of compiled entries, where an access right of a local group counts once per group member
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Checks whether the client is allowed to access the service endpoint.
+     * @param client client making the request
+     * @param serviceCode code of the requested service
+     * @param method request method, null for SOAP services
+     * @param normalizedPath normalized request path, null for SOAP services
+     * @param globalConfProvider used for checking global group membership
+     * @return true if some access right allows the request
+     */
+    public boolean isAllowed(ClientId client, String serviceCode, String method, String normalizedPath,
+                             GlobalConfProvider globalConfProvider) {
+        final ServiceRights service = services.get(serviceCode);
+        if (service == null) {
+            return false;
+        }
+
+        final EndpointMatcher direct = service.clients.get(client);
+        if (direct != null && direct.matches(method, normalizedPath)) {
+            return true;
+        }
+
+        for (Map.Entry<GlobalGroupId, EndpointMatcher> e : service.globalGroups.entrySet()) {
+            if (e.getValue().matches(method, normalizedPath)
+                    && globalConfProvider.isSubjectInGlobalGroup(client, e.getKey())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static final class ServiceRights {
+        private final Map<ClientId, EndpointMatcher> clients = new HashMap<>();
+        private final Map<GlobalGroupId, EndpointMatcher> globalGroups = new HashMap<>();
+    }
+
+    /**
+     * Endpoints of one subject and service, grouped by method.
+     */
+    static final class EndpointMatcher {
+        private final Map<String, PathTrie> methods = new HashMap<>();
+        private PathTrie anyMethod;
+
+        void add(EndpointType endpoint) {
+            final PathTrie trie;
+            if (ANY_METHOD.equals(endpoint.getMethod())) {
+                if (anyMethod == null) {
+                    anyMethod = new PathTrie();
+                }
+                trie = anyMethod;
+            } else {
+                trie = methods.computeIfAbsent(endpoint.getMethod().toUpperCase(Locale.ROOT), k -> new PathTrie());
+            }
+            trie.add(endpoint.getPath());
+        }
+
+        /**
+         * Equivalent of testing {@link EndpointType#matches(String, String)} for each added endpoint.
+         */
+        boolean matches(String method, String path) {
+            if (anyMethod != null && anyMethod.matches(path)) {
+                return true;
+            }
+            if (method == null) {
+                return false;
+            }
+            final PathTrie trie = methods.get(method.toUpperCase(Locale.ROOT));
+            return trie != null && trie.matches(path);
+        }
+    }
+
+    /**
+     * Path globs split into '/' separated segments. Literal segments and segments consisting of a single '*'
+     * (matching any one segment) are stored in the trie, the rest of the glob is matched with {@link PathGlob}
+     * at the node where the first other segment starts.
+     */
+    static final class PathTrie {
+        private static final String SEGMENT_WILDCARD = "*";
+
+        private final Node root = new Node();
+        private boolean anyPath;
+
+        void add(String glob) {
+            if (ANY_PATH.equals(glob)) {
+                anyPath = true;
+                return;
+            }
+            Node node = root;
+            for (String segment : glob.split("/", -1)) {
+                if (SEGMENT_WILDCARD.equals(segment)) {
+                    if (node.wildcard == null) {
+                        node.wildcard = new Node();
+                    }
+                    node = node.wildcard;
+                } else if (segment.indexOf('*') < 0 && segment.indexOf('\\') < 0) {
+                    node = node.literals.computeIfAbsent(segment, k -> new Node());
+                } else {
+                    node.globs.add(glob);
+                    return;
+                }
+            }
+            node.terminal = true;
+        }
+
+        boolean matches(String path) {
+            if (anyPath) {
+                return true;
+            }
+            if (path == null) {
+                return false;
+            }
+            return root.matches(path, path.split("/", -1), 0);
+        }
+    }
+
+    private static final class Node {
+        private final Map<String, Node> literals = new HashMap<>();
+        private final List<String> globs = new ArrayList<>(0);
+        private Node wildcard;
+        private boolean terminal;
+
+        boolean matches(String path, String[] segments, int pos) {
+            for (String glob : globs) {
+                if (PathGlob.matches(glob, path)) {
+                    return true;
+                }
+            }
+            if (pos == segments.length) {
+                return terminal;
+            }
+            final Node literal = literals.get(segments[pos]);
+            if (literal != null && literal.matches(path, segments, pos + 1)) {
+                return true;
+            }
+            return wildcard != null && wildcard.matches(path, segments, pos + 1);
+        }
+    }
+}
@@ -65,6 +65,7 @@ public class CachingServerConfImpl extends ServerConfImpl {
     private final Cache<Object, List<String>> tspCache;
     private final Cache<ServiceId, Optional<ServiceType>> serviceCache;
     private final Cache<AclCacheKey, List<EndpointType>> aclCache;
+    private final Cache<ClientId, AclIndex> aclIndexCache;
     private final Cache<ClientId, Optional<ClientType>> clientCache;
     private final Cache<String, InternalSSLKey> internalKeyCache;
 
@@ -106,6 +107,15 @@ public class CachingServerConfImpl extends ServerConfImpl {
                 .recordStats()
                 .build();
 
+        // Guava divides the maximum weight between the segments of the cache, a single segment lets the index
+        // of a service owner use the whole limit
+        aclIndexCache = CacheBuilder.newBuilder()
+                .concurrencyLevel(1)
+                .weigher((ClientId k, AclIndex v) -> v.size() + 1)
+                .maximumWeight(SystemProperties.getServerConfAclCacheSize())
+                .expireAfterWrite(expireSeconds, TimeUnit.SECONDS)
+                .recordStats()
+                .build();
     }
 
     @Override
@@ -211,6 +221,31 @@ public class CachingServerConfImpl extends ServerConfImpl {
         return getService(service).map(ServiceType::getTimeout).orElse(DEFAULT_SERVICE_TIMEOUT);
     }
 
+    /**
+     * Access decisions are made against a compiled per service owner {@link AclIndex}, so a cached decision
+     * does not need a database transaction.
+     */
+    @Override
+    public boolean isQueryAllowed(ClientId client, ServiceId service, String method, String path) {
+        if (client == null) {
+            return false;
+        }
+        return getAclIndex(service.getClientId())
+                .isAllowed(client, service.getServiceCode(), method, normalizePath(path), globalConfProvider);
+    }
+
+    private AclIndex getAclIndex(ClientId serviceOwner) {
+        try {
+            return aclIndexCache.get(serviceOwner, () -> tx(s -> getAclIndex(s, serviceOwner)));
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof CodedException) {
+                throw (CodedException) e.getCause();
+            }
+            log.debug("Failed to compile access rights", e);
+            return AclIndex.EMPTY;
+        }
+    }
+
     @Override
     protected List<EndpointType> getAclEndpoints(Session session, ClientId client, ServiceId service) {
         final AclCacheKey key = new AclCacheKey(client, service);
@@ -265,6 +300,8 @@ public class CachingServerConfImpl extends ServerConfImpl {
                     serviceCache.stats());
             log.trace("ServerConf.aclCache    : entries: {}, stats: {}", aclCache.size(),
                     aclCache.stats());
+            log.trace("ServerConf.aclIndex    : entries: {}, stats: {}", aclIndexCache.size(),
+                    aclIndexCache.stats());
         }
     }
 
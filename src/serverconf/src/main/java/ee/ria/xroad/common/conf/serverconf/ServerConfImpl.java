@@ -418,16 +418,40 @@ public class ServerConfImpl implements ServerConfProvider {
 
     @SuppressWarnings("squid:S3776")
     private boolean checkAccessRights(Session session, ClientId client, ServiceId service, String method, String path) {
-        final String normalizedPath;
-        if (path == null) {
-            normalizedPath = null;
-        } else {
-            normalizedPath = UriUtils.uriPathPercentDecode(URI.create(path).normalize().getRawPath(), true);
-        }
+        final String normalizedPath = normalizePath(path);
         return getAclEndpoints(session, client, service).stream()
                 .anyMatch(ep -> ep.matches(method, normalizedPath));
     }
 
+    protected static String normalizePath(String path) {
+        if (path == null) {
+            return null;
+        }
+        return UriUtils.uriPathPercentDecode(URI.create(path).normalize().getRawPath(), true);
+    }
+
+    /**
+     * Compiles all access rights of the service owner into an {@link AclIndex}.
+     */
+    protected AclIndex getAclIndex(Session session, ClientId serviceOwnerId) {
+        final ClientType serviceOwner = getClient(session, serviceOwnerId);
+
+        if (serviceOwner == null) {
+            throw new CodedException(X_UNKNOWN_SERVICE, "Service owner '%s' not found", serviceOwnerId);
+        }
+
+        final CriteriaBuilder cb = session.getCriteriaBuilder();
+        final CriteriaQuery<AccessRightType> query = cb.createQuery(AccessRightType.class);
+        final Root<ClientType> root = query.from(ClientType.class);
+        final Join<ClientType, AccessRightType> acl = root.join("acl");
+        acl.fetch("endpoint");
+        acl.fetch("subjectId");
+
+        query.select(acl).where(cb.equal(root, serviceOwner));
+
+        return AclIndex.build(serviceOwner, session.createQuery(query).setReadOnly(true).list());
+    }
+
     /**
      * Returns the endpoints the client has access to.
      * <p>
@@ -0,0 +1,144 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.conf;
+
+import ee.ria.xroad.common.conf.globalconf.EmptyGlobalConf;
+import ee.ria.xroad.common.conf.globalconf.GlobalConfProvider;
+import ee.ria.xroad.common.conf.serverconf.AclIndex;
+import ee.ria.xroad.common.conf.serverconf.model.AccessRightType;
+import ee.ria.xroad.common.conf.serverconf.model.ClientType;
+import ee.ria.xroad.common.conf.serverconf.model.EndpointType;
+import ee.ria.xroad.common.conf.serverconf.model.GroupMemberType;
+import ee.ria.xroad.common.conf.serverconf.model.LocalGroupType;
+import ee.ria.xroad.common.identifier.ClientId;
+import ee.ria.xroad.common.identifier.GlobalGroupId;
+import ee.ria.xroad.common.identifier.LocalGroupId;
+import ee.ria.xroad.common.identifier.XRoadId;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that {@link AclIndex} makes the same decisions as matching endpoints one by one.
+ */
+public class AclIndexTest {
+
+    private static final String SERVICE = "service";
+    private static final ClientId CLIENT = ClientId.Conf.create("EE", "BUSINESS", "client");
+    private static final ClientId MEMBER = ClientId.Conf.create("EE", "BUSINESS", "member");
+    private static final ClientId OTHER = ClientId.Conf.create("EE", "BUSINESS", "other");
+    private static final GlobalGroupId GLOBAL_GROUP = GlobalGroupId.Conf.create("EE", "global");
+
+    private static final GlobalConfProvider GLOBAL_CONF = new EmptyGlobalConf() {
+        @Override
+        public boolean isSubjectInGlobalGroup(ClientId subject, GlobalGroupId group) {
+            return GLOBAL_GROUP.equals(group) && MEMBER.equals(subject);
+        }
+    };
+
+    private final ClientType owner = new ClientType();
+    private final List<AccessRightType> acl = new ArrayList<>();
+
+    @Test
+    public void pathMatchingIsEquivalentToEndpointMatching() {
+        final String[] globs = {"/", "/api", "/api/*", "/api/*/foo", "/api/**", "/api/v*/foo", "/api/\\*",
+                "/api/*/*", "**/bar", "/api/foo/"};
+        final String[] paths = {"/", "/api", "/api/", "/api/foo", "/api/x/foo", "/api/v1/foo", "/api/*",
+                "/api/x/y", "/api/x/y/z", "/x/bar", "/api/foo/", "//", ""};
+
+        for (String glob : globs) {
+            acl.clear();
+            final EndpointType endpoint = new EndpointType(SERVICE, "GET", glob, false);
+            grant(CLIENT, endpoint);
+            final AclIndex index = AclIndex.build(owner, acl);
+            for (String path : paths) {
+                assertEquals(glob + " vs " + path, endpoint.matches("GET", path),
+                        index.isAllowed(CLIENT, SERVICE, "GET", path, GLOBAL_CONF));
+            }
+        }
+    }
+
+    @Test
+    public void methodMatching() {
+        grant(CLIENT, new EndpointType(SERVICE, "get", "/api", false));
+        grant(CLIENT, new EndpointType(SERVICE, EndpointType.ANY_METHOD, "/any", false));
+        final AclIndex index = AclIndex.build(owner, acl);
+
+        assertTrue(index.isAllowed(CLIENT, SERVICE, "GET", "/api", GLOBAL_CONF));
+        assertFalse(index.isAllowed(CLIENT, SERVICE, "POST", "/api", GLOBAL_CONF));
+        assertTrue(index.isAllowed(CLIENT, SERVICE, "DELETE", "/any", GLOBAL_CONF));
+        assertFalse(index.isAllowed(CLIENT, SERVICE, null, null, GLOBAL_CONF));
+    }
+
+    @Test
+    public void baseEndpointAllowsSoapRequests() {
+        grant(CLIENT, new EndpointType(SERVICE, EndpointType.ANY_METHOD, EndpointType.ANY_PATH, false));
+        final AclIndex index = AclIndex.build(owner, acl);
+
+        assertTrue(index.isAllowed(CLIENT, SERVICE, null, null, GLOBAL_CONF));
+        assertFalse(index.isAllowed(CLIENT, "other", null, null, GLOBAL_CONF));
+        assertFalse(index.isAllowed(OTHER, SERVICE, null, null, GLOBAL_CONF));
+    }
+
+    @Test
+    public void localGroupMembersAreResolved() {
+        final LocalGroupType group = new LocalGroupType();
+        group.setGroupCode("local");
+        final GroupMemberType member = new GroupMemberType();
+        member.setGroupMemberId(MEMBER);
+        group.getGroupMember().add(member);
+        owner.getLocalGroup().add(group);
+
+        grant(LocalGroupId.Conf.create("local"), new EndpointType(SERVICE, "GET", "/api", false));
+        final AclIndex index = AclIndex.build(owner, acl);
+
+        assertTrue(index.isAllowed(MEMBER, SERVICE, "GET", "/api", GLOBAL_CONF));
+        assertFalse(index.isAllowed(CLIENT, SERVICE, "GET", "/api", GLOBAL_CONF));
+    }
+
+    @Test
+    public void globalGroupMembershipIsChecked() {
+        grant(GLOBAL_GROUP, new EndpointType(SERVICE, "GET", "/api/**", false));
+        final AclIndex index = AclIndex.build(owner, acl);
+
+        assertTrue(index.isAllowed(MEMBER, SERVICE, "GET", "/api/foo", GLOBAL_CONF));
+        assertFalse(index.isAllowed(MEMBER, SERVICE, "GET", "/other", GLOBAL_CONF));
+        assertFalse(index.isAllowed(CLIENT, SERVICE, "GET", "/api/foo", GLOBAL_CONF));
+    }
+
+    private void grant(XRoadId subject, EndpointType endpoint) {
+        final AccessRightType right = new AccessRightType();
+        right.setSubjectId(subject);
+        right.setEndpoint(endpoint);
+        acl.add(right);
+    }
+}
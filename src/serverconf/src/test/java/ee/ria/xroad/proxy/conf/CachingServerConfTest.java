@@ -26,18 +26,26 @@
 package ee.ria.xroad.proxy.conf;
 
 import ee.ria.xroad.common.ExpectedCodedException;
+import ee.ria.xroad.common.SystemProperties;
 import ee.ria.xroad.common.conf.globalconf.EmptyGlobalConf;
 import ee.ria.xroad.common.conf.globalconf.GlobalConfProvider;
+import ee.ria.xroad.common.conf.serverconf.AclIndex;
 import ee.ria.xroad.common.conf.serverconf.CachingServerConfImpl;
 import ee.ria.xroad.common.conf.serverconf.IsAuthentication;
 import ee.ria.xroad.common.conf.serverconf.ServerConfDatabaseCtx;
 import ee.ria.xroad.common.conf.serverconf.ServerConfProvider;
+import ee.ria.xroad.common.conf.serverconf.dao.ClientDAOImpl;
 import ee.ria.xroad.common.conf.serverconf.dao.ServiceDAOImpl;
+import ee.ria.xroad.common.conf.serverconf.model.ClientType;
+import ee.ria.xroad.common.conf.serverconf.model.GroupMemberType;
+import ee.ria.xroad.common.conf.serverconf.model.LocalGroupType;
 import ee.ria.xroad.common.identifier.ClientId;
+import ee.ria.xroad.common.identifier.LocalGroupId;
 import ee.ria.xroad.common.identifier.SecurityServerId;
 import ee.ria.xroad.common.identifier.ServiceId;
 import ee.ria.xroad.common.util.CryptoUtils;
 
+import org.hibernate.Session;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.BeforeClass;
@@ -47,6 +55,7 @@ import org.junit.Test;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Date;
 import java.util.List;
 
 import static ee.ria.xroad.common.ErrorCodes.X_UNKNOWN_SERVICE;
@@ -66,6 +75,7 @@ import static ee.ria.xroad.proxy.conf.TestUtil.SERVICE_VERSION;
 import static ee.ria.xroad.proxy.conf.TestUtil.SUBSYSTEM;
 import static ee.ria.xroad.proxy.conf.TestUtil.XROAD_INSTANCE;
 import static ee.ria.xroad.proxy.conf.TestUtil.client;
+import static ee.ria.xroad.proxy.conf.TestUtil.createAccessRight;
 import static ee.ria.xroad.proxy.conf.TestUtil.createTestClientId;
 import static ee.ria.xroad.proxy.conf.TestUtil.createTestServiceId;
 import static ee.ria.xroad.proxy.conf.TestUtil.prepareDB;
@@ -85,6 +95,8 @@ public class CachingServerConfTest {
     @Rule
     public ExpectedCodedException thrown = ExpectedCodedException.none();
 
+    private static final int LARGE_GROUP_SIZE = 100;
+
     private static GlobalConfProvider globalConfProvider;
     private static ServerConfProvider serverConfProvider;
 
@@ -256,6 +268,49 @@ public class CachingServerConfTest {
         assertFalse(serverConfProvider.isQueryAllowed(client1, serviceRest));
     }
 
+    /**
+     * Tests that the access rights of a service owner are cached even when they take more than the share of the
+     * ACL cache size that one segment of a default Guava cache would get.
+     */
+    @Test
+    public void cachesAclIndexLargerThanSegmentShare() {
+        ClientId client1 = createTestClientId(client(1));
+        ServiceId service1 = createTestServiceId(client1.getMemberCode(), service(1, 1), SERVICE_VERSION);
+        Session session = ServerConfDatabaseCtx.get().getSession();
+
+        ClientType owner = new ClientDAOImpl().getClient(session, client1);
+        LocalGroupType largeGroup = new LocalGroupType();
+        largeGroup.setGroupCode("largeGroup");
+        largeGroup.setDescription("local group description");
+        largeGroup.setUpdated(new Date());
+        for (int i = 0; i < LARGE_GROUP_SIZE; i++) {
+            GroupMemberType member = new GroupMemberType();
+            member.setAdded(new Date());
+            member.setGroupMemberId(ClientId.Conf.create("XX", "memberClass", "largeGroupMember" + i));
+            largeGroup.getGroupMember().add(member);
+        }
+        owner.getLocalGroup().add(largeGroup);
+        owner.getAcl().add(createAccessRight(owner.getEndpoint().getFirst(), LocalGroupId.Conf.create("largeGroup")));
+        session.flush();
+
+        try {
+            CountingServerConf sizing = new CountingServerConf();
+            assertTrue(sizing.isQueryAllowed(client1, service1));
+            final int weight = sizing.lastSize + 1;
+            assertTrue(weight > LARGE_GROUP_SIZE);
+
+            System.setProperty(SystemProperties.SERVER_CONF_ACL_CACHE_SIZE, String.valueOf(weight));
+            CountingServerConf conf = new CountingServerConf();
+            assertTrue(conf.isQueryAllowed(client1, service1));
+            assertTrue(conf.isQueryAllowed(client1, service1));
+            assertEquals(1, conf.compilations);
+        } finally {
+            System.clearProperty(SystemProperties.SERVER_CONF_ACL_CACHE_SIZE);
+            ServerConfDatabaseCtx.get().rollbackTransaction();
+            ServerConfDatabaseCtx.get().beginTransaction();
+        }
+    }
+
     /**
      * Tests getting IS authentication.
      */
@@ -352,4 +407,21 @@ public class CachingServerConfTest {
                 ServerConfDatabaseCtx.get().getSession(),
                 serviceProvider);
     }
+
+    private static final class CountingServerConf extends CachingServerConfImpl {
+        private int compilations;
+        private int lastSize;
+
+        CountingServerConf() {
+            super(globalConfProvider);
+        }
+
+        @Override
+        protected AclIndex getAclIndex(Session session, ClientId serviceOwnerId) {
+            compilations++;
+            AclIndex index = super.getAclIndex(session, serviceOwnerId);
+            lastSize = index.size();
+            return index;
+        }
+    }
 }
@@ -30,6 +30,7 @@ import ee.ria.xroad.common.CertificationServiceStatus;
 import ee.ria.xroad.common.CodedException;
 import ee.ria.xroad.common.DiagnosticsErrorCodes;
 import ee.ria.xroad.common.OcspResponderStatus;
+import ee.ria.xroad.common.SystemProperties;
 import ee.ria.xroad.common.cert.CertChain;
 import ee.ria.xroad.common.conf.globalconf.GlobalConfProvider;
 import ee.ria.xroad.common.crypto.identifier.SignAlgorithm;
@@ -57,12 +58,16 @@ import java.time.OffsetDateTime;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 
 import static ee.ria.xroad.common.util.CryptoUtils.calculateCertSha1HexHash;
@@ -74,6 +79,10 @@ import static java.util.Collections.emptyList;
  * server and providing the responses to the message signer.
  * <p>
  * The certificate status is queried from the server at a fixed interval.
+ * <p>
+ * Every certificate is queried on its own virtual thread. At most {@link SystemProperties#getOcspResponderConcurrency()}
+ * requests are sent to a single responder URI at a time, so that a slow responder neither delays the other
+ * responders nor gets flooded with requests.
  */
 @Slf4j
 @RequiredArgsConstructor
@@ -167,27 +176,21 @@ public class OcspClientWorker {
 
         log.info("Fetching OCSP responses for {} certificates", certs.size());
 
-        boolean failed = false;
-        Map<String, OCSPResp> statuses = new HashMap<>();
-
-        for (X509Certificate subject : certs) {
-            try {
-                OCSPResp status = queryCertStatus(subject, new OcspVerifierOptions(
-                        globalConfProvider.getGlobalConfExtensions().shouldVerifyOcspNextUpdate()));
-                if (status != null) {
-                    String subjectHash = calculateCertSha1HexHash(subject);
-                    statuses.put(subjectHash, status);
-                } else {
-                    failed = true;
-                }
-            } catch (Exception e) {
-                failed = true;
+        AtomicBoolean failed = new AtomicBoolean();
+        Map<String, OCSPResp> statuses = new ConcurrentHashMap<>();
+        OcspVerifierOptions verifierOptions = new OcspVerifierOptions(
+                globalConfProvider.getGlobalConfExtensions().shouldVerifyOcspNextUpdate());
+        ResponderPermits permits = new ResponderPermits(Math.max(1, SystemProperties.getOcspResponderConcurrency()));
 
-                log.error("Error when querying certificate '{}'", subject.getSerialNumber(), e);
+        try (ExecutorService executor = Executors.newThreadPerTaskExecutor(
+                Thread.ofVirtual().name("ocsp-client-", 0L).factory())) {
+            for (X509Certificate cert : certs) {
+                executor.execute(() -> queryAndStoreCertStatus(cert, verifierOptions, permits, statuses, failed));
             }
         }
+
         if (ocspClientExecuteScheduler != null) {
-            if (failed) {
+            if (failed.get()) {
                 ocspClientExecuteScheduler.failure();
             } else {
                 ocspClientExecuteScheduler.success();
@@ -201,6 +204,25 @@ public class OcspClientWorker {
         }
     }
 
+    private void queryAndStoreCertStatus(X509Certificate subject, OcspVerifierOptions verifierOptions,
+                                         ResponderPermits permits, Map<String, OCSPResp> statuses,
+                                         AtomicBoolean failed) {
+        try {
+            OCSPResp status = queryCertStatus(subject, globalConfProvider.getOcspResponderAddresses(subject),
+                    verifierOptions, permits);
+            if (status != null) {
+                String subjectHash = calculateCertSha1HexHash(subject);
+                statuses.put(subjectHash, status);
+            } else {
+                failed.set(true);
+            }
+        } catch (Exception e) {
+            failed.set(true);
+
+            log.error("Error when querying certificate '{}'", subject.getSerialNumber(), e);
+        }
+    }
+
     List<X509Certificate> getCertsForOcsp() {
         Set<X509Certificate> certs = new HashSet<>();
 
@@ -243,14 +265,18 @@ public class OcspClientWorker {
     }
 
     OCSPResp queryCertStatus(X509Certificate subject, OcspVerifierOptions verifierOptions) throws Exception {
+        return queryCertStatus(subject, globalConfProvider.getOcspResponderAddresses(subject), verifierOptions,
+                null);
+    }
+
+    private OCSPResp queryCertStatus(X509Certificate subject, List<String> responderURIs,
+                                     OcspVerifierOptions verifierOptions, ResponderPermits permits) throws Exception {
         X509Certificate issuer = globalConfProvider.getCaCert(globalConfProvider.getInstanceIdentifier(), subject);
 
         PrivateKey signerKey = ocspClient.getOcspRequestKey(subject);
         X509Certificate signer = ocspClient.getOcspSignerCert();
         SignAlgorithm signAlgoId = ocspClient.getSignAlgorithmId();
 
-        List<String> responderURIs = globalConfProvider.getOcspResponderAddresses(subject);
-
         log.debug("responder URIs: {}", responderURIs);
 
         if (responderURIs.isEmpty()) {
@@ -264,11 +290,14 @@ public class OcspClientWorker {
             final OffsetDateTime nextUpdate = prevUpdate
                     .plusSeconds(globalConfProvider.getGlobalConfExtensions().getOcspFetchInterval());
             int errorCode = DiagnosticsErrorCodes.ERROR_CODE_OCSP_RESPONSE_INVALID;
+            // waiting for a permit is not part of the responder latency
+            final Semaphore permit = acquirePermit(permits, responderURI);
+            final long start = System.nanoTime();
 
             try {
                 log.debug("Fetching response from: {}", responderURI);
-                final OCSPResp response = ocspClient
-                        .fetchResponse(responderURI, subject, issuer, signerKey, signer, signAlgoId);
+                final OCSPResp response = fetchResponse(responderURI, subject, issuer, signerKey, signer, signAlgoId,
+                        permit);
 
                 if (response != null) {
                     log.debug("Verifying response: {}", response);
@@ -276,7 +305,7 @@ public class OcspClientWorker {
                     log.debug("Verified OCSP response for certificate '{}'", subject.getSubjectX500Principal());
 
                     reportOcspDiagnostics(issuer, responderURI, DiagnosticsErrorCodes.RETURN_SUCCESS, prevUpdate,
-                            nextUpdate);
+                            nextUpdate, elapsedMillis(start));
 
                     return response;
                 }
@@ -294,32 +323,62 @@ public class OcspClientWorker {
                 errorCode = DiagnosticsErrorCodes.ERROR_CODE_OCSP_RESPONSE_INVALID;
             }
 
-            reportOcspDiagnostics(issuer, responderURI, errorCode, prevUpdate, nextUpdate);
+            reportOcspDiagnostics(issuer, responderURI, errorCode, prevUpdate, nextUpdate, elapsedMillis(start));
         }
 
         return null;
     }
 
+    private static Semaphore acquirePermit(ResponderPermits permits, String responderURI) throws InterruptedException {
+        if (permits == null) {
+            return null;
+        }
+
+        Semaphore permit = permits.get(responderURI);
+        permit.acquire();
+        return permit;
+    }
+
+    private OCSPResp fetchResponse(String responderURI, X509Certificate subject, X509Certificate issuer,
+                                   PrivateKey signerKey, X509Certificate signer, SignAlgorithm signAlgoId,
+                                   Semaphore permit) throws Exception {
+        try {
+            return ocspClient.fetchResponse(responderURI, subject, issuer, signerKey, signer, signAlgoId);
+        } finally {
+            if (permit != null) {
+                permit.release();
+            }
+        }
+    }
+
+    private static long elapsedMillis(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1_000_000;
+    }
+
     private void reportOcspDiagnostics(X509Certificate issuer, String responderURI, int statusCode,
-                                       OffsetDateTime prevUpdate, OffsetDateTime nextUpdate) {
+                                       OffsetDateTime prevUpdate, OffsetDateTime nextUpdate, long latencyMillis) {
 
-        OcspResponderStatus responderStatus = new OcspResponderStatus(statusCode, responderURI, prevUpdate, nextUpdate);
+        OcspResponderStatus responderStatus = new OcspResponderStatus(statusCode, responderURI, prevUpdate, nextUpdate,
+                latencyMillis);
 
         String subjectName = issuer.getSubjectDN().toString();
 
         CertificationServiceStatus serviceStatus;
 
-        Map<String, CertificationServiceStatus> serviceStatusMap =
-                certServDiagnostics.getCertificationServiceStatusMap();
+        // responders are queried concurrently
+        synchronized (certServDiagnostics) {
+            Map<String, CertificationServiceStatus> serviceStatusMap =
+                    certServDiagnostics.getCertificationServiceStatusMap();
 
-        if (!serviceStatusMap.containsKey(subjectName)) {
-            serviceStatus = new CertificationServiceStatus(subjectName);
-            serviceStatusMap.put(subjectName, serviceStatus);
-        } else {
-            serviceStatus = serviceStatusMap.get(subjectName);
-        }
+            if (!serviceStatusMap.containsKey(subjectName)) {
+                serviceStatus = new CertificationServiceStatus(subjectName);
+                serviceStatusMap.put(subjectName, serviceStatus);
+            } else {
+                serviceStatus = serviceStatusMap.get(subjectName);
+            }
 
-        serviceStatus.getOcspResponderStatusMap().put(responderURI, responderStatus);
+            serviceStatus.getOcspResponderStatusMap().put(responderURI, responderStatus);
+        }
     }
 
     void updateCertStatuses(Map<String, OCSPResp> statuses) throws Exception {
@@ -414,4 +473,19 @@ public class OcspClientWorker {
         }
     }
 
+    /**
+     * Limits the number of concurrent requests to each responder URI during one refresh cycle.
+     */
+    private static final class ResponderPermits {
+        private final int permitsPerResponder;
+        private final Map<String, Semaphore> semaphores = new ConcurrentHashMap<>();
+
+        ResponderPermits(int permitsPerResponder) {
+            this.permitsPerResponder = permitsPerResponder;
+        }
+
+        Semaphore get(String responderURI) {
+            return semaphores.computeIfAbsent(responderURI, uri -> new Semaphore(permitsPerResponder));
+        }
+    }
 }
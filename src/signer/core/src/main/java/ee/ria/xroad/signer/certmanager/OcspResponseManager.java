@@ -39,6 +39,9 @@ import org.niis.xroad.signer.proto.SetOcspResponsesReq;
 import java.io.IOException;
 import java.security.cert.CertificateEncodingException;
 import java.security.cert.X509Certificate;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Map.Entry;
 
 import static ee.ria.xroad.common.util.CryptoUtils.calculateCertSha1HexHash;
@@ -111,9 +114,12 @@ public class OcspResponseManager {
         try {
             responseCache.reloadFromDisk();
 
+            Map<String, OCSPResp> responses = new HashMap<>();
             for (Entry<String, OCSPResp> e : responseCache.entrySet()) {
-                TokenManager.setOcspResponse(e.getKey(), e.getValue());
+                responses.put(e.getKey(), e.getValue());
             }
+
+            TokenManager.setOcspResponses(responses);
         } catch (Exception e) {
             log.error("Failed to load OCSP responses from disk", e);
         }
@@ -171,9 +177,18 @@ public class OcspResponseManager {
     public void handleSetOcspResponses(SetOcspResponsesReq message) throws Exception {
         log.trace("handleSetOcspResponses()");
 
-        for (int i = 0; i < message.getCertHashesCount(); i++) {
-            setResponse(message.getCertHashes(i), new OCSPResp(
-                    decodeBase64(message.getBase64EncodedResponses(i))));
+        Map<String, OCSPResp> responses = new LinkedHashMap<>();
+        try {
+            for (int i = 0; i < message.getCertHashesCount(); i++) {
+                String certHash = message.getCertHashes(i);
+                OCSPResp response = new OCSPResp(decodeBase64(message.getBase64EncodedResponses(i)));
+
+                log.debug("Setting a new response to cache for cert: {}", certHash);
+                responses.put(certHash, response);
+                responseCache.put(certHash, response);
+            }
+        } finally {
+            TokenManager.setOcspResponses(responses);
         }
     }
 
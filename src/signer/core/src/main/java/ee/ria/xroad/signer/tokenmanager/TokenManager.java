@@ -39,11 +39,14 @@ import ee.ria.xroad.signer.protocol.dto.KeyUsageInfo;
 import ee.ria.xroad.signer.protocol.dto.TokenInfo;
 import ee.ria.xroad.signer.protocol.dto.TokenInfoAndKeyId;
 import ee.ria.xroad.signer.protocol.dto.TokenStatusInfo;
+import ee.ria.xroad.signer.tokenmanager.TokenSnapshot.CertEntry;
+import ee.ria.xroad.signer.tokenmanager.TokenSnapshot.CertRequestEntry;
+import ee.ria.xroad.signer.tokenmanager.TokenSnapshot.KeyEntry;
+import ee.ria.xroad.signer.tokenmanager.TokenSnapshot.TokenEntry;
 import ee.ria.xroad.signer.tokenmanager.merge.MergeOntoFileTokensStrategy;
 import ee.ria.xroad.signer.tokenmanager.merge.TokenMergeAddedCertificatesListener;
 import ee.ria.xroad.signer.tokenmanager.merge.TokenMergeStrategy;
 import ee.ria.xroad.signer.tokenmanager.merge.TokenMergeStrategy.MergeResult;
-import ee.ria.xroad.signer.tokenmanager.module.SoftwareModuleType;
 import ee.ria.xroad.signer.tokenmanager.token.TokenType;
 import ee.ria.xroad.signer.util.SignerUtil;
 import ee.ria.xroad.signer.util.TokenAndKey;
@@ -54,9 +57,12 @@ import org.bouncycastle.cert.ocsp.OCSPResp;
 import java.security.cert.X509Certificate;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.function.BiFunction;
 import java.util.function.Function;
 
@@ -76,6 +82,10 @@ public final class TokenManager {
 
     private static volatile List<Token> currentTokens = new ArrayList<>();
 
+    // Read-only view of currentTokens used by the lookups. Every modification publishes a new snapshot before
+    // releasing the class lock, so readers never take the lock or see a partial update.
+    private static volatile TokenSnapshot snapshot = TokenSnapshot.of(currentTokens);
+
     private static boolean initialized;
 
     // configure the implementation somewhere else if multiple implementations created
@@ -96,7 +106,10 @@ public final class TokenManager {
             log.error("Failed to load token conf", e);
         }
 
-        currentTokens = new ArrayList<>(TokenConf.getInstance().getTokens());
+        synchronized (TokenManager.class) {
+            currentTokens = new ArrayList<>(TokenConf.getInstance().getTokens());
+            publishSnapshot();
+        }
 
         initialized = true;
     }
@@ -138,6 +151,7 @@ public final class TokenManager {
             synchronized (TokenManager.class) {
                 result = mergeStrategy.merge(fileTokens, currentTokens);
                 currentTokens = result.getResultTokens();
+                publishSnapshot();
             }
             if (listener != null) {
                 listener.mergeDone(result.getAddedCertificates());
@@ -156,10 +170,8 @@ public final class TokenManager {
     /**
      * @return list of tokens
      */
-    public static synchronized List<TokenInfo> listTokens() {
-        return currentTokens.stream()
-                .map(Token::toDTO)
-                .toList();
+    public static List<TokenInfo> listTokens() {
+        return snapshot().getTokens();
     }
 
     /**
@@ -177,19 +189,23 @@ public final class TokenManager {
      * @return the new token
      */
     public static synchronized TokenInfo createToken(TokenType tokenType) {
-        Token token = new Token(tokenType.getModuleType(), tokenType.getId());
-        token.setModuleId(tokenType.getModuleType());
-        token.setReadOnly(tokenType.isReadOnly());
-        token.setSerialNumber(tokenType.getSerialNumber());
-        token.setLabel(tokenType.getLabel());
-        token.setSlotIndex(tokenType.getSlotIndex());
-        token.setFriendlyName(getDefaultFriendlyName(tokenType));
-        token.setBatchSigningEnabled(tokenType.isBatchSigningEnabled());
-        token.setAvailable(true);
-
-        currentTokens.add(token);
-
-        return token.toDTO();
+        try {
+            Token token = new Token(tokenType.getModuleType(), tokenType.getId());
+            token.setModuleId(tokenType.getModuleType());
+            token.setReadOnly(tokenType.isReadOnly());
+            token.setSerialNumber(tokenType.getSerialNumber());
+            token.setLabel(tokenType.getLabel());
+            token.setSlotIndex(tokenType.getSlotIndex());
+            token.setFriendlyName(getDefaultFriendlyName(tokenType));
+            token.setBatchSigningEnabled(tokenType.isBatchSigningEnabled());
+            token.setAvailable(true);
+
+            currentTokens.add(token);
+
+            return token.toDTO();
+        } finally {
+            publishSnapshot();
+        }
     }
 
     /**
@@ -210,13 +226,11 @@ public final class TokenManager {
      * @param tokenId the token id
      * @return the token info DTO for the token id or null of not found
      */
-    public static synchronized TokenInfo getTokenInfo(String tokenId) {
+    public static TokenInfo getTokenInfo(String tokenId) {
         log.trace("getTokenInfo({})", tokenId);
 
-        return currentTokens.stream()
-                .filter(t -> t.getId().equals(tokenId))
-                .map(Token::toDTO)
-                .findFirst().orElse(null);
+        TokenEntry token = snapshot().getToken(tokenId);
+        return token != null ? token.info() : null;
     }
 
     /**
@@ -224,80 +238,79 @@ public final class TokenManager {
      * @return the token info DTO for the token
      * @throws Exception if key was not found
      */
-    public static synchronized TokenInfo findTokenInfoForKeyId(String keyId) {
+    public static TokenInfo findTokenInfoForKeyId(String keyId) {
         log.trace("getTokenInfoForKeyId({})", keyId);
-        String tokenId = findTokenIdForKeyId(keyId);
-        return getTokenInfo(tokenId);
+
+        return findKeyEntry(keyId).token().info();
     }
 
     /**
      * @param keyId the key id
      * @return the token and key or throws exception if not found
      */
-    public static synchronized TokenAndKey findTokenAndKey(String keyId) {
+    public static TokenAndKey findTokenAndKey(String keyId) {
         log.trace("findTokenAndKey({})", keyId);
 
-        return forKey((t, k) -> k.getId().equals(keyId),
-                (t, k) -> new TokenAndKey(t.getId(), k.toDTO()))
-                .orElseThrow(() -> keyNotFound(keyId));
+        KeyEntry key = findKeyEntry(keyId);
+        return new TokenAndKey(key.token().info().getId(), key.info());
     }
 
     /**
      * @param certHash the certificate hash in HEX
      * @return the tokenInfo and key id, or throws exception if not found
      */
-    public static synchronized TokenInfoAndKeyId findTokenAndKeyIdForCertHash(String certHash) {
+    public static TokenInfoAndKeyId findTokenAndKeyIdForCertHash(String certHash) {
         log.trace("findTokenAndKeyIdForCertHash({})", certHash);
 
-        String keyId = forCert((k, c) -> certHash.equals(c.getSha256hash()), (k, c) -> k.getId())
-                .orElseThrow(() -> certWithHashNotFound(certHash));
+        TokenSnapshot current = snapshot();
+        CertEntry cert = current.getCertBySha256Hash(certHash);
+        if (cert == null) {
+            throw certWithHashNotFound(certHash);
+        }
 
-        return forKey((t, k) -> k.getId().equals(keyId),
-                (t, k) -> new TokenInfoAndKeyId(t.toDTO(), keyId))
-                .orElseThrow(() -> keyNotFound(keyId));
+        return tokenInfoAndKeyId(current, cert.key().getId());
     }
 
     /**
      * @param certRequestId the certificate request id
      * @return the tokenInfo and key id, or throws exception if not found
      */
-    public static synchronized TokenInfoAndKeyId findTokenAndKeyIdForCertRequestId(String certRequestId) {
+    public static TokenInfoAndKeyId findTokenAndKeyIdForCertRequestId(String certRequestId) {
         log.trace("findTokenAndKeyIdForCertRequestId({})", certRequestId);
 
-        String keyId = forCertRequest((k, c) -> certRequestId.equals(c.getId()),
-                (k, c) -> k.getId())
-                .orElseThrow(() -> csrWithIdNotFound(certRequestId));
+        TokenSnapshot current = snapshot();
+        CertRequestEntry certRequest = current.getCertRequest(certRequestId);
+        if (certRequest == null) {
+            throw csrWithIdNotFound(certRequestId);
+        }
 
-        return forKey((t, k) -> k.getId().equals(keyId),
-                (t, k) -> new TokenInfoAndKeyId(t.toDTO(), keyId))
-                .orElseThrow(() -> keyNotFound(keyId));
+        return tokenInfoAndKeyId(current, certRequest.key().getId());
     }
 
     /**
      * @param keyId the key id
      * @return the token id for the key id or throws exception if not found
      */
-    public static synchronized String findTokenIdForKeyId(String keyId) {
+    public static String findTokenIdForKeyId(String keyId) {
         log.trace("findTokenIdForKeyId({})", keyId);
 
-        return forKey((t, k) -> k.getId().equals(keyId),
-                (t, k) -> t.getId()).orElseThrow(() -> keyNotFound(keyId));
+        return findKeyEntry(keyId).token().info().getId();
     }
 
     /**
      * @return the software token id
      */
-    public static synchronized String getSoftwareTokenId() {
-        return forToken(t -> t.getType().equals(SoftwareModuleType.TYPE), Token::getId).orElse(null);
+    public static String getSoftwareTokenId() {
+        return snapshot().getSoftwareTokenId();
     }
 
     /**
      * @param tokenId the token id
      * @return the module id for the token id or null if not found
      */
-    public static synchronized String getModuleId(String tokenId) {
-        return forToken(t -> t.getId().equals(tokenId),
-                Token::getModuleId).orElse(null);
+    public static String getModuleId(String tokenId) {
+        TokenEntry token = snapshot().getToken(tokenId);
+        return token != null ? token.moduleId() : null;
     }
 
     /**
@@ -317,47 +330,24 @@ public final class TokenManager {
      * @param keyId the key id
      * @return the key info for the key id or null if not found
      */
-    public static synchronized KeyInfo getKeyInfo(String keyId) {
+    public static KeyInfo getKeyInfo(String keyId) {
         log.trace("getKeyInfo({})", keyId);
 
-        return forKey((t, k) -> k.getId().equals(keyId),
-                (t, k) -> k.toDTO()).orElse(null);
+        KeyEntry key = snapshot().getKey(keyId);
+        return key != null ? key.info() : null;
     }
 
     /**
      * @param clientId the client id
      * @return the list of keys for the given client id
      */
-    public static synchronized List<KeyInfo> getKeyInfo(ClientId clientId) {
+    public static List<KeyInfo> getKeyInfo(ClientId clientId) {
         log.trace("getKeyInfo({})", clientId);
 
-        List<KeyInfo> keyInfo = new ArrayList<>();
-
-        for (Token token : currentTokens) {
-            if (token.isInActive()) {
-                // Ignore inactive (not usable) tokens
-                continue;
-            }
-
-            for (Key key : token.getKeys()) {
-                if (!key.isValidForSigning()) {
-                    // Ignore authentication keys
-                    continue;
-                }
-
-                for (Cert cert : key.getCerts()) {
-                    if (cert.isInvalid()) {
-                        // Ignore inactive and invalid certificates
-                        continue;
-                    }
-
-                    if (certBelongsToMember(cert.toDTO(), clientId)) {
-                        log.debug("Found key '{}' for client '{}'",
-                                key.getId(), cert.getMemberId());
-                        keyInfo.add(key.toDTO());
-                    }
-                }
-            }
+        // only available signing keys of active tokens with an active certificate of the client are included
+        List<KeyInfo> keyInfo = snapshot().getSigningKeys(clientId);
+        if (log.isDebugEnabled()) {
+            keyInfo.forEach(k -> log.debug("Found key '{}' for client '{}'", k.getId(), clientId));
         }
 
         return keyInfo;
@@ -381,43 +371,42 @@ public final class TokenManager {
      * @param certId the certificate id
      * @return the certificate info for the certificate id or null if not found
      */
-    public static synchronized CertificateInfo getCertificateInfo(String certId) {
+    public static CertificateInfo getCertificateInfo(String certId) {
         log.trace("getCertificateInfo({})", certId);
 
-        return forCert((k, c) -> c.getId().equals(certId), (k, c) -> c.toDTO()).orElse(null);
+        CertEntry cert = snapshot().getCert(certId);
+        return cert != null ? cert.info() : null;
     }
 
     /**
      * @param certHash the certificate hash in HEX
      * @return the certificate info for the certificate hash or null
      */
-    public static synchronized CertificateInfo getCertificateInfoForCertHash(String certHash) {
+    public static CertificateInfo getCertificateInfoForCertHash(String certHash) {
         log.trace("getCertificateInfoForCertHash({})", certHash);
 
-        return forCert((k, c) -> certHash.equals(c.getSha256hash()), (k, c) -> c.toDTO()).orElse(null);
+        CertEntry cert = snapshot().getCertBySha256Hash(certHash);
+        return cert != null ? cert.info() : null;
     }
 
     /**
      * @param certSha1Hash the certificate SHA-1 hash in HEX
      * @return the certificate for the certificate hash or null
      */
-    public static synchronized X509Certificate getCertificateForCerHash(String certSha1Hash) {
+    public static X509Certificate getCertificateForCerHash(String certSha1Hash) {
         log.trace("getCertificateForCertHash({})", certSha1Hash);
 
-        return forCert((k, c) -> certSha1Hash.equals(c.getSha1hash()), (k, c) -> c.getCertificate()).orElse(null);
+        CertEntry cert = snapshot().getCertBySha1Hash(certSha1Hash);
+        return cert != null ? cert.certificate() : null;
     }
 
     /**
      * @return all certificates
      */
-    public static synchronized List<CertificateInfo> getAllCerts() {
+    public static List<CertificateInfo> getAllCerts() {
         log.trace("getAllCerts()");
 
-        return currentTokens.stream()
-                .flatMap(t -> t.getKeys().stream())
-                .flatMap(k -> k.getCerts().stream())
-                .map(Cert::toDTO)
-                .toList();
+        return snapshot().getCerts();
     }
 
     /**
@@ -429,10 +418,39 @@ public final class TokenManager {
     public static synchronized void setOcspResponse(String certSha1Hash, OCSPResp response) {
         log.trace("setOcspResponse({})", certSha1Hash);
 
-        forCert((k, c) -> certSha1Hash.equals(c.getSha1hash()), (k, c) -> {
-            c.setOcspResponse(response);
-            return null;
-        });
+        setOcspResponses(Collections.singletonMap(certSha1Hash, response));
+    }
+
+    /**
+     * Sets the OCSP responses for several certificates at once. The snapshot is published once for the
+     * whole batch instead of once per certificate.
+     *
+     * @param responses the OCSP responses by certificate SHA-1 hash in HEX
+     */
+    public static synchronized void setOcspResponses(Map<String, OCSPResp> responses) {
+        log.trace("setOcspResponses({})", responses.keySet());
+
+        if (responses.isEmpty()) {
+            return;
+        }
+
+        try {
+            Set<String> updated = new HashSet<>();
+
+            for (Token token : currentTokens) {
+                for (Key key : token.getKeys()) {
+                    for (Cert cert : key.getCerts()) {
+                        String certSha1Hash = cert.getSha1hash();
+
+                        if (responses.containsKey(certSha1Hash) && updated.add(certSha1Hash)) {
+                            cert.setOcspResponse(responses.get(certSha1Hash));
+                        }
+                    }
+                }
+            }
+        } finally {
+            publishSnapshot();
+        }
     }
 
     /**
@@ -440,47 +458,43 @@ public final class TokenManager {
      * @param memberId the member id
      * @return the certificate request info or null if not found
      */
-    public static synchronized CertRequestInfo getCertRequestInfo(String keyId, ClientId memberId) {
+    public static CertRequestInfo getCertRequestInfo(String keyId, ClientId memberId) {
         log.trace("getCertRequestInfo({}, {})", keyId, memberId);
 
-        Key key = findKey(keyId);
-        return key.getCertRequests().stream()
-                .filter(c -> key.getUsage() == KeyUsageInfo.AUTHENTICATION
-                        || memberId.equals(c.getMemberId()))
-                .map(c -> c.toDTO()).findFirst().orElse(null);
+        return TokenSnapshot.findCertRequest(findKeyEntry(keyId).info(), memberId);
     }
 
     /**
      * @param certReqId cert request id
      * @return the certificate request info or null if not found
      */
-    public static synchronized CertRequestInfo getCertRequestInfo(String certReqId) {
+    public static CertRequestInfo getCertRequestInfo(String certReqId) {
         log.trace("getCertRequestInfo({})", certReqId);
 
-        return forCertRequest((k, c) -> certReqId.equals(c.getId()),
-                (k, c) -> c.toDTO())
-                .orElse(null);
+        CertRequestEntry certRequest = snapshot().getCertRequest(certReqId);
+        return certRequest != null ? certRequest.info() : null;
     }
 
     /**
      * @param certHash the certificate hash in HEX
      * @return key info for the certificate hash
      */
-    public static synchronized KeyInfo getKeyInfoForCertHash(String certHash) {
+    public static KeyInfo getKeyInfoForCertHash(String certHash) {
         log.trace("getKeyInfoForCertHash({})", certHash);
 
-        return forCert((k, c) -> certHash.equals(c.getSha256hash()), (k, c) -> k.toDTO()).orElse(null);
+        CertEntry cert = snapshot().getCertBySha256Hash(certHash);
+        return cert != null ? cert.key() : null;
     }
 
     /**
      * @param certId the certificate id
      * @return key info for certificate id
      */
-    public static synchronized KeyInfo getKeyInfoForCertId(String certId) {
+    public static KeyInfo getKeyInfoForCertId(String certId) {
         log.trace("getKeyInfoForCertId({})", certId);
 
-        return forCert((k, c) -> c.getId().equals(certId),
-                (k, c) -> k.toDTO()).orElse(null);
+        CertEntry cert = snapshot().getCert(certId);
+        return cert != null ? cert.key() : null;
     }
 
     /**
@@ -498,20 +512,20 @@ public final class TokenManager {
      * @param tokenId the token id
      * @return true if token is available
      */
-    public static synchronized boolean isTokenAvailable(String tokenId) {
+    public static boolean isTokenAvailable(String tokenId) {
         log.trace("isTokenAvailable({})", tokenId);
 
-        return findToken(tokenId).isAvailable();
+        return findTokenEntry(tokenId).available();
     }
 
     /**
      * @param tokenId the token id
      * @return true if token is active (logged in)
      */
-    public static synchronized boolean isTokenActive(String tokenId) {
+    public static boolean isTokenActive(String tokenId) {
         log.trace("isTokenActive({})", tokenId);
 
-        return findToken(tokenId).isActive();
+        return findTokenEntry(tokenId).active();
     }
 
     /**
@@ -525,10 +539,13 @@ public final class TokenManager {
         String tokenId = tokenType.getId();
 
         log.trace("setTokenAvailable({}, {})", tokenId, available);
-
-        Token token = findToken(tokenId);
-        token.setAvailable(available);
-        token.setModuleId(tokenType.getModuleType());
+        try {
+            Token token = findToken(tokenId);
+            token.setAvailable(available);
+            token.setModuleId(tokenType.getModuleType());
+        } finally {
+            publishSnapshot();
+        }
     }
 
     /**
@@ -539,8 +556,11 @@ public final class TokenManager {
      */
     public static synchronized void setTokenAvailable(String tokenId, boolean available) {
         log.trace("setTokenAvailable({}, {})", tokenId, available);
-
-        findToken(tokenId).setAvailable(available);
+        try {
+            findToken(tokenId).setAvailable(available);
+        } finally {
+            publishSnapshot();
+        }
     }
 
     /**
@@ -552,8 +572,11 @@ public final class TokenManager {
     public static synchronized void setTokenActive(String tokenId,
                                                    boolean active) {
         log.trace("setTokenActive({}, {})", tokenId, active);
-
-        findToken(tokenId).setActive(active);
+        try {
+            findToken(tokenId).setActive(active);
+        } finally {
+            publishSnapshot();
+        }
     }
 
     /**
@@ -565,18 +588,21 @@ public final class TokenManager {
     public static synchronized void setTokenFriendlyName(String tokenId,
                                                          String friendlyName) {
         log.trace("setTokenFriendlyName({}, {})", tokenId, friendlyName);
-
-        findToken(tokenId).setFriendlyName(friendlyName);
+        try {
+            findToken(tokenId).setFriendlyName(friendlyName);
+        } finally {
+            publishSnapshot();
+        }
     }
 
     /**
      * @param tokenId the token if
      * @return the token status info
      */
-    public static synchronized TokenStatusInfo getTokenStatus(String tokenId) {
+    public static TokenStatusInfo getTokenStatus(String tokenId) {
         log.trace("getTokenStatus({})", tokenId);
 
-        return findToken(tokenId).getStatus();
+        return findTokenEntry(tokenId).status();
     }
 
     /**
@@ -588,8 +614,11 @@ public final class TokenManager {
     public static synchronized void setTokenStatus(String tokenId,
                                                    TokenStatusInfo status) {
         log.trace("setTokenStatus({}, {})", tokenId, status);
-
-        findToken(tokenId).setStatus(status);
+        try {
+            findToken(tokenId).setStatus(status);
+        } finally {
+            publishSnapshot();
+        }
     }
 
     /**
@@ -601,18 +630,21 @@ public final class TokenManager {
     public static synchronized void setKeyAvailable(String keyId,
                                                     boolean available) {
         log.trace("setKeyAvailable({}, {})", keyId, available);
-
-        findKey(keyId).setAvailable(available);
+        try {
+            findKey(keyId).setAvailable(available);
+        } finally {
+            publishSnapshot();
+        }
     }
 
     /**
      * @param keyId the key id
      * @return true if key is available
      */
-    public static synchronized boolean isKeyAvailable(String keyId) {
+    public static boolean isKeyAvailable(String keyId) {
         log.trace("isKeyAvailable()");
 
-        return findKey(keyId).isAvailable();
+        return findKeyEntry(keyId).info().isAvailable();
     }
 
     /**
@@ -624,8 +656,11 @@ public final class TokenManager {
     public static synchronized void setKeyFriendlyName(String keyId,
                                                        String friendlyName) {
         log.trace("setKeyFriendlyName({}, {})", keyId, friendlyName);
-
-        findKey(keyId).setFriendlyName(friendlyName);
+        try {
+            findKey(keyId).setFriendlyName(friendlyName);
+        } finally {
+            publishSnapshot();
+        }
     }
 
     /**
@@ -636,8 +671,11 @@ public final class TokenManager {
      */
     public static synchronized void setKeyLabel(String keyId, String label) {
         log.trace("setKeyLabel({}, {})", keyId, label);
-
-        findKey(keyId).setLabel(label);
+        try {
+            findKey(keyId).setLabel(label);
+        } finally {
+            publishSnapshot();
+        }
     }
 
     /**
@@ -649,8 +687,11 @@ public final class TokenManager {
     public static synchronized void setKeyUsage(String keyId,
                                                 KeyUsageInfo keyUsage) {
         log.trace("setKeyUsage({}, {})", keyId, keyUsage);
-
-        findKey(keyId).setUsage(keyUsage);
+        try {
+            findKey(keyId).setUsage(keyUsage);
+        } finally {
+            publishSnapshot();
+        }
     }
 
     /**
@@ -663,15 +704,18 @@ public final class TokenManager {
      */
     public static synchronized KeyInfo addKey(String tokenId, String keyId, String publicKeyBase64, SignMechanism signMechanism) {
         log.trace("addKey({}, {})", tokenId, keyId);
+        try {
+            Token token = findToken(tokenId);
 
-        Token token = findToken(tokenId);
-
-        Key key = new Key(token, keyId, signMechanism);
-        key.setPublicKey(publicKeyBase64);
+            Key key = new Key(token, keyId, signMechanism);
+            key.setPublicKey(publicKeyBase64);
 
-        token.addKey(key);
+            token.addKey(key);
 
-        return key.toDTO();
+            return key.toDTO();
+        } finally {
+            publishSnapshot();
+        }
     }
 
     /**
@@ -682,9 +726,12 @@ public final class TokenManager {
      */
     public static synchronized boolean removeKey(String keyId) {
         log.trace("removeKey({})", keyId);
-
-        return forKey((t, k) -> k.getId().equals(keyId),
-                (t, k) -> t.getKeys().remove(k)).orElse(false);
+        try {
+            return forKey((t, k) -> k.getId().equals(keyId),
+                    (t, k) -> t.getKeys().remove(k)).orElse(false);
+        } finally {
+            publishSnapshot();
+        }
     }
 
     /**
@@ -696,8 +743,11 @@ public final class TokenManager {
     public static synchronized void setPublicKey(String keyId,
                                                  String publicKeyBase64) {
         log.trace("setPublicKey({}, {})", keyId, publicKeyBase64);
-
-        findKey(keyId).setPublicKey(publicKeyBase64);
+        try {
+            findKey(keyId).setPublicKey(publicKeyBase64);
+        } finally {
+            publishSnapshot();
+        }
     }
 
     /**
@@ -708,13 +758,16 @@ public final class TokenManager {
      */
     public static synchronized void addCert(String keyId, byte[] certBytes) {
         log.trace("addCert({})", keyId);
+        try {
+            Key key = findKey(keyId);
 
-        Key key = findKey(keyId);
-
-        Cert cert = new Cert(SignerUtil.randomId());
-        cert.setCertificate(certBytes);
+            Cert cert = new Cert(SignerUtil.randomId());
+            cert.setCertificate(certBytes);
 
-        key.addCert(cert);
+            key.addCert(cert);
+        } finally {
+            publishSnapshot();
+        }
     }
 
     /**
@@ -723,17 +776,20 @@ public final class TokenManager {
     public static synchronized void addCert(String keyId, ClientId.Conf memberId, boolean active, boolean savedToConfiguration,
                                             String initialStatus, String id, byte[] certificate) {
         log.trace("addCert({})", keyId);
-
-        Key key = findKey(keyId);
-
-        Cert cert = new Cert(id);
-        cert.setActive(active);
-        cert.setCertificate(certificate);
-        cert.setMemberId(memberId);
-        cert.setSavedToConfiguration(savedToConfiguration);
-        cert.setStatus(initialStatus);
-
-        key.addCert(cert);
+        try {
+            Key key = findKey(keyId);
+
+            Cert cert = new Cert(id);
+            cert.setActive(active);
+            cert.setCertificate(certificate);
+            cert.setMemberId(memberId);
+            cert.setSavedToConfiguration(savedToConfiguration);
+            cert.setStatus(initialStatus);
+
+            key.addCert(cert);
+        } finally {
+            publishSnapshot();
+        }
     }
 
     /**
@@ -745,8 +801,11 @@ public final class TokenManager {
     public static synchronized void setCertActive(String certId,
                                                   boolean active) {
         log.trace("setCertActive({}, {})", certId, active);
-
-        findCert(certId).setActive(active);
+        try {
+            findCert(certId).setActive(active);
+        } finally {
+            publishSnapshot();
+        }
     }
 
     /**
@@ -758,8 +817,11 @@ public final class TokenManager {
     public static synchronized void setCertStatus(String certId,
                                                   String status) {
         log.trace("setCertStatus({}, {})", certId, status);
-
-        findCert(certId).setStatus(status);
+        try {
+            findCert(certId).setStatus(status);
+        } finally {
+            publishSnapshot();
+        }
     }
 
     /**
@@ -771,8 +833,11 @@ public final class TokenManager {
     public static synchronized void setRenewedCertHash(String certId,
                                                        String hash) {
         log.trace("setRenewedCertHash({}, {})", certId, hash);
-
-        findCert(certId).setRenewedCertHash(hash);
+        try {
+            findCert(certId).setRenewedCertHash(hash);
+        } finally {
+            publishSnapshot();
+        }
     }
 
     /**
@@ -784,8 +849,11 @@ public final class TokenManager {
     public static synchronized void setRenewalError(String certId,
                                                     String errorMessage) {
         log.trace("setRenewalError({}, {})", certId, errorMessage);
-
-        findCert(certId).setRenewalError(errorMessage);
+        try {
+            findCert(certId).setRenewalError(errorMessage);
+        } finally {
+            publishSnapshot();
+        }
     }
 
     /**
@@ -797,8 +865,11 @@ public final class TokenManager {
     public static synchronized void setNextPlannedRenewal(String certId,
                                                           Instant nextRenewalTime) {
         log.trace("setNextPlannedRenewal({}, {})", certId, nextRenewalTime);
-
-        findCert(certId).setNextAutomaticRenewalTime(nextRenewalTime);
+        try {
+            findCert(certId).setNextAutomaticRenewalTime(nextRenewalTime);
+        } finally {
+            publishSnapshot();
+        }
     }
 
     /**
@@ -809,9 +880,12 @@ public final class TokenManager {
      */
     public static synchronized boolean removeCert(String certId) {
         log.trace("removeCert({})", certId);
-
-        return forCert((k, c) -> c.getId().equals(certId),
-                (k, c) -> k.getCerts().remove(c)).orElse(false);
+        try {
+            return forCert((k, c) -> c.getId().equals(certId),
+                    (k, c) -> k.getCerts().remove(c)).orElse(false);
+        } finally {
+            publishSnapshot();
+        }
     }
 
     /**
@@ -830,40 +904,43 @@ public final class TokenManager {
                                                      KeyUsageInfo keyUsage,
                                                      String certificateProfile) {
         log.trace("addCertRequest({}, {})", keyId, memberId);
+        try {
+            Key key = findKey(keyId);
 
-        Key key = findKey(keyId);
-
-        if (key.getUsage() != null && key.getUsage() != keyUsage) {
-            throw CodedException.tr(X_WRONG_CERT_USAGE,
-                    "cert_request_wrong_usage",
-                    "Cannot add %s certificate request to %s key", keyUsage,
-                    key.getUsage());
-        }
+            if (key.getUsage() != null && key.getUsage() != keyUsage) {
+                throw CodedException.tr(X_WRONG_CERT_USAGE,
+                        "cert_request_wrong_usage",
+                        "Cannot add %s certificate request to %s key", keyUsage,
+                        key.getUsage());
+            }
 
-        key.setUsage(keyUsage);
+            key.setUsage(keyUsage);
 
-        for (CertRequest certRequest : key.getCertRequests()) {
-            ClientId crMember = certRequest.getMemberId();
-            String crSubject = certRequest.getSubjectName();
+            for (CertRequest certRequest : key.getCertRequests()) {
+                ClientId crMember = certRequest.getMemberId();
+                String crSubject = certRequest.getSubjectName();
 
-            if ((memberId == null && crSubject.equalsIgnoreCase(subjectName))
-                    || (memberId != null && memberId.equals(crMember)
-                    && crSubject.equalsIgnoreCase(subjectName))) {
-                log.warn("Certificate request (memberId: {}, "
-                                + "subjectName: {}) already exists", memberId,
-                        subjectName);
-                return certRequest.getId();
+                if ((memberId == null && crSubject.equalsIgnoreCase(subjectName))
+                        || (memberId != null && memberId.equals(crMember)
+                        && crSubject.equalsIgnoreCase(subjectName))) {
+                    log.warn("Certificate request (memberId: {}, "
+                                    + "subjectName: {}) already exists", memberId,
+                            subjectName);
+                    return certRequest.getId();
+                }
             }
-        }
 
-        String certId = SignerUtil.randomId();
-        key.addCertRequest(new CertRequest(certId, memberId, subjectName, subjectAltName, certificateProfile));
+            String certId = SignerUtil.randomId();
+            key.addCertRequest(new CertRequest(certId, memberId, subjectName, subjectAltName, certificateProfile));
 
-        log.info("Added new certificate request (memberId: {}, "
-                        + "subjectId: {}) under key {}",
-                new Object[]{memberId, subjectName, keyId});
+            log.info("Added new certificate request (memberId: {}, "
+                            + "subjectId: {}) under key {}",
+                    new Object[]{memberId, subjectName, keyId});
 
-        return certId;
+            return certId;
+        } finally {
+            publishSnapshot();
+        }
     }
 
     /**
@@ -874,15 +951,18 @@ public final class TokenManager {
      */
     public static synchronized String removeCertRequest(String certReqId) {
         log.trace("removeCertRequest({})", certReqId);
-
-        return forCertRequest((k, c) -> c.getId().equals(certReqId),
-                (k, c) -> {
-                    if (!k.getCertRequests().remove(c)) {
-                        return null;
-                    }
-
-                    return k.getId();
-                }).orElse(null);
+        try {
+            return forCertRequest((k, c) -> c.getId().equals(certReqId),
+                    (k, c) -> {
+                        if (!k.getCertRequests().remove(c)) {
+                            return null;
+                        }
+
+                        return k.getId();
+                    }).orElse(null);
+        } finally {
+            publishSnapshot();
+        }
     }
 
     /**
@@ -892,17 +972,21 @@ public final class TokenManager {
      * @param info    the token info
      */
     public static synchronized void setTokenInfo(String tokenId, Map<String, String> info) {
-        findToken(tokenId).setInfo(info);
+        Token token = findToken(tokenId);
+        if (!token.getTokenInfo().equals(info)) {
+            token.setInfo(info);
+            publishSnapshot();
+        }
     }
 
     /**
      * @param tokenId the token id
      * @return true if batch signing is enabled for a token
      */
-    public static synchronized boolean isBatchSigningEnabled(String tokenId) {
+    public static boolean isBatchSigningEnabled(String tokenId) {
         log.trace("isBatchSigningEnabled({})", tokenId);
 
-        return findToken(tokenId).isBatchSigningEnabled();
+        return findTokenEntry(tokenId).batchSigningEnabled();
     }
 
     // ------------------------------------------------------------------------
@@ -963,6 +1047,39 @@ public final class TokenManager {
         return Optional.empty();
     }
 
+    private static TokenSnapshot snapshot() {
+        return snapshot;
+    }
+
+    // called by the modifications while holding the class lock
+    private static void publishSnapshot() {
+        snapshot = TokenSnapshot.of(currentTokens);
+    }
+
+    private static TokenEntry findTokenEntry(String tokenId) {
+        TokenEntry token = snapshot().getToken(tokenId);
+        if (token == null) {
+            throw tokenNotFound(tokenId);
+        }
+        return token;
+    }
+
+    private static KeyEntry findKeyEntry(String keyId) {
+        KeyEntry key = snapshot().getKey(keyId);
+        if (key == null) {
+            throw keyNotFound(keyId);
+        }
+        return key;
+    }
+
+    private static TokenInfoAndKeyId tokenInfoAndKeyId(TokenSnapshot current, String keyId) {
+        KeyEntry key = current.getKey(keyId);
+        if (key == null) {
+            throw keyNotFound(keyId);
+        }
+        return new TokenInfoAndKeyId(key.token().info(), keyId);
+    }
+
     private static Token findToken(String tokenId) {
         log.trace("findToken({})", tokenId);
 
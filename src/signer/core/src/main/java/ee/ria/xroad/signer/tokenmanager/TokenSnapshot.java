@@ -0,0 +1,219 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.signer.tokenmanager;
+
+import ee.ria.xroad.common.identifier.ClientId;
+import ee.ria.xroad.common.identifier.XRoadObjectType;
+import ee.ria.xroad.signer.model.Cert;
+import ee.ria.xroad.signer.model.Key;
+import ee.ria.xroad.signer.model.Token;
+import ee.ria.xroad.signer.protocol.dto.CertRequestInfo;
+import ee.ria.xroad.signer.protocol.dto.CertificateInfo;
+import ee.ria.xroad.signer.protocol.dto.KeyInfo;
+import ee.ria.xroad.signer.protocol.dto.KeyUsageInfo;
+import ee.ria.xroad.signer.protocol.dto.TokenInfo;
+import ee.ria.xroad.signer.protocol.dto.TokenStatusInfo;
+import ee.ria.xroad.signer.tokenmanager.module.SoftwareModuleType;
+
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable, indexed view of the tokens, keys, certificates and certificate requests at one point in time.
+ * <p>
+ * Lookups that used to walk all tokens are answered from maps built once per snapshot. Where the same identifier
+ * appears more than once, the index holds the first occurrence in token order, matching the previous linear search.
+ */
+final class TokenSnapshot {
+
+    /**
+     * Token info with the token properties that are not part of the DTO.
+     */
+    record TokenEntry(TokenInfo info, String moduleId, boolean available, boolean active, TokenStatusInfo status,
+                      boolean batchSigningEnabled) {
+    }
+
+    record KeyEntry(TokenEntry token, KeyInfo info) {
+    }
+
+    record CertEntry(KeyInfo key, CertificateInfo info, X509Certificate certificate) {
+    }
+
+    record CertRequestEntry(KeyInfo key, CertRequestInfo info) {
+    }
+
+    private record SigningKey(int ordinal, KeyInfo key) {
+    }
+
+    private final List<TokenInfo> tokens = new ArrayList<>();
+    private final List<CertificateInfo> certs = new ArrayList<>();
+    private final Map<String, TokenEntry> tokensById = new HashMap<>();
+    private final Map<String, KeyEntry> keysById = new HashMap<>();
+    private final Map<String, CertEntry> certsById = new HashMap<>();
+    private final Map<String, CertEntry> certsBySha256Hash = new HashMap<>();
+    private final Map<String, CertEntry> certsBySha1Hash = new HashMap<>();
+    private final Map<String, CertRequestEntry> certRequestsById = new HashMap<>();
+    private final Map<ClientId, List<SigningKey>> signingKeysByMember = new HashMap<>();
+    private String softwareTokenId;
+
+    private TokenSnapshot() {
+    }
+
+    /**
+     * Builds a snapshot of the given tokens. The caller must make sure the tokens are not modified concurrently.
+     */
+    @SuppressWarnings("deprecation")
+    static TokenSnapshot of(List<Token> currentTokens) {
+        TokenSnapshot snapshot = new TokenSnapshot();
+        int signingKeyOrdinal = 0;
+
+        for (Token token : currentTokens) {
+            TokenInfo tokenInfo = token.toDTO();
+            TokenEntry tokenEntry = new TokenEntry(tokenInfo, token.getModuleId(), token.isAvailable(),
+                    token.isActive(), token.getStatus(), token.isBatchSigningEnabled());
+
+            snapshot.tokens.add(tokenInfo);
+            snapshot.tokensById.putIfAbsent(token.getId(), tokenEntry);
+            if (snapshot.softwareTokenId == null && SoftwareModuleType.TYPE.equals(token.getType())) {
+                snapshot.softwareTokenId = token.getId();
+            }
+
+            List<KeyInfo> keyInfos = tokenInfo.getKeyInfo();
+            for (int k = 0; k < keyInfos.size(); k++) {
+                Key key = token.getKeys().get(k);
+                KeyInfo keyInfo = keyInfos.get(k);
+                snapshot.keysById.putIfAbsent(key.getId(), new KeyEntry(tokenEntry, keyInfo));
+
+                boolean signingKey = !token.isInActive() && key.isValidForSigning();
+
+                List<CertificateInfo> certInfos = keyInfo.getCerts();
+                for (int c = 0; c < certInfos.size(); c++) {
+                    Cert cert = key.getCerts().get(c);
+                    CertEntry certEntry = new CertEntry(keyInfo, certInfos.get(c), cert.getCertificate());
+
+                    snapshot.certs.add(certEntry.info());
+                    snapshot.certsById.putIfAbsent(cert.getId(), certEntry);
+                    if (cert.getSha256hash() != null) {
+                        snapshot.certsBySha256Hash.putIfAbsent(cert.getSha256hash(), certEntry);
+                    }
+                    if (cert.getSha1hash() != null) {
+                        snapshot.certsBySha1Hash.putIfAbsent(cert.getSha1hash(), certEntry);
+                    }
+
+                    if (signingKey && !cert.isInvalid()) {
+                        snapshot.signingKeysByMember.computeIfAbsent(cert.getMemberId(), m -> new ArrayList<>())
+                                .add(new SigningKey(signingKeyOrdinal++, keyInfo));
+                    }
+                }
+
+                for (CertRequestInfo certRequest : keyInfo.getCertRequests()) {
+                    snapshot.certRequestsById.putIfAbsent(certRequest.getId(),
+                            new CertRequestEntry(keyInfo, certRequest));
+                }
+            }
+        }
+
+        return snapshot;
+    }
+
+    List<TokenInfo> getTokens() {
+        return Collections.unmodifiableList(tokens);
+    }
+
+    List<CertificateInfo> getCerts() {
+        return Collections.unmodifiableList(certs);
+    }
+
+    String getSoftwareTokenId() {
+        return softwareTokenId;
+    }
+
+    TokenEntry getToken(String tokenId) {
+        return tokensById.get(tokenId);
+    }
+
+    KeyEntry getKey(String keyId) {
+        return keysById.get(keyId);
+    }
+
+    CertEntry getCert(String certId) {
+        return certsById.get(certId);
+    }
+
+    CertEntry getCertBySha256Hash(String certHash) {
+        return certsBySha256Hash.get(certHash);
+    }
+
+    CertEntry getCertBySha1Hash(String certSha1Hash) {
+        return certsBySha1Hash.get(certSha1Hash);
+    }
+
+    CertRequestEntry getCertRequest(String certRequestId) {
+        return certRequestsById.get(certRequestId);
+    }
+
+    /**
+     * @return signing keys of active tokens with a valid certificate belonging to the client, once per matching
+     * certificate, in token order
+     */
+    List<KeyInfo> getSigningKeys(ClientId clientId) {
+        List<SigningKey> direct = signingKeysByMember.getOrDefault(clientId, List.of());
+        List<SigningKey> ofMember = List.of();
+
+        if (clientId.getObjectType() == XRoadObjectType.SUBSYSTEM) {
+            ofMember = signingKeysByMember.getOrDefault(ClientId.Conf.create(clientId.getXRoadInstance(),
+                    clientId.getMemberClass(), clientId.getMemberCode()), List.of());
+        }
+
+        List<KeyInfo> result = new ArrayList<>(direct.size() + ofMember.size());
+        int i = 0;
+        int j = 0;
+        while (i < direct.size() || j < ofMember.size()) {
+            if (j == ofMember.size() || (i < direct.size() && direct.get(i).ordinal() < ofMember.get(j).ordinal())) {
+                result.add(direct.get(i++).key());
+            } else {
+                result.add(ofMember.get(j++).key());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the first certificate request of the key that is usable by the member, or null
+     */
+    static CertRequestInfo findCertRequest(KeyInfo key, ClientId memberId) {
+        for (CertRequestInfo certRequest : key.getCertRequests()) {
+            if (key.getUsage() == KeyUsageInfo.AUTHENTICATION || memberId.equals(certRequest.getMemberId())) {
+                return certRequest;
+            }
+        }
+        return null;
+    }
+}
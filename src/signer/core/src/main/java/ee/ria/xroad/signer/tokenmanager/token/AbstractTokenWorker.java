@@ -188,6 +188,22 @@ public abstract class AbstractTokenWorker implements TokenWorker, WorkerWithLife
         return workerId;
     }
 
+    /**
+     * Whether sign requests may be handled concurrently with each other. Other actions are always executed
+     * exclusively.
+     */
+    protected boolean isConcurrentSigningSupported() {
+        return false;
+    }
+
+    /**
+     * Whether {@link #onActionHandled()} has anything to do after a concurrently handled sign request. If not, the
+     * sign requests do not compete for the exclusive lock to run it.
+     */
+    protected boolean isActionHandledAfterSign() {
+        return true;
+    }
+
     /**
      * Execute additional code post every token worker action.
      */
@@ -34,15 +34,23 @@ import org.niis.xroad.signer.proto.GenerateKeyReq;
 import org.niis.xroad.signer.proto.SignCertificateReq;
 import org.niis.xroad.signer.proto.SignReq;
 
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
 import static ee.ria.xroad.common.ErrorCodes.translateException;
 
 /**
- * A blocking (calls to token are synchronized) token worker.
+ * A blocking (calls to token are synchronized) token worker. Sign requests of token workers that support
+ * concurrent signing are only blocked by the other actions, not by each other.
  */
 @Slf4j
 @RequiredArgsConstructor
 public class BlockingTokenWorker implements TokenWorker, WorkerWithLifecycle {
     private final AbstractTokenWorker tokenWorker;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final AtomicBoolean tokenInfoStale = new AtomicBoolean();
 
     @Override
     public void handleActivateToken(ActivateTokenReq message) {
@@ -66,21 +74,24 @@ public class BlockingTokenWorker implements TokenWorker, WorkerWithLifecycle {
 
     @Override
     public byte[] handleSign(SignReq request) {
+        if (tokenWorker.isConcurrentSigningSupported()) {
+            return concurrentAction(() -> tokenWorker.handleSign(request));
+        }
         return synchronizedAction(() -> tokenWorker.handleSign(request));
     }
 
     @Override
-    public synchronized byte[] handleSignCertificate(SignCertificateReq request) {
+    public byte[] handleSignCertificate(SignCertificateReq request) {
         return synchronizedAction(() -> tokenWorker.handleSignCertificate(request));
     }
 
     @Override
-    public synchronized void initializeToken(char[] pin) {
+    public void initializeToken(char[] pin) {
         synchronizedAction(() -> tokenWorker.initializeToken(pin));
     }
 
     @Override
-    public synchronized void handleUpdateTokenPin(char[] oldPin, char[] newPin) {
+    public void handleUpdateTokenPin(char[] oldPin, char[] newPin) {
         synchronizedAction(() -> tokenWorker.handleUpdateTokenPin(oldPin, newPin));
     }
 
@@ -120,24 +131,64 @@ public class BlockingTokenWorker implements TokenWorker, WorkerWithLifecycle {
     }
 
 
-    private synchronized <T> T synchronizedAction(ThrowingSupplier<T, Exception> action) {
+    private <T> T synchronizedAction(ThrowingSupplier<T, Exception> action) {
+        return lockedAction(lock.writeLock(), action);
+    }
+
+    private <T> T concurrentAction(ThrowingSupplier<T, Exception> action) {
+        return lockedAction(lock.readLock(), action);
+    }
+
+    private void synchronizedAction(ThrowingRunnable<Exception> action) {
+        lockedAction(lock.writeLock(), () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    private <T> T lockedAction(Lock actionLock, ThrowingSupplier<T, Exception> action) {
+        actionLock.lock();
         try {
             return action.get();
         } catch (Exception e) {
             throw translateException(e);
         } finally {
-            tokenWorker.onActionHandled();
+            if (actionLock == lock.writeLock()) {
+                onActionHandled();
+            } else {
+                actionLock.unlock();
+                onConcurrentActionHandled();
+            }
         }
     }
 
-
-    private synchronized void synchronizedAction(ThrowingRunnable<Exception> action) {
+    private void onActionHandled() {
         try {
-            action.run();
-        } catch (Exception e) {
-            throw translateException(e);
-        } finally {
+            tokenInfoStale.set(false);
             tokenWorker.onActionHandled();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Token info is only updated exclusively. Concurrently handled sign requests do not wait for the write lock,
+     * the update is done by the request that gets it without waiting, usually the last one of a burst.
+     */
+    private void onConcurrentActionHandled() {
+        if (!tokenWorker.isActionHandledAfterSign()) {
+            return;
+        }
+        tokenInfoStale.set(true);
+        final Lock writeLock = lock.writeLock();
+        if (writeLock.tryLock()) {
+            try {
+                if (tokenInfoStale.compareAndSet(true, false)) {
+                    tokenWorker.onActionHandled();
+                }
+            } finally {
+                writeLock.unlock();
+            }
         }
     }
 }
@@ -71,10 +71,12 @@ import java.security.cert.Certificate;
 import java.security.cert.CertificateFactory;
 import java.security.cert.X509Certificate;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import static ee.ria.xroad.common.ErrorCodes.X_INTERNAL_ERROR;
 import static ee.ria.xroad.common.ErrorCodes.X_TOKEN_PIN_POLICY_FAILURE;
@@ -131,10 +133,15 @@ public class SoftwareTokenWorker extends AbstractTokenWorker {
     );
     private static final String UNSUPPORTED_SIGN_ALGORITHM = "unsupported_sign_algorithm";
 
-    private final Map<String, PrivateKey> privateKeys = new HashMap<>();
+    // read concurrently by sign operations, modified by exclusive actions only
+    private final Map<String, PrivateKey> privateKeys = new ConcurrentHashMap<>();
+
+    // maps key id to idle Signature instances initialized with the key; an instance is not thread safe, but
+    // returns to its initialized state after signing, so it is used by one sign operation at a time
+    private final Map<String, Queue<Signature>> signatures = new ConcurrentHashMap<>();
     private final TokenType tokenType;
 
-    private boolean isTokenLoginAllowed = true;
+    private volatile boolean isTokenLoginAllowed = true;
 
     /**
      * Creates new worker.
@@ -168,6 +175,16 @@ public class SoftwareTokenWorker extends AbstractTokenWorker {
         //No-OP
     }
 
+    @Override
+    protected boolean isConcurrentSigningSupported() {
+        return true;
+    }
+
+    @Override
+    protected boolean isActionHandledAfterSign() {
+        return false;
+    }
+
     @Override
     protected void activateToken(ActivateTokenReq message) {
         if (message.getActivate()) {
@@ -210,6 +227,9 @@ public class SoftwareTokenWorker extends AbstractTokenWorker {
         log.info("Deleting key file {}", path);
 
         Files.deleteIfExists(path);
+
+        privateKeys.remove(keyId);
+        signatures.remove(keyId);
     }
 
     @Override
@@ -241,12 +261,21 @@ public class SoftwareTokenWorker extends AbstractTokenWorker {
         log.debug("Signing with key '{}' and signature algorithm '{}'", keyId, signatureAlgorithmId);
 
 
-        SignAlgorithm signAlgorithm = KeyManagers.getFor(keyAlgorithm).getSoftwareTokenSignAlgorithm();
-        Signature signature = Signature.getInstance(signAlgorithm.name(), BOUNCY_CASTLE);
-        signature.initSign(key);
+        Queue<Signature> idleSignatures = signatures.computeIfAbsent(keyId, k -> new ConcurrentLinkedQueue<>());
+        Signature signature = idleSignatures.poll();
+        if (signature == null) {
+            SignAlgorithm signAlgorithm = KeyManagers.getFor(keyAlgorithm).getSoftwareTokenSignAlgorithm();
+            signature = Signature.getInstance(signAlgorithm.name(), BOUNCY_CASTLE);
+            signature.initSign(key);
+        }
+
         signature.update(data);
+        byte[] result = signature.sign();
+
+        // an instance that failed is left out, its state is unknown
+        idleSignatures.offer(signature);
 
-        return signature.sign();
+        return result;
     }
 
     private static void checkSignatureAlgorithm(SignAlgorithm signatureAlgorithmId, KeyAlgorithm algorithm) throws CodedException {
@@ -370,6 +399,7 @@ public class SoftwareTokenWorker extends AbstractTokenWorker {
         log.debug("Found usable key '{}'", keyId);
 
         privateKeys.put(keyId, pkey);
+        signatures.remove(keyId);
     }
 
     @Override
@@ -512,6 +542,7 @@ public class SoftwareTokenWorker extends AbstractTokenWorker {
 
     private void deactivateToken() {
         privateKeys.clear();
+        signatures.clear();
 
         setTokenActive(tokenId, false);
     }
@@ -0,0 +1,220 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.signer.certmanager;
+
+import ee.ria.xroad.common.CertificationServiceStatus;
+import ee.ria.xroad.common.OcspResponderStatus;
+import ee.ria.xroad.common.OcspTestUtils;
+import ee.ria.xroad.common.TestCertUtil;
+import ee.ria.xroad.common.conf.globalconf.GlobalConfProvider;
+import ee.ria.xroad.common.conf.globalconfextension.GlobalConfExtensions;
+import ee.ria.xroad.common.util.TimeUtils;
+
+import org.bouncycastle.cert.ocsp.CertificateStatus;
+import org.bouncycastle.cert.ocsp.OCSPResp;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.invocation.InvocationOnMock;
+
+import java.io.IOException;
+import java.security.cert.X509Certificate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static ee.ria.xroad.common.util.CryptoUtils.calculateCertSha1HexHash;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests fetching OCSP responses on virtual threads in OcspClientWorker.
+ */
+class OcspClientWorkerTest {
+    private static final String CONCURRENCY_PROPERTY = "xroad.signer.ocsp-responder-concurrency";
+
+    private static final String RESPONDER_A = "http://ocsp-a.example.org";
+    private static final String RESPONDER_B = "http://ocsp-b.example.org";
+
+    private static final long RESPONSE_DELAY_MILLIS = 50;
+
+    private final X509Certificate consumer = TestCertUtil.getConsumer().certChain[0];
+    private final X509Certificate producer = TestCertUtil.getProducer().certChain[0];
+
+    private final Map<String, AtomicInteger> activeRequests = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> maxActiveRequests = new ConcurrentHashMap<>();
+    private final Map<String, OCSPResp> storedStatuses = new ConcurrentHashMap<>();
+
+    private GlobalConfProvider globalConfProvider;
+    private OcspClient ocspClient;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        globalConfProvider = mock(GlobalConfProvider.class);
+        GlobalConfExtensions extensions = mock(GlobalConfExtensions.class);
+        when(extensions.getOcspFetchInterval()).thenReturn(1200);
+        when(globalConfProvider.isValid()).thenReturn(true);
+        when(globalConfProvider.getGlobalConfExtensions()).thenReturn(extensions);
+        when(globalConfProvider.getInstanceIdentifier()).thenReturn("TEST");
+        when(globalConfProvider.getCaCert(anyString(), any(X509Certificate.class))).thenReturn(TestCertUtil.getCaCert());
+        when(globalConfProvider.getOcspResponderCertificates())
+                .thenReturn(List.of(TestCertUtil.getOcspSigner().certChain[0]));
+        when(globalConfProvider.isOcspResponderCert(any(X509Certificate.class), any(X509Certificate.class)))
+                .thenReturn(true);
+
+        ocspClient = mock(OcspClient.class);
+    }
+
+    @AfterEach
+    void tearDown() {
+        System.clearProperty(CONCURRENCY_PROPERTY);
+    }
+
+    @Test
+    void limitsConcurrentRequestsPerResponder() throws Exception {
+        System.setProperty(CONCURRENCY_PROPERTY, "2");
+        when(globalConfProvider.getOcspResponderAddresses(any(X509Certificate.class))).thenReturn(List.of(RESPONDER_A));
+        when(ocspClient.fetchResponse(anyString(), any(), any(), any(), any(), any())).thenAnswer(this::respond);
+
+        List<X509Certificate> certs = Collections.nCopies(8, consumer);
+
+        createWorker(certs).execute(null);
+
+        assertTrue(maxActiveRequests.get(RESPONDER_A).get() <= 2);
+        assertNotNull(storedStatuses.get(calculateCertSha1HexHash(consumer)));
+    }
+
+    @Test
+    void appliesLimitToResponderSharedByDifferentResponderLists() throws Exception {
+        System.setProperty(CONCURRENCY_PROPERTY, "1");
+        when(globalConfProvider.getOcspResponderAddresses(consumer)).thenReturn(List.of(RESPONDER_A, RESPONDER_B));
+        when(globalConfProvider.getOcspResponderAddresses(producer)).thenReturn(List.of(RESPONDER_B));
+        when(ocspClient.fetchResponse(anyString(), any(), any(), any(), any(), any())).thenAnswer(invocation -> {
+            if (RESPONDER_A.equals(invocation.getArgument(0))) {
+                throw new IOException("responder unavailable");
+            }
+            return respond(invocation);
+        });
+
+        List<X509Certificate> certs = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            certs.add(consumer);
+            certs.add(producer);
+        }
+
+        createWorker(certs).execute(null);
+
+        assertEquals(1, maxActiveRequests.get(RESPONDER_B).get());
+        assertEquals(2, storedStatuses.size());
+    }
+
+    @Test
+    void queriesDifferentRespondersInParallel() throws Exception {
+        System.setProperty(CONCURRENCY_PROPERTY, "1");
+        CountDownLatch fastResponded = new CountDownLatch(1);
+        when(globalConfProvider.getOcspResponderAddresses(consumer)).thenReturn(List.of(RESPONDER_A));
+        when(globalConfProvider.getOcspResponderAddresses(producer)).thenReturn(List.of(RESPONDER_B));
+        when(ocspClient.fetchResponse(anyString(), any(), any(), any(), any(), any())).thenAnswer(invocation -> {
+            if (RESPONDER_A.equals(invocation.getArgument(0))) {
+                // the slow responder only answers once the other responder has been queried
+                if (!fastResponded.await(5, TimeUnit.SECONDS)) {
+                    throw new IOException("responders were queried sequentially");
+                }
+            } else {
+                fastResponded.countDown();
+            }
+            return createResponse(invocation.getArgument(1));
+        });
+
+        createWorker(List.of(consumer, producer)).execute(null);
+
+        assertNotNull(storedStatuses.get(calculateCertSha1HexHash(consumer)));
+        assertNotNull(storedStatuses.get(calculateCertSha1HexHash(producer)));
+    }
+
+    @Test
+    void reportsResponderLatency() throws Exception {
+        when(globalConfProvider.getOcspResponderAddresses(any(X509Certificate.class))).thenReturn(List.of(RESPONDER_A));
+        when(ocspClient.fetchResponse(anyString(), any(), any(), any(), any(), any())).thenAnswer(this::respond);
+
+        OcspClientWorker worker = createWorker(List.of(consumer));
+        worker.execute(null);
+
+        CertificationServiceStatus serviceStatus = worker.getDiagnostics().getCertificationServiceStatusMap()
+                .get(TestCertUtil.getCaCert().getSubjectDN().toString());
+        OcspResponderStatus responderStatus = serviceStatus.getOcspResponderStatusMap().get(RESPONDER_A);
+
+        assertNotNull(responderStatus.getLatencyMillis());
+        assertTrue(responderStatus.getLatencyMillis() >= RESPONSE_DELAY_MILLIS);
+    }
+
+    private OcspClientWorker createWorker(List<X509Certificate> certs) {
+        return new OcspClientWorker(globalConfProvider, mock(OcspResponseManager.class), ocspClient) {
+            @Override
+            List<X509Certificate> getCertsForOcsp() {
+                return certs;
+            }
+
+            @Override
+            void updateCertStatuses(Map<String, OCSPResp> statuses) {
+                storedStatuses.putAll(statuses);
+            }
+        };
+    }
+
+    private OCSPResp respond(InvocationOnMock invocation) throws Exception {
+        String responderURI = invocation.getArgument(0);
+        int active = activeRequests.computeIfAbsent(responderURI, uri -> new AtomicInteger()).incrementAndGet();
+        maxActiveRequests.computeIfAbsent(responderURI, uri -> new AtomicInteger()).accumulateAndGet(active, Math::max);
+        try {
+            Thread.sleep(RESPONSE_DELAY_MILLIS);
+
+            return createResponse(invocation.getArgument(1));
+        } finally {
+            activeRequests.get(responderURI).decrementAndGet();
+        }
+    }
+
+    private static OCSPResp createResponse(X509Certificate subject) throws Exception {
+        Date thisUpdate = Date.from(TimeUtils.now().plus(1, ChronoUnit.DAYS));
+
+        return OcspTestUtils.createOCSPResponse(subject, TestCertUtil.getCaCert(),
+                TestCertUtil.getOcspSigner().certChain[0], TestCertUtil.getOcspSigner().key, CertificateStatus.GOOD,
+                thisUpdate, null);
+    }
+}
@@ -51,7 +51,9 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertArrayEquals;
@@ -189,6 +191,27 @@ public class TokenManagerMergeTest {
                 beforeCount + 1, TokenManager.getKeyInfo(testKeyId).getCerts().size());
     }
 
+    @Test
+    public void shouldSetOcspResponsesInBatch() throws IOException {
+        final String testCertId = "06700c12f395183c779884fcd49d4ca55fa485aa65617da5b75d84927bec2c91";
+        final String testCertSha1Hash = "e82e0b2b184d4387c2afd83708d4cfeaeb872cf7";
+        assertArrayEquals("test setup failure", new byte[0],
+                TokenManager.getCertificateInfo(testCertId).getOcspBytes());
+
+        OCSPResp response = mock(OCSPResp.class);
+        final byte[] ocspResponseBytes = "batched ocsp response".getBytes();
+        when(response.getEncoded()).thenReturn(ocspResponseBytes);
+
+        Map<String, OCSPResp> responses = new HashMap<>();
+        responses.put(testCertSha1Hash, response);
+        responses.put("0000000000000000000000000000000000000000", mock(OCSPResp.class));
+        TokenManager.setOcspResponses(responses);
+
+        assertArrayEquals("ocsp response bytes does not match",
+                ocspResponseBytes,
+                TokenManager.getCertificateInfo(testCertId).getOcspBytes());
+    }
+
     @Test
     public void shouldAddOcspResponse() throws IOException {
 
@@ -0,0 +1,203 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.signer.tokenmanager;
+
+import ee.ria.xroad.common.TestCertUtil;
+import ee.ria.xroad.common.crypto.identifier.SignMechanism;
+import ee.ria.xroad.common.identifier.ClientId;
+import ee.ria.xroad.signer.model.Cert;
+import ee.ria.xroad.signer.model.CertRequest;
+import ee.ria.xroad.signer.model.Key;
+import ee.ria.xroad.signer.model.Token;
+import ee.ria.xroad.signer.protocol.dto.KeyInfo;
+import ee.ria.xroad.signer.protocol.dto.KeyUsageInfo;
+import ee.ria.xroad.signer.protocol.dto.TokenInfo;
+import ee.ria.xroad.signer.tokenmanager.module.SoftwareModuleType;
+
+import org.junit.Test;
+
+import java.security.cert.X509Certificate;
+import java.util.List;
+
+import static ee.ria.xroad.common.util.CryptoUtils.calculateCertHexHash;
+import static ee.ria.xroad.common.util.CryptoUtils.calculateCertSha1HexHash;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests {@link TokenSnapshot}.
+ */
+public class TokenSnapshotTest {
+
+    private static final ClientId.Conf MEMBER = ClientId.Conf.create("EE", "BUSINESS", "member");
+    private static final ClientId.Conf SUBSYSTEM = ClientId.Conf.create("EE", "BUSINESS", "member", "subsystem");
+
+    @Test
+    public void indexesTokensKeysCertsAndRequests() throws Exception {
+        X509Certificate certificate = TestCertUtil.getProducer().certChain[0];
+        Token token = token(SoftwareModuleType.TYPE, "0");
+        Key key = key(token, "key");
+        Cert cert = cert(key, "cert", MEMBER, certificate);
+        key.addCertRequest(new CertRequest("request", MEMBER, "CN=member", null, null));
+
+        TokenSnapshot snapshot = TokenSnapshot.of(List.of(token));
+
+        assertEquals("0", snapshot.getSoftwareTokenId());
+        assertEquals(List.of("0"), snapshot.getTokens().stream().map(TokenInfo::getId).toList());
+        assertEquals("0", snapshot.getToken("0").info().getId());
+        assertEquals("key", snapshot.getKey("key").info().getId());
+        assertEquals("0", snapshot.getKey("key").token().info().getId());
+        assertEquals("cert", snapshot.getCert("cert").info().getId());
+        assertEquals(certificate, snapshot.getCert("cert").certificate());
+        assertEquals("cert", snapshot.getCertBySha256Hash(calculateCertHexHash(certificate)).info().getId());
+        assertEquals("cert", snapshot.getCertBySha1Hash(calculateCertSha1HexHash(certificate)).info().getId());
+        assertEquals("key", snapshot.getCertRequest("request").key().getId());
+        assertEquals(1, snapshot.getCerts().size());
+        assertEquals(cert.getId(), snapshot.getCerts().getFirst().getId());
+
+        assertNull(snapshot.getToken("missing"));
+        assertNull(snapshot.getKey("missing"));
+        assertNull(snapshot.getCert("missing"));
+        assertNull(snapshot.getCertRequest("missing"));
+    }
+
+    @Test
+    public void keepsFirstOccurrenceOfDuplicateIds() {
+        Token first = token("hardware", "token");
+        key(first, "key").setFriendlyName("first");
+        Token second = token("hardware", "token");
+        key(second, "key").setFriendlyName("second");
+        second.setFriendlyName("second");
+
+        TokenSnapshot snapshot = TokenSnapshot.of(List.of(first, second));
+
+        assertEquals(2, snapshot.getTokens().size());
+        assertNull(snapshot.getToken("token").info().getFriendlyName());
+        assertEquals("first", snapshot.getKey("key").info().getFriendlyName());
+    }
+
+    @Test
+    public void listsSigningKeysOfMemberAndSubsystemInTokenOrder() {
+        Token token = token("hardware", "token");
+        cert(key(token, "subsystemKey"), "subsystemCert", SUBSYSTEM, null);
+        cert(key(token, "memberKey"), "memberCert", MEMBER, null);
+        Token otherToken = token("hardware", "other");
+        cert(key(otherToken, "otherSubsystemKey"), "otherSubsystemCert", SUBSYSTEM, null);
+
+        TokenSnapshot snapshot = TokenSnapshot.of(List.of(token, otherToken));
+
+        assertEquals(List.of("subsystemKey", "memberKey", "otherSubsystemKey"),
+                keyIds(snapshot.getSigningKeys(SUBSYSTEM)));
+        assertEquals(List.of("memberKey"), keyIds(snapshot.getSigningKeys(MEMBER)));
+    }
+
+    @Test
+    public void excludesKeysThatCannotSign() {
+        Token inactiveToken = token("hardware", "inactive");
+        inactiveToken.setActive(false);
+        cert(key(inactiveToken, "inactiveTokenKey"), "cert1", MEMBER, null);
+
+        Token token = token("hardware", "token");
+        Key unavailableKey = key(token, "unavailableKey");
+        unavailableKey.setAvailable(false);
+        cert(unavailableKey, "cert2", MEMBER, null);
+        Key authKey = key(token, "authKey");
+        authKey.setUsage(KeyUsageInfo.AUTHENTICATION);
+        cert(authKey, "cert3", MEMBER, null);
+        cert(key(token, "inactiveCertKey"), "cert4", MEMBER, null).setActive(false);
+
+        TokenSnapshot snapshot = TokenSnapshot.of(List.of(inactiveToken, token));
+
+        assertTrue(snapshot.getSigningKeys(MEMBER).isEmpty());
+    }
+
+    @Test
+    public void isNotAffectedByLaterModifications() {
+        Token token = token("hardware", "token");
+        Key key = key(token, "key");
+        key.setFriendlyName("before");
+
+        TokenSnapshot snapshot = TokenSnapshot.of(List.of(token));
+        key.setFriendlyName("after");
+        token.setActive(false);
+        key(token, "added");
+
+        assertEquals("before", snapshot.getKey("key").info().getFriendlyName());
+        assertTrue(snapshot.getToken("token").active());
+        assertNull(snapshot.getKey("added"));
+    }
+
+    @Test
+    public void findsCertRequestOfMemberOrAnyForAuthenticationKey() {
+        Token token = token("hardware", "token");
+        Key signKey = key(token, "signKey");
+        signKey.addCertRequest(new CertRequest("otherRequest", SUBSYSTEM, "CN=other", null, null));
+        signKey.addCertRequest(new CertRequest("memberRequest", MEMBER, "CN=member", null, null));
+        Key authKey = key(token, "authKey");
+        authKey.setUsage(KeyUsageInfo.AUTHENTICATION);
+        authKey.addCertRequest(new CertRequest("authRequest", null, "CN=server", null, null));
+
+        TokenSnapshot snapshot = TokenSnapshot.of(List.of(token));
+
+        assertEquals("memberRequest",
+                TokenSnapshot.findCertRequest(snapshot.getKey("signKey").info(), MEMBER).getId());
+        assertEquals("authRequest",
+                TokenSnapshot.findCertRequest(snapshot.getKey("authKey").info(), MEMBER).getId());
+        assertNull(TokenSnapshot.findCertRequest(snapshot.getKey("signKey").info(),
+                ClientId.Conf.create("EE", "BUSINESS", "unknown")));
+    }
+
+    private static Token token(String type, String id) {
+        Token token = new Token(type, id);
+        token.setAvailable(true);
+        token.setActive(true);
+        return token;
+    }
+
+    private static Key key(Token token, String id) {
+        Key key = new Key(token, id, SignMechanism.CKM_RSA_PKCS);
+        key.setAvailable(true);
+        key.setUsage(KeyUsageInfo.SIGNING);
+        token.addKey(key);
+        return key;
+    }
+
+    private static Cert cert(Key key, String id, ClientId.Conf memberId, X509Certificate certificate) {
+        Cert cert = new Cert(id);
+        cert.setMemberId(memberId);
+        cert.setActive(true);
+        if (certificate != null) {
+            cert.setCertificate(certificate);
+        }
+        key.addCert(cert);
+        return cert;
+    }
+
+    private static List<String> keyIds(List<KeyInfo> keys) {
+        return keys.stream().map(KeyInfo::getId).toList();
+    }
+}
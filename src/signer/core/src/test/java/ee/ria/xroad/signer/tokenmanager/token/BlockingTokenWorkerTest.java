@@ -0,0 +1,220 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.signer.tokenmanager.token;
+
+import org.junit.Test;
+import org.niis.xroad.signer.proto.SignReq;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests locking of {@link BlockingTokenWorker}.
+ */
+public class BlockingTokenWorkerTest {
+
+    private static final int THREADS = 4;
+    private static final int SIGNS_PER_THREAD = 20;
+    private static final long TIMEOUT_SECONDS = 10;
+
+    @Test
+    public void signsConcurrentlyWhenSupported() throws Exception {
+        AbstractTokenWorker tokenWorker = mock(AbstractTokenWorker.class);
+        when(tokenWorker.isConcurrentSigningSupported()).thenReturn(true);
+
+        CountDownLatch allSigning = new CountDownLatch(THREADS);
+        when(tokenWorker.handleSign(any())).thenAnswer(invocation -> {
+            allSigning.countDown();
+            // completes only if all sign requests are inside the worker at the same time
+            return allSigning.await(TIMEOUT_SECONDS, TimeUnit.SECONDS) ? new byte[1] : new byte[0];
+        });
+
+        BlockingTokenWorker worker = new BlockingTokenWorker(tokenWorker);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            Future<?>[] results = new Future<?>[THREADS];
+            for (int i = 0; i < THREADS; i++) {
+                results[i] = executor.submit(() -> worker.handleSign(SignReq.getDefaultInstance()));
+            }
+            for (Future<?> result : results) {
+                assertEquals(1, ((byte[]) result.get(TIMEOUT_SECONDS, TimeUnit.SECONDS)).length);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void signsExclusivelyWhenConcurrencyNotSupported() throws Exception {
+        AbstractTokenWorker tokenWorker = mock(AbstractTokenWorker.class);
+        AtomicInteger active = new AtomicInteger();
+        AtomicInteger maxActive = new AtomicInteger();
+        when(tokenWorker.handleSign(any())).thenAnswer(invocation -> trackConcurrency(active, maxActive));
+
+        runConcurrently(new BlockingTokenWorker(tokenWorker), w -> w.handleSign(SignReq.getDefaultInstance()));
+
+        assertEquals(1, maxActive.get());
+    }
+
+    @Test
+    public void otherActionsExcludeSigning() throws Exception {
+        AbstractTokenWorker tokenWorker = mock(AbstractTokenWorker.class);
+        when(tokenWorker.isConcurrentSigningSupported()).thenReturn(true);
+        AtomicInteger active = new AtomicInteger();
+        AtomicInteger maxActive = new AtomicInteger();
+        AtomicInteger deletesWithSigners = new AtomicInteger();
+        when(tokenWorker.handleSign(any())).thenAnswer(invocation -> trackConcurrency(active, maxActive));
+        doAnswer(invocation -> {
+            if (active.get() != 0) {
+                deletesWithSigners.incrementAndGet();
+            }
+            return null;
+        }).when(tokenWorker).handleDeleteKey(any());
+
+        runConcurrently(new BlockingTokenWorker(tokenWorker), w -> {
+            w.handleSign(SignReq.getDefaultInstance());
+            w.handleDeleteKey("key");
+        });
+
+        assertEquals(0, deletesWithSigners.get());
+        assertTrue(maxActive.get() >= 1);
+    }
+
+    @Test
+    public void updatesTokenInfoExclusively() throws Exception {
+        AbstractTokenWorker tokenWorker = mock(AbstractTokenWorker.class);
+        when(tokenWorker.isConcurrentSigningSupported()).thenReturn(true);
+        when(tokenWorker.isActionHandledAfterSign()).thenReturn(true);
+        AtomicInteger active = new AtomicInteger();
+        AtomicInteger maxActive = new AtomicInteger();
+        AtomicInteger updatesWithSigners = new AtomicInteger();
+        when(tokenWorker.handleSign(any())).thenAnswer(invocation -> trackConcurrency(active, maxActive));
+        AtomicInteger updates = new AtomicInteger();
+        doAnswer(invocation -> {
+            updates.incrementAndGet();
+            if (active.get() != 0) {
+                updatesWithSigners.incrementAndGet();
+            }
+            return null;
+        }).when(tokenWorker).onActionHandled();
+
+        runConcurrently(new BlockingTokenWorker(tokenWorker), w -> w.handleSign(SignReq.getDefaultInstance()));
+
+        assertEquals(0, updatesWithSigners.get());
+        assertTrue(updates.get() >= 1);
+        assertTrue(updates.get() <= THREADS * SIGNS_PER_THREAD);
+    }
+
+    @Test
+    public void leavesTokenInfoUpdateToLastConcurrentSign() throws Exception {
+        AbstractTokenWorker tokenWorker = mock(AbstractTokenWorker.class);
+        when(tokenWorker.isConcurrentSigningSupported()).thenReturn(true);
+        when(tokenWorker.isActionHandledAfterSign()).thenReturn(true);
+        CountDownLatch firstSigning = new CountDownLatch(1);
+        CountDownLatch releaseFirst = new CountDownLatch(1);
+        AtomicInteger signs = new AtomicInteger();
+        when(tokenWorker.handleSign(any())).thenAnswer(invocation -> {
+            if (signs.incrementAndGet() == 1) {
+                firstSigning.countDown();
+                releaseFirst.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            }
+            return new byte[0];
+        });
+
+        BlockingTokenWorker worker = new BlockingTokenWorker(tokenWorker);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> first = executor.submit(() -> worker.handleSign(SignReq.getDefaultInstance()));
+            assertTrue(firstSigning.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+            // does not wait for the first sign to get the write lock
+            worker.handleSign(SignReq.getDefaultInstance());
+            verify(tokenWorker, never()).onActionHandled();
+
+            releaseFirst.countDown();
+            first.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            verify(tokenWorker, times(1)).onActionHandled();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void skipsTokenInfoUpdateWhenNothingToUpdate() throws Exception {
+        AbstractTokenWorker tokenWorker = mock(AbstractTokenWorker.class);
+        when(tokenWorker.isConcurrentSigningSupported()).thenReturn(true);
+        when(tokenWorker.isActionHandledAfterSign()).thenReturn(false);
+
+        runConcurrently(new BlockingTokenWorker(tokenWorker), w -> w.handleSign(SignReq.getDefaultInstance()));
+
+        verify(tokenWorker, never()).onActionHandled();
+    }
+
+    private static byte[] trackConcurrency(AtomicInteger active, AtomicInteger maxActive) throws Exception {
+        maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+        try {
+            Thread.sleep(1);
+            return new byte[0];
+        } finally {
+            active.decrementAndGet();
+        }
+    }
+
+    private static void runConcurrently(BlockingTokenWorker worker, Consumer<BlockingTokenWorker> action)
+            throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            Future<?>[] results = new Future<?>[THREADS];
+            for (int i = 0; i < THREADS; i++) {
+                results[i] = executor.submit(() -> {
+                    for (int j = 0; j < SIGNS_PER_THREAD; j++) {
+                        action.accept(worker);
+                    }
+                });
+            }
+            for (Future<?> result : results) {
+                result.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}